@@ -0,0 +1,48 @@
+package com.arturokumura.car_dealer.batch.domain;
+
+import com.arturokumura.car_dealer.batch.aggregation.SalesAggregator;
+import com.arturokumura.car_dealer.support.SalesCsvGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Linhas do relatorio da matriz renderizadas por segundo por ReportLine.toCsv.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReportLineBenchmark {
+
+    private ReportLine[] lines;
+    private int next;
+
+    // Linhas com totais reais, vindas da agregacao de vendas sinteticas.
+    @Setup
+    public void aggregateLines() {
+        SalesAggregator aggregator = new SalesAggregator();
+        for (SaleRecord record : new SalesCsvGenerator(42L).records(12, 100_000)) {
+            aggregator.addSale(record.dealerId(), record.model(), record.salePriceBrl());
+        }
+        List<ReportLine> reportLines = aggregator.toReportLines();
+        lines = reportLines.toArray(new ReportLine[0]);
+    }
+
+    @Benchmark
+    public String toCsv() {
+        ReportLine line = lines[next];
+        next = next + 1 == lines.length ? 0 : next + 1;
+        return line.toCsv();
+    }
+}
@@ -0,0 +1,44 @@
+package com.arturokumura.car_dealer.batch.processor;
+
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.support.SalesCsvGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Vendas normalizadas por segundo pelo SaleRecordProcessor.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SaleRecordProcessorBenchmark {
+
+    private final SaleRecordProcessor processor = new SaleRecordProcessor();
+    private SaleRecord[] records;
+    private int next;
+
+    @Setup
+    public void generateRecords() {
+        List<SaleRecord> generated = new SalesCsvGenerator(42L).records(12, 10_000);
+        records = generated.toArray(new SaleRecord[0]);
+    }
+
+    @Benchmark
+    public SaleRecord process() {
+        SaleRecord record = records[next];
+        next = next + 1 == records.length ? 0 : next + 1;
+        return processor.process(record);
+    }
+}
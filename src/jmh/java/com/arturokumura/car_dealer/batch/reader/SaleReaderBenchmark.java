@@ -0,0 +1,69 @@
+package com.arturokumura.car_dealer.batch.reader;
+
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.support.SalesCsvGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.batch.infrastructure.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Vendas lidas por segundo pelo reader de um arquivo de filial, nos dois modos de app.reader.mode.
+// O arquivo e reaberto ao chegar no fim, entao cada operacao e uma linha lida.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class SaleReaderBenchmark {
+
+    @Param({"10000", "1000000", "50000000"})
+    private long rows;
+
+    @Param({"flatfile", SaleReaderConfig.READER_MODE_MAPPED})
+    private String mode;
+
+    private FileSystemResource input;
+    private ResourceAwareItemReaderItemStream<SaleRecord> reader;
+
+    // Os arquivos ficam em java.io.tmpdir e sao reaproveitados entre execucoes.
+    @Setup(Level.Trial)
+    public void generateInput() {
+        Path file = Path.of(System.getProperty("java.io.tmpdir"), "car-dealer-jmh", "D001_" + rows + "_sales.csv");
+        input = new FileSystemResource(SalesCsvGenerator.generateIfMissing(file, "D001", rows, 42L));
+        reader = SaleReaderConfig.newSaleFileReader("benchmarkReader", mode, false);
+        reader.setResource(input);
+        reader.open(new ExecutionContext());
+    }
+
+    @TearDown(Level.Trial)
+    public void closeReader() {
+        reader.close();
+    }
+
+    @Benchmark
+    public SaleRecord read() throws Exception {
+        SaleRecord record = reader.read();
+        if (record == null) {
+            reader.close();
+            reader.open(new ExecutionContext());
+            record = reader.read();
+        }
+        return record;
+    }
+}
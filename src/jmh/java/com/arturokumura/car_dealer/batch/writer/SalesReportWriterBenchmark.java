@@ -0,0 +1,111 @@
+package com.arturokumura.car_dealer.batch.writer;
+
+import com.arturokumura.car_dealer.batch.aggregation.AggregateCheckpoint;
+import com.arturokumura.car_dealer.batch.dimension.DealerDimensionCache;
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.batch.repository.SalesAggregateRepository;
+import com.arturokumura.car_dealer.batch.rollup.RollupDefinitions;
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import com.arturokumura.car_dealer.report.ReportSnapshotHolder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import com.arturokumura.car_dealer.support.SalesCsvGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Agregacao em memoria do SalesReportWriter.write, em chunks do tamanho usado pelo step.
+// O resultado e reportado por venda agregada.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SalesReportWriterBenchmark {
+
+    private static final int CHUNK_SIZE = 100;
+    private static final int DEALERS = 12;
+    private static final int MAX_POOLED_RECORDS = 1_000_000;
+
+    // Sem rollups mede so o relatorio principal; com eles, o custo da passada unica com todos os cortes.
+    @Param({"", "dealer-day:dealer,day;model-payment:model,payment_type;total:"})
+    private String rollups;
+
+    // Vendas agregadas antes de o agregado ser reiniciado, como no SaleReaderBenchmark.
+    @Param({"10000", "1000000", "50000000"})
+    private long rows;
+
+    private SalesReportWriter writer;
+    private List<Chunk<SaleRecord>> chunks;
+    private int next;
+    private long written;
+
+    @Setup(Level.Trial)
+    public void prepareChunks() {
+        // Checkpoint desligado e relatorio em memoria, como no modo padrao; filiais em um H2 em memoria
+        BatchMetrics batchMetrics = new BatchMetrics(new SimpleMeterRegistry());
+        writer = new SalesReportWriter(dealerDimensionCache(batchMetrics),
+                new AggregateCheckpoint(false, System.getProperty("java.io.tmpdir"), 0, 1),
+                new SalesAggregateRepository(null, "memory"),
+                batchMetrics,
+                null,
+                new ReportSnapshotHolder(),
+                new RollupDefinitions(rollups, 0, System.getProperty("java.io.tmpdir")),
+                "target/jmh-sales-report.csv");
+        // Acima de MAX_POOLED_RECORDS os chunks se repetem: o agregado cresce com as chaves, nao com o volume
+        int pooled = (int) Math.min(rows, MAX_POOLED_RECORDS);
+        List<SaleRecord> records = new SalesCsvGenerator(42L).records(DEALERS, Math.max(pooled, CHUNK_SIZE));
+        int chunkCount = records.size() / CHUNK_SIZE;
+        chunks = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            chunks.add(new Chunk<>(records.subList(i * CHUNK_SIZE, (i + 1) * CHUNK_SIZE)));
+        }
+    }
+
+    private static DealerDimensionCache dealerDimensionCache(BatchMetrics batchMetrics) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(
+                new SingleConnectionDataSource("jdbc:h2:mem:jmh-dealers;MODE=MySQL", "sa", "", true));
+        jdbcTemplate.execute("CREATE TABLE dealers (dealer_id VARCHAR(10) PRIMARY KEY, "
+                + "dealer_name VARCHAR(120) NOT NULL, updated_at TIMESTAMP(3) DEFAULT CURRENT_TIMESTAMP(3))");
+        for (int i = 1; i <= DEALERS; i++) {
+            jdbcTemplate.update("INSERT INTO dealers (dealer_id, dealer_name) VALUES (?, ?)",
+                    SalesCsvGenerator.dealerId(i), "Filial " + i);
+        }
+        return new DealerDimensionCache(jdbcTemplate, batchMetrics, Long.MAX_VALUE);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetAggregate() {
+        writer.open(new ExecutionContext());
+        written = 0;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK_SIZE)
+    public void write() {
+        writer.write(chunks.get(next));
+        next = next + 1 == chunks.size() ? 0 : next + 1;
+        written += CHUNK_SIZE;
+        if (written >= rows) {
+            resetAggregate();
+        }
+    }
+}
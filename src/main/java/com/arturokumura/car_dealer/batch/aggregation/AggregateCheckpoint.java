@@ -0,0 +1,178 @@
+package com.arturokumura.car_dealer.batch.aggregation;
+
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Checkpoint do agregado gravado a cada commit de chunk. A cada fullSaveEvery commits vai o agregado
+// inteiro; nos demais vai so o delta (o que mudou desde o ultimo completo), somado a ele no restore.
+// Snapshots pequenos vao comprimidos no ExecutionContext do step; os grandes vao para um arquivo
+// numerado, cuja sequencia fica no contexto.
+@Component
+public class AggregateCheckpoint {
+
+    private static final String SNAPSHOT_KEY = "aggregate.snapshot";
+    private static final String SEQUENCE_KEY = "aggregate.snapshot.sequence";
+    private static final String DELTA_SNAPSHOT_KEY = "aggregate.delta";
+    private static final String DELTA_FILE_KEY = "aggregate.delta.file";
+    private static final String DELTA_SEQUENCE_KEY = "aggregate.delta.sequence";
+    private static final String DELTA_FILE_KIND = "delta-";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int inlineLimitBytes;
+    private final int fullSaveEvery;
+
+    // Recebe a pasta dos snapshots em arquivo, o tamanho maximo guardado direto no contexto e de quantos
+    // em quantos commits o agregado vai inteiro.
+    public AggregateCheckpoint(@Value("${app.report.checkpoint.enabled:true}") boolean enabled,
+                               @Value("${app.report.checkpoint.dir:${app.data-dir}/checkpoints}") String directory,
+                               @Value("${app.report.checkpoint.inline-limit-bytes:32768}") int inlineLimitBytes,
+                               @Value("${app.report.checkpoint.full-every:20}") int fullSaveEvery) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory).toAbsolutePath().normalize();
+        this.inlineLimitBytes = inlineLimitBytes;
+        this.fullSaveEvery = Math.max(1, fullSaveEvery);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int fullSaveEvery() {
+        return fullSaveEvery;
+    }
+
+    // Grava o agregado inteiro; chamado no update do ItemStream, antes do commit do chunk. O delta
+    // anterior deixa de valer, pois ja esta somado neste snapshot.
+    public void save(AggregateState aggregator, ExecutionContext context, String scope) {
+        byte[] snapshot = encode(aggregator);
+        if (snapshot.length <= inlineLimitBytes) {
+            context.putString(SNAPSHOT_KEY, Base64.getEncoder().encodeToString(snapshot));
+            context.remove(SEQUENCE_KEY);
+        } else {
+            // A sequencia so avanca no contexto apos o commit; o arquivo anterior e mantido ate la
+            long sequence = context.getLong(SEQUENCE_KEY, 0L) + 1;
+            writeFile(snapshot, snapshotFile(scope, "", sequence));
+            deleteFile(snapshotFile(scope, "", sequence - 2));
+            context.putLong(SEQUENCE_KEY, sequence);
+            context.remove(SNAPSHOT_KEY);
+        }
+        context.remove(DELTA_SNAPSHOT_KEY);
+        context.remove(DELTA_FILE_KEY);
+    }
+
+    // Grava so o que mudou desde o ultimo save completo; o completo confirmado continua valendo.
+    public void saveDelta(AggregateState delta, ExecutionContext context, String scope) {
+        byte[] snapshot = encode(delta);
+        if (snapshot.length <= inlineLimitBytes) {
+            context.putString(DELTA_SNAPSHOT_KEY, Base64.getEncoder().encodeToString(snapshot));
+            context.remove(DELTA_FILE_KEY);
+            return;
+        }
+
+        long sequence = context.getLong(DELTA_SEQUENCE_KEY, 0L) + 1;
+        writeFile(snapshot, snapshotFile(scope, DELTA_FILE_KIND, sequence));
+        deleteFile(snapshotFile(scope, DELTA_FILE_KIND, sequence - 2));
+        if (!context.containsKey(DELTA_FILE_KEY)) {
+            // O ultimo commit nao referencia delta em arquivo; o anterior ja pode sair
+            deleteFile(snapshotFile(scope, DELTA_FILE_KIND, sequence - 1));
+        }
+        context.putLong(DELTA_SEQUENCE_KEY, sequence);
+        context.putLong(DELTA_FILE_KEY, sequence);
+        context.remove(DELTA_SNAPSHOT_KEY);
+    }
+
+    // Restaura o agregado a partir do ultimo checkpoint confirmado (completo mais delta); retorna false
+    // se nao houver.
+    public boolean restore(AggregateState aggregator, ExecutionContext context, String scope) {
+        try {
+            if (context.containsKey(SNAPSHOT_KEY)) {
+                decode(Base64.getDecoder().decode(context.getString(SNAPSHOT_KEY)), aggregator);
+            } else if (context.containsKey(SEQUENCE_KEY)) {
+                decode(Files.readAllBytes(snapshotFile(scope, "", context.getLong(SEQUENCE_KEY))), aggregator);
+            } else {
+                return false;
+            }
+            if (context.containsKey(DELTA_SNAPSHOT_KEY)) {
+                decode(Base64.getDecoder().decode(context.getString(DELTA_SNAPSHOT_KEY)), aggregator);
+            } else if (context.containsKey(DELTA_FILE_KEY)) {
+                decode(Files.readAllBytes(snapshotFile(scope, DELTA_FILE_KIND, context.getLong(DELTA_FILE_KEY))),
+                        aggregator);
+            }
+            return true;
+        } catch (IOException e) {
+            throw new IllegalStateException("Nao foi possivel restaurar checkpoint do agregado", e);
+        }
+    }
+
+    // Remove todos os arquivos de snapshot do escopo, de um step cujo resultado ja foi gravado.
+    public void discard(String scope) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, fileScope(scope) + "-*.bin")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Nao foi possivel remover checkpoint do agregado em " + directory, e);
+        }
+    }
+
+    private void writeFile(byte[] snapshot, Path target) {
+        try {
+            Files.createDirectories(directory);
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.write(temp, snapshot);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Nao foi possivel gravar checkpoint do agregado em " + directory, e);
+        }
+    }
+
+    private void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new IllegalStateException("Nao foi possivel remover checkpoint do agregado em " + directory, e);
+        }
+    }
+
+    private Path snapshotFile(String scope, String kind, long sequence) {
+        return directory.resolve(fileScope(scope) + "-" + kind + sequence + ".bin");
+    }
+
+    private static String fileScope(String scope) {
+        return scope.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    private static byte[] encode(AggregateState aggregator) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            aggregator.writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Nao foi possivel serializar o agregado", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void decode(byte[] snapshot, AggregateState aggregator) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(snapshot)))) {
+            aggregator.readFrom(in);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.arturokumura.car_dealer.batch.aggregation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Estado de agregacao que pode ser gravado e restaurado pelo AggregateCheckpoint.
+public interface AggregateState {
+
+    void writeTo(DataOutput out) throws IOException;
+
+    // Soma o conteudo serializado por writeTo no estado atual.
+    void readFrom(DataInput in) throws IOException;
+}
@@ -0,0 +1,70 @@
+package com.arturokumura.car_dealer.batch.aggregation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+// Dicionario de nomes para ids densos: cada texto distinto recebe um inteiro sequencial. Chaves que ja
+// chegam como ids densos de outra tabela (a filial na DealerDimension) tem um atalho por array, sem
+// passar pelo mapa de nomes depois da primeira ocorrencia.
+public final class NameDictionary {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] names = new String[64];
+    private int size;
+    // id + 1 por chave densa externa; 0 quando a chave ainda nao foi vista
+    private int[] idByKey = new int[0];
+
+    // Retorna o id do nome, cadastrando-o na primeira ocorrencia.
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+        }
+        names[size] = name;
+        ids.put(name, size);
+        return size++;
+    }
+
+    // Retorna o id de uma chave densa externa; o nome dela so e consultado na primeira ocorrencia,
+    // e chaves externas com o mesmo nome compartilham o id.
+    public int idOfKey(int key, IntFunction<String> nameOfKey) {
+        if (key < idByKey.length) {
+            int id = idByKey[key] - 1;
+            if (id >= 0) {
+                return id;
+            }
+        } else {
+            idByKey = Arrays.copyOf(idByKey, Math.max(key + 1, idByKey.length * 2));
+        }
+        int id = idOf(nameOfKey.apply(key));
+        idByKey[key] = id + 1;
+        return id;
+    }
+
+    // Esquece os atalhos das chaves externas, mantendo os nomes; usado quando os ids externos mudam de versao.
+    public void clearKeys() {
+        Arrays.fill(idByKey, 0);
+    }
+
+    // Retorna o nome associado ao id.
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Remove todos os nomes cadastrados.
+    public void clear() {
+        ids.clear();
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(idByKey, 0);
+        size = 0;
+    }
+}
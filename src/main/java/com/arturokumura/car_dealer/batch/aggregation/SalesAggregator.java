@@ -0,0 +1,189 @@
+package com.arturokumura.car_dealer.batch.aggregation;
+
+import com.arturokumura.car_dealer.batch.domain.ReportLine;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Agregado mutavel de vendas por filial e modelo. As chaves sao pares de ids de dicionario
+// e cada chave acumula unidades em int e receita em centavos (long), sem alocacao por venda.
+public final class SalesAggregator implements AggregateState {
+
+    // Ate 15 digitos o double representa o valor exato e o arredondamento recupera os centavos.
+    private static final int MAX_FAST_PATH_PRECISION = 15;
+
+    private final NameDictionary dealers = new NameDictionary();
+    private final NameDictionary models = new NameDictionary();
+    private final LongIntHashMap slotByKey = new LongIntHashMap(1024);
+
+    private int[] dealerIds = new int[256];
+    private int[] modelIds = new int[256];
+    private int[] units = new int[256];
+    private long[] centavos = new long[256];
+    private BigDecimal[] subCentavos = new BigDecimal[256];
+    private int size;
+
+    // Soma uma venda ao agregado da filial e modelo.
+    public void addSale(String dealerName, String model, BigDecimal salePrice) {
+        addSaleByIds(dealers.idOf(dealerName), models.idOf(model), salePrice);
+    }
+
+    // Como addSale, com as chaves ja convertidas pelos dicionarios firstKeys e secondKeys.
+    public void addSaleByIds(int firstId, int secondId, BigDecimal salePrice) {
+        int slot = slotOf(firstId, secondId);
+        units[slot]++;
+        if (salePrice.scale() <= 2 && salePrice.precision() <= MAX_FAST_PATH_PRECISION) {
+            centavos[slot] += Math.round(salePrice.doubleValue() * 100);
+        } else {
+            // Precos com mais de duas casas preservam a soma exata, como o BigDecimal original
+            subCentavos[slot] = subCentavos[slot] == null ? salePrice : subCentavos[slot].add(salePrice);
+        }
+    }
+
+    // Soma uma venda com o preco ja em centavos, como vem do cache colunar.
+    public void addCentavos(String dealerName, String model, long saleCentavos) {
+        addCentavosByIds(dealers.idOf(dealerName), models.idOf(model), saleCentavos);
+    }
+
+    // Como addCentavos, com as chaves ja convertidas pelos dicionarios firstKeys e secondKeys.
+    public void addCentavosByIds(int firstId, int secondId, long saleCentavos) {
+        int slot = slotOf(firstId, secondId);
+        units[slot]++;
+        centavos[slot] += saleCentavos;
+    }
+
+    // Dicionario da primeira chave (a filial no relatorio principal); valido ate o proximo clear.
+    public NameDictionary firstKeys() {
+        return dealers;
+    }
+
+    // Dicionario da segunda chave; valido ate o proximo clear.
+    public NameDictionary secondKeys() {
+        return models;
+    }
+
+    // Soma uma linha ja agregada (unidades e receita) na chave.
+    public void addLine(String dealerName, String model, int lineUnits, BigDecimal revenue) {
+        int slot = slotOf(dealers.idOf(dealerName), models.idOf(model));
+        units[slot] += lineUnits;
+        if (revenue.scale() <= 2) {
+            centavos[slot] += revenue.movePointRight(2).longValueExact();
+        } else {
+            subCentavos[slot] = subCentavos[slot] == null ? revenue : subCentavos[slot].add(revenue);
+        }
+    }
+
+    // Soma os totais de outro agregado neste.
+    public void merge(SalesAggregator other) {
+        for (int i = 0; i < other.size; i++) {
+            int slot = slotOf(dealers.idOf(other.dealers.nameOf(other.dealerIds[i])),
+                    models.idOf(other.models.nameOf(other.modelIds[i])));
+            units[slot] += other.units[i];
+            centavos[slot] += other.centavos[i];
+            if (other.subCentavos[i] != null) {
+                subCentavos[slot] = subCentavos[slot] == null
+                        ? other.subCentavos[i]
+                        : subCentavos[slot].add(other.subCentavos[i]);
+            }
+        }
+    }
+
+    // Converte os acumuladores em linhas de relatorio; unico ponto de volta para BigDecimal.
+    public List<ReportLine> toReportLines() {
+        List<ReportLine> lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            BigDecimal revenue = BigDecimal.valueOf(centavos[i], 2);
+            if (subCentavos[i] != null) {
+                revenue = revenue.add(subCentavos[i]);
+            }
+            lines.add(new ReportLine(dealers.nameOf(dealerIds[i]), models.nameOf(modelIds[i]), units[i], revenue));
+        }
+        return lines;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Serializa os acumuladores em formato compacto para checkpoint.
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            writeNullableString(out, dealers.nameOf(dealerIds[i]));
+            writeNullableString(out, models.nameOf(modelIds[i]));
+            out.writeInt(units[i]);
+            out.writeLong(centavos[i]);
+            writeNullableString(out, subCentavos[i] == null ? null : subCentavos[i].toString());
+        }
+    }
+
+    // Soma neste agregado o conteudo serializado por writeTo.
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        int entries = in.readInt();
+        for (int i = 0; i < entries; i++) {
+            int slot = slotOf(dealers.idOf(readNullableString(in)), models.idOf(readNullableString(in)));
+            units[slot] += in.readInt();
+            centavos[slot] += in.readLong();
+            String remainder = readNullableString(in);
+            if (remainder != null) {
+                BigDecimal value = new BigDecimal(remainder);
+                subCentavos[slot] = subCentavos[slot] == null ? value : subCentavos[slot].add(value);
+            }
+        }
+    }
+
+    // Descarta todos os acumuladores e dicionarios.
+    public void clear() {
+        dealers.clear();
+        models.clear();
+        slotByKey.clear();
+        Arrays.fill(units, 0, size, 0);
+        Arrays.fill(centavos, 0, size, 0L);
+        Arrays.fill(subCentavos, 0, size, null);
+        size = 0;
+    }
+
+    // Localiza o acumulador da chave, criando um novo na primeira ocorrencia.
+    private int slotOf(int dealerId, int modelId) {
+        long key = ((long) dealerId << 32) | modelId;
+        int slot = slotByKey.get(key);
+        if (slot != LongIntHashMap.NO_VALUE) {
+            return slot;
+        }
+        if (size == units.length) {
+            grow();
+        }
+        slot = size++;
+        dealerIds[slot] = dealerId;
+        modelIds[slot] = modelId;
+        slotByKey.put(key, slot);
+        return slot;
+    }
+
+    private static void writeNullableString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private void grow() {
+        int capacity = units.length * 2;
+        dealerIds = Arrays.copyOf(dealerIds, capacity);
+        modelIds = Arrays.copyOf(modelIds, capacity);
+        units = Arrays.copyOf(units, capacity);
+        centavos = Arrays.copyOf(centavos, capacity);
+        subCentavos = Arrays.copyOf(subCentavos, capacity);
+    }
+}
@@ -0,0 +1,295 @@
+package com.arturokumura.car_dealer.batch.aggregation;
+
+import com.arturokumura.car_dealer.batch.domain.ReportLine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Agregado limitado a maxKeysInMemory chaves, com runs ordenados em disco unidos por merge k-way na saida.
+public final class SpillingAggregator implements AggregateState {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpillingAggregator.class);
+    private static final Comparator<String> KEY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+    private static final int RUN_BUFFER_SIZE = 64 * 1024;
+
+    // Ordem das linhas na saida: primeira chave e depois a segunda.
+    public static final Comparator<ReportLine> LINE_ORDER = Comparator
+            .comparing(ReportLine::dealerName, KEY_ORDER)
+            .thenComparing(ReportLine::model, KEY_ORDER);
+
+    // Recebe as linhas da saida ja ordenadas e somadas.
+    @FunctionalInterface
+    public interface LineConsumer {
+        void accept(ReportLine line) throws IOException;
+    }
+
+    private final SalesAggregator memory = new SalesAggregator();
+    private final List<Path> runs = new ArrayList<>();
+    private final int maxKeysInMemory;
+    private Path spillDirectory;
+
+    // maxKeysInMemory igual a zero desliga o spill.
+    public SpillingAggregator(int maxKeysInMemory, Path spillDirectory) {
+        this.maxKeysInMemory = maxKeysInMemory;
+        this.spillDirectory = spillDirectory;
+    }
+
+    public void addSale(String firstKey, String secondKey, BigDecimal salePrice) {
+        memory.addSale(firstKey, secondKey, salePrice);
+        spillIfOverBudget();
+    }
+
+    public void addCentavos(String firstKey, String secondKey, long saleCentavos) {
+        memory.addCentavos(firstKey, secondKey, saleCentavos);
+        spillIfOverBudget();
+    }
+
+    // Como addSale, com ids dos dicionarios firstKeys e secondKeys obtidos logo antes, ja que o spill
+    // limpa os dicionarios.
+    public void addSaleByIds(int firstId, int secondId, BigDecimal salePrice) {
+        memory.addSaleByIds(firstId, secondId, salePrice);
+        spillIfOverBudget();
+    }
+
+    public void addCentavosByIds(int firstId, int secondId, long saleCentavos) {
+        memory.addCentavosByIds(firstId, secondId, saleCentavos);
+        spillIfOverBudget();
+    }
+
+    public NameDictionary firstKeys() {
+        return memory.firstKeys();
+    }
+
+    public NameDictionary secondKeys() {
+        return memory.secondKeys();
+    }
+
+    // Soma outro agregado neste; os runs do outro passam a pertencer a este.
+    public void merge(SpillingAggregator other) {
+        runs.addAll(other.runs);
+        other.runs.clear();
+        memory.merge(other.memory);
+        spillIfOverBudget();
+    }
+
+    // Chaves mantidas em memoria.
+    public int size() {
+        return memory.size();
+    }
+
+    public boolean hasRuns() {
+        return !runs.isEmpty();
+    }
+
+    // Arquivos de run que compoem o estado atual.
+    public List<Path> runFiles() {
+        return List.copyOf(runs);
+    }
+
+    // Diretorio dos proximos runs; os ja gravados continuam onde estao.
+    public void spillInto(Path directory) {
+        this.spillDirectory = directory;
+    }
+
+    // Esquece o estado atual; os arquivos de run continuam no disco, pois um checkpoint pode referencia-los.
+    // Quem restaura o checkpoint remove os runs que ele nao referencia (ReportAggregate.open).
+    public void clear() {
+        memory.clear();
+        runs.clear();
+    }
+
+    // Remove os arquivos de run depois que a saida foi gravada.
+    public void deleteRuns() {
+        for (Path run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                LOGGER.warn("Nao foi possivel remover run de spill {}", run, e);
+            }
+        }
+        runs.clear();
+    }
+
+    // Entrega as linhas ordenadas, juntando runs e memoria sem carregar os runs inteiros.
+    public void forEachSorted(LineConsumer consumer) throws IOException {
+        List<ReportLine> inMemory = memory.toReportLines();
+        inMemory.sort(LINE_ORDER);
+        if (runs.isEmpty()) {
+            for (ReportLine line : inMemory) {
+                consumer.accept(line);
+            }
+            return;
+        }
+
+        List<Cursor> cursors = new ArrayList<>(runs.size() + 1);
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(runs.size() + 1,
+                (left, right) -> LINE_ORDER.compare(left.current, right.current));
+        try {
+            cursors.add(new Cursor(inMemory.iterator()));
+            for (Path run : runs) {
+                cursors.add(new Cursor(new DataInputStream(
+                        new BufferedInputStream(Files.newInputStream(run), RUN_BUFFER_SIZE))));
+            }
+            for (Cursor cursor : cursors) {
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+
+            ReportLine pending = null;
+            while (!queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                ReportLine line = cursor.current;
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+                if (pending != null && LINE_ORDER.compare(pending, line) == 0) {
+                    pending = new ReportLine(pending.dealerName(), pending.model(),
+                            pending.unitsSold() + line.unitsSold(), pending.revenueBrl().add(line.revenueBrl()));
+                } else {
+                    if (pending != null) {
+                        consumer.accept(pending);
+                    }
+                    pending = line;
+                }
+            }
+            if (pending != null) {
+                consumer.accept(pending);
+            }
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    // O snapshot guarda os caminhos dos runs ja gravados e o conteudo em memoria.
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(runs.size());
+        for (Path run : runs) {
+            out.writeUTF(run.toString());
+        }
+        memory.writeTo(out);
+    }
+
+    // Snapshot autocontido para outro processo ou host: os runs locais sao juntados em memoria e o
+    // resultado sai no mesmo formato do writeTo, sem nenhum caminho de run.
+    public void writePortableTo(DataOutput out) throws IOException {
+        SalesAggregator merged = new SalesAggregator();
+        forEachSorted(line -> merged.addLine(line.dealerName(), line.model(), line.unitsSold(), line.revenueBrl()));
+        out.writeInt(0);
+        merged.writeTo(out);
+    }
+
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        int runCount = in.readInt();
+        for (int i = 0; i < runCount; i++) {
+            Path run = Path.of(in.readUTF());
+            if (!Files.exists(run)) {
+                throw new IOException("Run de spill referenciado pelo checkpoint nao encontrado: " + run);
+            }
+            runs.add(run);
+        }
+        memory.readFrom(in);
+    }
+
+    private void spillIfOverBudget() {
+        if (maxKeysInMemory > 0 && memory.size() >= maxKeysInMemory) {
+            spill();
+        }
+    }
+
+    // Grava o conteudo em memoria ordenado em um novo run e libera a memoria.
+    private void spill() {
+        List<ReportLine> lines = memory.toReportLines();
+        lines.sort(LINE_ORDER);
+        try {
+            Files.createDirectories(spillDirectory);
+            Path run = Files.createTempFile(spillDirectory, "run-", ".bin");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(run), RUN_BUFFER_SIZE))) {
+                out.writeInt(lines.size());
+                for (ReportLine line : lines) {
+                    writeNullableString(out, line.dealerName());
+                    writeNullableString(out, line.model());
+                    out.writeInt(line.unitsSold());
+                    out.writeUTF(line.revenueBrl().toString());
+                }
+            }
+            runs.add(run);
+            LOGGER.debug("Spill de {} chave(s) para {}", lines.size(), run);
+        } catch (IOException e) {
+            throw new IllegalStateException("Nao foi possivel gravar run de spill em " + spillDirectory, e);
+        }
+        memory.clear();
+    }
+
+    private static void writeNullableString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // Posicao de leitura em um run ou nas linhas em memoria.
+    private static final class Cursor {
+
+        private final DataInputStream in;
+        private final Iterator<ReportLine> lines;
+        private int remaining;
+        private ReportLine current;
+
+        private Cursor(DataInputStream in) throws IOException {
+            this.in = in;
+            this.lines = null;
+            this.remaining = in.readInt();
+        }
+
+        private Cursor(Iterator<ReportLine> lines) {
+            this.in = null;
+            this.lines = lines;
+        }
+
+        private boolean advance() throws IOException {
+            if (lines != null) {
+                current = lines.hasNext() ? lines.next() : null;
+                return current != null;
+            }
+            if (remaining == 0) {
+                current = null;
+                return false;
+            }
+            remaining--;
+            current = new ReportLine(readNullableString(in), readNullableString(in), in.readInt(),
+                    new BigDecimal(in.readUTF()));
+            return true;
+        }
+
+        private void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+}
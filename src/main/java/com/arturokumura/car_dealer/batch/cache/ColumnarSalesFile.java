@@ -0,0 +1,203 @@
+package com.arturokumura.car_dealer.batch.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.arturokumura.car_dealer.batch.cache.ColumnarSalesFormat.*;
+
+// Leitura de um arquivo do cache colunar mapeado inteiro em memoria. O rodape e lido na abertura;
+// a varredura percorre as colunas de cada bloco direto no mapeamento, sem objeto por linha, e pula
+// os blocos cujas datas ficam fora do periodo pedido.
+public final class ColumnarSalesFile implements Closeable {
+
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    // Recebe cada venda como ids de dicionario, epoch-day e centavos.
+    @FunctionalInterface
+    public interface SaleVisitor {
+        void accept(int dealerId, int modelId, int paymentTypeId, int epochDay, long centavos);
+    }
+
+    private final Path path;
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final long[] blockOffsets;
+    private final int[] blockRows;
+    private final int[] blockMinDays;
+    private final int[] blockMaxDays;
+    private final long rows;
+    private final int minEpochDay;
+    private final int maxEpochDay;
+    private final long minCentavos;
+    private final long maxCentavos;
+    private final long totalCentavos;
+    private final String[] dealerIds;
+    private final String[] models;
+    private final String[] paymentTypes;
+    private long cursor;
+
+    private ColumnarSalesFile(Path path, Arena arena, MemorySegment segment) throws IOException {
+        this.path = path;
+        this.arena = arena;
+        this.segment = segment;
+        long size = segment.byteSize();
+        if (size < HEADER_BYTES + TRAILER_BYTES || segment.get(INT, 0) != MAGIC
+                || segment.get(INT, size - Integer.BYTES) != MAGIC) {
+            throw new IOException("Arquivo de cache colunar invalido: " + path);
+        }
+        if (segment.get(INT, Integer.BYTES) != VERSION) {
+            throw new IOException("Versao de cache colunar nao suportada em " + path);
+        }
+
+        cursor = segment.get(LONG, size - TRAILER_BYTES);
+        int blocks = readInt();
+        blockOffsets = new long[blocks];
+        blockRows = new int[blocks];
+        blockMinDays = new int[blocks];
+        blockMaxDays = new int[blocks];
+        for (int i = 0; i < blocks; i++) {
+            blockOffsets[i] = readLong();
+            blockRows[i] = readInt();
+            blockMinDays[i] = readInt();
+            blockMaxDays[i] = readInt();
+        }
+        rows = readLong();
+        minEpochDay = readInt();
+        maxEpochDay = readInt();
+        minCentavos = readLong();
+        maxCentavos = readLong();
+        totalCentavos = readLong();
+        dealerIds = readDictionary();
+        models = readDictionary();
+        paymentTypes = readDictionary();
+    }
+
+    // Mapeia o arquivo; o mapeamento e liberado no close, sem depender do GC.
+    public static ColumnarSalesFile open(Path path) throws IOException {
+        Arena arena = Arena.ofConfined();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            return new ColumnarSalesFile(path, arena, segment);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    // Indica se alguma venda com data pode cair no periodo, pelas estatisticas do rodape.
+    public boolean overlaps(int fromEpochDay, int toEpochDay) {
+        return maxEpochDay >= fromEpochDay && minEpochDay <= toEpochDay;
+    }
+
+    // Visita as vendas do periodo informado (inclusivo). Sem limites, visita tambem as vendas sem data.
+    public void scan(int fromEpochDay, int toEpochDay, SaleVisitor visitor) {
+        boolean unbounded = fromEpochDay == Integer.MIN_VALUE && toEpochDay == Integer.MAX_VALUE;
+        for (int block = 0; block < blockOffsets.length; block++) {
+            if (!unbounded && (blockMaxDays[block] < fromEpochDay || blockMinDays[block] > toEpochDay)) {
+                continue;
+            }
+            int count = blockRows[block];
+            long dealerColumn = blockOffsets[block];
+            long modelColumn = dealerColumn + (long) count * Short.BYTES;
+            long paymentColumn = modelColumn + (long) count * Short.BYTES;
+            long dayColumn = paymentColumn + (long) count * Short.BYTES;
+            long centavosColumn = dayColumn + (long) count * Integer.BYTES;
+            for (int row = 0; row < count; row++) {
+                int day = segment.get(INT, dayColumn + (long) row * Integer.BYTES);
+                if (day == NO_DATE ? !unbounded : (day < fromEpochDay || day > toEpochDay)) {
+                    continue;
+                }
+                visitor.accept(
+                        Short.toUnsignedInt(segment.get(SHORT, dealerColumn + (long) row * Short.BYTES)),
+                        Short.toUnsignedInt(segment.get(SHORT, modelColumn + (long) row * Short.BYTES)),
+                        Short.toUnsignedInt(segment.get(SHORT, paymentColumn + (long) row * Short.BYTES)),
+                        day,
+                        segment.get(LONG, centavosColumn + (long) row * Long.BYTES));
+            }
+        }
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    // Menor data do arquivo em epoch-day; Integer.MAX_VALUE se nenhuma venda tiver data.
+    public int minEpochDay() {
+        return minEpochDay;
+    }
+
+    // Maior data do arquivo em epoch-day; Integer.MIN_VALUE se nenhuma venda tiver data.
+    public int maxEpochDay() {
+        return maxEpochDay;
+    }
+
+    public long minCentavos() {
+        return minCentavos;
+    }
+
+    public long maxCentavos() {
+        return maxCentavos;
+    }
+
+    public long totalCentavos() {
+        return totalCentavos;
+    }
+
+    // Dicionarios indexados pelos ids entregues ao SaleVisitor.
+    public String[] dealerIds() {
+        return dealerIds;
+    }
+
+    public String[] models() {
+        return models;
+    }
+
+    public String[] paymentTypes() {
+        return paymentTypes;
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private int readInt() {
+        int value = segment.get(INT, cursor);
+        cursor += Integer.BYTES;
+        return value;
+    }
+
+    private long readLong() {
+        long value = segment.get(LONG, cursor);
+        cursor += Long.BYTES;
+        return value;
+    }
+
+    private String[] readDictionary() {
+        String[] values = new String[readInt()];
+        for (int i = 0; i < values.length; i++) {
+            int length = readInt();
+            if (length < 0) {
+                continue;
+            }
+            byte[] bytes = segment.asSlice(cursor, length).toArray(ValueLayout.JAVA_BYTE);
+            cursor += length;
+            values[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+}
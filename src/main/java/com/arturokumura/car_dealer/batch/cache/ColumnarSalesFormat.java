@@ -0,0 +1,24 @@
+package com.arturokumura.car_dealer.batch.cache;
+
+// Layout do cache colunar de um arquivo de filial (big-endian):
+//   cabecalho: MAGIC, VERSION
+//   blocos de ate ROWS_PER_BLOCK linhas, cada coluna contigua: filial, modelo e pagamento (ids de
+//   dicionario em short sem sinal), data (epoch-day int, NO_DATE quando vazia) e preco (centavos long)
+//   rodape: blocos (offset, linhas, menor e maior data), totais do arquivo (linhas, menor e maior data,
+//   menor e maior preco, receita) e os tres dicionarios
+//   final: offset do rodape e MAGIC
+final class ColumnarSalesFormat {
+
+    static final int MAGIC = 0x43445331; // "CDS1"
+    static final int VERSION = 1;
+    static final String EXTENSION = ".cds";
+    static final int ROWS_PER_BLOCK = 64 * 1024;
+    static final int MAX_DICTIONARY_SIZE = 0xFFFF;
+    static final int NO_DATE = Integer.MIN_VALUE;
+    static final int HEADER_BYTES = 8;
+    static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+    static final int BYTES_PER_ROW = 3 * Short.BYTES + Integer.BYTES + Long.BYTES;
+
+    private ColumnarSalesFormat() {
+    }
+}
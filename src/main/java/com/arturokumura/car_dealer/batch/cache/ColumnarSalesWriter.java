@@ -0,0 +1,156 @@
+package com.arturokumura.car_dealer.batch.cache;
+
+import com.arturokumura.car_dealer.batch.aggregation.NameDictionary;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.arturokumura.car_dealer.batch.cache.ColumnarSalesFormat.*;
+
+// Grava as vendas de um arquivo de filial no layout de ColumnarSalesFormat. As linhas ficam em
+// buffers por coluna ate completar um bloco; dicionarios e estatisticas vao no rodape, no finish.
+final class ColumnarSalesWriter implements Closeable {
+
+    private record Block(long offset, int rows, int minDay, int maxDay) {
+    }
+
+    private final DataOutputStream out;
+    private final NameDictionary dealers = new NameDictionary();
+    private final NameDictionary models = new NameDictionary();
+    private final NameDictionary paymentTypes = new NameDictionary();
+    private final List<Block> blocks = new ArrayList<>();
+
+    private final short[] dealerColumn = new short[ROWS_PER_BLOCK];
+    private final short[] modelColumn = new short[ROWS_PER_BLOCK];
+    private final short[] paymentColumn = new short[ROWS_PER_BLOCK];
+    private final int[] dayColumn = new int[ROWS_PER_BLOCK];
+    private final long[] centavosColumn = new long[ROWS_PER_BLOCK];
+    private int blockRows;
+    private int blockMinDay = Integer.MAX_VALUE;
+    private int blockMaxDay = Integer.MIN_VALUE;
+
+    private long position;
+    private long rows;
+    private int minDay = Integer.MAX_VALUE;
+    private int maxDay = Integer.MIN_VALUE;
+    private long minCentavos = Long.MAX_VALUE;
+    private long maxCentavos = Long.MIN_VALUE;
+    private long totalCentavos;
+
+    ColumnarSalesWriter(OutputStream target) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(target, 256 * 1024));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        position = HEADER_BYTES;
+    }
+
+    // Acrescenta uma venda ao bloco corrente, gravando o bloco quando ele enche.
+    void add(String dealerId, String model, String paymentType, int epochDay, long centavos) throws IOException {
+        dealerColumn[blockRows] = idOf(dealers, dealerId);
+        modelColumn[blockRows] = idOf(models, model);
+        paymentColumn[blockRows] = idOf(paymentTypes, paymentType);
+        dayColumn[blockRows] = epochDay;
+        centavosColumn[blockRows] = centavos;
+        blockRows++;
+
+        if (epochDay != NO_DATE) {
+            blockMinDay = Math.min(blockMinDay, epochDay);
+            blockMaxDay = Math.max(blockMaxDay, epochDay);
+        }
+        minCentavos = Math.min(minCentavos, centavos);
+        maxCentavos = Math.max(maxCentavos, centavos);
+        totalCentavos += centavos;
+        rows++;
+
+        if (blockRows == ROWS_PER_BLOCK) {
+            flushBlock();
+        }
+    }
+
+    // Grava o ultimo bloco, o rodape e o trailer.
+    void finish() throws IOException {
+        flushBlock();
+        long footerOffset = position;
+        out.writeInt(blocks.size());
+        for (Block block : blocks) {
+            out.writeLong(block.offset());
+            out.writeInt(block.rows());
+            out.writeInt(block.minDay());
+            out.writeInt(block.maxDay());
+        }
+        out.writeLong(rows);
+        out.writeInt(minDay);
+        out.writeInt(maxDay);
+        out.writeLong(rows == 0 ? 0 : minCentavos);
+        out.writeLong(rows == 0 ? 0 : maxCentavos);
+        out.writeLong(totalCentavos);
+        writeDictionary(dealers);
+        writeDictionary(models);
+        writeDictionary(paymentTypes);
+        out.writeLong(footerOffset);
+        out.writeInt(MAGIC);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockRows == 0) {
+            return;
+        }
+        blocks.add(new Block(position, blockRows, blockMinDay, blockMaxDay));
+        for (int i = 0; i < blockRows; i++) {
+            out.writeShort(dealerColumn[i]);
+        }
+        for (int i = 0; i < blockRows; i++) {
+            out.writeShort(modelColumn[i]);
+        }
+        for (int i = 0; i < blockRows; i++) {
+            out.writeShort(paymentColumn[i]);
+        }
+        for (int i = 0; i < blockRows; i++) {
+            out.writeInt(dayColumn[i]);
+        }
+        for (int i = 0; i < blockRows; i++) {
+            out.writeLong(centavosColumn[i]);
+        }
+        position += (long) blockRows * BYTES_PER_ROW;
+        minDay = Math.min(minDay, blockMinDay);
+        maxDay = Math.max(maxDay, blockMaxDay);
+        blockRows = 0;
+        blockMinDay = Integer.MAX_VALUE;
+        blockMaxDay = Integer.MIN_VALUE;
+    }
+
+    private static short idOf(NameDictionary dictionary, String value) {
+        int id = dictionary.idOf(value);
+        if (id > MAX_DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("Mais de " + MAX_DICTIONARY_SIZE + " valores distintos na coluna");
+        }
+        return (short) id;
+    }
+
+    // Cada valor e gravado como tamanho em bytes UTF-8 (-1 para nulo) seguido dos bytes.
+    private void writeDictionary(NameDictionary dictionary) throws IOException {
+        out.writeInt(dictionary.size());
+        for (int id = 0; id < dictionary.size(); id++) {
+            String value = dictionary.nameOf(id);
+            if (value == null) {
+                out.writeInt(-1);
+                continue;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.arturokumura.car_dealer.batch.cache;
+
+import com.arturokumura.car_dealer.batch.dimension.DealerDimensionCache;
+import com.arturokumura.car_dealer.batch.dimension.DealerLookup;
+import com.arturokumura.car_dealer.batch.rollup.RollupDefinitions;
+import com.arturokumura.car_dealer.batch.rollup.RollupEngine;
+import com.arturokumura.car_dealer.batch.writer.SalesReportWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.StepContribution;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.batch.infrastructure.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+// Reagrega o historico a partir do cache colunar, sem reler os CSVs: cada arquivo e mapeado em
+// memoria, arquivos e blocos fora do periodo sao pulados pelas estatisticas do rodape e as vendas
+// alimentam os mesmos rollups do job principal. Os relatorios saem pelo SalesReportWriter, so no disco
+// local e com nome proprio (app.recompute.report-file), fora da pasta e do prefixo enviados a matriz.
+@Component
+@StepScope
+public class RecomputeFromCacheTasklet implements Tasklet {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecomputeFromCacheTasklet.class);
+    private static final int MAX_DAY_LABELS = 100_000;
+
+    private final SalesColumnarCache salesColumnarCache;
+    private final RollupDefinitions rollupDefinitions;
+    private final SalesReportWriter salesReportWriter;
+    private final DealerDimensionCache dealerDimensionCache;
+    private final String reportFile;
+    private final int fromEpochDay;
+    private final int toEpochDay;
+
+    // Periodo opcional pelos parametros from e to do job (yyyy-MM-dd, inclusivos).
+    public RecomputeFromCacheTasklet(SalesColumnarCache salesColumnarCache,
+                                     RollupDefinitions rollupDefinitions,
+                                     SalesReportWriter salesReportWriter,
+                                     DealerDimensionCache dealerDimensionCache,
+                                     @Value("${app.recompute.report-file:${app.data-dir}/recompute/sales-recompute.csv}")
+                                     String reportFile,
+                                     @Value("#{jobParameters['from']}") String from,
+                                     @Value("#{jobParameters['to']}") String to) {
+        this.salesColumnarCache = salesColumnarCache;
+        this.rollupDefinitions = rollupDefinitions;
+        this.salesReportWriter = salesReportWriter;
+        this.dealerDimensionCache = dealerDimensionCache;
+        this.reportFile = reportFile;
+        this.fromEpochDay = from == null || from.isBlank() ? Integer.MIN_VALUE : toEpochDay(from);
+        this.toEpochDay = to == null || to.isBlank() ? Integer.MAX_VALUE : toEpochDay(to);
+    }
+
+    // Varre todos os arquivos do cache e grava os relatorios do periodo.
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) {
+        DealerLookup dealerNames = dealerDimensionCache.newLookup();
+        RollupEngine engine = rollupDefinitions.newEngine();
+        engine.useDealers(dealerNames.dimension());
+        boolean unbounded = fromEpochDay == Integer.MIN_VALUE && toEpochDay == Integer.MAX_VALUE;
+        long[] sales = new long[1];
+        int scannedFiles = 0;
+        int skippedFiles = 0;
+
+        for (Path path : salesColumnarCache.listFiles()) {
+            try (ColumnarSalesFile file = ColumnarSalesFile.open(path)) {
+                if (!unbounded && !file.overlaps(fromEpochDay, toEpochDay)) {
+                    skippedFiles++;
+                    continue;
+                }
+                // Filiais do arquivo convertidas uma vez para os ids densos da dimensao
+                String[] dealers = file.dealerIds();
+                int[] denseIds = new int[dealers.length];
+                for (int i = 0; i < dealers.length; i++) {
+                    denseIds[i] = dealerNames.denseIdOf(dealers[i]);
+                }
+                String[] models = file.models();
+                String[] paymentTypes = file.paymentTypes();
+                DayLabels days = new DayLabels(file.minEpochDay(), file.maxEpochDay());
+                file.scan(fromEpochDay, toEpochDay, (dealerId, modelId, paymentTypeId, epochDay, centavos) -> {
+                    engine.add(denseIds[dealerId], dealers[dealerId], models[modelId], days.labelOf(epochDay),
+                            paymentTypes[paymentTypeId], centavos);
+                    sales[0]++;
+                });
+                scannedFiles++;
+            } catch (IOException e) {
+                throw new IllegalStateException("Nao foi possivel ler o cache colunar " + path, e);
+            }
+        }
+
+        LOGGER.info("Reagregacao pelo cache: {} arquivo(s) lidos, {} pulados pelo periodo, {} venda(s).",
+                scannedFiles, skippedFiles, sales[0]);
+        ExecutionContext stepContext = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+        stepContext.putLong("recompute.sales", sales[0]);
+        stepContext.putInt("recompute.files", scannedFiles);
+        stepContext.putLong(DealerDimensionCache.MISSES_CONTEXT_KEY, dealerNames.misses());
+
+        // O motor ja traz todo o historico pedido; a tabela acumulada nao entra nesta saida
+        salesReportWriter.writeLocalReports(chunkContext.getStepContext().getStepExecution().getJobExecutionId(),
+                engine, reportFile);
+        return RepeatStatus.FINISHED;
+    }
+
+    private static int toEpochDay(String date) {
+        return Math.toIntExact(LocalDate.parse(date).toEpochDay());
+    }
+
+    // Texto ISO de cada data do arquivo, criado uma vez por dia distinto.
+    private static final class DayLabels {
+
+        private final int firstDay;
+        private final String[] labels;
+
+        private DayLabels(int minEpochDay, int maxEpochDay) {
+            long span = (long) maxEpochDay - minEpochDay + 1;
+            this.firstDay = minEpochDay;
+            this.labels = span > 0 && span <= MAX_DAY_LABELS ? new String[(int) span] : null;
+        }
+
+        private String labelOf(int epochDay) {
+            if (epochDay == ColumnarSalesFormat.NO_DATE) {
+                return null;
+            }
+            if (labels == null) {
+                return LocalDate.ofEpochDay(epochDay).toString();
+            }
+            int index = epochDay - firstDay;
+            String label = labels[index];
+            if (label == null) {
+                label = LocalDate.ofEpochDay(epochDay).toString();
+                labels[index] = label;
+            }
+            return label;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.arturokumura.car_dealer.batch.cache;
+
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.batch.reader.MappedSaleFileReader;
+import com.arturokumura.car_dealer.batch.validation.SaleValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.batch.infrastructure.item.ItemProcessor;
+import org.springframework.batch.infrastructure.item.file.FlatFileParseException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static com.arturokumura.car_dealer.batch.cache.ColumnarSalesFormat.EXTENSION;
+import static com.arturokumura.car_dealer.batch.cache.ColumnarSalesFormat.NO_DATE;
+
+// Saida lateral da ingestao: cada arquivo de filial arquivado em processados ganha uma copia no
+// cache colunar, com a mesma validacao e normalizacao do job, para reagregacoes historicas.
+@Service
+public class SalesColumnarCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SalesColumnarCache.class);
+
+    private final ItemProcessor<SaleRecord, SaleRecord> saleProcessor;
+    private final SaleValidator saleValidator;
+    private final boolean enabled;
+    private final Path directory;
+
+    // Recebe o processor e o validador do job e a pasta do cache.
+    public SalesColumnarCache(ItemProcessor<SaleRecord, SaleRecord> saleProcessor,
+                              SaleValidator saleValidator,
+                              @Value("${app.cache.enabled:false}") boolean enabled,
+                              @Value("${app.cache.dir:${app.data-dir}/columnar-cache}") String directory) {
+        this.saleProcessor = saleProcessor;
+        this.saleValidator = saleValidator;
+        this.enabled = enabled;
+        this.directory = Path.of(directory).toAbsolutePath().normalize();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Converte o CSV arquivado para o cache; falhas sao registradas sem interromper a movimentacao.
+    public void store(Path csvFile) {
+        if (!enabled) {
+            return;
+        }
+        if (!Files.isRegularFile(csvFile)) {
+            // Sem copia local arquivada (ex.: streaming com sftp.archive.local-copy=false) nao ha o que converter
+            LOGGER.warn("Cache colunar habilitado, mas sem copia local de {}; arquivo fica fora do cache.",
+                    csvFile.getFileName());
+            return;
+        }
+        Path target = directory.resolve(cacheFileName(csvFile.getFileName().toString()));
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            long rows = convert(csvFile, temp);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("Cache colunar gravado: {} ({} venda(s))", target.getFileName(), rows);
+        } catch (Exception e) {
+            LOGGER.warn("Nao foi possivel gravar cache colunar de {}: {}", csvFile.getFileName(), e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // o .tmp incompleto e sobrescrito na proxima tentativa
+            }
+        }
+    }
+
+    // Arquivos do cache em ordem de nome.
+    public List<Path> listFiles() {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths
+                    .filter(path -> path.getFileName().toString().endsWith(EXTENSION))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new IllegalStateException("Nao foi possivel listar o cache colunar em " + directory, e);
+        }
+    }
+
+    // Le o CSV com o parser mapeado e grava as colunas das linhas aceitas pelo job (as rejeitadas ja
+    // foram para a quarentena). Datas fora do formato ISO e precos com fracao de centavo nao teriam
+    // ida e volta exata, entao nesses casos o arquivo inteiro fica fora do cache.
+    private long convert(Path csvFile, Path target) throws Exception {
+        MappedSaleFileReader reader = new MappedSaleFileReader("columnarCacheReader");
+        reader.setResource(new FileSystemResource(csvFile));
+        Map<String, Integer> epochDays = new HashMap<>();
+        long rows = 0;
+        reader.open(new ExecutionContext());
+        try (OutputStream out = Files.newOutputStream(target);
+             ColumnarSalesWriter writer = new ColumnarSalesWriter(out)) {
+            while (true) {
+                SaleRecord read;
+                try {
+                    read = reader.read();
+                } catch (FlatFileParseException e) {
+                    continue;
+                }
+                if (read == null) {
+                    break;
+                }
+                if (saleValidator.validate(read) != null) {
+                    continue;
+                }
+                SaleRecord sale = saleProcessor.process(read);
+                if (sale == null) {
+                    continue;
+                }
+                int epochDay = sale.saleDate() == null
+                        ? NO_DATE
+                        : epochDays.computeIfAbsent(sale.saleDate(), SalesColumnarCache::toEpochDay);
+                long centavos = sale.salePriceBrl().movePointRight(2).longValueExact();
+                writer.add(sale.dealerId(), sale.model(), sale.paymentType(), epochDay, centavos);
+                rows++;
+            }
+            writer.finish();
+        } finally {
+            reader.close();
+        }
+        return rows;
+    }
+
+    private static int toEpochDay(String saleDate) {
+        LocalDate date = LocalDate.parse(saleDate);
+        if (!date.toString().equals(saleDate)) {
+            throw new DateTimeParseException("Data fora do formato ISO", saleDate, 0);
+        }
+        return Math.toIntExact(date.toEpochDay());
+    }
+
+    private static String cacheFileName(String csvFileName) {
+        int dotIndex = csvFileName.lastIndexOf('.');
+        return (dotIndex > 0 ? csvFileName.substring(0, dotIndex) : csvFileName) + EXTENSION;
+    }
+}
@@ -0,0 +1,118 @@
+package com.arturokumura.car_dealer.batch.chunk;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.listener.StepExecutionListener;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.batch.infrastructure.repeat.RepeatContext;
+import org.springframework.batch.infrastructure.repeat.context.RepeatContextSupport;
+import org.springframework.batch.infrastructure.repeat.policy.CompletionPolicySupport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+// Intervalo de commit adaptativo: mede cada chunk do inicio ate o inicio do seguinte (leitura,
+// escrita, commit e atualizacao do JobRepository) e ajusta o tamanho do proximo para que ele leve
+// perto de target-latency-ms. A instancia e do step, entao cada particao se ajusta ao proprio arquivo.
+@Component
+@StepScope
+public class AdaptiveChunkCompletionPolicy extends CompletionPolicySupport implements StepExecutionListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveChunkCompletionPolicy.class);
+    private static final double SMOOTHING = 0.3;
+    private static final int MAX_GROWTH = 2;
+
+    public static final String FINAL_SIZE_KEY = "chunk.adaptive.size.final";
+    public static final String MAX_SIZE_KEY = "chunk.adaptive.size.max";
+    public static final String COMMITS_SAVED_KEY = "chunk.adaptive.commits-saved";
+
+    private final int fixedSize;
+    private final int minSize;
+    private final int maxSize;
+    private final long targetNanos;
+    private int chunkSize;
+    private int largestSize;
+    private double nanosPerItem;
+    private long chunkStartNanos;
+    private SizedContext current;
+
+    // Comeca no tamanho fixo configurado e varia entre min-size e max-size.
+    public AdaptiveChunkCompletionPolicy(@Value("${app.batch.chunk.size:100}") int fixedSize,
+                                         @Value("${app.batch.chunk.adaptive.min-size:50}") int minSize,
+                                         @Value("${app.batch.chunk.adaptive.max-size:20000}") int maxSize,
+                                         @Value("${app.batch.chunk.adaptive.target-latency-ms:200}") long targetLatencyMs) {
+        this.fixedSize = Math.max(1, fixedSize);
+        this.minSize = Math.max(1, Math.min(minSize, maxSize));
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, targetLatencyMs));
+        this.chunkSize = clamp(this.fixedSize, this.minSize, this.maxSize);
+        this.largestSize = chunkSize;
+    }
+
+    // Chamado no inicio de cada chunk: o tempo desde o inicio do anterior inclui o commit dele.
+    @Override
+    public RepeatContext start(RepeatContext parent) {
+        long now = System.nanoTime();
+        if (current != null && current.count > 0 && chunkStartNanos != 0) {
+            adjust(now - chunkStartNanos, current.count);
+        }
+        chunkStartNanos = now;
+        current = new SizedContext(parent, chunkSize);
+        return current;
+    }
+
+    @Override
+    public void update(RepeatContext context) {
+        ((SizedContext) context).count++;
+    }
+
+    @Override
+    public boolean isComplete(RepeatContext context) {
+        SizedContext sized = (SizedContext) context;
+        return sized.count >= sized.limit;
+    }
+
+    // Publica no contexto do step o tamanho final e os commits evitados em relacao ao chunk fixo.
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        long fixedCommits = (stepExecution.getWriteCount() + fixedSize - 1) / fixedSize;
+        long commitsSaved = fixedCommits - stepExecution.getCommitCount();
+        ExecutionContext context = stepExecution.getExecutionContext();
+        context.putInt(FINAL_SIZE_KEY, chunkSize);
+        context.putInt(MAX_SIZE_KEY, largestSize);
+        context.putLong(COMMITS_SAVED_KEY, commitsSaved);
+        LOGGER.info("{}: chunk adaptativo terminou em {} itens (maximo {}); {} commit(s) a menos que chunk({}).",
+                stepExecution.getStepName(), chunkSize, largestSize, commitsSaved, fixedSize);
+        return stepExecution.getExitStatus();
+    }
+
+    // Media movel do custo por item; o tamanho no maximo dobra ou cai pela metade a cada chunk.
+    private void adjust(long elapsedNanos, int items) {
+        double observed = (double) elapsedNanos / items;
+        nanosPerItem = nanosPerItem == 0 ? observed : (1 - SMOOTHING) * nanosPerItem + SMOOTHING * observed;
+        long ideal = (long) (targetNanos / Math.max(1.0, nanosPerItem));
+        long bounded = Math.min(Math.max(ideal, chunkSize / MAX_GROWTH), (long) chunkSize * MAX_GROWTH);
+        chunkSize = clamp(bounded, minSize, maxSize);
+        largestSize = Math.max(largestSize, chunkSize);
+    }
+
+    private static int clamp(long value, int min, int max) {
+        return (int) Math.min(Math.max(value, min), max);
+    }
+
+    // Contexto de um chunk com o limite decidido no inicio dele.
+    private static final class SizedContext extends RepeatContextSupport {
+
+        private final int limit;
+        private int count;
+
+        private SizedContext(RepeatContext parent, int limit) {
+            super(parent);
+            this.limit = limit;
+        }
+    }
+}
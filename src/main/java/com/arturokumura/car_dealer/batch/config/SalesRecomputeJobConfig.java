@@ -0,0 +1,34 @@
+package com.arturokumura.car_dealer.batch.config;
+
+import com.arturokumura.car_dealer.batch.cache.RecomputeFromCacheTasklet;
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.Step;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+// Modo "recompute from cache": refaz os relatorios a partir do cache colunar, sem SFTP nem CSV. A saida
+// e de um periodo escolhido, entao nao substitui a foto do relatorio publicada para a API.
+// Ex.: --spring.batch.job.enabled=true --spring.batch.job.name=salesRecomputeJob from=2026-01-01 to=2026-03-31
+@Configuration
+public class SalesRecomputeJobConfig {
+
+    @Bean
+    public Job salesRecomputeJob(JobRepository jobRepository, Step salesRecomputeStep) {
+        return new JobBuilder("salesRecomputeJob", jobRepository)
+                .start(salesRecomputeStep)
+                .build();
+    }
+
+    @Bean
+    public Step salesRecomputeStep(JobRepository jobRepository,
+                                   PlatformTransactionManager transactionManager,
+                                   RecomputeFromCacheTasklet recomputeFromCacheTasklet) {
+        return new StepBuilder("salesRecomputeStep", jobRepository)
+                .tasklet(recomputeFromCacheTasklet, transactionManager)
+                .build();
+    }
+}
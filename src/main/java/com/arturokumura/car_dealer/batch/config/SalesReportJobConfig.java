@@ -1,25 +1,58 @@
 package com.arturokumura.car_dealer.batch.config;
 
+import com.arturokumura.car_dealer.batch.chunk.AdaptiveChunkCompletionPolicy;
+import com.arturokumura.car_dealer.batch.decider.InputFilesDecider;
 import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.batch.listener.PartitionReportMergeListener;
+import com.arturokumura.car_dealer.batch.listener.ReportSnapshotListener;
+import com.arturokumura.car_dealer.batch.listener.SalesReportSftpJobListener;
+import com.arturokumura.car_dealer.batch.partition.BranchFilePartitioner;
+import com.arturokumura.car_dealer.batch.partition.WorkItemPartitioner;
+import com.arturokumura.car_dealer.batch.pipeline.FilePipeline;
+import com.arturokumura.car_dealer.batch.pipeline.PipelineWorkerStep;
+import com.arturokumura.car_dealer.batch.remote.RemoteManagerTasklet;
+import com.arturokumura.car_dealer.batch.writer.PartitionReportWriter;
 import com.arturokumura.car_dealer.batch.writer.SalesReportWriter;
+import com.arturokumura.car_dealer.metrics.ChunkMetricsListener;
 import org.springframework.batch.core.job.Job;
 import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.listener.ItemReadListener;
+import org.springframework.batch.core.listener.ItemWriteListener;
+import org.springframework.batch.core.listener.StepExecutionListener;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.step.Step;
 import org.springframework.batch.core.step.builder.StepBuilder;
 import org.springframework.batch.infrastructure.item.ItemProcessor;
+import org.springframework.batch.infrastructure.item.ItemReader;
+import org.springframework.batch.infrastructure.item.ItemWriter;
 import org.springframework.batch.infrastructure.item.file.MultiResourceItemReader;
+import org.springframework.batch.infrastructure.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.batch.infrastructure.support.transaction.ResourcelessTransactionManager;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
 @Configuration //Sinalizar que a classe serve para configurar algo
 public class SalesReportJobConfig {
 
     @Bean //Instância de uma classe - Injeção de dependência
-    public Job salesReportJob(JobRepository jobRepository, Step salesReportStep) {
+    public Job salesReportJob(JobRepository jobRepository,
+                              Step salesReportStep,
+                              InputFilesDecider inputFilesDecider,
+                              SalesReportSftpJobListener salesReportSftpJobListener,
+                              ReportSnapshotListener reportSnapshotListener) {
         return new JobBuilder("salesReportJob", jobRepository) //Chama o job para gerar o relatório
-                .start(salesReportStep)
+                // afterJob roda na ordem inversa: a foto so e publicada depois do status final do SFTP
+                .listener(reportSnapshotListener) // publica a foto do relatorio para a API
+                .listener(salesReportSftpJobListener) // baixa antes e envia/move depois
+                .start(inputFilesDecider)
+                .on(InputFilesDecider.NO_INPUT).end(InputFilesDecider.NO_INPUT)
+                .from(inputFilesDecider)
+                .on("*").to(salesReportStep)
+                .end()
                 .build();
     }
 
@@ -28,14 +61,116 @@ public class SalesReportJobConfig {
                                 PlatformTransactionManager transactionManager,
                                 MultiResourceItemReader<SaleRecord> saleReader,
                                 ItemProcessor<SaleRecord, SaleRecord> saleProcessor,
-                                SalesReportWriter writer) {
-        return new StepBuilder("salesReportStep", jobRepository)
-                .<SaleRecord, SaleRecord>chunk(100) // chunck: menor parte do batch
-                .reader(saleReader)
-                .processor(saleProcessor)
+                                SalesReportWriter writer,
+                                BranchFilePartitioner branchFilePartitioner,
+                                Step salesReportWorkerStep,
+                                PartitionReportMergeListener partitionReportMergeListener,
+                                ChunkMetricsListener chunkMetricsListener,
+                                AdaptiveChunkCompletionPolicy adaptiveChunkPolicy,
+                                ObjectProvider<RemoteManagerTasklet> remoteManagerTasklet,
+                                @Value("${app.batch.remote.mode:off}") String remoteMode,
+                                @Value("${app.batch.partition.enabled:false}") boolean partitioned,
+                                @Value("${app.batch.pipeline.enabled:false}") boolean pipelined,
+                                @Value("${app.batch.partition.threads:4}") int partitionThreads,
+                                @Value("${app.batch.chunk.size:100}") int chunkSize,
+                                @Value("${app.batch.chunk.adaptive.enabled:false}") boolean adaptiveChunk) {
+        if ("manager".equalsIgnoreCase(remoteMode)) {
+            // Os arquivos sao processados por workers em outros processos; este step so registra e junta.
+            // A fila tem DataSource proprio, entao a espera pelos workers nao precisa de transacao aqui
+            return new StepBuilder("salesReportStep", jobRepository)
+                    .tasklet(remoteManagerTasklet.getObject(), new ResourcelessTransactionManager())
+                    .build();
+        }
+        if (partitioned || pipelined) {
+            // Uma particao por arquivo de filial, executadas em paralelo e unidas no afterStep; no pipeline
+            // cada particao espera so o download do proprio arquivo
+            SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("sales-partition-");
+            taskExecutor.setConcurrencyLimit(partitionThreads);
+            return new StepBuilder("salesReportStep", jobRepository)
+                    .partitioner("salesReportWorkerStep", branchFilePartitioner)
+                    .step(salesReportWorkerStep)
+                    .gridSize(partitionThreads)
+                    .taskExecutor(taskExecutor)
+                    .listener(partitionReportMergeListener)
+                    .build();
+        }
+
+        // chunck: menor parte do batch
+        return chunkStep("salesReportStep", jobRepository, transactionManager, saleReader, saleProcessor, writer,
+                chunkMetricsListener, adaptiveChunk ? adaptiveChunkPolicy : null, chunkSize);
+    }
+
+    // Step executado por cada particao sobre um unico arquivo de filial; no pipeline o arquivo vai para
+    // a movimentacao depois que a execucao da particao e gravada.
+    @Bean
+    public Step salesReportWorkerStep(JobRepository jobRepository,
+                                      PlatformTransactionManager transactionManager,
+                                      ResourceAwareItemReaderItemStream<SaleRecord> partitionFileReader,
+                                      ItemProcessor<SaleRecord, SaleRecord> saleProcessor,
+                                      PartitionReportWriter partitionReportWriter,
+                                      ChunkMetricsListener chunkMetricsListener,
+                                      AdaptiveChunkCompletionPolicy adaptiveChunkPolicy,
+                                      FilePipeline filePipeline,
+                                      @Value("${app.batch.chunk.size:100}") int chunkSize,
+                                      @Value("${app.batch.chunk.adaptive.enabled:false}") boolean adaptiveChunk) {
+        return new PipelineWorkerStep(chunkStep("salesReportWorkerStep", jobRepository, transactionManager,
+                partitionFileReader, saleProcessor, partitionReportWriter, chunkMetricsListener,
+                adaptiveChunk ? adaptiveChunkPolicy : null, chunkSize), filePipeline);
+    }
+
+    // Chunk de tamanho fixo ou, com a politica adaptativa, de intervalo de commit variavel. O step
+    // orientado a chunk do Batch 6 so aceita tamanho fixo, entao o adaptativo usa o builder de
+    // CompletionPolicy (TaskletStep), com os mesmos reader, processor, writer e listeners. Esse builder
+    // esta marcado para remocao (deprecated forRemoval no Batch 6): quando sair, o modo adaptativo deixa
+    // de existir ou passa a um step proprio; o tamanho fixo nao depende dele.
+    @SuppressWarnings({"deprecation", "removal"})
+    private static Step chunkStep(String name,
+                                  JobRepository jobRepository,
+                                  PlatformTransactionManager transactionManager,
+                                  ItemReader<SaleRecord> reader,
+                                  ItemProcessor<SaleRecord, SaleRecord> processor,
+                                  ItemWriter<SaleRecord> writer,
+                                  ChunkMetricsListener chunkMetricsListener,
+                                  AdaptiveChunkCompletionPolicy adaptiveChunkPolicy,
+                                  int chunkSize) {
+        if (adaptiveChunkPolicy != null) {
+            return new StepBuilder(name, jobRepository)
+                    .<SaleRecord, SaleRecord>chunk(adaptiveChunkPolicy, transactionManager)
+                    .reader(reader)
+                    .processor(processor)
+                    .writer(writer)
+                    .listener((ItemReadListener<SaleRecord>) chunkMetricsListener)
+                    .listener((ItemWriteListener<SaleRecord>) chunkMetricsListener)
+                    .listener((StepExecutionListener) adaptiveChunkPolicy)
+                    .build();
+        }
+        return new StepBuilder(name, jobRepository)
+                .<SaleRecord, SaleRecord>chunk(chunkSize)
+                .reader(reader)
+                .processor(processor)
                 .writer(writer)
+                .listener((ItemReadListener<SaleRecord>) chunkMetricsListener)
+                .listener((ItemWriteListener<SaleRecord>) chunkMetricsListener)
                 .transactionManager(transactionManager)
                 .build();
     }
-}
 
+    // Job de um unico arquivo executado pelo worker para cada item reivindicado na fila.
+    @Bean
+    public Job salesReportRemoteWorkerJob(JobRepository jobRepository, Step salesReportRemoteWorkerStep) {
+        return new JobBuilder("salesReportRemoteWorkerJob", jobRepository)
+                .start(salesReportRemoteWorkerStep)
+                .build();
+    }
+
+    // Particao unica com o arquivo do item, reaproveitando o step de particao do modo local.
+    @Bean
+    public Step salesReportRemoteWorkerStep(JobRepository jobRepository,
+                                            WorkItemPartitioner workItemPartitioner,
+                                            Step salesReportWorkerStep) {
+        return new StepBuilder("salesReportRemoteWorkerStep", jobRepository)
+                .partitioner(WorkItemPartitioner.WORKER_STEP_NAME, workItemPartitioner)
+                .step(salesReportWorkerStep)
+                .build();
+    }
+}
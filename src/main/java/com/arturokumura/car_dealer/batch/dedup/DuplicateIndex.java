@@ -0,0 +1,240 @@
+package com.arturokumura.car_dealer.batch.dedup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Indice de vendas e arquivos ja processados, entre execucoes. As tabelas dedup_sales (impressao de cada
+// venda aceita) e dedup_files (SHA-256 de cada arquivo publicado) sao a fonte exata; na frente delas fica
+// um filtro de Bloom em memoria, salvo em disco com a marca d'agua do ultimo id incluido. Uma venda nova
+// quase sempre para no filtro; o banco so e consultado nos provaveis repetidos. As impressoes entram na
+// tabela junto com o commit do chunk que leu a venda. O arquivo concluido fica em dedup_files_pending
+// ate o relatorio ser publicado: se o job falhar antes, a proxima execucao nao o toma por repetido.
+@Service
+public class DuplicateIndex implements SmartInitializingSingleton, DisposableBean {
+
+    public enum Mode {
+        OFF, FLAG, DROP
+    }
+
+    // Arquivo ja processado (ou em processamento) com o mesmo conteudo.
+    public record KnownFile(String fileName, long sales) {
+    }
+
+    // Fontes sem SHA-256 (arquivos lidos direto do SFTP) sao identificadas pelo nome.
+    public static final String NAME_SOURCE_PREFIX = "name:";
+    private static final Logger LOGGER = LoggerFactory.getLogger(DuplicateIndex.class);
+    private static final String INSERT_SALE_SQL =
+            "INSERT IGNORE INTO dedup_sales (fp_hi, fp_lo, source_id) VALUES (?, ?, ?)";
+    private static final String INSERT_FILE_SQL =
+            "INSERT IGNORE INTO dedup_files_pending (file_sha, file_name, sales) VALUES (?, ?, ?)";
+    private static final String PUBLISH_FILES_SQL = """
+            INSERT IGNORE INTO dedup_files (file_sha, file_name, sales)
+            SELECT file_sha, file_name, sales FROM dedup_files_pending
+            """;
+    private static final String DELETE_PUBLISHED_SQL =
+            "DELETE FROM dedup_files_pending WHERE file_sha IN (SELECT file_sha FROM dedup_files)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Mode mode;
+    private final long expectedSales;
+    private final double falsePositiveRate;
+    private final Path filterFile;
+    // Impressoes aceitas e ainda nao commitadas, visiveis para os outros arquivos em processamento
+    private final ConcurrentMap<SaleFingerprint, String> pending = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> inFlightFiles = new ConcurrentHashMap<>();
+    private volatile BlockedBloomFilter filter;
+    private long watermark;
+    private long lagWatermark;
+
+    public DuplicateIndex(JdbcTemplate jdbcTemplate,
+                          @Value("${app.dedup.mode:off}") String mode,
+                          @Value("${app.dedup.expected-sales:10000000}") long expectedSales,
+                          @Value("${app.dedup.false-positive-rate:0.01}") double falsePositiveRate,
+                          @Value("${app.dedup.filter-file:${app.data-dir}/dedup/sales.bloom}") String filterFile) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.mode = Mode.valueOf(mode.trim().toUpperCase());
+        this.expectedSales = expectedSales;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filterFile = Path.of(filterFile);
+    }
+
+    public boolean isEnabled() {
+        return mode != Mode.OFF;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    // Carrega o filtro na subida; sem banco disponivel o primeiro arquivo tenta de novo.
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            catchUp();
+        } catch (DataAccessException e) {
+            LOGGER.warn("Nao foi possivel carregar o indice de duplicidade na inicializacao.", e);
+        }
+    }
+
+    // Inclui no filtro as vendas gravadas desde a ultima leitura, inclusive por outros processos. Ids
+    // sao reservados antes do commit, entao cada leitura recomeca da marca da leitura anterior a ultima.
+    public synchronized void catchUp() {
+        if (filter == null) {
+            loadFilter();
+        }
+        long[] max = {watermark};
+        BlockedBloomFilter current = filter;
+        jdbcTemplate.query("SELECT id, fp_hi, fp_lo FROM dedup_sales WHERE id > ?", rs -> {
+            current.put(new SaleFingerprint(rs.getLong("fp_hi"), rs.getLong("fp_lo")));
+            max[0] = Math.max(max[0], rs.getLong("id"));
+        }, lagWatermark);
+        lagWatermark = watermark;
+        watermark = max[0];
+    }
+
+    // Registra o inicio de um arquivo e devolve o arquivo de mesmo conteudo ja publicado ou em
+    // processamento, se houver. Arquivos concluidos em execucoes sem publicacao nao contam.
+    public KnownFile openFile(String sourceId, String fileName) {
+        if (sourceId.startsWith(NAME_SOURCE_PREFIX)) {
+            return null;
+        }
+        String inFlight = inFlightFiles.putIfAbsent(sourceId, fileName);
+        if (inFlight != null && !inFlight.equals(fileName)) {
+            return new KnownFile(inFlight, 0);
+        }
+        List<KnownFile> processed = jdbcTemplate.query(
+                "SELECT file_name, sales FROM dedup_files WHERE file_sha = ?",
+                (rs, rowNum) -> new KnownFile(rs.getString("file_name"), rs.getLong("sales")), sourceId);
+        return processed.isEmpty() ? null : processed.get(0);
+    }
+
+    public void closeFile(String sourceId, String fileName) {
+        inFlightFiles.remove(sourceId, fileName);
+    }
+
+    // Aceita a venda se a impressao ainda nao existe em outra fonte. A reserva em pending vem antes da
+    // consulta, entao dois arquivos em paralelo nunca aceitam a mesma venda.
+    public boolean tryAccept(SaleFingerprint fingerprint, String sourceId) {
+        if (pending.putIfAbsent(fingerprint, sourceId) != null) {
+            return false;
+        }
+        BlockedBloomFilter current = filter;
+        if (current.mightContain(fingerprint) && processedElsewhere(fingerprint, sourceId)) {
+            pending.remove(fingerprint, sourceId);
+            return false;
+        }
+        current.put(fingerprint);
+        return true;
+    }
+
+    // Grava as impressoes aceitas (e o arquivo, quando concluido) na transacao do chunk; elas saem de
+    // pending somente depois do commit, quando ja estao visiveis na tabela.
+    public void record(List<SaleFingerprint> accepted, String sourceId, String fileName, long completedSales) {
+        if (!accepted.isEmpty()) {
+            List<Object[]> batchArgs = new ArrayList<>(accepted.size());
+            for (SaleFingerprint fingerprint : accepted) {
+                batchArgs.add(new Object[]{fingerprint.hi(), fingerprint.lo(), sourceId});
+            }
+            jdbcTemplate.batchUpdate(INSERT_SALE_SQL, batchArgs);
+        }
+        if (completedSales >= 0 && !sourceId.startsWith(NAME_SOURCE_PREFIX)) {
+            jdbcTemplate.update(INSERT_FILE_SQL, sourceId, fileName, completedSales);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    // Em rollback a leitura e refeita no restart; a reserva sai do mesmo jeito
+                    release(accepted, sourceId);
+                }
+            });
+        } else {
+            release(accepted, sourceId);
+        }
+    }
+
+    // Chamado depois que o relatorio da execucao foi publicado: os arquivos concluidos passam a contar
+    // como processados. Pendentes de execucoes que falharam e nao foram retomadas entram aqui tambem,
+    // ja que o restart de um job conclui sem reprocessar as particoes ja concluidas.
+    public void publishFiles() {
+        int published = jdbcTemplate.update(PUBLISH_FILES_SQL);
+        jdbcTemplate.update(DELETE_PUBLISHED_SQL);
+        LOGGER.debug("{} arquivo(s) registrados como processados em dedup_files.", published);
+    }
+
+    // Libera reservas de vendas que nao chegaram a ser gravadas.
+    public void release(List<SaleFingerprint> fingerprints, String sourceId) {
+        for (SaleFingerprint fingerprint : fingerprints) {
+            pending.remove(fingerprint, sourceId);
+        }
+    }
+
+    // Salva o filtro no encerramento da aplicacao.
+    @Override
+    public void destroy() {
+        save();
+    }
+
+    // Salva o filtro para a proxima subida nao precisar reler a tabela inteira.
+    public synchronized void save() {
+        if (filter == null) {
+            return;
+        }
+        try {
+            filter.writeTo(filterFile, lagWatermark);
+        } catch (IOException e) {
+            throw new IllegalStateException("Nao foi possivel gravar o filtro de duplicidade em " + filterFile, e);
+        }
+    }
+
+    // Confirmacao exata de um provavel repetido. A propria fonte nao conta: e uma tentativa anterior
+    // do mesmo conteudo que nao chegou ao relatorio.
+    private boolean processedElsewhere(SaleFingerprint fingerprint, String sourceId) {
+        List<String> sources = jdbcTemplate.queryForList(
+                "SELECT source_id FROM dedup_sales WHERE fp_hi = ? AND fp_lo = ?", String.class,
+                fingerprint.hi(), fingerprint.lo());
+        return !sources.isEmpty() && !sources.get(0).equals(sourceId);
+    }
+
+    // Filtro salvo, se tiver o mesmo dimensionamento; senao um vazio, preenchido a partir da tabela.
+    private void loadFilter() {
+        BlockedBloomFilter empty = BlockedBloomFilter.forCapacity(expectedSales, falsePositiveRate);
+        if (Files.exists(filterFile)) {
+            try {
+                BlockedBloomFilter.Snapshot snapshot = BlockedBloomFilter.readFrom(filterFile);
+                if (snapshot.filter().sameShapeAs(empty)) {
+                    filter = snapshot.filter();
+                    watermark = snapshot.watermark();
+                    lagWatermark = snapshot.watermark();
+                    return;
+                }
+                LOGGER.info("Dimensionamento do filtro de duplicidade mudou; recriando a partir de dedup_sales.");
+            } catch (IOException e) {
+                LOGGER.warn("Filtro de duplicidade ilegivel em {}; recriando a partir de dedup_sales.", filterFile, e);
+            }
+        }
+        LOGGER.info("Filtro de duplicidade com {} KB para {} venda(s).", empty.sizeInBytes() / 1024, expectedSales);
+        filter = empty;
+        watermark = 0;
+        lagWatermark = 0;
+    }
+}
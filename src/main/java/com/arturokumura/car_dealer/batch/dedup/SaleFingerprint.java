@@ -0,0 +1,81 @@
+package com.arturokumura.car_dealer.batch.dedup;
+
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+
+import java.math.BigDecimal;
+
+// Impressao digital de 128 bits de uma venda: filial, data, modelo, pagamento e preco, mais o numero da
+// ocorrencia da mesma combinacao dentro do arquivo. Vendas iguais legitimas no mesmo arquivo ficam com
+// impressoes diferentes; o mesmo arquivo reenviado (mesmo em outra ordem) gera as mesmas impressoes.
+public record SaleFingerprint(long hi, long lo) {
+
+    private static final long SEED_HI = 0x9E3779B97F4A7C15L;
+    private static final long SEED_LO = 0xC2B2AE3D27D4EB4FL;
+    private static final long FIELD_SEPARATOR = 0x1F;
+    private static final long NULL_FIELD = 0x1E;
+
+    // Impressao da combinacao de campos (ocorrencia zero); o preco e comparado pelo valor, sem escala.
+    public static SaleFingerprint of(SaleRecord sale) {
+        long h1 = SEED_HI;
+        long h2 = SEED_LO;
+        String[] fields = {sale.dealerId(), sale.saleDate(), sale.model(), sale.paymentType()};
+        for (String field : fields) {
+            if (field == null) {
+                h1 = step1(h1, NULL_FIELD);
+                h2 = step2(h2, NULL_FIELD);
+            } else {
+                for (int i = 0; i < field.length(); i++) {
+                    char c = field.charAt(i);
+                    h1 = step1(h1, c);
+                    h2 = step2(h2, c);
+                }
+            }
+            h1 = step1(h1, FIELD_SEPARATOR);
+            h2 = step2(h2, FIELD_SEPARATOR);
+        }
+        BigDecimal price = sale.salePriceBrl();
+        if (price == null) {
+            h1 = step1(h1, NULL_FIELD);
+            h2 = step2(h2, NULL_FIELD);
+        } else {
+            BigDecimal normalized = price.signum() == 0 ? BigDecimal.ZERO : price.stripTrailingZeros();
+            long unscaled = normalized.unscaledValue().bitLength() < 64
+                    ? normalized.unscaledValue().longValue()
+                    : normalized.unscaledValue().hashCode();
+            h1 = step1(h1, unscaled) ^ normalized.scale();
+            h2 = step2(h2, unscaled) + normalized.scale();
+        }
+        return new SaleFingerprint(mix(h1 ^ Long.rotateLeft(h2, 32)), mix(h2 ^ h1 * SEED_HI));
+    }
+
+    // Impressao da n-esima ocorrencia da mesma combinacao no arquivo.
+    public SaleFingerprint withOrdinal(int ordinal) {
+        if (ordinal == 0) {
+            return this;
+        }
+        return new SaleFingerprint(mix(hi ^ ordinal * SEED_HI), mix(lo + ordinal * SEED_LO));
+    }
+
+    // Chave nao negativa da combinacao, para contar ocorrencias no LongIntHashMap.
+    public long combinationKey() {
+        return hi & Long.MAX_VALUE;
+    }
+
+    private static long step1(long h, long value) {
+        return (h ^ value) * 0x100000001B3L;
+    }
+
+    private static long step2(long h, long value) {
+        return Long.rotateLeft(h + value * SEED_LO, 31) * SEED_HI;
+    }
+
+    // Finalizador do MurmurHash3 de 64 bits.
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,95 @@
+package com.arturokumura.car_dealer.batch.dimension;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Versao imutavel da dimensao de filiais: cada dealer_id recebe um id denso (0..size-1), entao o codigo
+// quente troca o dealer_id por um int uma vez e depois so indexa arrays. Atualizacoes incrementais so
+// acrescentam ids e trocam nomes; quem guarda ids densos deve usa-los com a mesma versao que os gerou.
+public final class DealerDimension {
+
+    public static final int UNKNOWN = -1;
+
+    private final Map<String, Integer> denseIds;
+    private final String[] dealerIds;
+    private final String[] dealerNames;
+    private final int rowCount;
+    private final Timestamp lastUpdate;
+    private final long version;
+
+    private DealerDimension(Map<String, Integer> denseIds, String[] dealerIds, String[] dealerNames, int rowCount,
+                            Timestamp lastUpdate, long version) {
+        this.denseIds = denseIds;
+        this.dealerIds = dealerIds;
+        this.dealerNames = dealerNames;
+        this.rowCount = rowCount;
+        this.lastUpdate = lastUpdate;
+        this.version = version;
+    }
+
+    static DealerDimension empty() {
+        return new DealerDimension(Map.of(), new String[0], new String[0], 0, null, 0);
+    }
+
+    // Versao seguinte montada do zero, usada quando filiais foram removidas.
+    DealerDimension reloaded(Map<String, String> allNames, Timestamp lastUpdate) {
+        DealerDimension loaded = empty().with(allNames, allNames.size(), lastUpdate);
+        return new DealerDimension(loaded.denseIds, loaded.dealerIds, loaded.dealerNames, loaded.rowCount,
+                lastUpdate, version + 1);
+    }
+
+    // Nova versao com as filiais alteradas ou incluidas; as existentes mantem o id denso.
+    DealerDimension with(Map<String, String> changedNames, int rowCount, Timestamp lastUpdate) {
+        Map<String, Integer> ids = new HashMap<>(denseIds);
+        String[] newIds = Arrays.copyOf(dealerIds, dealerIds.length + changedNames.size());
+        String[] newNames = Arrays.copyOf(dealerNames, newIds.length);
+        int size = dealerIds.length;
+        for (Map.Entry<String, String> changed : changedNames.entrySet()) {
+            Integer id = ids.get(changed.getKey());
+            if (id == null) {
+                id = size++;
+                ids.put(changed.getKey(), id);
+                newIds[id] = changed.getKey();
+            }
+            newNames[id] = changed.getValue();
+        }
+        return new DealerDimension(Map.copyOf(ids), Arrays.copyOf(newIds, size), Arrays.copyOf(newNames, size),
+                rowCount, lastUpdate, version + 1);
+    }
+
+    // Id denso do dealer_id, ou UNKNOWN.
+    public int denseIdOf(String dealerId) {
+        Integer id = dealerId == null ? null : denseIds.get(dealerId);
+        return id == null ? UNKNOWN : id;
+    }
+
+    public boolean contains(String dealerId) {
+        return denseIdOf(dealerId) != UNKNOWN;
+    }
+
+    public String nameOf(int denseId) {
+        return dealerNames[denseId];
+    }
+
+    public String dealerIdOf(int denseId) {
+        return dealerIds[denseId];
+    }
+
+    public int size() {
+        return dealerIds.length;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    int rowCount() {
+        return rowCount;
+    }
+
+    Timestamp lastUpdate() {
+        return lastUpdate;
+    }
+}
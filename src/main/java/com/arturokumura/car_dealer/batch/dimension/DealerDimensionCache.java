@@ -0,0 +1,139 @@
+package com.arturokumura.car_dealer.batch.dimension;
+
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Cache da tabela dealers compartilhado por todos os steps, particoes e execucoes do processo.
+// E carregado na subida e, passado o ttl, confere a versao da tabela (quantidade de linhas e maior
+// updated_at): sem mudanca nada e lido; com linhas novas ou alteradas so elas sao buscadas; se alguma
+// linha sumiu a tabela e lida inteira. Cada carga publica uma nova DealerDimension imutavel.
+@Service
+public class DealerDimensionCache implements SmartInitializingSingleton {
+
+    public static final String MISSES_CONTEXT_KEY = "dealer.cache.misses";
+    private static final Logger LOGGER = LoggerFactory.getLogger(DealerDimensionCache.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BatchMetrics batchMetrics;
+    private final long ttlMillis;
+    private final ConcurrentMap<String, LongAdder> missesByDealerId = new ConcurrentHashMap<>();
+    private volatile DealerDimension dimension = DealerDimension.empty();
+    private volatile long checkedAtMillis;
+    private volatile boolean loaded;
+
+    public DealerDimensionCache(JdbcTemplate jdbcTemplate,
+                                BatchMetrics batchMetrics,
+                                @Value("${app.dealers.cache.ttl-ms:60000}") long ttlMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchMetrics = batchMetrics;
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Aquece o cache na subida; sem banco disponivel a primeira consulta tenta de novo.
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            current();
+        } catch (DataAccessException e) {
+            LOGGER.warn("Nao foi possivel carregar a dimensao de filiais na inicializacao.", e);
+        }
+    }
+
+    // Versao vigente da dimensao, conferindo a versao da tabela quando o ttl venceu.
+    public DealerDimension current() {
+        if (!loaded || System.currentTimeMillis() - checkedAtMillis >= ttlMillis) {
+            refresh();
+        }
+        return dimension;
+    }
+
+    // Consulta fixada na versao vigente, para um step ou particao.
+    public DealerLookup newLookup() {
+        return new DealerLookup(this, current());
+    }
+
+    // Registra um dealer_id de venda ausente da dimensao.
+    public void recordMiss(String dealerId) {
+        missesByDealerId.computeIfAbsent(String.valueOf(dealerId), key -> new LongAdder()).increment();
+        batchMetrics.recordDealerMiss();
+    }
+
+    // Total de vendas com dealer_id desconhecido desde a subida.
+    public long misses() {
+        return missesByDealerId.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    // Vendas com dealer_id desconhecido por dealer_id, desde a subida.
+    public Map<String, Long> missesByDealerId() {
+        Map<String, Long> misses = new LinkedHashMap<>();
+        missesByDealerId.forEach((dealerId, count) -> misses.put(dealerId, count.sum()));
+        return misses;
+    }
+
+    private synchronized void refresh() {
+        if (loaded && System.currentTimeMillis() - checkedAtMillis < ttlMillis) {
+            return;
+        }
+        DealerDimension previous = dimension;
+        TableVersion version = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) AS total, MAX(updated_at) AS last_update FROM dealers",
+                (rs, rowNum) -> new TableVersion(rs.getInt("total"), rs.getTimestamp("last_update")));
+        if (loaded && version.rowCount() == previous.rowCount()
+                && Objects.equals(version.lastUpdate(), previous.lastUpdate())) {
+            checkedAtMillis = System.currentTimeMillis();
+            return;
+        }
+
+        DealerDimension next = null;
+        if (loaded && previous.lastUpdate() != null && version.rowCount() >= previous.rowCount()) {
+            // Somente as linhas alteradas desde a ultima versao; >= cobre alteracoes no mesmo instante
+            Map<String, String> changed = loadNames("WHERE updated_at >= ?", previous.lastUpdate());
+            int added = 0;
+            for (String dealerId : changed.keySet()) {
+                if (!previous.contains(dealerId)) {
+                    added++;
+                }
+            }
+            if (previous.rowCount() + added == version.rowCount()) {
+                next = previous.with(changed, version.rowCount(), version.lastUpdate());
+            }
+        }
+        if (next == null) {
+            // Primeira carga ou linhas removidas: le a tabela inteira
+            next = previous.reloaded(loadNames("", null), version.lastUpdate());
+        }
+        dimension = next;
+        checkedAtMillis = System.currentTimeMillis();
+        loaded = true;
+        LOGGER.info("Dimensao de filiais na versao {}: {} filial(is).", next.version(), next.size());
+    }
+
+    private Map<String, String> loadNames(String where, Timestamp since) {
+        String sql = "SELECT dealer_id, dealer_name FROM dealers " + where;
+        Object[] args = since == null ? new Object[0] : new Object[]{since};
+        return jdbcTemplate.query(sql, rs -> {
+            Map<String, String> names = new LinkedHashMap<>();
+            while (rs.next()) {
+                names.put(rs.getString("dealer_id"), rs.getString("dealer_name"));
+            }
+            return names;
+        }, args);
+    }
+
+    private record TableVersion(int rowCount, Timestamp lastUpdate) {
+    }
+}
@@ -0,0 +1,55 @@
+package com.arturokumura.car_dealer.batch.dimension;
+
+// Consulta da dimensao por um unico consumidor (um writer, uma particao), fixada em uma versao durante
+// o step. As vendas chegam agrupadas por filial, entao o ultimo dealer_id e lembrado e o mapa so e
+// consultado quando a filial muda. Nao e thread-safe.
+public final class DealerLookup {
+
+    private final DealerDimensionCache cache;
+    private final DealerDimension dimension;
+    private String lastDealerId;
+    private int lastDenseId = DealerDimension.UNKNOWN;
+    private long misses;
+
+    DealerLookup(DealerDimensionCache cache, DealerDimension dimension) {
+        this.cache = cache;
+        this.dimension = dimension;
+    }
+
+    // Id denso da filial, ou DealerDimension.UNKNOWN (contado como miss).
+    public int denseIdOf(String dealerId) {
+        if (dealerId != null && dealerId.equals(lastDealerId)) {
+            if (lastDenseId == DealerDimension.UNKNOWN) {
+                recordMiss(dealerId);
+            }
+            return lastDenseId;
+        }
+        int denseId = dimension.denseIdOf(dealerId);
+        lastDealerId = dealerId;
+        lastDenseId = denseId;
+        if (denseId == DealerDimension.UNKNOWN) {
+            recordMiss(dealerId);
+        }
+        return denseId;
+    }
+
+    // Nome da filial; sem cadastro, o proprio dealer_id, como no relatorio original.
+    public String nameOf(String dealerId) {
+        int denseId = denseIdOf(dealerId);
+        return denseId == DealerDimension.UNKNOWN ? dealerId : dimension.nameOf(denseId);
+    }
+
+    public DealerDimension dimension() {
+        return dimension;
+    }
+
+    // Misses desta consulta, para o ExecutionContext do step.
+    public long misses() {
+        return misses;
+    }
+
+    private void recordMiss(String dealerId) {
+        misses++;
+        cache.recordMiss(dealerId);
+    }
+}
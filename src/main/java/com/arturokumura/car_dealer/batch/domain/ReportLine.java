@@ -11,16 +11,6 @@ public record ReportLine(
         BigDecimal revenueBrl
 ) {
 
-    //Cria uma linha agregada com valores iniciais zerados
-    public ReportLine(String dealerName, String model) {
-        this(dealerName, model, 0, BigDecimal.ZERO);
-    }
-
-    //Soma uma venda e retorna um novo agregado
-    public ReportLine addSale(BigDecimal salePrice) {
-        return new ReportLine(dealerName, model, unitsSold + 1, revenueBrl.add(salePrice));
-    }
-
     //Converte o agregado para uma linha csv
     public String toCsv() {
         BigDecimal rounded = revenueBrl.setScale(2, RoundingMode.HALF_UP);
@@ -0,0 +1,103 @@
+package com.arturokumura.car_dealer.batch.listener;
+
+import com.arturokumura.car_dealer.batch.aggregation.AggregateCheckpoint;
+import com.arturokumura.car_dealer.batch.rollup.RollupEngine;
+import com.arturokumura.car_dealer.batch.writer.PartialReportRegistry;
+import com.arturokumura.car_dealer.batch.writer.SalesReportWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.JobInstance;
+import org.springframework.batch.core.listener.StepExecutionListener;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+@Component
+public class PartitionReportMergeListener implements StepExecutionListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionReportMergeListener.class);
+    private static final String WORKER_STEP_PREFIX = "salesReportWorkerStep:";
+
+    private final PartialReportRegistry partialReportRegistry;
+    private final SalesReportWriter salesReportWriter;
+    private final AggregateCheckpoint checkpoint;
+    private final JobRepository jobRepository;
+
+    // Injeta o registro de parciais, o writer do CSV final e o necessario para recuperar parciais de um restart.
+    public PartitionReportMergeListener(PartialReportRegistry partialReportRegistry,
+                                        SalesReportWriter salesReportWriter,
+                                        AggregateCheckpoint checkpoint,
+                                        JobRepository jobRepository) {
+        this.partialReportRegistry = partialReportRegistry;
+        this.salesReportWriter = salesReportWriter;
+        this.checkpoint = checkpoint;
+        this.jobRepository = jobRepository;
+    }
+
+    // Limpa parciais remanescentes antes de distribuir as particoes.
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        partialReportRegistry.clear(stepExecution.getJobExecutionId());
+    }
+
+    // Junta os parciais das particoes e grava o relatorio somente se todas concluiram.
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (stepExecution.getStatus() != BatchStatus.COMPLETED) {
+            LOGGER.warn("Step particionado finalizado com status {}. Relatorio nao sera gravado.",
+                    stepExecution.getStatus());
+            partialReportRegistry.clear(stepExecution.getJobExecutionId());
+            return stepExecution.getExitStatus();
+        }
+
+        long jobExecutionId = stepExecution.getJobExecutionId();
+        JobInstance jobInstance = stepExecution.getJobExecution().getJobInstance();
+        restorePartitionsCompletedInPreviousExecutions(jobExecutionId, jobInstance);
+        salesReportWriter.writeReports(jobExecutionId, partialReportRegistry.merge(jobExecutionId));
+        discardPartitionCheckpoints(jobExecutionId, jobInstance);
+        partialReportRegistry.clear(jobExecutionId);
+        return ExitStatus.COMPLETED;
+    }
+
+    // Com o relatorio gravado, nenhum restart precisa mais dos checkpoints das particoes.
+    private void discardPartitionCheckpoints(long jobExecutionId, JobInstance jobInstance) {
+        for (String partitionName : partialReportRegistry.partitionNames(jobExecutionId)) {
+            checkpoint.discard(PartialReportRegistry.checkpointScope(partitionName, jobInstance));
+        }
+    }
+
+    // Em um restart, particoes ja concluidas nao sao reexecutadas: seus parciais vem do ultimo checkpoint.
+    private void restorePartitionsCompletedInPreviousExecutions(long jobExecutionId, JobInstance jobInstance) {
+        Set<String> partitionNames = new TreeSet<>();
+        for (JobExecution jobExecution : jobRepository.getJobExecutions(jobInstance)) {
+            for (StepExecution workerExecution : jobExecution.getStepExecutions()) {
+                if (workerExecution.getStepName().startsWith(WORKER_STEP_PREFIX)) {
+                    partitionNames.add(workerExecution.getStepName());
+                }
+            }
+        }
+
+        for (String partitionName : partitionNames) {
+            if (partialReportRegistry.contains(jobExecutionId, partitionName)) {
+                continue;
+            }
+            StepExecution lastExecution = jobRepository.getLastStepExecution(jobInstance, partitionName);
+            if (lastExecution == null || lastExecution.getStatus() != BatchStatus.COMPLETED) {
+                continue;
+            }
+            RollupEngine partial = partialReportRegistry.newPartial();
+            if (!checkpoint.restore(partial, lastExecution.getExecutionContext(),
+                    PartialReportRegistry.checkpointScope(partitionName, jobInstance))) {
+                throw new IllegalStateException("Particao concluida sem checkpoint para o merge: " + partitionName);
+            }
+            partialReportRegistry.register(jobExecutionId, partitionName, partial);
+            LOGGER.info("Parcial da particao {} restaurado de execucao anterior.", partitionName);
+        }
+    }
+}
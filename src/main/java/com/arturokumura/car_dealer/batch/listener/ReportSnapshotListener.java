@@ -0,0 +1,30 @@
+package com.arturokumura.car_dealer.batch.listener;
+
+import com.arturokumura.car_dealer.batch.decider.InputFilesDecider;
+import com.arturokumura.car_dealer.report.ReportSnapshotHolder;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.listener.JobExecutionListener;
+import org.springframework.stereotype.Component;
+
+// Publica para a API a foto do relatorio preparada durante o job, somente se o job concluiu.
+@Component
+public class ReportSnapshotListener implements JobExecutionListener {
+
+    private final ReportSnapshotHolder reportSnapshotHolder;
+
+    public ReportSnapshotListener(ReportSnapshotHolder reportSnapshotHolder) {
+        this.reportSnapshotHolder = reportSnapshotHolder;
+    }
+
+    // A foto e a preparada por esta execucao; a de outra execucao em andamento fica intacta.
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        if (jobExecution.getStatus() == BatchStatus.COMPLETED
+                && !InputFilesDecider.NO_INPUT.equals(jobExecution.getExitStatus().getExitCode())) {
+            reportSnapshotHolder.publishStaged(jobExecution.getId());
+        } else {
+            reportSnapshotHolder.discardStaged(jobExecution.getId());
+        }
+    }
+}
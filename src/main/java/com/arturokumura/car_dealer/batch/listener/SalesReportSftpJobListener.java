@@ -1,12 +1,17 @@
 package com.arturokumura.car_dealer.batch.listener;
 
 
-import com.arturokumura.car_dealer.batch.InputFilesDecider;
+import com.arturokumura.car_dealer.batch.decider.InputFilesDecider;
+import com.arturokumura.car_dealer.batch.dedup.DuplicateIndex;
+import com.arturokumura.car_dealer.batch.pipeline.FilePipeline;
 import com.arturokumura.car_dealer.integration.SftpDownloadService;
+import com.arturokumura.car_dealer.integration.SftpReportStreamer;
+import com.arturokumura.car_dealer.integration.SftpStreamingSource;
 import com.arturokumura.car_dealer.integration.SftpUploadService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.job.JobExecution;
 import org.springframework.batch.core.listener.JobExecutionListener;
 import org.springframework.stereotype.Component;
@@ -15,30 +20,99 @@ import org.springframework.stereotype.Component;
 public class SalesReportSftpJobListener implements JobExecutionListener {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SalesReportSftpJobListener.class);
+    public static final String DOWNLOAD_MILLIS_CONTEXT_KEY = "sftp.download.millis";
+    public static final String UPLOAD_MILLIS_CONTEXT_KEY = "sftp.upload.millis";
+    public static final String PIPELINE_MOVE_MILLIS_CONTEXT_KEY = "pipeline.move.millis";
 
     private final SftpDownloadService sftpDownloadService;
     private final SftpUploadService sftpUploadService;
+    private final SftpStreamingSource sftpStreamingSource;
+    private final FilePipeline filePipeline;
+    private final DuplicateIndex duplicateIndex;
+    private final SftpReportStreamer sftpReportStreamer;
 
     // Injeta os servicos responsaveis pelo fluxo SFTP do job.
     public SalesReportSftpJobListener(SftpDownloadService sftpDownloadService,
-                                      SftpUploadService sftpUploadService) {
+                                      SftpUploadService sftpUploadService,
+                                      SftpStreamingSource sftpStreamingSource,
+                                      FilePipeline filePipeline,
+                                      DuplicateIndex duplicateIndex,
+                                      SftpReportStreamer sftpReportStreamer) {
         this.sftpDownloadService = sftpDownloadService;
         this.sftpUploadService = sftpUploadService;
+        this.sftpStreamingSource = sftpStreamingSource;
+        this.filePipeline = filePipeline;
+        this.duplicateIndex = duplicateIndex;
+        this.sftpReportStreamer = sftpReportStreamer;
     }
 
-    // Baixa os arquivos no inicio do job e registra a quantidade baixada.
+    // Baixa os arquivos no inicio do job e registra quantos ficaram prontos para processar.
     @Override
     public void beforeJob(JobExecution jobExecution) {
+        if (sftpStreamingSource.isEnabled()) {
+            // No modo streaming o step le direto do SFTP; aqui so contamos o que ha para processar
+            sftpStreamingSource.resetReadTime();
+            int remoteFilesCount = sftpStreamingSource.countRemoteFiles();
+            jobExecution.getExecutionContext()
+                    .putInt(InputFilesDecider.DOWNLOADED_FILES_COUNT_CONTEXT_KEY, remoteFilesCount);
+            LOGGER.info("Modo streaming: {} arquivo(s) serao lidos direto do SFTP.", remoteFilesCount);
+            return;
+        }
+
+        if (filePipeline.isEnabled()) {
+            // Os downloads seguem em paralelo ao step; cada particao espera so o proprio arquivo
+            int remoteFilesCount = filePipeline.start();
+            jobExecution.getExecutionContext()
+                    .putInt(InputFilesDecider.DOWNLOADED_FILES_COUNT_CONTEXT_KEY, remoteFilesCount);
+            return;
+        }
+
         LOGGER.info("Iniciando download de arquivos no SFTP antes do job");
+        long start = System.nanoTime();
         int downloadedFilesCount = sftpDownloadService.downloadNewFiles();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
         jobExecution.getExecutionContext()
                 .putInt(InputFilesDecider.DOWNLOADED_FILES_COUNT_CONTEXT_KEY, downloadedFilesCount);
-        LOGGER.info("Download SFTP finalizado com {} arquivo(s) novo(s).", downloadedFilesCount);
+        jobExecution.getExecutionContext().putLong(DOWNLOAD_MILLIS_CONTEXT_KEY, elapsedMillis);
+        LOGGER.info("Download SFTP finalizado com {} arquivo(s) pronto(s) em {} ms.", downloadedFilesCount,
+                elapsedMillis);
     }
 
-    // Executa upload e movimentacao SFTP somente quando o job conclui com sucesso.
+    // Executa upload e movimentacao SFTP somente quando o job conclui com sucesso. Uma falha aqui marca o
+    // job como FAILED em vez de propagar: os listeners registrados antes (foto da API) ainda precisam rodar
+    // para descartar o que a execucao preparou.
     @Override
     public void afterJob(JobExecution jobExecution) {
+        try {
+            publishReports(jobExecution);
+        } catch (RuntimeException e) {
+            LOGGER.error("Falha no upload/movimentacao SFTP; job marcado como FAILED.", e);
+            jobExecution.setStatus(BatchStatus.FAILED);
+            jobExecution.setExitStatus(ExitStatus.FAILED.addExitDescription(e));
+        } finally {
+            // ".part" que nao foram publicados (job sem sucesso ou falha antes do rename) saem do servidor
+            sftpReportStreamer.discard(jobExecution.getId());
+        }
+    }
+
+    private void publishReports(JobExecution jobExecution) {
+        if (duplicateIndex.isEnabled()) {
+            // O que foi commitado ja esta em dedup_sales; salvar o filtro so evita reler a tabela na subida
+            try {
+                duplicateIndex.save();
+            } catch (IllegalStateException e) {
+                LOGGER.warn("Filtro de duplicidade nao foi salvo; sera completado pela tabela.", e);
+            }
+        }
+        if (sftpStreamingSource.isEnabled()) {
+            long readMillis = sftpStreamingSource.readMillis();
+            jobExecution.getExecutionContext().putLong(DOWNLOAD_MILLIS_CONTEXT_KEY, readMillis);
+            LOGGER.info("Modo streaming: {} ms lendo arquivos do SFTP.", readMillis);
+        }
+        if (filePipeline.isActive()) {
+            afterPipelinedJob(jobExecution);
+            return;
+        }
         if (jobExecution.getStatus() != BatchStatus.COMPLETED) {
             LOGGER.warn("Job finalizado com status {}. Upload/movimentacao SFTP nao sera executado.",
                     jobExecution.getStatus());
@@ -52,6 +126,48 @@ public class SalesReportSftpJobListener implements JobExecutionListener {
         }
 
         LOGGER.info("Job concluido com sucesso. Iniciando upload e movimentacao no SFTP");
-        sftpUploadService.uploadAndMoveProcessedFiles();
+        long start = System.nanoTime();
+        sftpUploadService.uploadAndMoveProcessedFiles(jobExecution.getId());
+        publishProcessedFiles();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        jobExecution.getExecutionContext().putLong(UPLOAD_MILLIS_CONTEXT_KEY, elapsedMillis);
+        LOGGER.info("Upload e movimentacao SFTP finalizados em {} ms.", elapsedMillis);
+    }
+
+    // Relatorio publicado: os arquivos desta execucao passam a valer para a deteccao de reenvio.
+    private void publishProcessedFiles() {
+        if (duplicateIndex.isEnabled()) {
+            duplicateIndex.publishFiles();
+        }
+    }
+
+    // No pipeline os arquivos ja concluidos foram movidos durante o step (mesmo se outra particao falhou,
+    // ja que o parcial deles fica no checkpoint); aqui so falta esperar o estagio e enviar a matriz.
+    private void afterPipelinedJob(JobExecution jobExecution) {
+        try {
+            filePipeline.finish();
+        } catch (IllegalStateException e) {
+            LOGGER.error("Pipeline terminou com falha. Upload da matriz nao sera executado.", e);
+            jobExecution.setStatus(BatchStatus.FAILED);
+            jobExecution.setExitStatus(ExitStatus.FAILED.addExitDescription(e));
+            return;
+        } finally {
+            jobExecution.getExecutionContext().putLong(DOWNLOAD_MILLIS_CONTEXT_KEY, filePipeline.downloadMillis());
+            jobExecution.getExecutionContext().putLong(PIPELINE_MOVE_MILLIS_CONTEXT_KEY, filePipeline.moveMillis());
+        }
+        if (jobExecution.getStatus() != BatchStatus.COMPLETED
+                || InputFilesDecider.NO_INPUT.equals(jobExecution.getExitStatus().getExitCode())) {
+            LOGGER.info("Job finalizado com status {} ({}). Upload da matriz nao sera executado.",
+                    jobExecution.getStatus(), jobExecution.getExitStatus().getExitCode());
+            return;
+        }
+
+        long start = System.nanoTime();
+        sftpUploadService.uploadMatrizReports(jobExecution.getId());
+        publishProcessedFiles();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        jobExecution.getExecutionContext().putLong(UPLOAD_MILLIS_CONTEXT_KEY, elapsedMillis);
+        LOGGER.info("Pipeline concluido: download {} ms, movimentacao {} ms, upload da matriz {} ms.",
+                filePipeline.downloadMillis(), filePipeline.moveMillis(), elapsedMillis);
     }
-}
\ No newline at end of file
+}
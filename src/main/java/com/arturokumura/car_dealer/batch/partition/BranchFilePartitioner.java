@@ -0,0 +1,80 @@
+package com.arturokumura.car_dealer.batch.partition;
+
+import com.arturokumura.car_dealer.batch.pipeline.FilePipeline;
+import com.arturokumura.car_dealer.integration.SftpStreamingSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.batch.core.partition.Partitioner;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+@Component
+public class BranchFilePartitioner implements Partitioner {
+
+    public static final String FILE_NAME_CONTEXT_KEY = "fileName";
+
+    private final ResourcePatternResolver resourcePatternResolver;
+    private final SftpStreamingSource sftpStreamingSource;
+    private final FilePipeline filePipeline;
+    private final String filialReportPattern;
+
+    // Recebe o resolver, a fonte SFTP do modo streaming, o pipeline de arquivos e o pattern usado para
+    // localizar os arquivos das filiais.
+    public BranchFilePartitioner(ResourcePatternResolver resourcePatternResolver,
+                                 SftpStreamingSource sftpStreamingSource,
+                                 FilePipeline filePipeline,
+                                 @Value("${app.filial-report-pattern}") String filialReportPattern) {
+        this.resourcePatternResolver = resourcePatternResolver;
+        this.sftpStreamingSource = sftpStreamingSource;
+        this.filePipeline = filePipeline;
+        this.filialReportPattern = filialReportPattern;
+    }
+
+    // Cria uma particao por arquivo, nomeada na ordem dos arquivos para manter o merge deterministico.
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+        List<String> locations = listLocations();
+        for (int i = 0; i < locations.size(); i++) {
+            ExecutionContext context = new ExecutionContext();
+            context.putString(FILE_NAME_CONTEXT_KEY, locations.get(i));
+            partitions.put(String.format("partition%04d", i), context);
+        }
+        return partitions;
+    }
+
+    // Localizacoes ordenadas por nome: URLs locais ou "sftp:<arquivo>" no modo streaming. No pipeline
+    // a listagem e a remota, com os arquivos ainda baixando.
+    private List<String> listLocations() {
+        if (filePipeline.isActive()) {
+            return filePipeline.locations();
+        }
+        List<String> locations = new ArrayList<>();
+        if (sftpStreamingSource.isEnabled()) {
+            for (Resource resource : sftpStreamingSource.listResources()) {
+                locations.add(SftpStreamingSource.LOCATION_PREFIX + resource.getFilename());
+            }
+            return locations;
+        }
+
+        try {
+            Resource[] resources = resourcePatternResolver.getResources(filialReportPattern);
+            Arrays.sort(resources, Comparator.comparing(Resource::getFilename));
+            for (Resource resource : resources) {
+                locations.add(resource.getURL().toExternalForm());
+            }
+            return locations;
+        } catch (IOException e) {
+            throw new IllegalStateException("Erro ao listar arquivos para particionamento com pattern: "
+                    + filialReportPattern, e);
+        }
+    }
+}
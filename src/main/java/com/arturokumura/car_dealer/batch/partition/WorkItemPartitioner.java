@@ -0,0 +1,39 @@
+package com.arturokumura.car_dealer.batch.partition;
+
+import java.util.Map;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.partition.Partitioner;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Particao unica com o arquivo do item da fila reivindicado pelo worker; o nome da particao leva o id
+// do item, o que separa os parciais e os checkpoints de itens diferentes no mesmo processo.
+@Component
+@StepScope
+public class WorkItemPartitioner implements Partitioner {
+
+    public static final String LOCATION_PARAMETER = "location";
+    public static final String WORK_ITEM_PARAMETER = "workItemId";
+    public static final String WORKER_STEP_NAME = "salesReportWorkerStep";
+
+    private final String location;
+    private final long workItemId;
+
+    public WorkItemPartitioner(@Value("#{jobParameters['location']}") String location,
+                               @Value("#{jobParameters['workItemId']}") Long workItemId) {
+        this.location = location;
+        this.workItemId = workItemId;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        ExecutionContext context = new ExecutionContext();
+        context.putString(BranchFilePartitioner.FILE_NAME_CONTEXT_KEY, location);
+        return Map.of(partitionName(workItemId), context);
+    }
+
+    public static String partitionName(long workItemId) {
+        return String.format("item%010d", workItemId);
+    }
+}
@@ -0,0 +1,205 @@
+package com.arturokumura.car_dealer.batch.pipeline;
+
+import com.arturokumura.car_dealer.batch.writer.SalesReportWriter;
+import com.arturokumura.car_dealer.integration.PipelinedDownload;
+import com.arturokumura.car_dealer.integration.SftpDownloadService;
+import com.arturokumura.car_dealer.integration.SftpStreamingSource;
+import com.arturokumura.car_dealer.integration.SftpUploadService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Execucao em pipeline do salesReportJob: download, processamento e movimentacao para processados
+// sobrepostos por arquivo. Cada particao comeca assim que o seu arquivo termina de baixar e, quando
+// o step da particao conclui (todas as linhas commitadas), o arquivo entra na fila limitada do estagio
+// de movimentacao. O upload da matriz continua no afterJob, somente se tudo deu certo. Nao combina com
+// app.report.output=sftp: ali o relatorio so existe como ".part" remoto ate o afterJob, e com as entradas
+// ja em processados uma publicacao que falhe perderia o relatorio sem deixar o que reprocessar. Exige
+// app.report.checkpoint.enabled=true: no restart as particoes de arquivos ja movidos voltam do checkpoint.
+@Component
+public class FilePipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilePipeline.class);
+    private static final String END_OF_FILES = "";
+
+    private final SftpDownloadService sftpDownloadService;
+    private final SftpUploadService sftpUploadService;
+    private final SftpStreamingSource sftpStreamingSource;
+    private final boolean enabled;
+    private final int prefetchFiles;
+    private final int moveQueueCapacity;
+    private final Map<String, String> fileNamesByLocation = new HashMap<>();
+    private final List<String> locations = new ArrayList<>();
+    private volatile PipelinedDownload downloads;
+    private volatile BlockingQueue<String> moveQueue;
+    private volatile Thread mover;
+    private volatile Exception moveFailure;
+    private volatile long moveMillis;
+    private volatile long downloadMillis;
+
+    public FilePipeline(SftpDownloadService sftpDownloadService,
+                        SftpUploadService sftpUploadService,
+                        SftpStreamingSource sftpStreamingSource,
+                        @Value("${app.batch.pipeline.enabled:false}") boolean enabled,
+                        @Value("${app.batch.pipeline.prefetch-files:4}") int prefetchFiles,
+                        @Value("${app.batch.pipeline.move-queue-capacity:16}") int moveQueueCapacity,
+                        @Value("${app.report.output:local}") String reportOutput,
+                        @Value("${app.report.checkpoint.enabled:true}") boolean checkpointEnabled) {
+        if (enabled && SalesReportWriter.OUTPUT_SFTP.equalsIgnoreCase(reportOutput)) {
+            throw new IllegalStateException(
+                    "app.batch.pipeline.enabled=true nao e suportado com app.report.output=sftp");
+        }
+        if (enabled && !checkpointEnabled) {
+            throw new IllegalStateException(
+                    "app.batch.pipeline.enabled=true exige app.report.checkpoint.enabled=true");
+        }
+        this.sftpDownloadService = sftpDownloadService;
+        this.sftpUploadService = sftpUploadService;
+        this.sftpStreamingSource = sftpStreamingSource;
+        this.enabled = enabled;
+        this.prefetchFiles = prefetchFiles;
+        this.moveQueueCapacity = moveQueueCapacity;
+    }
+
+    // No modo streaming o step ja le direto do SFTP, entao o pipeline nao se aplica.
+    public boolean isEnabled() {
+        return enabled && !sftpStreamingSource.isEnabled();
+    }
+
+    // Pipeline em andamento nesta execucao do job.
+    public boolean isActive() {
+        return downloads != null;
+    }
+
+    // Inicia os downloads e o estagio de movimentacao; retorna a quantidade de arquivos remotos.
+    public synchronized int start() {
+        if (downloads != null) {
+            LOGGER.warn("Pipeline anterior nao foi encerrado; encerrando antes de iniciar outro.");
+            try {
+                finish();
+            } catch (IllegalStateException e) {
+                LOGGER.warn("Falha no pipeline anterior", e);
+            }
+        }
+        moveFailure = null;
+        moveMillis = 0;
+        downloadMillis = 0;
+        fileNamesByLocation.clear();
+        locations.clear();
+        PipelinedDownload started = sftpDownloadService.startPipelinedDownload(prefetchFiles);
+        for (String fileName : started.fileNames()) {
+            String location = started.localFile(fileName).toUri().toString();
+            fileNamesByLocation.put(location, fileName);
+            locations.add(location);
+        }
+        moveQueue = new ArrayBlockingQueue<>(Math.max(1, moveQueueCapacity));
+        mover = Thread.ofPlatform().name("pipeline-move").start(this::moveFiles);
+        downloads = started;
+        LOGGER.info("Pipeline iniciado com {} arquivo(s).", locations.size());
+        return locations.size();
+    }
+
+    // Localizacoes dos arquivos, na ordem dos nomes, para o particionador.
+    public List<String> locations() {
+        return List.copyOf(locations);
+    }
+
+    // Chamado pela particao antes de abrir o arquivo: bloqueia ate o download dele terminar.
+    public void awaitFile(String location) {
+        String fileName = fileNamesByLocation.get(location);
+        if (fileName == null) {
+            // Restart de uma particao criada em outra execucao: o arquivo ja esta na pasta local
+            return;
+        }
+        try {
+            downloads.await(fileName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Espera pelo download de " + fileName + " interrompida", e);
+        }
+    }
+
+    // Chamado quando a particao do arquivo concluiu; bloqueia se o estagio de movimentacao estiver cheio.
+    public void fileProcessed(String location) {
+        String fileName = fileNamesByLocation.get(location);
+        if (fileName == null || moveQueue == null || moveFailure != null) {
+            return;
+        }
+        try {
+            moveQueue.put(fileName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Fila de movimentacao interrompida em " + fileName, e);
+        }
+    }
+
+    // Espera a movimentacao dos arquivos ja liberados e encerra os downloads; relanca a falha do estagio
+    // de movimentacao, se houver.
+    public synchronized void finish() {
+        if (downloads == null) {
+            return;
+        }
+        try {
+            while (mover.isAlive() && !moveQueue.offer(END_OF_FILES, 100, TimeUnit.MILLISECONDS)) {
+                // Fila cheia: o estagio de movimentacao ainda esta consumindo
+            }
+            mover.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mover.interrupt();
+        } finally {
+            downloads.close();
+            downloadMillis = downloads.elapsedMillis();
+            downloads = null;
+        }
+        if (moveFailure != null) {
+            throw new IllegalStateException("Erro ao mover arquivos para processados no SFTP", moveFailure);
+        }
+    }
+
+    public long downloadMillis() {
+        return downloadMillis;
+    }
+
+    public long moveMillis() {
+        return moveMillis;
+    }
+
+    // Estagio de movimentacao: consome a fila ate o marcador de fim, com uma unica sessao SFTP.
+    private void moveFiles() {
+        long busyNanos = 0;
+        int moved = 0;
+        try (SftpUploadService.ProcessedFileMover fileMover = sftpUploadService.openProcessedFileMover()) {
+            while (true) {
+                String fileName = moveQueue.take();
+                if (END_OF_FILES.equals(fileName)) {
+                    break;
+                }
+                long start = System.nanoTime();
+                try {
+                    fileMover.move(fileName);
+                    moved++;
+                } finally {
+                    busyNanos += System.nanoTime() - start;
+                }
+            }
+        } catch (Exception e) {
+            moveFailure = e;
+            LOGGER.error("Estagio de movimentacao do pipeline interrompido", e);
+            // Libera quem estiver bloqueado no put; os proximos arquivos ficam na pasta de entrada
+            moveQueue.clear();
+        } finally {
+            moveMillis = busyNanos / 1_000_000;
+        }
+        LOGGER.info("Pipeline moveu {} arquivo(s) para processados.", moved);
+    }
+}
@@ -0,0 +1,47 @@
+package com.arturokumura.car_dealer.batch.pipeline;
+
+import com.arturokumura.car_dealer.batch.partition.BranchFilePartitioner;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.job.JobInterruptedException;
+import org.springframework.batch.core.step.Step;
+import org.springframework.batch.core.step.StepExecution;
+
+// Step da particao no pipeline: libera o arquivo para o estagio de movimentacao so depois que o step
+// dele retorna, quando a execucao ja foi gravada no JobRepository como concluida. Um afterStep rodaria
+// antes dessa gravacao; se ela falhasse, o arquivo ja estaria em processados e o restart refaria a
+// particao sem ele. Fora do pipeline o step e executado sem mudanca.
+public class PipelineWorkerStep implements Step {
+
+    private final Step delegate;
+    private final FilePipeline filePipeline;
+
+    public PipelineWorkerStep(Step delegate, FilePipeline filePipeline) {
+        this.delegate = delegate;
+        this.filePipeline = filePipeline;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public boolean isAllowStartIfComplete() {
+        return delegate.isAllowStartIfComplete();
+    }
+
+    @Override
+    public int getStartLimit() {
+        return delegate.getStartLimit();
+    }
+
+    // Se a gravacao final falhar, o step fica com status UNKNOWN e o arquivo fica na pasta de entrada.
+    @Override
+    public void execute(StepExecution stepExecution) throws JobInterruptedException {
+        delegate.execute(stepExecution);
+        if (stepExecution.getStatus() == BatchStatus.COMPLETED && filePipeline.isActive()) {
+            filePipeline.fileProcessed(
+                    stepExecution.getExecutionContext().getString(BranchFilePartitioner.FILE_NAME_CONTEXT_KEY));
+        }
+    }
+}
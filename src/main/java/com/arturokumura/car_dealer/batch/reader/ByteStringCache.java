@@ -0,0 +1,69 @@
+package com.arturokumura.car_dealer.batch.reader;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Cache de Strings indexado pelos bytes de origem: valores repetidos do CSV viram a mesma
+// instancia de String sem decodificar a linha. Quando lotado, apenas deixa de cachear.
+final class ByteStringCache {
+
+    private final byte[][] keys;
+    private final String[] values;
+    private final int[] hashes;
+    private final int mask;
+    private final int maxEntries;
+    private int size;
+
+    // Capacidade arredondada para potencia de dois, com no maximo metade ocupada.
+    ByteStringCache(int maxEntries) {
+        int capacity = Integer.highestOneBit(Math.max(16, maxEntries * 2 - 1)) << 1;
+        this.keys = new byte[capacity][];
+        this.values = new String[capacity];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 1;
+        this.maxEntries = maxEntries;
+    }
+
+    // Retorna a String correspondente aos bytes [start, end) do buffer.
+    String get(ByteBuffer buffer, int start, int end) {
+        int hash = hash(buffer, start, end);
+        int slot = hash & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && matches(keys[slot], buffer, start, end)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        byte[] key = new byte[end - start];
+        buffer.get(start, key);
+        String value = new String(key, StandardCharsets.UTF_8);
+        if (size < maxEntries) {
+            keys[slot] = key;
+            values[slot] = value;
+            hashes[slot] = hash;
+            size++;
+        }
+        return value;
+    }
+
+    private static int hash(ByteBuffer buffer, int start, int end) {
+        int h = 0x811C9DC5;
+        for (int i = start; i < end; i++) {
+            h = (h ^ buffer.get(i)) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(byte[] key, ByteBuffer buffer, int start, int end) {
+        if (key.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,266 @@
+package com.arturokumura.car_dealer.batch.reader;
+
+import com.arturokumura.car_dealer.batch.aggregation.LongIntHashMap;
+import com.arturokumura.car_dealer.batch.dedup.DuplicateIndex;
+import com.arturokumura.car_dealer.batch.dedup.SaleFingerprint;
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.batch.validation.QuarantineFile;
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.batch.infrastructure.item.ItemStreamException;
+import org.springframework.batch.infrastructure.item.file.FlatFileParseException;
+import org.springframework.batch.infrastructure.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.core.io.Resource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+// Deteccao de vendas repetidas na leitura de cada arquivo. Um arquivo com o mesmo SHA-256 de outro ja
+// processado e descartado inteiro (drop) ou tem todas as vendas marcadas (flag); nos demais cada venda
+// e conferida pela impressao digital no DuplicateIndex. As repetidas marcadas ou descartadas uma a uma
+// vao para o CSV de duplicadas do arquivo e, no modo drop, nao chegam ao step.
+public class DeduplicatingSaleFileReader implements ResourceAwareItemReaderItemStream<SaleRecord> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeduplicatingSaleFileReader.class);
+    private static final String RECORD_KEY = "dedup.record";
+    private static final String SALES_KEY = "dedup.sales";
+    private static final String DUPLICATES_KEY = "dedup.duplicates";
+    private static final String DUPLICATES_FILE_KEY = "dedup.duplicates-file";
+
+    private final ResourceAwareItemReaderItemStream<SaleRecord> delegate;
+    private final DuplicateIndex duplicateIndex;
+    private final BatchMetrics batchMetrics;
+    private final Path duplicatesDirectory;
+    private final LongIntHashMap occurrences = new LongIntHashMap(1024);
+    private Resource resource;
+    private String sourceId;
+    private DuplicateIndex.KnownFile knownFile;
+    private List<SaleFingerprint> accepted = new ArrayList<>();
+    private QuarantineFile duplicatesFile;
+    private long record;
+    private long sales;
+    private long duplicates;
+    private boolean exhausted;
+    private boolean fileRecorded;
+
+    public DeduplicatingSaleFileReader(ResourceAwareItemReaderItemStream<SaleRecord> delegate,
+                                       DuplicateIndex duplicateIndex,
+                                       BatchMetrics batchMetrics,
+                                       Path duplicatesDirectory) {
+        this.delegate = delegate;
+        this.duplicateIndex = duplicateIndex;
+        this.batchMetrics = batchMetrics;
+        this.duplicatesDirectory = duplicatesDirectory;
+    }
+
+    @Override
+    public void setResource(Resource resource) {
+        this.resource = resource;
+        delegate.setResource(resource);
+    }
+
+    // Identifica o conteudo do arquivo e, em um restart, refaz a contagem de ocorrencias relendo as
+    // vendas ja commitadas, como o proprio reader faz para chegar na posicao salva.
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        occurrences.clear();
+        accepted = new ArrayList<>();
+        exhausted = false;
+        fileRecorded = false;
+        sourceId = sourceIdOf(resource);
+        duplicateIndex.catchUp();
+        knownFile = duplicateIndex.openFile(sourceId, fileName());
+        record = executionContext.getLong(RECORD_KEY, 0L);
+        sales = executionContext.getLong(SALES_KEY, 0L);
+        duplicates = executionContext.getLong(DUPLICATES_KEY, 0L);
+        duplicatesFile = new QuarantineFile(duplicatesDirectory, fileName(), "duplicates");
+        try {
+            duplicatesFile.restore(executionContext, DUPLICATES_FILE_KEY);
+        } catch (IOException e) {
+            throw new ItemStreamException("Nao foi possivel retomar as duplicadas de " + fileName(), e);
+        }
+        if (knownFile != null) {
+            LOGGER.warn("{} tem o mesmo conteudo de {}; vendas serao {}.", fileName(), knownFile.fileName(),
+                    duplicateIndex.mode() == DuplicateIndex.Mode.DROP ? "descartadas" : "marcadas como duplicadas");
+        }
+        if (record > 0 && knownFile == null) {
+            delegate.open(new ExecutionContext());
+            replay(record);
+        } else {
+            delegate.open(executionContext);
+        }
+    }
+
+    // Proxima venda; as repetidas sao registradas e, no modo drop, puladas.
+    @Override
+    public SaleRecord read() throws Exception {
+        if (knownFile != null && duplicateIndex.mode() == DuplicateIndex.Mode.DROP) {
+            if (!exhausted) {
+                exhausted = true;
+                batchMetrics.recordDuplicates(fileName(), knownFile.sales());
+            }
+            return null;
+        }
+        while (true) {
+            record++;
+            SaleRecord sale = delegate.read();
+            if (sale == null) {
+                record--;
+                exhausted = true;
+                return null;
+            }
+            if (knownFile != null) {
+                duplicates++;
+                batchMetrics.recordDuplicates(fileName(), 1);
+                duplicatesFile.write(record, "arquivo com o mesmo conteudo de " + knownFile.fileName(),
+                        toLine(sale));
+                return sale;
+            }
+            SaleFingerprint fingerprint = fingerprintOf(sale);
+            if (duplicateIndex.tryAccept(fingerprint, sourceId)) {
+                accepted.add(fingerprint);
+                sales++;
+                return sale;
+            }
+            duplicates++;
+            batchMetrics.recordDuplicates(fileName(), 1);
+            duplicatesFile.write(record, "venda ja processada em outro arquivo", toLine(sale));
+            if (duplicateIndex.mode() == DuplicateIndex.Mode.FLAG) {
+                return sale;
+            }
+        }
+    }
+
+    // Grava as impressoes aceitas desde o ultimo commit na transacao do chunk, junto com a posicao.
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        delegate.update(executionContext);
+        executionContext.putLong(RECORD_KEY, record);
+        executionContext.putLong(SALES_KEY, sales);
+        executionContext.putLong(DUPLICATES_KEY, duplicates);
+        recordAccepted();
+        try {
+            duplicatesFile.update(executionContext, DUPLICATES_FILE_KEY);
+        } catch (IOException e) {
+            throw new ItemStreamException("Nao foi possivel gravar as duplicadas de " + fileName(), e);
+        }
+    }
+
+    // Na troca de arquivo do MultiResourceItemReader o chunk ainda esta aberto e as impressoes vao com
+    // ele; fora de transacao (falha do step) as reservas sao liberadas.
+    @Override
+    public void close() throws ItemStreamException {
+        try {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                recordAccepted();
+            } else {
+                duplicateIndex.release(accepted, sourceId);
+                accepted = new ArrayList<>();
+            }
+            delegate.close();
+        } finally {
+            if (sourceId != null) {
+                duplicateIndex.closeFile(sourceId, fileName());
+            }
+            closeDuplicatesFile();
+        }
+    }
+
+    private void recordAccepted() {
+        boolean completed = exhausted && knownFile == null && !fileRecorded;
+        if (accepted.isEmpty() && !completed) {
+            return;
+        }
+        duplicateIndex.record(accepted, sourceId, fileName(), completed ? sales : -1);
+        accepted = new ArrayList<>();
+        fileRecorded |= completed;
+    }
+
+    // Conta as ocorrencias das vendas antes da posicao de restart, sem conferir nem registrar.
+    private void replay(long records) throws ItemStreamException {
+        for (long i = 0; i < records; i++) {
+            SaleRecord sale;
+            try {
+                sale = delegate.read();
+            } catch (FlatFileParseException e) {
+                continue;
+            } catch (Exception e) {
+                throw new ItemStreamException("Nao foi possivel reposicionar " + fileName(), e);
+            }
+            if (sale == null) {
+                return;
+            }
+            fingerprintOf(sale);
+        }
+    }
+
+    // Impressao da venda com o numero da ocorrencia da mesma combinacao neste arquivo.
+    private SaleFingerprint fingerprintOf(SaleRecord sale) {
+        SaleFingerprint combination = SaleFingerprint.of(sale);
+        long key = combination.combinationKey();
+        int seen = occurrences.get(key);
+        int ordinal = seen == LongIntHashMap.NO_VALUE ? 0 : seen;
+        occurrences.put(key, ordinal + 1);
+        return combination.withOrdinal(ordinal);
+    }
+
+    private void closeDuplicatesFile() {
+        if (duplicatesFile == null) {
+            return;
+        }
+        try {
+            duplicatesFile.close();
+            if (duplicates > 0) {
+                LOGGER.warn("{} venda(s) duplicada(s) em {}{}", duplicates, fileName(),
+                        duplicatesFile.path() == null ? "" : "; detalhes em " + duplicatesFile.path());
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Nao foi possivel fechar as duplicadas de " + fileName(), e);
+        } finally {
+            duplicatesFile = null;
+        }
+    }
+
+    // SHA-256 do conteudo para arquivos locais; streams remotos seriam baixados duas vezes, entao
+    // ficam identificados pelo nome e sem a deteccao de arquivo inteiro.
+    private String sourceIdOf(Resource resource) {
+        if (resource == null || !resource.isFile()) {
+            return DuplicateIndex.NAME_SOURCE_PREFIX + fileName();
+        }
+        try (InputStream in = resource.getInputStream()) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new ItemStreamException("Nao foi possivel calcular o SHA-256 de " + fileName(), e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponivel", e);
+        }
+    }
+
+    private String fileName() {
+        return resource == null ? "desconhecido" : resource.getFilename();
+    }
+
+    private static String toLine(SaleRecord sale) {
+        return String.join(",",
+                String.valueOf(sale.dealerId()),
+                String.valueOf(sale.saleDate()),
+                String.valueOf(sale.model()),
+                String.valueOf(sale.paymentType()),
+                sale.salePriceBrl() == null ? "" : sale.salePriceBrl().toPlainString());
+    }
+}
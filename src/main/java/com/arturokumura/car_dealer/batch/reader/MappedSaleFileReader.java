@@ -0,0 +1,280 @@
+package com.arturokumura.car_dealer.batch.reader;
+
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.springframework.batch.infrastructure.item.ItemStreamException;
+import org.springframework.batch.infrastructure.item.file.FlatFileParseException;
+import org.springframework.batch.infrastructure.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.batch.infrastructure.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.batch.infrastructure.item.file.transform.FieldSet;
+import org.springframework.batch.infrastructure.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.core.io.Resource;
+
+// Le o CSV das filiais direto dos bytes de um arquivo mapeado em memoria, sem String por linha,
+// sem FieldSet e sem construtor reflexivo. Textos repetidos (filial, data, modelo, pagamento)
+// sao reaproveitados por um cache de bytes e o preco e montado a partir dos digitos. Linhas em branco,
+// comentarios e espacos em volta do preco seguem as regras do FlatFileItemReader.
+public class MappedSaleFileReader extends AbstractItemCountingItemStreamItemReader<SaleRecord>
+        implements ResourceAwareItemReaderItemStream<SaleRecord> {
+
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final int FIELD_COUNT = 5;
+    private static final int MAX_COMPACT_DIGITS = 18;
+
+    private final ByteStringCache stringCache = new ByteStringCache(4096);
+    private final int[] fieldStart = new int[FIELD_COUNT];
+    private final int[] fieldEnd = new int[FIELD_COUNT];
+
+    private Resource resource;
+    private FileChannel channel;
+    private long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int windowLimit;
+    private int position;
+    private int lineNumber;
+    private DelimitedLineTokenizer fallbackTokenizer;
+
+    // Define o nome usado nas chaves de restart do ExecutionContext.
+    public MappedSaleFileReader(String name) {
+        setName(name);
+    }
+
+    // Recebe o arquivo corrente, definido pelo MultiResourceItemReader ou pela particao.
+    @Override
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    // Mapeia a primeira janela do arquivo e descarta o cabecalho.
+    @Override
+    protected void doOpen() throws Exception {
+        if (resource == null || !resource.exists()) {
+            throw new ItemStreamException("Arquivo de entrada nao encontrado: " + resource);
+        }
+        if (!resource.isFile()) {
+            throw new ItemStreamException("Leitura mapeada exige arquivo local: " + resource.getDescription());
+        }
+        Path path = resource.getFile().toPath();
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        fileSize = channel.size();
+        windowStart = 0;
+        lineNumber = 0;
+        mapWindow(0);
+        skipLine();
+    }
+
+    // Le a proxima linha de dados e monta o SaleRecord a partir dos bytes.
+    @Override
+    protected SaleRecord doRead() throws Exception {
+        while (true) {
+            int lineStart = position;
+            int lineEnd = findLineEnd();
+            if (lineEnd < 0) {
+                return null;
+            }
+            lineNumber++;
+            int contentEnd = trimCarriageReturn(lineStart, lineEnd);
+            if (isSkipped(lineStart, contentEnd)) {
+                continue;
+            }
+            return parseLine(lineStart, contentEnd);
+        }
+    }
+
+    // Libera o canal e a janela mapeada.
+    @Override
+    protected void doClose() throws Exception {
+        window = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // No restart, pula as linhas ja processadas sem montar registros.
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {
+        int skipped = 0;
+        while (skipped < itemIndex) {
+            int lineStart = position;
+            int lineEnd = findLineEnd();
+            if (lineEnd < 0) {
+                return;
+            }
+            lineNumber++;
+            if (!isSkipped(lineStart, trimCarriageReturn(lineStart, lineEnd))) {
+                skipped++;
+            }
+        }
+    }
+
+    // Separa as cinco colunas e converte cada uma sem alocar a linha inteira.
+    private SaleRecord parseLine(int start, int end) {
+        int field = 0;
+        fieldStart[0] = start;
+        for (int i = start; i < end; i++) {
+            byte b = window.get(i);
+            if (b == ',') {
+                if (field == FIELD_COUNT - 1) {
+                    throw parseError("Quantidade de colunas invalida", start, end);
+                }
+                fieldEnd[field] = i;
+                fieldStart[++field] = i + 1;
+            } else if (b == '"') {
+                return parseQuotedLine(start, end);
+            }
+        }
+        if (field != FIELD_COUNT - 1) {
+            throw parseError("Quantidade de colunas invalida", start, end);
+        }
+        fieldEnd[field] = end;
+
+        return new SaleRecord(
+                stringCache.get(window, fieldStart[0], fieldEnd[0]),
+                stringCache.get(window, fieldStart[1], fieldEnd[1]),
+                stringCache.get(window, fieldStart[2], fieldEnd[2]),
+                stringCache.get(window, fieldStart[3], fieldEnd[3]),
+                parsePrice(fieldStart[4], fieldEnd[4], start, end)
+        );
+    }
+
+    // Converte o preco direto dos digitos; formatos incomuns caem no construtor de BigDecimal.
+    private BigDecimal parsePrice(int start, int end, int lineStart, int lineEnd) {
+        // Espacos em volta do preco sao ignorados, como no readBigDecimal do FieldSet
+        while (start < end && window.get(start) <= ' ') {
+            start++;
+        }
+        while (end > start && window.get(end - 1) <= ' ') {
+            end--;
+        }
+        int i = start;
+        boolean negative = false;
+        if (i < end && (window.get(i) == '-' || window.get(i) == '+')) {
+            negative = window.get(i) == '-';
+            i++;
+        }
+        long unscaled = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < end; i++) {
+            byte b = window.get(i);
+            if (b >= '0' && b <= '9') {
+                unscaled = unscaled * 10 + (b - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (b == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                digits = MAX_COMPACT_DIGITS + 1;
+                break;
+            }
+        }
+        if (digits == 0 || digits > MAX_COMPACT_DIGITS) {
+            try {
+                return new BigDecimal(decode(start, end));
+            } catch (NumberFormatException e) {
+                throw parseError("Preco invalido", lineStart, lineEnd);
+            }
+        }
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, Math.max(scale, 0));
+    }
+
+    // Caminho raro para linhas com aspas, tratado pelo tokenizer padrao do Spring Batch.
+    private SaleRecord parseQuotedLine(int start, int end) {
+        if (fallbackTokenizer == null) {
+            fallbackTokenizer = new DelimitedLineTokenizer(DelimitedLineTokenizer.DELIMITER_COMMA);
+            fallbackTokenizer.setNames("dealerId", "saleDate", "model", "paymentType", "salePriceBrl");
+        }
+        String line = decode(start, end);
+        try {
+            FieldSet fieldSet = fallbackTokenizer.tokenize(line);
+            return new SaleRecord(
+                    fieldSet.readRawString("dealerId"),
+                    fieldSet.readRawString("saleDate"),
+                    fieldSet.readRawString("model"),
+                    fieldSet.readRawString("paymentType"),
+                    fieldSet.readBigDecimal("salePriceBrl")
+            );
+        } catch (RuntimeException e) {
+            throw new FlatFileParseException("Linha invalida no arquivo " + resource.getFilename(), e, line, lineNumber);
+        }
+    }
+
+    // Localiza o fim da linha corrente, remapeando a janela quando a linha cruza o limite.
+    private int findLineEnd() throws IOException {
+        while (true) {
+            for (int i = position; i < windowLimit; i++) {
+                if (window.get(i) == '\n') {
+                    position = i + 1;
+                    return i;
+                }
+            }
+            long absoluteLineStart = windowStart + position;
+            if (windowStart + windowLimit >= fileSize) {
+                if (position >= windowLimit) {
+                    return -1;
+                }
+                int lineEnd = windowLimit;
+                position = windowLimit;
+                return lineEnd;
+            }
+            if (position == 0) {
+                throw new ItemStreamException("Linha maior que a janela de leitura no arquivo " + resource.getFilename());
+            }
+            mapWindow(absoluteLineStart);
+        }
+    }
+
+    // Descarta a linha de cabecalho.
+    private void skipLine() throws IOException {
+        findLineEnd();
+    }
+
+    // Mapeia a janela de leitura a partir da posicao absoluta informada.
+    private void mapWindow(long absoluteStart) throws IOException {
+        long length = Math.min(WINDOW_SIZE, fileSize - absoluteStart);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, absoluteStart, length);
+        windowStart = absoluteStart;
+        windowLimit = (int) length;
+        position = 0;
+    }
+
+    // Linhas so com espacos e comentarios iniciados por # nao sao vendas.
+    private boolean isSkipped(int start, int end) {
+        if (start < end && window.get(start) == '#') {
+            return true;
+        }
+        for (int i = start; i < end; i++) {
+            if (window.get(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Ignora o \r de arquivos gerados com quebra de linha Windows.
+    private int trimCarriageReturn(int start, int end) {
+        return end > start && window.get(end - 1) == '\r' ? end - 1 : end;
+    }
+
+    // Decodifica um trecho da janela, usado apenas em mensagens de erro e caminhos raros.
+    private String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        window.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Monta a excecao de parse com a linha original para diagnostico.
+    private FlatFileParseException parseError(String reason, int start, int end) {
+        return new FlatFileParseException(reason + " no arquivo " + resource.getFilename(), decode(start, end), lineNumber);
+    }
+}
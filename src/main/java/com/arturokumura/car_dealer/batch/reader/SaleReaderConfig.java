@@ -1,14 +1,22 @@
 package com.arturokumura.car_dealer.batch.reader;
 
+import com.arturokumura.car_dealer.batch.dedup.DuplicateIndex;
 import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.batch.pipeline.FilePipeline;
+import com.arturokumura.car_dealer.batch.validation.QuarantineSkipPolicy;
+import com.arturokumura.car_dealer.batch.validation.SaleValidator;
+import com.arturokumura.car_dealer.integration.SftpStreamingSource;
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Comparator;
 import org.springframework.batch.core.configuration.annotation.StepScope;
-import org.springframework.batch.infrastructure.item.file.FlatFileItemReader;
 import org.springframework.batch.infrastructure.item.file.MultiResourceItemReader;
+import org.springframework.batch.infrastructure.item.file.ResourceAwareItemReaderItemStream;
 import org.springframework.batch.infrastructure.item.file.builder.FlatFileItemReaderBuilder;
 import org.springframework.batch.infrastructure.item.file.mapping.RecordFieldSetMapper;
+import org.springframework.batch.infrastructure.item.file.separator.SimpleRecordSeparatorPolicy;
 import org.springframework.batch.infrastructure.item.file.transform.DelimitedLineTokenizer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -19,14 +27,41 @@ import org.springframework.core.io.support.ResourcePatternResolver;
 @Configuration
 public class SaleReaderConfig {
 
+    public static final String READER_MODE_MAPPED = "mapped";
+
+    private final SaleValidator saleValidator;
+    private final QuarantineSkipPolicy quarantineSkipPolicy;
+    private final BatchMetrics batchMetrics;
+    private final DuplicateIndex duplicateIndex;
+    private final String quarantineDir;
+    private final String duplicatesDir;
+
+    // Dependencias das etapas de deteccao de duplicadas e de validacao aplicadas sobre o reader de cada arquivo.
+    public SaleReaderConfig(SaleValidator saleValidator,
+                            QuarantineSkipPolicy quarantineSkipPolicy,
+                            BatchMetrics batchMetrics,
+                            DuplicateIndex duplicateIndex,
+                            @Value("${app.validation.quarantine-dir:${app.data-dir}/quarantine}") String quarantineDir,
+                            @Value("${app.dedup.duplicates-dir:${app.data-dir}/duplicates}") String duplicatesDir) {
+        this.saleValidator = saleValidator;
+        this.quarantineSkipPolicy = quarantineSkipPolicy;
+        this.batchMetrics = batchMetrics;
+        this.duplicateIndex = duplicateIndex;
+        this.quarantineDir = quarantineDir;
+        this.duplicatesDir = duplicatesDir;
+    }
+
     // Agrega multiplos arquivos CSV em um unico reader.
     @Bean
     @StepScope
     public MultiResourceItemReader<SaleRecord> saleReader(ResourcePatternResolver resolver,
-                                                          FlatFileItemReader<SaleRecord> saleFileReader,
+                                                          ResourceAwareItemReaderItemStream<SaleRecord> saleFileReader,
+                                                          SftpStreamingSource sftpStreamingSource,
                                                           @Value("${app.filial-report-pattern}") String pattern)
             throws IOException {
-        Resource[] resources = resolver.getResources(pattern);
+        Resource[] resources = sftpStreamingSource.isEnabled()
+                ? sftpStreamingSource.listResources().toArray(new Resource[0])
+                : resolver.getResources(pattern);
         Arrays.sort(resources, Comparator.comparing(Resource::getFilename));
         MultiResourceItemReader<SaleRecord> reader = new MultiResourceItemReader<>(saleFileReader);
         reader.setResources(resources);
@@ -36,17 +71,97 @@ public class SaleReaderConfig {
     // Le e mapeia cada linha do CSV para SaleRecord.
     @Bean
     @StepScope
-    public FlatFileItemReader<SaleRecord> saleFileReader() {
+    public ResourceAwareItemReaderItemStream<SaleRecord> saleFileReader(
+            SftpStreamingSource sftpStreamingSource,
+            @Value("${app.reader.mode:flatfile}") String readerMode) {
+        return validating(deduplicating(
+                newSaleFileReader("saleFileReader", readerMode, sftpStreamingSource.isEnabled())));
+    }
+
+    // Le somente o arquivo atribuido a particao corrente do step particionado.
+    @Bean
+    @StepScope
+    public ResourceAwareItemReaderItemStream<SaleRecord> partitionFileReader(
+            ResourcePatternResolver resolver,
+            SftpStreamingSource sftpStreamingSource,
+            FilePipeline filePipeline,
+            @Value("#{stepExecutionContext['fileName']}") String fileName,
+            @Value("${app.reader.mode:flatfile}") String readerMode) {
+        boolean remote = fileName.startsWith(SftpStreamingSource.LOCATION_PREFIX);
+        if (!remote && filePipeline.isActive()) {
+            // No pipeline o arquivo pode ainda estar baixando
+            filePipeline.awaitFile(fileName);
+        }
+        ResourceAwareItemReaderItemStream<SaleRecord> reader =
+                validating(deduplicating(newSaleFileReader("partitionFileReader", readerMode, remote)));
+        reader.setResource(remote ? sftpStreamingSource.resolve(fileName) : resolver.getResource(fileName));
+        return reader;
+    }
+
+    // Escolhe entre o parser de bytes mapeados e o FlatFileItemReader; streams remotos sempre usam o segundo.
+    static ResourceAwareItemReaderItemStream<SaleRecord> newSaleFileReader(String name, String readerMode,
+                                                                           boolean remote) {
+        if (READER_MODE_MAPPED.equalsIgnoreCase(readerMode) && !remote) {
+            return new MappedSaleFileReader(name);
+        }
+        return buildSaleFileReader(name).build();
+    }
+
+    // Envolve o reader na deteccao de vendas ja processadas, quando habilitada. Fica por dentro da
+    // validacao para que, no restart, a recontagem de ocorrencias nao repita a quarentena.
+    private ResourceAwareItemReaderItemStream<SaleRecord> deduplicating(
+            ResourceAwareItemReaderItemStream<SaleRecord> reader) {
+        if (!duplicateIndex.isEnabled()) {
+            return reader;
+        }
+        return new DeduplicatingSaleFileReader(reader, duplicateIndex, batchMetrics,
+                Path.of(duplicatesDir).toAbsolutePath().normalize());
+    }
+
+    // Envolve o reader na etapa de validacao com quarentena, quando habilitada.
+    private ResourceAwareItemReaderItemStream<SaleRecord> validating(ResourceAwareItemReaderItemStream<SaleRecord> reader) {
+        if (!saleValidator.isEnabled()) {
+            return reader;
+        }
+        saleValidator.refresh();
+        return new ValidatingSaleFileReader(reader, saleValidator, quarantineSkipPolicy, batchMetrics,
+                Path.of(quarantineDir).toAbsolutePath().normalize());
+    }
+
+    // Configuracao comum de leitura do layout CSV das filiais.
+    private static FlatFileItemReaderBuilder<SaleRecord> buildSaleFileReader(String name) {
         RecordFieldSetMapper<SaleRecord> mapper = new RecordFieldSetMapper<>(SaleRecord.class);
 
         return new FlatFileItemReaderBuilder<SaleRecord>()
-                .name("saleFileReader")
+                .name(name)
                 .encoding("UTF-8")
                 .linesToSkip(1)
+                .recordSeparatorPolicy(new BlankLineSkippingPolicy())
                 .delimited()
                 .delimiter(DelimitedLineTokenizer.DELIMITER_COMMA)
                 .names("dealerId", "saleDate", "model", "paymentType", "salePriceBrl")
-                .fieldSetMapper(mapper)
-                .build();
+                .fieldSetMapper(mapper);
+    }
+
+    // Linhas em branco nao sao vendas: juntam-se a proxima linha e, no fim do arquivo, encerram a leitura.
+    private static final class BlankLineSkippingPolicy extends SimpleRecordSeparatorPolicy {
+
+        // Uma linha em branco nunca fecha o registro.
+        @Override
+        public boolean isEndOfRecord(String record) {
+            return !record.isBlank();
+        }
+
+        // Descarta a linha em branco antes de juntar a proxima.
+        @Override
+        public String preProcess(String record) {
+            return record.isBlank() ? "" : record;
+        }
+
+        // So o fim do arquivo entrega um registro em branco: vira fim da leitura.
+        @Override
+        public String postProcess(String record) {
+            return record.isBlank() ? null : record;
+        }
     }
 }
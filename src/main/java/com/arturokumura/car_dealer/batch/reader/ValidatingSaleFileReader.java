@@ -0,0 +1,165 @@
+package com.arturokumura.car_dealer.batch.reader;
+
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.batch.validation.InvalidSaleException;
+import com.arturokumura.car_dealer.batch.validation.QuarantineFile;
+import com.arturokumura.car_dealer.batch.validation.SaleValidator;
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.step.skip.SkipPolicy;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.batch.infrastructure.item.ItemStreamException;
+import org.springframework.batch.infrastructure.item.file.FlatFileParseException;
+import org.springframework.batch.infrastructure.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Etapa de validacao na leitura de cada arquivo: linhas que nao fazem parse ou que falham no
+// SaleValidator vao para o CSV de quarentena do arquivo, conforme a SkipPolicy, e a leitura segue
+// para a proxima linha. Como a rejeicao acontece antes do chunk, nao ha rollback nem reprocessamento; no
+// restart a quarentena continua do tamanho confirmado no ultimo commit.
+public class ValidatingSaleFileReader implements ResourceAwareItemReaderItemStream<SaleRecord> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ValidatingSaleFileReader.class);
+    private static final String RECORD_KEY = "validation.record";
+    private static final String SKIPS_KEY = "validation.skips";
+    private static final String QUARANTINE_KEY = "validation.quarantine";
+
+    private final ResourceAwareItemReaderItemStream<SaleRecord> delegate;
+    private final SaleValidator validator;
+    private final SkipPolicy skipPolicy;
+    private final BatchMetrics batchMetrics;
+    private final Path quarantineDirectory;
+    private Resource resource;
+    private QuarantineFile quarantine;
+    private long record;
+    private long skips;
+
+    public ValidatingSaleFileReader(ResourceAwareItemReaderItemStream<SaleRecord> delegate,
+                                    SaleValidator validator,
+                                    SkipPolicy skipPolicy,
+                                    BatchMetrics batchMetrics,
+                                    Path quarantineDirectory) {
+        this.delegate = delegate;
+        this.validator = validator;
+        this.skipPolicy = skipPolicy;
+        this.batchMetrics = batchMetrics;
+        this.quarantineDirectory = quarantineDirectory;
+    }
+
+    @Override
+    public void setResource(Resource resource) {
+        this.resource = resource;
+        delegate.setResource(resource);
+    }
+
+    // Abre o arquivo e retoma o numero do registro; o total de rejeicoes vale para o step inteiro.
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        delegate.open(executionContext);
+        record = executionContext.getLong(RECORD_KEY, 0L);
+        if (executionContext.containsKey(SKIPS_KEY)) {
+            skips = executionContext.getLong(SKIPS_KEY);
+        }
+        quarantine = new QuarantineFile(quarantineDirectory, fileName());
+        try {
+            quarantine.restore(executionContext, QUARANTINE_KEY);
+        } catch (IOException e) {
+            throw new ItemStreamException("Nao foi possivel retomar a quarentena de " + fileName(), e);
+        }
+    }
+
+    // Devolve a proxima venda valida, desviando as invalidas para a quarentena.
+    @Override
+    public SaleRecord read() throws Exception {
+        while (true) {
+            record++;
+            SaleRecord sale;
+            try {
+                sale = delegate.read();
+            } catch (FlatFileParseException e) {
+                reject(e, parseReason(e), e.getInput());
+                continue;
+            }
+            if (sale == null) {
+                record--;
+                return null;
+            }
+            String reason = validator.validate(sale);
+            if (reason == null) {
+                return sale;
+            }
+            reject(new InvalidSaleException(reason), reason, toLine(sale));
+        }
+    }
+
+    // Grava a posicao junto com a do reader e leva as rejeicoes para o disco a cada commit.
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        delegate.update(executionContext);
+        executionContext.putLong(RECORD_KEY, record);
+        executionContext.putLong(SKIPS_KEY, skips);
+        try {
+            quarantine.update(executionContext, QUARANTINE_KEY);
+        } catch (IOException e) {
+            throw new ItemStreamException("Nao foi possivel gravar a quarentena de " + fileName(), e);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        try {
+            delegate.close();
+        } finally {
+            closeQuarantine();
+        }
+    }
+
+    // Pula a linha se a politica permitir; caso contrario a falha original derruba o step.
+    private void reject(Exception failure, String reason, String line) throws Exception {
+        if (!skipPolicy.shouldSkip(failure, skips)) {
+            throw failure;
+        }
+        skips++;
+        quarantine.write(record, reason, line);
+        batchMetrics.recordRejected(fileName());
+    }
+
+    private void closeQuarantine() {
+        if (quarantine == null) {
+            return;
+        }
+        try {
+            quarantine.close();
+            if (quarantine.rejected() > 0) {
+                LOGGER.warn("{} linha(s) de {} enviadas para a quarentena em {}", quarantine.rejected(), fileName(),
+                        quarantine.path());
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Nao foi possivel fechar a quarentena de " + fileName(), e);
+        } finally {
+            quarantine = null;
+        }
+    }
+
+    private String fileName() {
+        return resource == null ? "desconhecido" : resource.getFilename();
+    }
+
+    private static String parseReason(FlatFileParseException e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    private static String toLine(SaleRecord sale) {
+        return String.join(",",
+                String.valueOf(sale.dealerId()),
+                String.valueOf(sale.saleDate()),
+                String.valueOf(sale.model()),
+                String.valueOf(sale.paymentType()),
+                sale.salePriceBrl() == null ? "" : sale.salePriceBrl().toPlainString());
+    }
+}
@@ -0,0 +1,128 @@
+package com.arturokumura.car_dealer.batch.remote;
+
+import com.arturokumura.car_dealer.batch.partition.BranchFilePartitioner;
+import com.arturokumura.car_dealer.batch.rollup.RollupEngine;
+import com.arturokumura.car_dealer.batch.writer.PartialReportRegistry;
+import com.arturokumura.car_dealer.batch.writer.SalesReportWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.JobInterruptedException;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.StepContribution;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.batch.infrastructure.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.InflaterInputStream;
+
+// Step do gerenciador no particionamento entre processos: registra um item da fila por arquivo de
+// filial, acompanha os workers e, quando todos os itens terminam, junta os parciais e grava o
+// relatorio da matriz.
+@Component
+@StepScope
+@ConditionalOnProperty(name = "app.batch.remote.mode", havingValue = "manager")
+public class RemoteManagerTasklet implements Tasklet {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RemoteManagerTasklet.class);
+    private static final String REGISTERED_KEY = "remote.registered";
+
+    private final WorkQueueRepository workQueue;
+    private final BranchFilePartitioner branchFilePartitioner;
+    private final PartialReportRegistry partialReportRegistry;
+    private final SalesReportWriter salesReportWriter;
+
+    @Value("${app.batch.remote.poll-interval-ms:2000}")
+    private long pollIntervalMs;
+
+    @Value("${app.batch.remote.stale-after-ms:120000}")
+    private long staleAfterMs;
+
+    @Value("${app.batch.remote.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.batch.remote.manager-timeout-ms:21600000}")
+    private long timeoutMs;
+
+    public RemoteManagerTasklet(WorkQueueRepository workQueue,
+                                BranchFilePartitioner branchFilePartitioner,
+                                PartialReportRegistry partialReportRegistry,
+                                SalesReportWriter salesReportWriter) {
+        this.workQueue = workQueue;
+        this.branchFilePartitioner = branchFilePartitioner;
+        this.partialReportRegistry = partialReportRegistry;
+        this.salesReportWriter = salesReportWriter;
+    }
+
+    // Registra os itens na primeira chamada, com commit proprio, e na seguinte aguarda os workers, junta os
+    // parciais e grava o relatorio.
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        StepExecution stepExecution = chunkContext.getStepContext().getStepExecution();
+        ExecutionContext stepContext = stepExecution.getExecutionContext();
+        // Mesma fila entre restarts da mesma instancia do job: itens ja concluidos nao sao refeitos
+        String runId = "instance-" + stepExecution.getJobExecution().getJobInstance().getInstanceId();
+        if (!stepContext.containsKey(REGISTERED_KEY)) {
+            List<String> locations = branchFilePartitioner.partition(0).values().stream()
+                    .map(context -> context.getString(BranchFilePartitioner.FILE_NAME_CONTEXT_KEY))
+                    .toList();
+            workQueue.register(runId, locations);
+            stepContext.putString(REGISTERED_KEY, runId);
+            return RepeatStatus.CONTINUABLE;
+        }
+
+        Map<WorkQueueRepository.Status, Integer> counts = awaitWorkers(runId, stepExecution);
+        int failed = counts.get(WorkQueueRepository.Status.FAILED);
+        if (failed > 0) {
+            workQueue.failures(runId).forEach(failure -> LOGGER.error("Item falho: {}", failure));
+            // Os itens concluidos ficam na fila; o restart do job so refaz os que falharam
+            throw new IllegalStateException(failed + " arquivo(s) falharam nos workers da fila " + runId);
+        }
+
+        RollupEngine merged = partialReportRegistry.newPartial();
+        workQueue.forEachPartial(runId, (location, snapshot) -> {
+            try (DataInputStream in = new DataInputStream(
+                    new InflaterInputStream(new ByteArrayInputStream(snapshot)))) {
+                merged.readFrom(in);
+            }
+        });
+        LOGGER.info("Fila {}: {} parcial(is) unidos.", runId, counts.get(WorkQueueRepository.Status.DONE));
+        salesReportWriter.writeReports(stepExecution.getJobExecutionId(), merged);
+        workQueue.deleteRun(runId);
+        return RepeatStatus.FINISHED;
+    }
+
+    // Verifica a fila a cada poll-interval-ms ate nao restar item pendente ou em andamento. A espera fica
+    // dentro de uma unica chamada do tasklet, cujo step usa um ResourcelessTransactionManager: nenhuma
+    // transacao de banco fica aberta durante o sleep e os metadados do step nao sao gravados a cada
+    // verificacao. Um stop do job e atendido na verificacao seguinte.
+    private Map<WorkQueueRepository.Status, Integer> awaitWorkers(String runId, StepExecution stepExecution)
+            throws InterruptedException, JobInterruptedException {
+        long startMillis = System.currentTimeMillis();
+        while (true) {
+            workQueue.failExhausted(runId, System.currentTimeMillis() - staleAfterMs, maxAttempts);
+            Map<WorkQueueRepository.Status, Integer> counts = workQueue.countByStatus(runId);
+            int open = counts.get(WorkQueueRepository.Status.PENDING)
+                    + counts.get(WorkQueueRepository.Status.CLAIMED);
+            if (open == 0) {
+                return counts;
+            }
+            if (stepExecution.isTerminateOnly()) {
+                throw new JobInterruptedException("Gerenciador interrompido aguardando a fila " + runId);
+            }
+            if (System.currentTimeMillis() - startMillis > timeoutMs) {
+                throw new IllegalStateException("Tempo limite aguardando os workers: " + counts);
+            }
+            LOGGER.debug("Fila {}: {}", runId, counts);
+            Thread.sleep(pollIntervalMs);
+        }
+    }
+}
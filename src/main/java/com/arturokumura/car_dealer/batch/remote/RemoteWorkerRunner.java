@@ -0,0 +1,150 @@
+package com.arturokumura.car_dealer.batch.remote;
+
+import com.arturokumura.car_dealer.batch.partition.WorkItemPartitioner;
+import com.arturokumura.car_dealer.batch.rollup.RollupEngine;
+import com.arturokumura.car_dealer.batch.writer.PartialReportRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.parameters.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobOperator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+
+// Processo worker do particionamento entre processos: reivindica itens da fila, processa cada arquivo
+// com o salesReportRemoteWorkerJob (o mesmo step de particao do modo local, com checkpoint, validacao e
+// metricas) e devolve o parcial serializado para o gerenciador. Varios workers, em um ou mais hosts,
+// podem consumir a mesma fila.
+@Component
+@ConditionalOnProperty(name = "app.batch.remote.mode", havingValue = "worker")
+public class RemoteWorkerRunner implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RemoteWorkerRunner.class);
+
+    private final WorkQueueRepository workQueue;
+    private final JobOperator jobOperator;
+    private final Job remoteWorkerJob;
+    private final PartialReportRegistry partialReportRegistry;
+    private final String owner;
+
+    @Value("${app.batch.remote.poll-interval-ms:2000}")
+    private long pollIntervalMs;
+
+    @Value("${app.batch.remote.stale-after-ms:120000}")
+    private long staleAfterMs;
+
+    @Value("${app.batch.remote.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.batch.remote.worker.idle-exit-ms:0}")
+    private long idleExitMs;
+
+    // Identifica o worker pelo host e pid do processo, com sufixo aleatorio para reinicios rapidos.
+    public RemoteWorkerRunner(WorkQueueRepository workQueue,
+                              JobOperator jobOperator,
+                              @Qualifier("salesReportRemoteWorkerJob") Job remoteWorkerJob,
+                              PartialReportRegistry partialReportRegistry) {
+        this.workQueue = workQueue;
+        this.jobOperator = jobOperator;
+        this.remoteWorkerJob = remoteWorkerJob;
+        this.partialReportRegistry = partialReportRegistry;
+        this.owner = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    // Consome a fila ate ficar ocioso por idle-exit-ms (zero = para sempre).
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        LOGGER.info("Worker {} consumindo a fila de arquivos.", owner);
+        ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor();
+        try {
+            long idleSince = System.currentTimeMillis();
+            while (!Thread.currentThread().isInterrupted()) {
+                WorkQueueRepository.WorkItem item =
+                        workQueue.claim(owner, System.currentTimeMillis() - staleAfterMs, maxAttempts);
+                if (item == null) {
+                    if (idleExitMs > 0 && System.currentTimeMillis() - idleSince >= idleExitMs) {
+                        LOGGER.info("Worker {} ocioso por {} ms. Encerrando.", owner, idleExitMs);
+                        return;
+                    }
+                    Thread.sleep(pollIntervalMs);
+                    continue;
+                }
+                long heartbeatMs = Math.max(1000, staleAfterMs / 3);
+                ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(() -> sendHeartbeat(item),
+                        heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+                try {
+                    process(item);
+                } finally {
+                    heartbeat.cancel(false);
+                }
+                idleSince = System.currentTimeMillis();
+            }
+        } finally {
+            heartbeats.shutdownNow();
+        }
+    }
+
+    // Roda o job de um arquivo e publica o parcial; qualquer falha devolve o item para a fila.
+    private void process(WorkQueueRepository.WorkItem item) {
+        String partitionName = WorkItemPartitioner.partitionName(item.id());
+        try {
+            JobExecution execution = jobOperator.start(remoteWorkerJob, new JobParametersBuilder()
+                    .addString(WorkItemPartitioner.LOCATION_PARAMETER, item.location())
+                    .addLong(WorkItemPartitioner.WORK_ITEM_PARAMETER, item.id())
+                    .addLong("attempt", (long) item.attempts())
+                    .toJobParameters());
+            RollupEngine partial = partialReportRegistry.remove(execution.getId(),
+                    WorkItemPartitioner.WORKER_STEP_NAME + ":" + partitionName);
+            if (execution.getStatus() != BatchStatus.COMPLETED || partial == null) {
+                workQueue.fail(item, owner, "Job do worker terminou com status " + execution.getStatus(), maxAttempts);
+                return;
+            }
+            byte[] snapshot = encode(partial);
+            partial.deleteSpillFiles();
+            if (!workQueue.complete(item, owner, snapshot)) {
+                LOGGER.warn("Item {} foi reivindicado por outro worker; parcial descartado.", item.location());
+                return;
+            }
+            LOGGER.info("Item concluido: {} ({} bytes de parcial)", item.location(), snapshot.length);
+        } catch (Exception e) {
+            LOGGER.error("Falha ao processar {}", item.location(), e);
+            workQueue.fail(item, owner, e.toString(), maxAttempts);
+        }
+    }
+
+    private void sendHeartbeat(WorkQueueRepository.WorkItem item) {
+        try {
+            if (!workQueue.heartbeat(item, owner)) {
+                LOGGER.warn("Posse do item {} perdida para outro worker.", item.location());
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Falha no heartbeat do item {}", item.location(), e);
+        }
+    }
+
+    // Parcial autocontido e comprimido, no formato lido pelo RollupEngine.readFrom do gerenciador.
+    private static byte[] encode(RollupEngine partial) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            partial.writePortableTo(out);
+        }
+        return bytes.toByteArray();
+    }
+}
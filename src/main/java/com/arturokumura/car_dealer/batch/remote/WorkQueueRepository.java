@@ -0,0 +1,202 @@
+package com.arturokumura.car_dealer.batch.remote;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Fila de trabalho em batch_work_item, no banco de controle do batch (app.batch.datasource.*).
+// O DataSource e proprio desta fila e nao vira bean, para nao substituir o DataSource da aplicacao.
+// Workers reivindicam itens com lock otimista (UPDATE condicionado a versao lida), entao varios
+// processos em hosts diferentes disputam a fila sem lock de linha nem SELECT ... FOR UPDATE.
+@Repository
+@ConditionalOnExpression("'${app.batch.remote.mode:off}' != 'off'")
+public class WorkQueueRepository implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WorkQueueRepository.class);
+    private static final int CLAIM_CANDIDATES = 16;
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    public enum Status {
+        PENDING, CLAIMED, DONE, FAILED
+    }
+
+    // Item reivindicado por um worker; a versao e a do registro apos a reivindicacao.
+    public record WorkItem(long id, int version, String runId, String location, int attempts) {
+    }
+
+    // Recebe o conteudo do parcial de um item concluido.
+    @FunctionalInterface
+    public interface PartialConsumer {
+        void accept(String location, byte[] snapshot) throws Exception;
+    }
+
+    private static final String CANDIDATES_SQL = """
+            SELECT id, version, run_id, location, attempts
+            FROM batch_work_item
+            WHERE (status = 'PENDING' OR (status = 'CLAIMED' AND heartbeat_at < ?))
+              AND attempts < ?
+            ORDER BY id
+            LIMIT %d
+            """.formatted(CLAIM_CANDIDATES);
+
+    private static final String CLAIM_SQL = """
+            UPDATE batch_work_item
+            SET status = 'CLAIMED', owner = ?, version = version + 1, attempts = attempts + 1, heartbeat_at = ?
+            WHERE id = ? AND version = ?
+            """;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    // Monta o DataSource da fila a partir de app.batch.datasource.* e cria a tabela se preciso.
+    public WorkQueueRepository(@Value("${app.batch.datasource.url}") String url,
+                               @Value("${app.batch.datasource.username:}") String username,
+                               @Value("${app.batch.datasource.password:}") String password) {
+        this.dataSource = DataSourceBuilder.create()
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        new ResourceDatabasePopulator(new ClassPathResource("schema-work-queue.sql")).execute(dataSource);
+    }
+
+    // Registra um item por arquivo; no restart do gerenciador, itens ja concluidos sao mantidos e
+    // os que falharam voltam para a fila.
+    public void register(String runId, List<String> locations) {
+        Set<String> existing = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT location FROM batch_work_item WHERE run_id = ?", String.class, runId));
+        List<Object[]> inserts = locations.stream()
+                .filter(location -> !existing.contains(location))
+                .map(location -> new Object[]{runId, location})
+                .toList();
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO batch_work_item (run_id, location, status, version, attempts)
+                VALUES (?, ?, 'PENDING', 0, 0)
+                """, inserts);
+        int retried = jdbcTemplate.update("""
+                UPDATE batch_work_item
+                SET status = 'PENDING', owner = NULL, attempts = 0, version = version + 1, error_message = NULL
+                WHERE run_id = ? AND status = 'FAILED'
+                """, runId);
+        LOGGER.info("Fila {}: {} item(ns) novo(s), {} ja registrado(s), {} reenfileirado(s).", runId,
+                inserts.size(), existing.size(), retried);
+    }
+
+    // Reivindica o proximo item livre ou abandonado (sem heartbeat desde staleBefore). Perder a
+    // disputa por um candidato para outro worker so faz tentar o seguinte.
+    public WorkItem claim(String owner, long staleBefore, int maxAttempts) {
+        List<WorkItem> candidates = jdbcTemplate.query(CANDIDATES_SQL,
+                (rs, rowNum) -> new WorkItem(rs.getLong("id"), rs.getInt("version"), rs.getString("run_id"),
+                        rs.getString("location"), rs.getInt("attempts")),
+                staleBefore, maxAttempts);
+        for (WorkItem candidate : candidates) {
+            int updated = jdbcTemplate.update(CLAIM_SQL, owner, System.currentTimeMillis(), candidate.id(),
+                    candidate.version());
+            if (updated == 1) {
+                return new WorkItem(candidate.id(), candidate.version() + 1, candidate.runId(),
+                        candidate.location(), candidate.attempts() + 1);
+            }
+        }
+        return null;
+    }
+
+    // Renova a posse do item; false indica que ele foi reivindicado por outro worker.
+    public boolean heartbeat(WorkItem item, String owner) {
+        return jdbcTemplate.update("""
+                UPDATE batch_work_item SET heartbeat_at = ?
+                WHERE id = ? AND owner = ? AND status = 'CLAIMED'
+                """, System.currentTimeMillis(), item.id(), owner) == 1;
+    }
+
+    // Conclui o item com o parcial serializado; ignorado se a posse foi perdida nesse meio tempo.
+    public boolean complete(WorkItem item, String owner, byte[] partialSnapshot) {
+        return jdbcTemplate.update("""
+                UPDATE batch_work_item
+                SET status = 'DONE', partial_snapshot = ?, version = version + 1, error_message = NULL
+                WHERE id = ? AND owner = ? AND status = 'CLAIMED'
+                """, partialSnapshot, item.id(), owner) == 1;
+    }
+
+    // Devolve o item para a fila, ou o marca como falho quando as tentativas acabaram.
+    public void fail(WorkItem item, String owner, String error, int maxAttempts) {
+        String message = error == null ? null : error.substring(0, Math.min(error.length(), MAX_ERROR_LENGTH));
+        jdbcTemplate.update("""
+                UPDATE batch_work_item
+                SET status = CASE WHEN attempts >= ? THEN 'FAILED' ELSE 'PENDING' END,
+                    owner = NULL, version = version + 1, error_message = ?
+                WHERE id = ? AND owner = ? AND status = 'CLAIMED'
+                """, maxAttempts, message, item.id(), owner);
+    }
+
+    // Marca como falhos os itens abandonados que ja esgotaram as tentativas.
+    public int failExhausted(String runId, long staleBefore, int maxAttempts) {
+        return jdbcTemplate.update("""
+                UPDATE batch_work_item
+                SET status = 'FAILED', owner = NULL, version = version + 1,
+                    error_message = 'Worker sem heartbeat apos a ultima tentativa'
+                WHERE run_id = ? AND status = 'CLAIMED' AND heartbeat_at < ? AND attempts >= ?
+                """, runId, staleBefore, maxAttempts);
+    }
+
+    // Quantidade de itens da execucao por status.
+    public Map<Status, Integer> countByStatus(String runId) {
+        Map<Status, Integer> counts = new EnumMap<>(Status.class);
+        for (Status status : Status.values()) {
+            counts.put(status, 0);
+        }
+        jdbcTemplate.query("SELECT status, COUNT(*) AS total FROM batch_work_item WHERE run_id = ? GROUP BY status",
+                rs -> {
+                    counts.put(Status.valueOf(rs.getString("status")), rs.getInt("total"));
+                }, runId);
+        return counts;
+    }
+
+    // Mensagens de erro dos itens falhos, para o log do gerenciador.
+    public List<String> failures(String runId) {
+        return jdbcTemplate.query("""
+                SELECT location, error_message FROM batch_work_item
+                WHERE run_id = ? AND status = 'FAILED' ORDER BY location
+                """, (rs, rowNum) -> rs.getString("location") + ": " + rs.getString("error_message"), runId);
+    }
+
+    // Entrega os parciais concluidos, um por vez, na ordem dos arquivos.
+    public void forEachPartial(String runId, PartialConsumer consumer) {
+        jdbcTemplate.query("""
+                SELECT location, partial_snapshot FROM batch_work_item
+                WHERE run_id = ? AND status = 'DONE' ORDER BY location
+                """, rs -> {
+            try {
+                consumer.accept(rs.getString("location"), rs.getBytes("partial_snapshot"));
+            } catch (Exception e) {
+                throw new IllegalStateException("Nao foi possivel ler o parcial de " + rs.getString("location"), e);
+            }
+        }, runId);
+    }
+
+    // Remove os itens de uma execucao cujo relatorio ja foi gravado.
+    public void deleteRun(String runId) {
+        jdbcTemplate.update("DELETE FROM batch_work_item WHERE run_id = ?", runId);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (dataSource instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.arturokumura.car_dealer.batch.repository;
+
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+// Modo lightweight do JobRepository: as atualizacoes do StepExecution e do seu ExecutionContext feitas
+// a cada commit de chunk so vao ao banco a cada flush-interval-ms; as demais sao descartadas, ja que a
+// proxima gravacao leva o estado completo. Criacao, inicio e fim de steps e jobs continuam imediatos.
+// O banco fica atrasado em ate um intervalo, entao restart e pedido de stop perdem precisao: o modo e
+// para execucoes que nao dependem de restart.
+@Component
+@ConditionalOnProperty(name = "app.batch.repository.mode", havingValue = "lightweight")
+public class LightweightJobRepositoryPostProcessor implements BeanPostProcessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LightweightJobRepositoryPostProcessor.class);
+
+    public static final String WRITTEN_KEY = "repository.writes.written";
+    public static final String DEFERRED_KEY = "repository.writes.deferred";
+    public static final String SAVED_MS_KEY = "repository.writes.saved-ms";
+
+    private final ObjectProvider<BatchMetrics> batchMetrics;
+    private final long flushIntervalNanos;
+    private final boolean checkpointEnabled;
+
+    // BatchMetrics vem por ObjectProvider para nao antecipar a criacao dele junto dos post-processors.
+    public LightweightJobRepositoryPostProcessor(ObjectProvider<BatchMetrics> batchMetrics,
+                                                 @Value("${app.batch.repository.flush-interval-ms:5000}") long flushIntervalMs,
+                                                 @Value("${app.report.checkpoint.enabled:true}") boolean checkpointEnabled) {
+        this.batchMetrics = batchMetrics;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, flushIntervalMs));
+        this.checkpointEnabled = checkpointEnabled;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof JobRepository)) {
+            return bean;
+        }
+        if (checkpointEnabled) {
+            LOGGER.warn("app.batch.repository.mode=lightweight com checkpoint ligado: o contexto no banco pode "
+                    + "apontar para um snapshot ja removido. Use app.report.checkpoint.enabled=false.");
+        }
+        LOGGER.info("JobRepository em modo lightweight (flush a cada {} ms).",
+                TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos));
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.addAdvice(new CoalescingInterceptor());
+        return proxyFactory.getProxy();
+    }
+
+    // Contagem de gravacoes de um StepExecution em andamento.
+    private static final class StepWrites {
+        private long lastUpdateNanos;
+        private long lastContextNanos;
+        private long written;
+        private long deferred;
+        private long writtenNanos;
+    }
+
+    private final class CoalescingInterceptor implements MethodInterceptor {
+
+        private final ConcurrentMap<Long, StepWrites> writesByStep = new ConcurrentHashMap<>();
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Object[] arguments = invocation.getArguments();
+            String method = invocation.getMethod().getName();
+            // No Batch 6 o StepExecution ja nasce com id do JobRepository; nao ha execucao sem id aqui
+            if (arguments.length != 1 || !(arguments[0] instanceof StepExecution stepExecution)
+                    || !("update".equals(method) || "updateExecutionContext".equals(method))) {
+                return invocation.proceed();
+            }
+            boolean contextWrite = "updateExecutionContext".equals(method);
+            if (stepExecution.getStatus() != BatchStatus.STARTED) {
+                // Gravacao final do step: o contexto leva junto o resumo do que foi evitado
+                StepWrites writes = writesByStep.remove(stepExecution.getId());
+                if (contextWrite && writes != null) {
+                    publish(stepExecution, writes);
+                }
+                return invocation.proceed();
+            }
+
+            StepWrites writes = writesByStep.computeIfAbsent(stepExecution.getId(), id -> new StepWrites());
+            long now = System.nanoTime();
+            long last = contextWrite ? writes.lastContextNanos : writes.lastUpdateNanos;
+            if (last != 0 && now - last < flushIntervalNanos) {
+                writes.deferred++;
+                return null;
+            }
+            Object result = invocation.proceed();
+            long done = System.nanoTime();
+            writes.written++;
+            writes.writtenNanos += done - now;
+            if (contextWrite) {
+                writes.lastContextNanos = done;
+            } else {
+                writes.lastUpdateNanos = done;
+            }
+            return result;
+        }
+
+        // Tempo poupado estimado pela duracao media das gravacoes intermediarias que foram ao banco.
+        private void publish(StepExecution stepExecution, StepWrites writes) {
+            long savedMs = writes.written == 0 ? 0
+                    : TimeUnit.NANOSECONDS.toMillis(writes.writtenNanos / writes.written * writes.deferred);
+            ExecutionContext context = stepExecution.getExecutionContext();
+            context.putLong(WRITTEN_KEY, writes.written);
+            context.putLong(DEFERRED_KEY, writes.deferred);
+            context.putLong(SAVED_MS_KEY, savedMs);
+            batchMetrics.ifAvailable(metrics -> metrics.recordRepositoryWrites(writes.written, writes.deferred));
+            LOGGER.info("{}: {} gravacao(oes) intermediaria(s) no JobRepository, {} evitada(s) (~{} ms).",
+                    stepExecution.getStepName(), writes.written, writes.deferred, savedMs);
+        }
+    }
+}
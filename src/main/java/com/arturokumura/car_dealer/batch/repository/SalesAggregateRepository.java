@@ -0,0 +1,159 @@
+package com.arturokumura.car_dealer.batch.repository;
+
+import com.arturokumura.car_dealer.batch.domain.ReportLine;
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Totais acumulados por filial, modelo e mes na tabela sales_aggregate, e por filial e modelo em
+// sales_aggregate_totals, que atende o relatorio sem reagrupar o historico. Cada chunk e somado com
+// upsert em lote na transacao do proprio chunk, junto com o registro de quantas vendas de cada origem
+// (step ou particao da instancia do job) ja foram somadas: reaplicar um trecho ja somado nao altera
+// os totais.
+@Repository
+public class SalesAggregateRepository {
+
+    public static final String SOURCE_AGGREGATE_TABLE = "aggregate-table";
+
+    // Casas decimais de revenue_brl; precos com mais casas seriam arredondados pelo banco.
+    static final int REVENUE_SCALE = 4;
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO sales_aggregate (dealer_id, model, period, units_sold, revenue_brl)
+            VALUES (?, ?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE
+                units_sold = units_sold + VALUES(units_sold),
+                revenue_brl = revenue_brl + VALUES(revenue_brl)
+            """;
+
+    private static final String UPSERT_TOTALS_SQL = """
+            INSERT INTO sales_aggregate_totals (dealer_id, model, units_sold, revenue_brl)
+            VALUES (?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE
+                units_sold = units_sold + VALUES(units_sold),
+                revenue_brl = revenue_brl + VALUES(revenue_brl)
+            """;
+
+    private static final String REGISTER_SOURCE_SQL =
+            "INSERT IGNORE INTO sales_aggregate_sources (source_id, applied_sales) VALUES (?, 0)";
+
+    private static final String LOCK_SOURCE_SQL =
+            "SELECT applied_sales FROM sales_aggregate_sources WHERE source_id = ? FOR UPDATE";
+
+    private static final String ADVANCE_SOURCE_SQL =
+            "UPDATE sales_aggregate_sources SET applied_sales = ? WHERE source_id = ?";
+
+    private static final String REPORT_SQL = """
+            SELECT COALESCE(d.dealer_name, t.dealer_id) AS report_dealer_name,
+                   t.model,
+                   t.units_sold,
+                   t.revenue_brl
+            FROM sales_aggregate_totals t
+            LEFT JOIN dealers d ON d.dealer_id = t.dealer_id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+
+    private record AggregateKey(String dealerId, String model, String period) {
+    }
+
+    private record TotalsKey(String dealerId, String model) {
+    }
+
+    private static final class AggregateTotals {
+        private int units;
+        private BigDecimal revenue = BigDecimal.ZERO;
+
+        private void add(BigDecimal price) {
+            units++;
+            revenue = revenue.add(price);
+        }
+    }
+
+    // Ativo quando o relatorio e gerado a partir da tabela acumulada (app.report.source=aggregate-table).
+    public SalesAggregateRepository(JdbcTemplate jdbcTemplate,
+                                    @Value("${app.report.source:memory}") String reportSource) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = SOURCE_AGGREGATE_TABLE.equalsIgnoreCase(reportSource);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Soma o chunk na tabela. firstSale e a posicao da primeira venda do chunk na origem; vendas abaixo
+    // do que a origem ja registrou foram somadas por uma tentativa anterior e sao ignoradas. Vendas da
+    // mesma chave sao reunidas antes para gerar uma linha por chave.
+    public void upsert(String sourceId, long firstSale, Chunk<? extends SaleRecord> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(REGISTER_SOURCE_SQL, sourceId);
+        long appliedSales = jdbcTemplate.queryForObject(LOCK_SOURCE_SQL, Long.class, sourceId);
+        long lastSale = firstSale + items.size();
+        if (appliedSales >= lastSale) {
+            return;
+        }
+
+        Map<AggregateKey, AggregateTotals> totals = new LinkedHashMap<>();
+        Map<TotalsKey, AggregateTotals> reportTotals = new LinkedHashMap<>();
+        long position = firstSale;
+        for (SaleRecord item : items) {
+            if (position++ < appliedSales) {
+                continue;
+            }
+            BigDecimal price = requireStorableScale(item);
+            totals.computeIfAbsent(new AggregateKey(item.dealerId(), item.model(), periodOf(item.saleDate())),
+                    ignored -> new AggregateTotals()).add(price);
+            reportTotals.computeIfAbsent(new TotalsKey(item.dealerId(), item.model()),
+                    ignored -> new AggregateTotals()).add(price);
+        }
+
+        List<Object[]> batchArgs = new ArrayList<>(totals.size());
+        totals.forEach((key, total) -> batchArgs.add(new Object[]{
+                key.dealerId(), key.model(), key.period(), total.units, total.revenue}));
+        jdbcTemplate.batchUpdate(UPSERT_SQL, batchArgs);
+
+        List<Object[]> totalsArgs = new ArrayList<>(reportTotals.size());
+        reportTotals.forEach((key, total) -> totalsArgs.add(new Object[]{
+                key.dealerId(), key.model(), total.units, total.revenue}));
+        jdbcTemplate.batchUpdate(UPSERT_TOTALS_SQL, totalsArgs);
+        jdbcTemplate.update(ADVANCE_SOURCE_SQL, lastSale, sourceId);
+    }
+
+    // Totais acumulados de todos os periodos por filial e modelo; filiais com o mesmo nome saem em
+    // linhas separadas e sao somadas por quem ordena as linhas.
+    public List<ReportLine> findReportLines() {
+        return jdbcTemplate.query(REPORT_SQL, (rs, rowNum) -> new ReportLine(
+                rs.getString("report_dealer_name"),
+                rs.getString("model"),
+                rs.getInt("units_sold"),
+                rs.getBigDecimal("revenue_brl")));
+    }
+
+    // Mes da venda (yyyy-MM) a partir da data ISO do CSV.
+    private static String periodOf(String saleDate) {
+        return saleDate != null && saleDate.length() >= 7 ? saleDate.substring(0, 7) : "";
+    }
+
+    // A coluna guarda REVENUE_SCALE casas; um preco com mais casas interrompe o chunk em vez de ser
+    // arredondado em silencio.
+    private static BigDecimal requireStorableScale(SaleRecord item) {
+        BigDecimal price = item.salePriceBrl();
+        if (price.scale() > REVENUE_SCALE && price.stripTrailingZeros().scale() > REVENUE_SCALE) {
+            throw new IllegalStateException("sale_price_brl com mais de " + REVENUE_SCALE
+                    + " casas decimais nao cabe em sales_aggregate: " + price.toPlainString()
+                    + " (filial " + item.dealerId() + ", modelo " + item.model() + ")");
+        }
+        return price;
+    }
+}
@@ -0,0 +1,50 @@
+package com.arturokumura.car_dealer.batch.rollup;
+
+import com.arturokumura.car_dealer.batch.domain.ReportLine;
+
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// Um agrupamento do relatorio: nome usado no arquivo de saida e ate duas dimensoes.
+// Sem dimensoes o rollup e o total geral.
+public record RollupDefinition(String name, List<RollupDimension> dimensions) {
+
+    public static final int MAX_DIMENSIONS = 2;
+
+    // O nome vira parte do nome do arquivo de saida; so letras, digitos, '-' e '_'.
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    public RollupDefinition {
+        if (name == null || !VALID_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Nome de rollup invalido (use letras, digitos, '-' ou '_', ate 64): "
+                    + name);
+        }
+        dimensions = List.copyOf(dimensions);
+        if (dimensions.size() > MAX_DIMENSIONS) {
+            throw new IllegalArgumentException("Rollup " + name + " tem mais de " + MAX_DIMENSIONS + " dimensoes");
+        }
+    }
+
+    public String header() {
+        StringBuilder header = new StringBuilder();
+        for (RollupDimension dimension : dimensions) {
+            header.append(dimension.columnName()).append(',');
+        }
+        return header.append("units_sold,revenue_brl").toString();
+    }
+
+    // O agregado guarda as chaves do rollup nas duas posicoes da ReportLine (dealerName e model).
+    public String toCsv(ReportLine line) {
+        StringBuilder csv = new StringBuilder();
+        if (dimensions.size() > 0) {
+            csv.append(line.dealerName()).append(',');
+        }
+        if (dimensions.size() > 1) {
+            csv.append(line.model()).append(',');
+        }
+        return csv.append(line.unitsSold()).append(',')
+                .append(line.revenueBrl().setScale(2, RoundingMode.HALF_UP).toPlainString())
+                .toString();
+    }
+}
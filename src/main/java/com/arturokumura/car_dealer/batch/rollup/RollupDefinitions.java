@@ -0,0 +1,83 @@
+package com.arturokumura.car_dealer.batch.rollup;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Rollups adicionais configurados em app.report.rollups, no formato
+// "nome:dimensao,dimensao;nome:dimensao;total:". O relatorio filial x modelo e sempre calculado.
+@Component
+public class RollupDefinitions {
+
+    public static final RollupDefinition PRIMARY =
+            new RollupDefinition("report", List.of(RollupDimension.DEALER, RollupDimension.MODEL));
+
+    private final List<RollupDefinition> extras;
+    private final int maxKeysInMemory;
+    private final Path spillDirectory;
+
+    // Recebe os rollups e o orcamento de memoria de cada agregado (zero desliga o spill).
+    public RollupDefinitions(@Value("${app.report.rollups:}") String rollups,
+                             @Value("${app.report.spill.max-keys-in-memory:0}") int maxKeysInMemory,
+                             @Value("${app.report.spill.dir:${app.data-dir}/spill}") String spillDirectory) {
+        this.extras = parse(rollups);
+        this.maxKeysInMemory = maxKeysInMemory;
+        this.spillDirectory = Path.of(spillDirectory).toAbsolutePath().normalize();
+    }
+
+    // Cria um motor vazio com o relatorio principal e os rollups configurados.
+    public RollupEngine newEngine() {
+        return newEngine(true);
+    }
+
+    // Sem o principal em memoria, para quem le o relatorio principal de sales_aggregate.
+    public RollupEngine newEngine(boolean primaryInMemory) {
+        return new RollupEngine(PRIMARY, extras, primaryInMemory, maxKeysInMemory, spillDirectory);
+    }
+
+    // Diretorio de spill exclusivo de um escopo de checkpoint, para que o restart saiba quais runs
+    // sao seus.
+    public Path spillDirectory(String scope) {
+        return spillDirectory.resolve(scope.replaceAll("[^A-Za-z0-9_.-]", "_"));
+    }
+
+    public List<RollupDefinition> extras() {
+        return extras;
+    }
+
+    // Nomes repetidos, ou iguais ao do relatorio principal, gravariam no mesmo arquivo e se misturariam
+    // no checkpoint, que identifica cada rollup pelo nome.
+    private static List<RollupDefinition> parse(String rollups) {
+        List<RollupDefinition> definitions = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        names.add(PRIMARY.name());
+        if (rollups == null || rollups.isBlank()) {
+            return definitions;
+        }
+        for (String entry : rollups.split(";")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int separator = entry.indexOf(':');
+            String name = (separator < 0 ? entry : entry.substring(0, separator)).trim();
+            List<RollupDimension> dimensions = new ArrayList<>();
+            if (separator >= 0) {
+                for (String dimension : entry.substring(separator + 1).split(",")) {
+                    if (!dimension.isBlank()) {
+                        dimensions.add(RollupDimension.fromConfigName(dimension));
+                    }
+                }
+            }
+            if (!names.add(name)) {
+                throw new IllegalArgumentException("Nome de rollup repetido ou reservado: " + name);
+            }
+            definitions.add(new RollupDefinition(name, dimensions));
+        }
+        return List.copyOf(definitions);
+    }
+}
@@ -0,0 +1,41 @@
+package com.arturokumura.car_dealer.batch.rollup;
+
+// Colunas da venda que podem compor um agrupamento, com o nome usado na configuracao e no cabecalho.
+public enum RollupDimension {
+
+    DEALER("dealer", "dealer_name"),
+    MODEL("model", "model"),
+    DAY("day", "sale_date"),
+    PAYMENT_TYPE("payment_type", "payment_type");
+
+    private final String configName;
+    private final String columnName;
+
+    RollupDimension(String configName, String columnName) {
+        this.configName = configName;
+        this.columnName = columnName;
+    }
+
+    public String columnName() {
+        return columnName;
+    }
+
+    // Valor da dimensao a partir dos campos ja separados, como no cache colunar.
+    public String valueOf(String dealerName, String model, String saleDate, String paymentType) {
+        return switch (this) {
+            case DEALER -> dealerName;
+            case MODEL -> model;
+            case DAY -> saleDate;
+            case PAYMENT_TYPE -> paymentType;
+        };
+    }
+
+    public static RollupDimension fromConfigName(String name) {
+        for (RollupDimension dimension : values()) {
+            if (dimension.configName.equalsIgnoreCase(name.trim())) {
+                return dimension;
+            }
+        }
+        throw new IllegalArgumentException("Dimensao de rollup desconhecida: " + name);
+    }
+}
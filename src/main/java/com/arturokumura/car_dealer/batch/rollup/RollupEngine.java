@@ -0,0 +1,210 @@
+package com.arturokumura.car_dealer.batch.rollup;
+
+import com.arturokumura.car_dealer.batch.aggregation.AggregateState;
+import com.arturokumura.car_dealer.batch.aggregation.NameDictionary;
+import com.arturokumura.car_dealer.batch.aggregation.SpillingAggregator;
+import com.arturokumura.car_dealer.batch.dimension.DealerDimension;
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+// Calcula todos os rollups em uma unica passada: cada venda e somada uma vez em cada agregado.
+// Cada rollup usa um agregado com as chaves do agrupamento no par (primeira, segunda chave), sujeito
+// ao orcamento de chaves em memoria com spill para disco. Sem o relatorio principal em memoria (quando
+// ele vem de sales_aggregate), so os rollups adicionais recebem as vendas. A filial chega pelo id denso
+// da dimensao e o nome so e consultado quando a chave dela e criada em cada agregado; saida, spill e
+// checkpoint continuam com nomes, que valem entre versoes da dimensao.
+public final class RollupEngine implements AggregateState {
+
+    private static final String NO_KEY = "";
+
+    private final List<RollupDefinition> definitions = new ArrayList<>();
+    private final SpillingAggregator[] aggregators;
+    private final RollupDimension[] firstDimensions;
+    private final RollupDimension[] secondDimensions;
+    private final int firstAggregated;
+    private DealerDimension dealers;
+    private IntFunction<String> dealerNames;
+
+    RollupEngine(RollupDefinition primary, List<RollupDefinition> extras, boolean primaryInMemory,
+                 int maxKeysInMemory, Path spillDirectory) {
+        definitions.add(primary);
+        definitions.addAll(extras);
+        aggregators = new SpillingAggregator[definitions.size()];
+        firstDimensions = new RollupDimension[definitions.size()];
+        secondDimensions = new RollupDimension[definitions.size()];
+        for (int i = 0; i < definitions.size(); i++) {
+            List<RollupDimension> dimensions = definitions.get(i).dimensions();
+            aggregators[i] = new SpillingAggregator(maxKeysInMemory, spillDirectory);
+            firstDimensions[i] = dimensions.size() > 0 ? dimensions.get(0) : null;
+            secondDimensions[i] = dimensions.size() > 1 ? dimensions.get(1) : null;
+        }
+        firstAggregated = primaryInMemory ? 0 : 1;
+    }
+
+    // Versao da dimensao de filiais dos ids densos recebidos em add. Ao trocar de versao os atalhos por id
+    // sao esquecidos, pois o mesmo id pode ter outro nome; as chaves ja somadas ficam como estao.
+    public void useDealers(DealerDimension dimension) {
+        if (dimension == dealers) {
+            return;
+        }
+        for (SpillingAggregator aggregator : aggregators) {
+            aggregator.firstKeys().clearKeys();
+            aggregator.secondKeys().clearKeys();
+        }
+        dealers = dimension;
+        dealerNames = dimension::nameOf;
+    }
+
+    // Soma a venda em todos os rollups. A filial entra pelo id denso da versao em useDealers; sem cadastro
+    // (DealerDimension.UNKNOWN) o proprio dealer_id e o nome.
+    public void add(SaleRecord sale, int dealerDenseId) {
+        for (int i = firstAggregated; i < aggregators.length; i++) {
+            SpillingAggregator aggregator = aggregators[i];
+            aggregator.addSaleByIds(
+                    keyIdOf(aggregator.firstKeys(), firstDimensions[i], dealerDenseId, sale.dealerId(),
+                            sale.model(), sale.saleDate(), sale.paymentType()),
+                    keyIdOf(aggregator.secondKeys(), secondDimensions[i], dealerDenseId, sale.dealerId(),
+                            sale.model(), sale.saleDate(), sale.paymentType()),
+                    sale.salePriceBrl());
+        }
+    }
+
+    // Soma em todos os rollups uma venda lida do cache colunar, com o preco em centavos.
+    public void add(int dealerDenseId, String dealerId, String model, String saleDate, String paymentType,
+                    long centavos) {
+        for (int i = firstAggregated; i < aggregators.length; i++) {
+            SpillingAggregator aggregator = aggregators[i];
+            aggregator.addCentavosByIds(
+                    keyIdOf(aggregator.firstKeys(), firstDimensions[i], dealerDenseId, dealerId, model, saleDate,
+                            paymentType),
+                    keyIdOf(aggregator.secondKeys(), secondDimensions[i], dealerDenseId, dealerId, model, saleDate,
+                            paymentType),
+                    centavos);
+        }
+    }
+
+    // Soma outro motor com os mesmos rollups neste.
+    public void merge(RollupEngine other) {
+        for (int i = 0; i < aggregators.length; i++) {
+            aggregators[i].merge(other.aggregators[i]);
+        }
+    }
+
+    // Linhas do relatorio principal filial x modelo, ordenadas por filial e modelo.
+    public void forEachPrimaryLine(SpillingAggregator.LineConsumer consumer) throws IOException {
+        aggregators[0].forEachSorted(consumer);
+    }
+
+    public List<RollupDefinition> extraDefinitions() {
+        return definitions.subList(1, definitions.size());
+    }
+
+    // Linhas ordenadas do rollup adicional informado, na ordem de extraDefinitions.
+    public void forEachExtraLine(int index, SpillingAggregator.LineConsumer consumer) throws IOException {
+        aggregators[index + 1].forEachSorted(consumer);
+    }
+
+    // Total de chaves mantidas em memoria, somando todos os rollups.
+    public int size() {
+        int size = 0;
+        for (SpillingAggregator aggregator : aggregators) {
+            size += aggregator.size();
+        }
+        return size;
+    }
+
+    // Indica se algum rollup ja gravou runs de spill.
+    public boolean hasSpilled() {
+        for (SpillingAggregator aggregator : aggregators) {
+            if (aggregator.hasRuns()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Arquivos de run de todos os rollups que compoem o estado atual.
+    public Set<Path> spillFiles() {
+        Set<Path> files = new HashSet<>();
+        for (SpillingAggregator aggregator : aggregators) {
+            files.addAll(aggregator.runFiles());
+        }
+        return files;
+    }
+
+    // Diretorio dos proximos runs de spill de todos os rollups.
+    public void spillInto(Path directory) {
+        for (SpillingAggregator aggregator : aggregators) {
+            aggregator.spillInto(directory);
+        }
+    }
+
+    public void clear() {
+        for (SpillingAggregator aggregator : aggregators) {
+            aggregator.clear();
+        }
+    }
+
+    // Remove os arquivos de spill apos a gravacao das saidas.
+    public void deleteSpillFiles() {
+        for (SpillingAggregator aggregator : aggregators) {
+            aggregator.deleteRuns();
+        }
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(aggregators.length);
+        for (int i = 0; i < aggregators.length; i++) {
+            out.writeUTF(definitions.get(i).name());
+            aggregators[i].writeTo(out);
+        }
+    }
+
+    // Como writeTo, mas sem referencias a runs de spill locais; lido pelo mesmo readFrom.
+    public void writePortableTo(DataOutput out) throws IOException {
+        out.writeInt(aggregators.length);
+        for (int i = 0; i < aggregators.length; i++) {
+            out.writeUTF(definitions.get(i).name());
+            aggregators[i].writePortableTo(out);
+        }
+    }
+
+    // Rollups do snapshot que nao existem mais na configuracao sao lidos e descartados.
+    @Override
+    public void readFrom(DataInput in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            SpillingAggregator target = new SpillingAggregator(0, null);
+            for (int j = 0; j < definitions.size(); j++) {
+                if (definitions.get(j).name().equals(name)) {
+                    target = aggregators[j];
+                    break;
+                }
+            }
+            target.readFrom(in);
+        }
+    }
+
+    // Id da chave no dicionario do agregado: a filial cadastrada vai pelo id denso, sem hash do nome.
+    private int keyIdOf(NameDictionary keys, RollupDimension dimension, int dealerDenseId, String dealerId,
+                        String model, String saleDate, String paymentType) {
+        if (dimension == RollupDimension.DEALER && dealerDenseId != DealerDimension.UNKNOWN) {
+            if (dealers == null) {
+                throw new IllegalStateException("Id denso de filial recebido sem useDealers");
+            }
+            return keys.idOfKey(dealerDenseId, dealerNames);
+        }
+        return keys.idOf(dimension == null ? NO_KEY : dimension.valueOf(dealerId, model, saleDate, paymentType));
+    }
+}
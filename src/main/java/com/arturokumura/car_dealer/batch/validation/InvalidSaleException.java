@@ -0,0 +1,11 @@
+package com.arturokumura.car_dealer.batch.validation;
+
+// Venda lida corretamente do CSV, mas rejeitada pelas regras do SaleValidator.
+public class InvalidSaleException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidSaleException(String reason) {
+        super(reason);
+    }
+}
@@ -0,0 +1,135 @@
+package com.arturokumura.car_dealer.batch.validation;
+
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+// CSV de quarentena de um arquivo de filial: numero do registro no arquivo, motivo e a linha original.
+// O arquivo so e criado na primeira rejeicao, com o nome de origem e o horario da execucao. Tambem
+// registra as vendas duplicadas, com outro sufixo. O arquivo nao participa da transacao do chunk: o
+// commit guarda no ExecutionContext o caminho e o tamanho confirmados, e o restart continua o mesmo
+// arquivo a partir desse tamanho, sem repetir as linhas rejeitadas de novo na releitura.
+public class QuarantineFile implements Closeable {
+
+    public static final String HEADER = "record,reason,line";
+    private static final DateTimeFormatter FILE_SUFFIX_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
+    private static final String FILE_SUFFIX = ".file";
+    private static final String BYTES_SUFFIX = ".bytes";
+    private static final String REJECTED_SUFFIX = ".rejected";
+
+    private final Path directory;
+    private final String sourceFileName;
+    private final String kind;
+    private BufferedWriter writer;
+    private Path path;
+    private long rejected;
+
+    public QuarantineFile(Path directory, String sourceFileName) {
+        this(directory, sourceFileName, "quarantine");
+    }
+
+    public QuarantineFile(Path directory, String sourceFileName, String kind) {
+        this.directory = directory;
+        this.sourceFileName = sourceFileName;
+        this.kind = kind;
+    }
+
+    // Acrescenta uma linha rejeitada.
+    public void write(long record, String reason, String line) throws IOException {
+        if (writer == null) {
+            Files.createDirectories(directory);
+            path = directory.resolve(quarantineFileName());
+            writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+            writer.write(HEADER);
+            writer.newLine();
+        }
+        writer.write(Long.toString(record));
+        writer.write(',');
+        writer.write(quote(reason));
+        writer.write(',');
+        writer.write(quote(line));
+        writer.newLine();
+        rejected++;
+    }
+
+    // Garante no disco as rejeicoes ate o commit corrente.
+    public void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    // Leva as rejeicoes para o disco e confirma no ExecutionContext o arquivo e o tamanho ate o commit.
+    public void update(ExecutionContext executionContext, String key) throws IOException {
+        flush();
+        if (path == null) {
+            executionContext.remove(key + FILE_SUFFIX);
+            executionContext.remove(key + BYTES_SUFFIX);
+            executionContext.remove(key + REJECTED_SUFFIX);
+            return;
+        }
+        executionContext.putString(key + FILE_SUFFIX, path.toString());
+        executionContext.putLong(key + BYTES_SUFFIX, Files.size(path));
+        executionContext.putLong(key + REJECTED_SUFFIX, rejected);
+    }
+
+    // Em um restart, reabre o arquivo da execucao anterior cortado no tamanho do ultimo commit; as
+    // linhas gravadas depois dele voltam a ser rejeitadas quando a leitura passar por elas.
+    public void restore(ExecutionContext executionContext, String key) throws IOException {
+        if (!executionContext.containsKey(key + FILE_SUFFIX)) {
+            return;
+        }
+        Path previous = Path.of(executionContext.getString(key + FILE_SUFFIX));
+        if (!Files.isRegularFile(previous)) {
+            return;
+        }
+        long committedBytes = executionContext.getLong(key + BYTES_SUFFIX);
+        try (FileChannel channel = FileChannel.open(previous, StandardOpenOption.WRITE)) {
+            if (channel.size() > committedBytes) {
+                channel.truncate(committedBytes);
+            }
+        }
+        path = previous;
+        writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        rejected = executionContext.getLong(key + REJECTED_SUFFIX, 0L);
+    }
+
+    public long rejected() {
+        return rejected;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    // <nome do arquivo>-<tipo>_<data>.csv, no padrao de sufixo de data dos relatorios.
+    private String quarantineFileName() {
+        int dotIndex = sourceFileName.lastIndexOf('.');
+        String baseName = dotIndex > 0 ? sourceFileName.substring(0, dotIndex) : sourceFileName;
+        return baseName + "-" + kind + "_" + LocalDateTime.now().format(FILE_SUFFIX_FORMATTER) + ".csv";
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "";
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
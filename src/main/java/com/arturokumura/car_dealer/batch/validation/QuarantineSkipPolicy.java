@@ -0,0 +1,24 @@
+package com.arturokumura.car_dealer.batch.validation;
+
+import org.springframework.batch.core.step.skip.SkipPolicy;
+import org.springframework.batch.infrastructure.item.file.FlatFileParseException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Decide se uma linha ruim vai para a quarentena ou derruba o step: so erros de parse e de
+// validacao sao pulados, ate o limite configurado por step (negativo = sem limite).
+@Component
+public class QuarantineSkipPolicy implements SkipPolicy {
+
+    private final long skipLimit;
+
+    public QuarantineSkipPolicy(@Value("${app.validation.skip-limit:-1}") long skipLimit) {
+        this.skipLimit = skipLimit;
+    }
+
+    @Override
+    public boolean shouldSkip(Throwable t, long skipCount) {
+        boolean skippable = t instanceof InvalidSaleException || t instanceof FlatFileParseException;
+        return skippable && (skipLimit < 0 || skipCount < skipLimit);
+    }
+}
@@ -0,0 +1,108 @@
+package com.arturokumura.car_dealer.batch.validation;
+
+import com.arturokumura.car_dealer.batch.dimension.DealerDimension;
+import com.arturokumura.car_dealer.batch.dimension.DealerDimensionCache;
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Regras de validacao de uma venda ja lida do CSV: data ISO tipada, preco dentro dos limites,
+// filial cadastrada em dealers e modelo/pagamento preenchidos. Devolve o motivo da rejeicao ou
+// null, sem excecao no caminho das linhas boas.
+@Component
+public class SaleValidator {
+
+    private final DealerDimensionCache dealerDimensionCache;
+    private final boolean enabled;
+    private final BigDecimal maxPrice;
+    private final int maxFutureDays;
+    private final ConcurrentMap<String, Integer> epochDays = new ConcurrentHashMap<>();
+    private volatile DealerDimension knownDealers;
+    private volatile long lastAcceptedEpochDay = Long.MAX_VALUE;
+
+    // Recebe os limites de preco e de data futura aceitos.
+    public SaleValidator(DealerDimensionCache dealerDimensionCache,
+                         @Value("${app.validation.enabled:true}") boolean enabled,
+                         @Value("${app.validation.max-price-brl:10000000}") BigDecimal maxPrice,
+                         @Value("${app.validation.max-future-days:1}") int maxFutureDays) {
+        this.dealerDimensionCache = dealerDimensionCache;
+        this.enabled = enabled;
+        this.maxPrice = maxPrice;
+        this.maxFutureDays = maxFutureDays;
+    }
+
+    // Atualiza a versao das filiais cadastradas e a data limite; chamado na criacao do reader de cada step.
+    public void refresh() {
+        lastAcceptedEpochDay = LocalDate.now().toEpochDay() + maxFutureDays;
+        knownDealers = dealerDimensionCache.current();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Motivo da rejeicao da venda, ou null se ela for valida (ou se a validacao estiver desligada).
+    public String validate(SaleRecord sale) {
+        if (!enabled) {
+            return null;
+        }
+        if (knownDealers == null) {
+            refresh();
+        }
+        String dealerId = sale.dealerId();
+        if (dealerId == null || dealerId.isBlank()) {
+            return "dealer_id vazio";
+        }
+        if (!knownDealers.contains(dealerId)) {
+            dealerDimensionCache.recordMiss(dealerId);
+            return "dealer_id nao cadastrado: " + dealerId;
+        }
+        String dateError = validateDate(sale.saleDate());
+        if (dateError != null) {
+            return dateError;
+        }
+        if (sale.model() == null || sale.model().isBlank()) {
+            return "model vazio";
+        }
+        if (sale.paymentType() == null || sale.paymentType().isBlank()) {
+            return "payment_type vazio";
+        }
+        BigDecimal price = sale.salePriceBrl();
+        if (price == null) {
+            return "sale_price_brl vazio";
+        }
+        if (price.signum() <= 0) {
+            return "sale_price_brl nao positivo: " + price.toPlainString();
+        }
+        if (price.compareTo(maxPrice) > 0) {
+            return "sale_price_brl acima do limite: " + price.toPlainString();
+        }
+        return null;
+    }
+
+    // As datas se repetem muito entre as linhas; cada texto valido e convertido uma unica vez.
+    private String validateDate(String saleDate) {
+        if (saleDate == null || saleDate.isBlank()) {
+            return "sale_date vazia";
+        }
+        Integer epochDay = epochDays.get(saleDate);
+        if (epochDay == null) {
+            try {
+                epochDay = Math.toIntExact(LocalDate.parse(saleDate).toEpochDay());
+            } catch (DateTimeException | ArithmeticException e) {
+                return "sale_date invalida: " + saleDate;
+            }
+            epochDays.put(saleDate, epochDay);
+        }
+        if (epochDay > lastAcceptedEpochDay) {
+            return "sale_date no futuro: " + saleDate;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,98 @@
+package com.arturokumura.car_dealer.batch.writer;
+
+import com.arturokumura.car_dealer.batch.rollup.RollupDefinitions;
+import com.arturokumura.car_dealer.batch.rollup.RollupEngine;
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.batch.core.job.JobInstance;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Parciais publicados pelas particoes, separados por JobExecution: execucoes simultaneas de jobs
+// particionados no mesmo processo nunca juntam nem descartam os parciais umas das outras.
+@Component
+public class PartialReportRegistry {
+
+    private final Map<Long, Map<String, RollupEngine>> partialsByExecution = new ConcurrentHashMap<>();
+    private final RollupDefinitions rollupDefinitions;
+    private final BatchMetrics batchMetrics;
+
+    public PartialReportRegistry(RollupDefinitions rollupDefinitions, BatchMetrics batchMetrics) {
+        this.rollupDefinitions = rollupDefinitions;
+        this.batchMetrics = batchMetrics;
+    }
+
+    // No modo particionado o agregado vive nos parciais ate o merge; o gauge soma as chaves deles.
+    @PostConstruct
+    void registerMetrics() {
+        batchMetrics.registerAggregateSize("partitions", this, PartialReportRegistry::size);
+    }
+
+    // Registra o agregado parcial produzido por uma particao da execucao.
+    public void register(long jobExecutionId, String partitionName, RollupEngine partial) {
+        partialsByExecution.computeIfAbsent(jobExecutionId, id -> new ConcurrentHashMap<>())
+                .put(partitionName, partial);
+    }
+
+    // Indica se a particao ja publicou seu parcial nesta execucao.
+    public boolean contains(long jobExecutionId, String partitionName) {
+        Map<String, RollupEngine> partials = partialsByExecution.get(jobExecutionId);
+        return partials != null && partials.containsKey(partitionName);
+    }
+
+    // Retira o parcial de uma particao, usado quando ele sai deste processo.
+    public RollupEngine remove(long jobExecutionId, String partitionName) {
+        Map<String, RollupEngine> partials = partialsByExecution.get(jobExecutionId);
+        RollupEngine partial = partials == null ? null : partials.remove(partitionName);
+        if (partials != null && partials.isEmpty()) {
+            partialsByExecution.remove(jobExecutionId, partials);
+        }
+        return partial;
+    }
+
+    // Chaves em memoria de todos os parciais registrados, em todas as execucoes.
+    int size() {
+        int size = 0;
+        for (Map<String, RollupEngine> partials : partialsByExecution.values()) {
+            for (RollupEngine partial : partials.values()) {
+                size += partial.size();
+            }
+        }
+        return size;
+    }
+
+    // Particoes que publicaram parcial nesta execucao.
+    public Set<String> partitionNames(long jobExecutionId) {
+        return Set.copyOf(partialsByExecution.getOrDefault(jobExecutionId, Map.of()).keySet());
+    }
+
+    // Junta os parciais da execucao na ordem dos nomes das particoes, independente da ordem de termino
+    // das threads.
+    public RollupEngine merge(long jobExecutionId) {
+        RollupEngine merged = rollupDefinitions.newEngine();
+        Map<String, RollupEngine> partials = partialsByExecution.getOrDefault(jobExecutionId, Map.of());
+        for (RollupEngine partial : new TreeMap<>(partials).values()) {
+            merged.merge(partial);
+        }
+        return merged;
+    }
+
+    // Motor vazio com os rollups configurados, para restaurar o parcial de uma particao.
+    public RollupEngine newPartial() {
+        return rollupDefinitions.newEngine();
+    }
+
+    // Escopo dos checkpoints de uma particao, estavel entre execucoes da mesma instancia do job.
+    public static String checkpointScope(String partitionName, JobInstance jobInstance) {
+        return partitionName + "-" + jobInstance.getInstanceId();
+    }
+
+    // Descarta os parciais de uma execucao.
+    public void clear(long jobExecutionId) {
+        partialsByExecution.remove(jobExecutionId);
+    }
+}
@@ -0,0 +1,69 @@
+package com.arturokumura.car_dealer.batch.writer;
+
+import com.arturokumura.car_dealer.batch.aggregation.AggregateCheckpoint;
+import com.arturokumura.car_dealer.batch.dimension.DealerDimensionCache;
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.batch.repository.SalesAggregateRepository;
+import com.arturokumura.car_dealer.batch.rollup.RollupDefinitions;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.listener.StepExecutionListener;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.batch.infrastructure.item.ItemStreamWriter;
+import org.springframework.stereotype.Component;
+
+@Component
+@StepScope
+public class PartitionReportWriter implements ItemStreamWriter<SaleRecord>, StepExecutionListener {
+
+    private final PartialReportRegistry partialReportRegistry;
+    private final ReportAggregate partial;
+
+    // Cada particao recebe sua propria instancia e agrega somente o seu arquivo.
+    public PartitionReportWriter(DealerDimensionCache dealerDimensionCache, PartialReportRegistry partialReportRegistry,
+                                 AggregateCheckpoint checkpoint,
+                                 SalesAggregateRepository salesAggregateRepository,
+                                 RollupDefinitions rollupDefinitions) {
+        this.partialReportRegistry = partialReportRegistry;
+        this.partial = new ReportAggregate(dealerDimensionCache, checkpoint, salesAggregateRepository,
+                rollupDefinitions);
+    }
+
+    //Fixa a versao da dimensao de filiais ao iniciar a particao
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        partial.beforeStep(stepExecution);
+    }
+
+    // Agrega vendas por filial e modelo no mapa parcial da particao.
+    @Override
+    public void write(Chunk<? extends SaleRecord> items) {
+        partial.add(items);
+    }
+
+    // Retoma o parcial salvo no ultimo commit quando a particao e reiniciada.
+    @Override
+    public void open(ExecutionContext executionContext) {
+        partial.open(executionContext);
+    }
+
+    // Salva o parcial a cada commit; o ultimo snapshot tambem serve ao merge em um restart do job.
+    @Override
+    public void update(ExecutionContext executionContext) {
+        partial.update(executionContext);
+    }
+
+    // Publica o parcial para o merge feito pelo step gerenciador.
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        partial.recordDealerMisses(stepExecution);
+        if (stepExecution.getStatus() == BatchStatus.COMPLETED) {
+            partialReportRegistry.register(stepExecution.getJobExecutionId(), stepExecution.getStepName(),
+                    partial.engine());
+        }
+        return stepExecution.getExitStatus();
+    }
+}
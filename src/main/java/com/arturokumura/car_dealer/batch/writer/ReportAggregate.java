@@ -0,0 +1,171 @@
+package com.arturokumura.car_dealer.batch.writer;
+
+import com.arturokumura.car_dealer.batch.aggregation.AggregateCheckpoint;
+import com.arturokumura.car_dealer.batch.dimension.DealerDimensionCache;
+import com.arturokumura.car_dealer.batch.dimension.DealerLookup;
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.batch.partition.WorkItemPartitioner;
+import com.arturokumura.car_dealer.batch.repository.SalesAggregateRepository;
+import com.arturokumura.car_dealer.batch.rollup.RollupDefinitions;
+import com.arturokumura.car_dealer.batch.rollup.RollupEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+// Agregacao comum ao step unico e as particoes: filiais resolvidas pela dimensao compartilhada, soma
+// opcional em sales_aggregate e checkpoint do motor de rollups no ExecutionContext do step. Com checkpoint,
+// os chunks entram em um delta que so e somado ao motor no save completo, para que os commits
+// intermediarios gravem apenas o que mudou. Com sales_aggregate o relatorio principal sai da tabela, e o
+// motor guarda so os rollups adicionais.
+final class ReportAggregate {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReportAggregate.class);
+
+    // Vendas ja escritas pelo step, posicao usada pelo registro de origens de sales_aggregate.
+    private static final String SALES_WRITTEN_KEY = "aggregate.sales.written";
+
+    private final DealerDimensionCache dealerDimensionCache;
+    private final AggregateCheckpoint checkpoint;
+    private final SalesAggregateRepository salesAggregateRepository;
+    private final RollupDefinitions rollupDefinitions;
+    private final RollupEngine engine;
+    private final RollupEngine delta;
+    private DealerLookup dealers;
+    private String checkpointScope;
+    private String salesSource;
+    private Path spillDirectory;
+    private long salesWritten;
+    private int deltaSaves;
+    private boolean fullSaveRequired = true;
+
+    ReportAggregate(DealerDimensionCache dealerDimensionCache,
+                    AggregateCheckpoint checkpoint,
+                    SalesAggregateRepository salesAggregateRepository,
+                    RollupDefinitions rollupDefinitions) {
+        this.dealerDimensionCache = dealerDimensionCache;
+        this.checkpoint = checkpoint;
+        this.salesAggregateRepository = salesAggregateRepository;
+        this.rollupDefinitions = rollupDefinitions;
+        boolean primaryInMemory = !salesAggregateRepository.isEnabled();
+        this.engine = rollupDefinitions.newEngine(primaryInMemory);
+        this.delta = rollupDefinitions.newEngine(primaryInMemory);
+    }
+
+    // Motor com tudo o que foi agregado, incluindo o delta ainda nao salvo por inteiro. Depois de somar
+    // o delta, o proximo save precisa ser completo.
+    RollupEngine engine() {
+        if (delta.size() > 0 || delta.hasSpilled()) {
+            engine.merge(delta);
+            delta.clear();
+            fullSaveRequired = true;
+        }
+        return engine;
+    }
+
+    // Chaves em memoria, sem alterar o estado; seguro para leituras de outras threads (gauge).
+    int size() {
+        return engine.size() + delta.size();
+    }
+
+    // Fixa a versao da dimensao de filiais e o escopo dos checkpoints e dos runs de spill ao iniciar o step.
+    void beforeStep(StepExecution stepExecution) {
+        checkpointScope = PartialReportRegistry.checkpointScope(stepExecution.getStepName(),
+                stepExecution.getJobExecution().getJobInstance());
+        // Cada tentativa de um item da fila remota e uma nova instancia do job; a origem em sales_aggregate
+        // segue o item, para que a venda ja somada por uma tentativa anterior nao seja somada de novo
+        Long workItemId = stepExecution.getJobParameters().getLong(WorkItemPartitioner.WORK_ITEM_PARAMETER);
+        salesSource = workItemId != null ? "work-item:" + workItemId : checkpointScope;
+        spillDirectory = rollupDefinitions.spillDirectory(checkpointScope);
+        engine.spillInto(spillDirectory);
+        delta.spillInto(spillDirectory);
+        dealers = dealerDimensionCache.newLookup();
+    }
+
+    // Soma o chunk em sales_aggregate (na transacao do chunk), quando habilitado, e nos rollups.
+    void add(Chunk<? extends SaleRecord> items) {
+        if (salesAggregateRepository.isEnabled()) {
+            salesAggregateRepository.upsert(salesSource, salesWritten, items);
+        }
+        salesWritten += items.size();
+        if (dealers == null) {
+            // Uso fora de um step (benchmarks): versao vigente da dimensao
+            dealers = dealerDimensionCache.newLookup();
+        }
+        RollupEngine target = checkpoint.isEnabled() ? delta : engine;
+        target.useDealers(dealers.dimension());
+        for (SaleRecord item : items) {
+            target.add(item, dealers.denseIdOf(item.dealerId()));
+        }
+    }
+
+    // Inicia vazio ou a partir do ultimo checkpoint; retorna true se restaurou. O primeiro save depois
+    // disso e completo, pois o delta restaurado ja foi somado ao motor.
+    boolean open(ExecutionContext executionContext) {
+        engine.clear();
+        delta.clear();
+        fullSaveRequired = true;
+        salesWritten = executionContext.getLong(SALES_WRITTEN_KEY, 0L);
+        boolean restored = checkpoint.isEnabled() && checkpoint.restore(engine, executionContext, checkpointScope);
+        deleteUnreferencedRuns();
+        return restored;
+    }
+
+    // Runs gravados depois do ultimo commit (chunk em rollback, processo interrompido) nao entram no
+    // estado restaurado; sem isso ficariam no disco para sempre.
+    private void deleteUnreferencedRuns() {
+        if (spillDirectory == null || !Files.isDirectory(spillDirectory)) {
+            return;
+        }
+        Set<Path> referenced = engine.spillFiles();
+        try (DirectoryStream<Path> runs = Files.newDirectoryStream(spillDirectory)) {
+            for (Path run : runs) {
+                if (!referenced.contains(run)) {
+                    Files.deleteIfExists(run);
+                    LOGGER.debug("Run de spill sem referencia no checkpoint removido: {}", run);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Nao foi possivel limpar runs de spill em " + spillDirectory, e);
+        }
+    }
+
+    // Salva o agregado inteiro a cada fullSaveEvery commits e so o delta nos demais.
+    void update(ExecutionContext executionContext) {
+        executionContext.putLong(SALES_WRITTEN_KEY, salesWritten);
+        if (!checkpoint.isEnabled()) {
+            return;
+        }
+        if (fullSaveRequired || deltaSaves >= checkpoint.fullSaveEvery() - 1) {
+            engine.merge(delta);
+            delta.clear();
+            checkpoint.save(engine, executionContext, checkpointScope);
+            deltaSaves = 0;
+            fullSaveRequired = false;
+        } else {
+            checkpoint.saveDelta(delta, executionContext, checkpointScope);
+            deltaSaves++;
+        }
+    }
+
+    // Remove os arquivos de checkpoint de um step cujo resultado ja foi gravado.
+    void discardCheckpoint() {
+        if (checkpoint.isEnabled() && checkpointScope != null) {
+            checkpoint.discard(checkpointScope);
+        }
+    }
+
+    // Vendas sem filial cadastrada no step, registradas no ExecutionContext.
+    long recordDealerMisses(StepExecution stepExecution) {
+        long misses = dealers == null ? 0 : dealers.misses();
+        stepExecution.getExecutionContext().putLong(DealerDimensionCache.MISSES_CONTEXT_KEY, misses);
+        return misses;
+    }
+}
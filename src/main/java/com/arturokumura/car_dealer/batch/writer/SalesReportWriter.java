@@ -1,106 +1,281 @@
 package com.arturokumura.car_dealer.batch.writer;
 
+import com.arturokumura.car_dealer.batch.aggregation.AggregateCheckpoint;
+import com.arturokumura.car_dealer.batch.aggregation.SpillingAggregator;
+import com.arturokumura.car_dealer.batch.dimension.DealerDimensionCache;
 import com.arturokumura.car_dealer.batch.domain.ReportLine;
 import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.batch.repository.SalesAggregateRepository;
+import com.arturokumura.car_dealer.batch.rollup.RollupDefinition;
+import com.arturokumura.car_dealer.batch.rollup.RollupDefinitions;
+import com.arturokumura.car_dealer.batch.rollup.RollupEngine;
+import com.arturokumura.car_dealer.integration.SftpReportStreamer;
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import com.arturokumura.car_dealer.report.ReportSnapshot;
+import com.arturokumura.car_dealer.report.ReportSnapshotHolder;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.listener.StepExecutionListener;
 import org.springframework.batch.core.step.StepExecution;
 import org.springframework.batch.infrastructure.item.Chunk;
-import org.springframework.batch.infrastructure.item.ItemWriter;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.batch.infrastructure.item.ItemStreamWriter;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Function;
 
 @Component
-    public class SalesReportWriter implements ItemWriter<SaleRecord>, StepExecutionListener {
+    public class SalesReportWriter implements ItemStreamWriter<SaleRecord>, StepExecutionListener {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(SalesReportWriter.class);
+    public static final String OUTPUT_SFTP = "sftp";
+    private static final String REPORT_HEADER = "dealer_name,model,units_sold,revenue_brl";
     private static final DateTimeFormatter FILE_SUFFIX_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
 
-    private final JdbcTemplate jdbcTemplate;
+    private final DealerDimensionCache dealerDimensionCache;
+    private final SalesAggregateRepository salesAggregateRepository;
+    private final BatchMetrics batchMetrics;
+    private final SftpReportStreamer sftpReportStreamer;
+    private final ReportSnapshotHolder reportSnapshotHolder;
     private final String outputFile;
-    private Map<String, String> dealerNames = new HashMap<>();
-    private final Map<String, ReportLine> report = new LinkedHashMap<>();
+    private final ReportAggregate aggregate;
+
+    @Value("${app.report.output:local}")
+    private String reportOutput;
+
+    @Value("${app.report.keep-local-copy:false}")
+    private boolean keepLocalCopy;
 
     // Injecao de dependencias e caminho do arquivo de saida.
-    public SalesReportWriter(JdbcTemplate jdbcTemplate,
+    public SalesReportWriter(DealerDimensionCache dealerDimensionCache,
+                             AggregateCheckpoint checkpoint,
+                             SalesAggregateRepository salesAggregateRepository,
+                             BatchMetrics batchMetrics,
+                             SftpReportStreamer sftpReportStreamer,
+                             ReportSnapshotHolder reportSnapshotHolder,
+                             RollupDefinitions rollupDefinitions,
                              @Value("${app.matriz-report-file}") String outputFile) {
-        this.jdbcTemplate = jdbcTemplate;
+        this.dealerDimensionCache = dealerDimensionCache;
+        this.salesAggregateRepository = salesAggregateRepository;
+        this.batchMetrics = batchMetrics;
+        this.sftpReportStreamer = sftpReportStreamer;
+        this.reportSnapshotHolder = reportSnapshotHolder;
         this.outputFile = outputFile;
+        this.aggregate = new ReportAggregate(dealerDimensionCache, checkpoint, salesAggregateRepository,
+                rollupDefinitions);
+    }
+
+    // Registra o gauge do agregado com o writer ja construido, sem publicar this no construtor.
+    @PostConstruct
+    void registerMetrics() {
+        batchMetrics.registerAggregateSize("step", this, writer -> writer.aggregate.size());
     }
 
-    //Carrega o mapa de filiais do step iniciar
+    //Fixa a versao da dimensao de filiais ao iniciar o step
         @Override
         public void beforeStep(StepExecution stepExecution) {
-            dealerNames = jdbcTemplate.query("SELECT dealer_id, dealer_name FROM dealers", rs -> {
-                Map<String, String> map = new HashMap<>();
-                while (rs.next()) {
-                    map.put(rs.getString("dealer_id"), rs.getString("dealer_name"));//consultar o banco de dados do cliente
-                }
-                return map;
-            });
+            aggregate.beforeStep(stepExecution);
         }
 
-    // Agrega vendas por filial e modelo durante o processamento.
+    // Agrega vendas por filial e modelo, e pelos rollups configurados, durante o processamento.
         @Override
         public void write(Chunk<? extends SaleRecord> items) { //escreve o relatório
-            for (SaleRecord item : items) {
-                String dealerName = dealerNames.getOrDefault(item.dealerId(), item.dealerId());
-                String key = dealerName + "|" + item.model();
-                report.compute(key, (k, existing) -> {
-                    ReportLine base = existing == null ? new ReportLine(dealerName, item.model()) : existing;
-                    return base.addSale(item.salePriceBrl());
-                });
-            }
+            // Com sales_aggregate o upsert participa da transacao do chunk e o relatorio principal vem da tabela
+            aggregate.add(items);
         }
 
+    // Inicia vazio ou, em um restart, a partir do agregado salvo no ultimo commit.
+    @Override
+    public void open(ExecutionContext executionContext) {
+        if (aggregate.open(executionContext)) {
+            LOGGER.info("Agregado restaurado do checkpoint com {} chave(s).", aggregate.size());
+        }
+    }
+
+    // Salva o agregado junto com a posicao do reader, na mesma transacao do chunk.
+    @Override
+    public void update(ExecutionContext executionContext) {
+        aggregate.update(executionContext);
+    }
+
     // Grava o relatorio final ao termino do step
         @Override
         public ExitStatus afterStep(StepExecution stepExecution) {
-            writeReport();
+            reportDealerMisses(stepExecution);
+            if (stepExecution.getStatus() != BatchStatus.COMPLETED) {
+                // Mantem o checkpoint para o restart em vez de gravar um relatorio parcial
+                LOGGER.warn("Step finalizado com status {}. Relatorio nao sera gravado.", stepExecution.getStatus());
+                return stepExecution.getExitStatus();
+            }
+            writeReports(stepExecution.getJobExecutionId(), aggregate.engine());
+            aggregate.discardCheckpoint();
             return ExitStatus.COMPLETED;
         }
 
-    // Escreve o CSV consolidado no destino.
-    private void writeReport() {
-        Path path = buildTimestampedOutputPath();
+    // Vendas sem filial cadastrada no step, para o ExecutionContext e o log.
+    private void reportDealerMisses(StepExecution stepExecution) {
+        long misses = aggregate.recordDealerMisses(stepExecution);
+        if (misses > 0) {
+            LOGGER.warn("{} venda(s) com dealer_id sem cadastro; relatorio usa o proprio dealer_id como nome. "
+                    + "Vendas por dealer_id desconhecido desde a subida: {}", misses,
+                    dealerDimensionCache.missesByDealerId());
+        }
+    }
+
+    // Grava o relatorio principal (da tabela acumulada ou do agregado da execucao) e um arquivo por rollup,
+    // e prepara a foto do relatorio para a API. No modo sftp os arquivos ficam como ".part" remotos ate o
+    // afterJob da execucao publicar.
+    public void writeReports(long jobExecutionId, RollupEngine engine) {
+        writeReports(jobExecutionId, engine, salesAggregateRepository.isEnabled(), outputFile,
+                OUTPUT_SFTP.equalsIgnoreCase(reportOutput), true);
+    }
+
+    // Saida so local, em outro arquivo base, para quando o motor ja traz o historico completo, como na
+    // reagregacao pelo cache colunar: nunca usa o nome do relatorio da matriz, nem vai para o SFTP, nem
+    // prepara foto para a API (o periodo reagregado nao e o relatorio vigente).
+    public void writeLocalReports(long jobExecutionId, RollupEngine engine, String baseFile) {
+        writeReports(jobExecutionId, engine, false, baseFile, false, false);
+    }
+
+    private void writeReports(long jobExecutionId, RollupEngine engine, boolean primaryFromAggregateTable,
+                              String baseFile, boolean streamToSftp, boolean stageSnapshot) {
+        long start = System.nanoTime();
         try {
+            LineSource primary;
+            if (primaryFromAggregateTable) {
+                List<ReportLine> lines = new ArrayList<>(salesAggregateRepository.findReportLines());
+                lines.sort(SpillingAggregator.LINE_ORDER);
+                primary = consumer -> {
+                    // Filiais diferentes com o mesmo nome viram uma linha, como no agregado em memoria
+                    ReportLine pending = null;
+                    for (ReportLine line : lines) {
+                        if (pending != null && SpillingAggregator.LINE_ORDER.compare(pending, line) == 0) {
+                            pending = new ReportLine(pending.dealerName(), pending.model(),
+                                    pending.unitsSold() + line.unitsSold(),
+                                    pending.revenueBrl().add(line.revenueBrl()));
+                            continue;
+                        }
+                        if (pending != null) {
+                            consumer.accept(pending);
+                        }
+                        pending = line;
+                    }
+                    if (pending != null) {
+                        consumer.accept(pending);
+                    }
+                };
+            } else {
+                primary = engine::forEachPrimaryLine;
+            }
+            // A foto da API e montada na mesma passada que grava o relatorio principal
+            ReportSnapshot.Builder snapshot = new ReportSnapshot.Builder();
+            OutputTarget target = new OutputTarget(jobExecutionId, baseFile, streamToSftp);
+            writeOutput(target, null, REPORT_HEADER, consumer -> {
+                snapshot.clear();
+                primary.forEach(line -> {
+                    if (stageSnapshot) {
+                        snapshot.add(line);
+                    }
+                    consumer.accept(line);
+                });
+            }, ReportLine::toCsv);
+
+            List<RollupDefinition> extras = engine.extraDefinitions();
+            for (int i = 0; i < extras.size(); i++) {
+                RollupDefinition definition = extras.get(i);
+                int index = i;
+                writeOutput(target, definition.name(), definition.header(),
+                        consumer -> engine.forEachExtraLine(index, consumer), definition::toCsv);
+            }
+            engine.deleteSpillFiles();
+            if (stageSnapshot) {
+                reportSnapshotHolder.stage(jobExecutionId, snapshot);
+            }
+        } finally {
+            batchMetrics.recordReportWrite(System.nanoTime() - start);
+        }
+    }
+
+    // Linhas ja ordenadas de uma saida, entregues uma a uma.
+    @FunctionalInterface
+    private interface LineSource {
+        void forEach(SpillingAggregator.LineConsumer consumer) throws IOException;
+    }
+
+    // Execucao, arquivo base e modo das saidas de uma gravacao.
+    private record OutputTarget(long jobExecutionId, String baseFile, boolean streamToSftp) {
+    }
+
+    // Escreve no destino o CSV das linhas ordenadas: arquivo local ou, no modo sftp, stream direto
+    // para a pasta remota da matriz (com copia local opcional para auditoria).
+    private void writeOutput(OutputTarget target, String rollupName, String header, LineSource lines,
+                             Function<ReportLine, String> toCsv) {
+        Path path = buildTimestampedOutputPath(target.baseFile(), rollupName);
+        try {
+            if (target.streamToSftp()) {
+                sftpReportStreamer.stage(target.jobExecutionId(), path.getFileName().toString(),
+                        writer -> writeCsv(header, lines, toCsv, writer));
+                if (!keepLocalCopy) {
+                    return;
+                }
+            }
             Path parent = path.getParent();
             if (parent != null) {
                 Files.createDirectories(parent);
             }
-            List<ReportLine> lines = new ArrayList<>(report.values());
-            lines.sort(Comparator.comparing(ReportLine::dealerName)
-                    .thenComparing(ReportLine::model));
             try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-                writer.write("dealer_name,model,units_sold,revenue_brl");
-                writer.newLine();
-                for (ReportLine line : lines) {
-                    writer.write(line.toCsv());
-                    writer.newLine();
-                }
+                writeCsv(header, lines, toCsv, writer);
             }
         } catch (IOException e) {
             throw new IllegalStateException("Failed to write report to " + path, e);
         }
     }
 
-    // Monta o caminho final do arquivo adicionando sufixo de data e hora.
-    private Path buildTimestampedOutputPath() {
-        Path configuredPath = Path.of(outputFile);
-        String timestampedFileName = addTimestampSuffix(configuredPath.getFileName().toString());
+    // Cabecalho e linhas do relatorio, uma por chave do agrupamento.
+    private static void writeCsv(String header, LineSource lines, Function<ReportLine, String> toCsv,
+                                 Writer writer) throws IOException {
+        writer.write(header);
+        writer.write(System.lineSeparator());
+        lines.forEach(line -> {
+            writer.write(toCsv.apply(line));
+            writer.write(System.lineSeparator());
+        });
+    }
+
+    // Monta o caminho final do arquivo adicionando sufixo de data e hora; rollups recebem o nome
+    // do agrupamento apos o nome base (sales-report-<rollup>_<data>.csv).
+    private Path buildTimestampedOutputPath(String baseFile, String rollupName) {
+        Path configuredPath = Path.of(baseFile);
+        String fileName = configuredPath.getFileName().toString();
+        if (rollupName != null) {
+            fileName = rollupFileName(fileName, rollupName);
+        }
+        String timestampedFileName = addTimestampSuffix(fileName);
         Path parent = configuredPath.getParent();
         return parent == null ? Path.of(timestampedFileName) : parent.resolve(timestampedFileName);
     }
 
+    // Nome base do arquivo de um rollup, mantendo a extensao do relatorio principal.
+    public static String rollupFileName(String reportFileName, String rollupName) {
+        int dotIndex = reportFileName.lastIndexOf('.');
+        return dotIndex > 0
+                ? reportFileName.substring(0, dotIndex) + "-" + rollupName + reportFileName.substring(dotIndex)
+                : reportFileName + "-" + rollupName;
+    }
+
     // Adiciona timestamp ao nome do arquivo preservando a extensao quando existir.
     private String addTimestampSuffix(String fileName) {
         String timestamp = LocalDateTime.now().format(FILE_SUFFIX_FORMATTER);
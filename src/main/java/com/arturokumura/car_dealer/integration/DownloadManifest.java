@@ -0,0 +1,143 @@
+package com.arturokumura.car_dealer.integration;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import net.schmizz.sshj.sftp.RemoteResourceInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Manifesto persistente dos arquivos ja baixados (nome, tamanho, mtime e checksum opcional),
+// usado para pular arquivos inalterados e responder rapidamente se ha entrada para processar.
+@Component
+public class DownloadManifest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DownloadManifest.class);
+    private static final String SEPARATOR = "\t";
+
+    public record Entry(String name, long size, long mtime, String checksum) {
+    }
+
+    private final Path manifestFile;
+    private final boolean checksumEnabled;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean loaded;
+
+    // Recebe o caminho do manifesto e se o checksum dos arquivos deve ser calculado.
+    public DownloadManifest(@Value("${sftp.download.manifest-file:${app.data-dir}/download-manifest.tsv}") String manifestFile,
+                            @Value("${sftp.download.manifest.checksum:false}") boolean checksumEnabled) {
+        this.manifestFile = Path.of(manifestFile).toAbsolutePath().normalize();
+        this.checksumEnabled = checksumEnabled;
+    }
+
+    // Le o manifesto do disco, descartando o estado em memoria.
+    public synchronized void reload() {
+        entries.clear();
+        loaded = true;
+        if (!Files.exists(manifestFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR, -1);
+                if (fields.length < 4) {
+                    continue;
+                }
+                String checksum = fields[3].isEmpty() ? null : fields[3];
+                entries.put(fields[0], new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), checksum));
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.warn("Manifesto de download invalido em {}. Todos os arquivos serao baixados novamente.",
+                    manifestFile, e);
+            entries.clear();
+        }
+    }
+
+    // Indica se o arquivo remoto ja esta presente localmente com o mesmo tamanho, mtime e checksum.
+    public synchronized boolean isUnchanged(RemoteResourceInfo remoteFile, Path localFile) throws IOException {
+        ensureLoaded();
+        Entry entry = entries.get(remoteFile.getName());
+        if (entry == null
+                || entry.size() != remoteFile.getAttributes().getSize()
+                || entry.mtime() != remoteFile.getAttributes().getMtime()
+                || !Files.isRegularFile(localFile)
+                || Files.size(localFile) != entry.size()) {
+            return false;
+        }
+        return !checksumEnabled || entry.checksum() == null || entry.checksum().equals(checksum(localFile));
+    }
+
+    // Registra um arquivo recem-baixado.
+    public synchronized void record(RemoteResourceInfo remoteFile, Path localFile) throws IOException {
+        ensureLoaded();
+        String checksum = checksumEnabled ? checksum(localFile) : null;
+        entries.put(remoteFile.getName(), new Entry(remoteFile.getName(), remoteFile.getAttributes().getSize(),
+                remoteFile.getAttributes().getMtime(), checksum));
+    }
+
+    // Remove um arquivo do manifesto, por exemplo apos ser movido para processados.
+    public synchronized void remove(String name) {
+        ensureLoaded();
+        entries.remove(name);
+    }
+
+    // Mantem apenas os arquivos ainda presentes no diretorio remoto.
+    public synchronized void retainOnly(Set<String> names) {
+        ensureLoaded();
+        entries.keySet().retainAll(names);
+    }
+
+    // Grava o manifesto em um temporario e substitui o anterior de forma atomica.
+    public synchronized void save() {
+        ensureLoaded();
+        Path tempFile = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(manifestFile.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (Entry entry : entries.values()) {
+                    writer.write(entry.name() + SEPARATOR + entry.size() + SEPARATOR + entry.mtime() + SEPARATOR
+                            + (entry.checksum() == null ? "" : entry.checksum()));
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Nao foi possivel gravar manifesto de download: " + manifestFile, e);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            reload();
+        }
+    }
+
+    // Calcula o SHA-256 do arquivo local.
+    private String checksum(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponivel", e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.arturokumura.car_dealer.integration;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import net.schmizz.sshj.sftp.RemoteResourceInfo;
+
+// Downloads do modo pipeline: cada arquivo fica disponivel para o step assim que termina de baixar, sem
+// esperar os demais. Arquivos pedidos por uma particao passam na frente; os outros sao baixados
+// antecipadamente na ordem dos nomes, com no maximo prefetchLimit baixados e ainda nao consumidos.
+public class PipelinedDownload implements Closeable {
+
+    private final SftpDownloadService downloadService;
+    private final DownloadManifest downloadManifest;
+    private final Path localDir;
+    private final List<String> fileNames = new ArrayList<>();
+    private final Map<String, CompletableFuture<Path>> files = new LinkedHashMap<>();
+    private final Map<String, RemoteResourceInfo> pending = new LinkedHashMap<>();
+    private final Set<String> requested = new HashSet<>();
+    private final Set<String> prefetched = new HashSet<>();
+    private final int prefetchLimit;
+    private final Semaphore transferSlots;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread dispatcher;
+    private final long startNanos = System.nanoTime();
+    private volatile long lastCompletionNanos = startNanos;
+
+    // Arquivos inalterados desde a ultima execucao ja ficam disponiveis; os demais entram na fila.
+    PipelinedDownload(SftpDownloadService downloadService, DownloadManifest downloadManifest, Path localDir,
+                      List<RemoteResourceInfo> remoteFiles, List<RemoteResourceInfo> pendingFiles,
+                      int prefetchLimit, int concurrency) {
+        this.downloadService = downloadService;
+        this.downloadManifest = downloadManifest;
+        this.localDir = localDir;
+        this.prefetchLimit = Math.max(1, prefetchLimit);
+        this.transferSlots = new Semaphore(Math.max(1, concurrency));
+        for (RemoteResourceInfo file : pendingFiles) {
+            pending.put(file.getName(), file);
+        }
+        for (RemoteResourceInfo file : remoteFiles) {
+            fileNames.add(file.getName());
+            CompletableFuture<Path> future = new CompletableFuture<>();
+            if (!pending.containsKey(file.getName())) {
+                future.complete(localDir.resolve(file.getName()));
+            }
+            files.put(file.getName(), future);
+        }
+        this.dispatcher = Thread.ofVirtual().name("pipeline-download").start(this::dispatch);
+    }
+
+    // Nomes dos arquivos remotos, em ordem.
+    public List<String> fileNames() {
+        return fileNames;
+    }
+
+    public Path localFile(String fileName) {
+        return localDir.resolve(fileName);
+    }
+
+    // Bloqueia ate o arquivo estar na pasta local; o pedido libera uma vaga de download antecipado.
+    public Path await(String fileName) throws InterruptedException {
+        CompletableFuture<Path> future = files.get(fileName);
+        if (future == null) {
+            throw new IllegalStateException("Arquivo fora do pipeline de download: " + fileName);
+        }
+        synchronized (this) {
+            requested.add(fileName);
+            prefetched.remove(fileName);
+            notifyAll();
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Erro no download SFTP de " + fileName, e.getCause());
+        }
+    }
+
+    // Do inicio ate o fim do ultimo download concluido.
+    public long elapsedMillis() {
+        return (lastCompletionNanos - startNanos) / 1_000_000;
+    }
+
+    // Interrompe downloads em andamento e persiste o manifesto com o que ja foi baixado.
+    @Override
+    public void close() {
+        dispatcher.interrupt();
+        executor.shutdownNow();
+        executor.close();
+        files.values().forEach(future -> future.completeExceptionally(new CancellationException("Pipeline encerrado")));
+        downloadManifest.save();
+    }
+
+    // Distribui os downloads respeitando a concorrencia do SFTP.
+    private void dispatch() {
+        try {
+            while (true) {
+                transferSlots.acquire();
+                RemoteResourceInfo file = takeNext();
+                if (file == null) {
+                    transferSlots.release();
+                    return;
+                }
+                CompletableFuture<Path> future = files.get(file.getName());
+                executor.submit(() -> {
+                    try {
+                        downloadService.downloadWithRetry(file, localDir);
+                        future.complete(localDir.resolve(file.getName()));
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    } finally {
+                        lastCompletionNanos = System.nanoTime();
+                        transferSlots.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Proximo arquivo: um ja pedido, ou o seguinte na ordem se houver vaga de download antecipado.
+    private synchronized RemoteResourceInfo takeNext() throws InterruptedException {
+        while (!pending.isEmpty()) {
+            for (String fileName : requested) {
+                RemoteResourceInfo file = pending.remove(fileName);
+                if (file != null) {
+                    return file;
+                }
+            }
+            if (prefetched.size() < prefetchLimit) {
+                String fileName = pending.keySet().iterator().next();
+                prefetched.add(fileName);
+                return pending.remove(fileName);
+            }
+            wait();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,454 @@
+package com.arturokumura.car_dealer.integration;
+
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+import net.schmizz.sshj.sftp.FileAttributes;
+import net.schmizz.sshj.sftp.OpenMode;
+import net.schmizz.sshj.sftp.RemoteFile;
+import net.schmizz.sshj.sftp.SFTPClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Transferencia de arquivos grandes em faixas de bytes: varias faixas do mesmo arquivo remoto em
+// paralelo na mesma sessao, cada uma com varias requisicoes em voo. As faixas concluidas ficam em um
+// arquivo de progresso (<arquivo>.progress) com o CRC32C de cada uma, entao uma nova tentativa so
+// transfere o que faltou. No fim o CRC de cada faixa e conferido contra o arquivo montado.
+@Component
+public class RangedSftpTransfer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RangedSftpTransfer.class);
+    private static final String PROGRESS_SUFFIX = ".progress";
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    private final SftpSessionPool sftpSessionPool;
+
+    @Value("${sftp.transfer.ranged.enabled:false}")
+    private boolean enabled;
+
+    @Value("${sftp.transfer.ranged.min-size-bytes:16777216}")
+    private long minSizeBytes;
+
+    @Value("${sftp.transfer.ranged.range-size-bytes:4194304}")
+    private long rangeSizeBytes;
+
+    @Value("${sftp.transfer.ranged.parallel-ranges:4}")
+    private int parallelRanges;
+
+    @Value("${sftp.transfer.ranged.max-unconfirmed-requests:8}")
+    private int maxUnconfirmedRequests;
+
+    @Value("${sftp.transfer.ranged.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${sftp.transfer.ranged.verify-upload:false}")
+    private boolean verifyUpload;
+
+    public RangedSftpTransfer(SftpSessionPool sftpSessionPool) {
+        this.sftpSessionPool = sftpSessionPool;
+    }
+
+    // Arquivos abaixo de min-size-bytes continuam com get/put simples.
+    public boolean appliesTo(long size) {
+        return enabled && size >= minSizeBytes;
+    }
+
+    // Baixa o arquivo remoto para localFile retomando as faixas ja gravadas. O progresso so e apagado
+    // depois da conferencia, entao uma falha em qualquer ponto deixa a proxima tentativa continuar.
+    public void download(SFTPClient sftpClient, String remotePath, long size, long mtime, Path localFile)
+            throws IOException {
+        TransferProgress progress = TransferProgress.open(progressFile(localFile), remotePath, size, mtime,
+                rangeSizeBytes);
+        if (progress.isFresh()) {
+            Files.deleteIfExists(localFile);
+        } else {
+            LOGGER.info("Retomando download de {}: {} de {} faixa(s) ja recebida(s).", remotePath,
+                    progress.completedCount(), progress.rangeCount());
+        }
+
+        try (FileChannel channel = FileChannel.open(localFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+             RemoteFile remoteFile = sftpClient.open(remotePath, EnumSet.of(OpenMode.READ))) {
+            runRanges(progress, index -> {
+                long crc = downloadRange(remoteFile, channel, progress.offset(index), progress.length(index));
+                channel.force(false);
+                return crc;
+            });
+            if (channel.size() > size) {
+                channel.truncate(size);
+            }
+            verify(progress, channel, remotePath);
+        }
+
+        FileAttributes attributes = sftpClient.stat(remotePath);
+        if (attributes.getSize() != size || attributes.getMtime() != mtime) {
+            progress.delete();
+            throw new IOException("Arquivo remoto alterado durante o download: " + remotePath);
+        }
+        progress.delete();
+    }
+
+    // Envia localFile para remotePath em faixas, em um temporario publicado com rename no fim. Cada
+    // tentativa usa uma sessao nova do pool e retoma as faixas ja confirmadas pelo servidor.
+    public void upload(Path localFile, String remotePath) throws IOException {
+        long size = Files.size(localFile);
+        long mtime = Files.getLastModifiedTime(localFile).toMillis();
+        String partialPath = remotePath + PARTIAL_SUFFIX;
+        Path progressPath = progressFile(localFile.resolveSibling(localFile.getFileName() + ".upload"));
+
+        for (int attempt = 1; ; attempt++) {
+            SftpSession session = sftpSessionPool.borrow();
+            boolean succeeded = false;
+            try {
+                uploadOnce(session.sftpClient(), localFile, size, mtime, partialPath, remotePath, progressPath);
+                succeeded = true;
+                return;
+            } catch (IOException e) {
+                if (attempt >= Math.max(1, maxAttempts)) {
+                    throw e;
+                }
+                LOGGER.warn("Falha no upload em faixas de {} (tentativa {} de {}). Retomando.", localFile.getFileName(),
+                        attempt, maxAttempts, e);
+            } finally {
+                // Qualquer falha, inclusive RuntimeException, descarta a sessao em vez de perder a vaga do pool
+                if (succeeded) {
+                    sftpSessionPool.release(session);
+                } else {
+                    sftpSessionPool.invalidate(session);
+                }
+            }
+        }
+    }
+
+    private void uploadOnce(SFTPClient sftpClient, Path localFile, long size, long mtime, String partialPath,
+                            String remotePath, Path progressPath) throws IOException {
+        TransferProgress progress = TransferProgress.open(progressPath, remotePath, size, mtime, rangeSizeBytes);
+        EnumSet<OpenMode> mode = progress.isFresh() || sftpClient.statExistence(partialPath) == null
+                ? EnumSet.of(OpenMode.WRITE, OpenMode.CREAT, OpenMode.TRUNC)
+                : EnumSet.of(OpenMode.WRITE, OpenMode.CREAT);
+        if (mode.contains(OpenMode.TRUNC) && !progress.isFresh()) {
+            progress.reset();
+        }
+        if (verifyUpload) {
+            mode.add(OpenMode.READ);
+        }
+
+        try (FileChannel channel = FileChannel.open(localFile, StandardOpenOption.READ);
+             RemoteFile remoteFile = sftpClient.open(partialPath, mode)) {
+            runRanges(progress, index -> uploadRange(channel, remoteFile, progress.offset(index),
+                    progress.length(index)));
+            if (verifyUpload) {
+                // Rele o temporario remoto e compara faixa a faixa com o CRC do que foi enviado
+                runVerification(progress, index -> downloadRange(remoteFile, null, progress.offset(index),
+                        progress.length(index)), partialPath);
+            }
+        }
+
+        if (sftpClient.stat(partialPath).getSize() != size) {
+            progress.delete();
+            throw new IOException("Tamanho remoto diferente do local apos upload: " + partialPath);
+        }
+        if (sftpClient.statExistence(remotePath) != null) {
+            sftpClient.rm(remotePath);
+        }
+        sftpClient.rename(partialPath, remotePath);
+        progress.delete();
+    }
+
+    // Faixa a ser transferida; devolve o CRC32C dos bytes.
+    @FunctionalInterface
+    private interface RangeTask {
+        long transfer(int index) throws IOException;
+    }
+
+    // Distribui as faixas pendentes entre parallel-ranges tarefas e registra cada uma ao concluir.
+    private void runRanges(TransferProgress progress, RangeTask task) throws IOException {
+        Queue<Integer> pending = new ConcurrentLinkedQueue<>(progress.pendingRanges());
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Future<?>> workers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            int workerCount = Math.min(Math.max(1, parallelRanges), pending.size());
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(executor.submit(() -> {
+                    Integer index;
+                    while ((index = pending.poll()) != null) {
+                        progress.complete(index, task.transfer(index));
+                    }
+                    return null;
+                }));
+            }
+            awaitAll(workers);
+        }
+    }
+
+    // Confere o CRC de cada faixa; as divergentes saem do progresso para serem transferidas de novo.
+    private void runVerification(TransferProgress progress, RangeTask reread, String path) throws IOException {
+        Queue<Integer> ranges = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < progress.rangeCount(); i++) {
+            ranges.add(i);
+        }
+        Queue<Integer> mismatched = new ConcurrentLinkedQueue<>();
+        List<Future<?>> workers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < Math.max(1, parallelRanges); i++) {
+                workers.add(executor.submit(() -> {
+                    Integer index;
+                    while ((index = ranges.poll()) != null) {
+                        if (reread.transfer(index) != progress.crc(index)) {
+                            mismatched.add(index);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            awaitAll(workers);
+        }
+        if (!mismatched.isEmpty()) {
+            for (int index : mismatched) {
+                progress.forget(index);
+            }
+            throw new IOException("CRC divergente em " + mismatched.size() + " faixa(s) de " + path);
+        }
+    }
+
+    private void verify(TransferProgress progress, FileChannel channel, String remotePath) throws IOException {
+        runVerification(progress, index -> checksum(channel, progress.offset(index), progress.length(index)),
+                remotePath);
+    }
+
+    // Le uma faixa do remoto com read-ahead limitado a ela, sem pedir bytes da faixa seguinte; grava no
+    // canal local quando informado.
+    private long downloadRange(RemoteFile remoteFile, FileChannel channel, long offset, long length)
+            throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = remoteFile.new ReadAheadRemoteFileInputStream(maxUnconfirmedRequests, offset,
+                length)) {
+            long position = offset;
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException("Fim inesperado do arquivo remoto na posicao " + position);
+                }
+                crc.update(buffer, 0, read);
+                if (channel != null) {
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                    long target = position;
+                    while (data.hasRemaining()) {
+                        target += channel.write(data, target);
+                    }
+                }
+                position += read;
+                remaining -= read;
+            }
+        }
+        return crc.getValue();
+    }
+
+    // Envia uma faixa do arquivo local com escritas em pipeline; o close espera a confirmacao de todas.
+    private long uploadRange(FileChannel channel, RemoteFile remoteFile, long offset, long length)
+            throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (OutputStream out = remoteFile.new RemoteFileOutputStream(offset, maxUnconfirmedRequests)) {
+            long position = offset;
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("Arquivo local menor que o esperado na posicao " + position);
+                }
+                out.write(buffer.array(), 0, read);
+                crc.update(buffer.array(), 0, read);
+                position += read;
+                remaining -= read;
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static long checksum(FileChannel channel, long offset, long length) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = offset;
+        long remaining = length;
+        while (remaining > 0) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return -1;
+            }
+            crc.update(buffer.array(), 0, read);
+            position += read;
+            remaining -= read;
+        }
+        return crc.getValue();
+    }
+
+    private static void awaitAll(List<Future<?>> workers) throws IOException {
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            workers.forEach(worker -> worker.cancel(true));
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Falha na transferencia em faixas", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.forEach(worker -> worker.cancel(true));
+            throw new IOException("Transferencia em faixas interrompida", e);
+        }
+    }
+
+    private static Path progressFile(Path file) {
+        return file.resolveSibling(file.getFileName() + PROGRESS_SUFFIX);
+    }
+
+    // Progresso de uma transferencia: cabecalho com origem, tamanho, mtime e tamanho da faixa, seguido
+    // de uma linha "<faixa>\t<crc>" por faixa concluida, acrescentada e gravada em disco na hora.
+    private static final class TransferProgress {
+
+        private static final String SEPARATOR = "\t";
+
+        private final Path path;
+        private final String header;
+        private final long size;
+        private final long rangeSize;
+        private final Map<Integer, Long> completed = new HashMap<>();
+        private boolean fresh;
+
+        private TransferProgress(Path path, String header, long size, long rangeSize) {
+            this.path = path;
+            this.header = header;
+            this.size = size;
+            this.rangeSize = rangeSize;
+        }
+
+        // Reaproveita o progresso somente se ele descreve a mesma origem, versao e divisao em faixas.
+        static TransferProgress open(Path path, String source, long size, long mtime, long rangeSize)
+                throws IOException {
+            long effectiveRangeSize = Math.max(BUFFER_SIZE, rangeSize);
+            String header = String.join(SEPARATOR, source, Long.toString(size), Long.toString(mtime),
+                    Long.toString(effectiveRangeSize));
+            TransferProgress progress = new TransferProgress(path, header, size, effectiveRangeSize);
+            List<String> lines = Files.exists(path) ? Files.readAllLines(path, StandardCharsets.UTF_8) : List.of();
+            if (lines.isEmpty() || !lines.get(0).equals(header)) {
+                progress.reset();
+                return progress;
+            }
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split(SEPARATOR);
+                if (fields.length == 2) {
+                    try {
+                        progress.completed.put(Integer.parseInt(fields[0]), Long.parseLong(fields[1], 16));
+                    } catch (NumberFormatException e) {
+                        // Linha cortada por uma queda no meio da escrita: a faixa e transferida de novo
+                    }
+                }
+            }
+            return progress;
+        }
+
+        boolean isFresh() {
+            return fresh;
+        }
+
+        int rangeCount() {
+            return (int) ((size + rangeSize - 1) / rangeSize);
+        }
+
+        synchronized int completedCount() {
+            return completed.size();
+        }
+
+        long offset(int index) {
+            return index * rangeSize;
+        }
+
+        long length(int index) {
+            return Math.min(rangeSize, size - offset(index));
+        }
+
+        synchronized long crc(int index) {
+            Long crc = completed.get(index);
+            return crc == null ? -1 : crc;
+        }
+
+        synchronized List<Integer> pendingRanges() {
+            List<Integer> pending = new ArrayList<>();
+            for (int i = 0; i < rangeCount(); i++) {
+                if (!completed.containsKey(i)) {
+                    pending.add(i);
+                }
+            }
+            return pending;
+        }
+
+        synchronized void complete(int index, long crc) throws IOException {
+            completed.put(index, crc);
+            Files.writeString(path, index + SEPARATOR + Long.toHexString(crc) + System.lineSeparator(),
+                    StandardCharsets.UTF_8, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+        }
+
+        // Remove a faixa do progresso regravando o arquivo sem ela.
+        synchronized void forget(int index) throws IOException {
+            completed.remove(index);
+            rewrite();
+        }
+
+        synchronized void reset() throws IOException {
+            completed.clear();
+            fresh = true;
+            rewrite();
+        }
+
+        void delete() throws IOException {
+            Files.deleteIfExists(path);
+        }
+
+        private void rewrite() throws IOException {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(header);
+                writer.newLine();
+                for (Map.Entry<Integer, Long> entry : completed.entrySet()) {
+                    writer.write(entry.getKey() + SEPARATOR + Long.toHexString(entry.getValue()));
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.arturokumura.car_dealer.integration;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.schmizz.sshj.sftp.RemoteResourceInfo;
+import org.springframework.util.AntPathMatcher;
+
+// Arquivos da listagem remota que o step deve ler: regulares e com o nome aceito pelo ultimo segmento de
+// app.filial-report-pattern (ex.: *.csv), o mesmo filtro que a pasta local aplica antes do step.
+final class RemoteFileFilter {
+
+    private static final AntPathMatcher MATCHER = new AntPathMatcher();
+
+    private RemoteFileFilter() {
+    }
+
+    static List<RemoteResourceInfo> branchFiles(List<RemoteResourceInfo> listing, String filialReportPattern) {
+        String fileNamePattern = filialReportPattern.substring(filialReportPattern.lastIndexOf('/') + 1);
+        List<RemoteResourceInfo> files = new ArrayList<>();
+        for (RemoteResourceInfo file : listing) {
+            if (file.isRegularFile() && MATCHER.match(fileNamePattern, file.getName())) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+}
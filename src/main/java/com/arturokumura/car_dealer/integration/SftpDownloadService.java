@@ -1,12 +1,20 @@
 package com.arturokumura.car_dealer.integration;
 
-
-import java.io.File;
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import net.schmizz.sshj.SSHClient;
 import net.schmizz.sshj.sftp.RemoteResourceInfo;
 import net.schmizz.sshj.sftp.SFTPClient;
@@ -20,8 +28,15 @@ import org.springframework.stereotype.Service;
 public class SftpDownloadService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SftpDownloadService.class);
+    private static final long RETRY_BACKOFF_MS = 500;
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final List<String> TRANSFER_SUFFIXES = List.of(".progress", ".upload", PARTIAL_SUFFIX);
 
     private final SftpConfig sftpConfig;
+    private final SftpSessionPool sftpSessionPool;
+    private final DownloadManifest downloadManifest;
+    private final BatchMetrics batchMetrics;
+    private final RangedSftpTransfer rangedSftpTransfer;
 
     @Value("${sftp.dir.remote.download}")
     private String remoteDownloadDir;
@@ -29,52 +44,265 @@ public class SftpDownloadService {
     @Value("${sftp.dir.local.download}")
     private String localDownloadDir;
 
-    // Injeta a configuracao usada para abrir conexao SFTP.
-    public SftpDownloadService(SftpConfig sftpConfig) {
+    @Value("${app.filial-report-pattern}")
+    private String filialReportPattern;
+
+    @Value("${sftp.download.parallel.enabled:false}")
+    private boolean parallelDownload;
+
+    @Value("${sftp.download.concurrency:4}")
+    private int downloadConcurrency;
+
+    @Value("${sftp.download.max-attempts:3}")
+    private int maxAttempts;
+
+    // Injeta a configuracao SFTP, o pool de sessoes do modo paralelo, o manifesto de downloads, as metricas
+    // e a transferencia em faixas dos arquivos grandes.
+    public SftpDownloadService(SftpConfig sftpConfig, SftpSessionPool sftpSessionPool,
+                               DownloadManifest downloadManifest, BatchMetrics batchMetrics,
+                               RangedSftpTransfer rangedSftpTransfer) {
         this.sftpConfig = sftpConfig;
+        this.sftpSessionPool = sftpSessionPool;
+        this.downloadManifest = downloadManifest;
+        this.batchMetrics = batchMetrics;
+        this.rangedSftpTransfer = rangedSftpTransfer;
     }
 
-    // Baixa arquivos novos do diretorio remoto para o diretorio local.
+    // Baixa arquivos novos ou alterados do diretorio remoto e retorna quantos estao prontos para processar.
     public int downloadNewFiles() {
+        Path localDir = prepareLocalDir();
+        downloadManifest.reload();
+
+        try {
+            if (parallelDownload) {
+                return downloadInParallel(localDir);
+            }
+
+            try (SSHClient sshClient = sftpConfig.setupSshClient();
+                 SFTPClient sftpClient = sshClient.newSFTPClient()) {
+
+                List<RemoteResourceInfo> files = RemoteFileFilter.branchFiles(sftpClient.ls(remoteDownloadDir),
+                        filialReportPattern);
+                for (RemoteResourceInfo file : planDownloads(files, localDir)) {
+                    Path localFile = localDir.resolve(file.getName());
+                    Path partialFile = localDir.resolve(file.getName() + PARTIAL_SUFFIX);
+                    String remoteFilePath = remoteDownloadDir + "/" + file.getName();
+                    long start = System.nanoTime();
+                    transfer(sftpClient, file, remoteFilePath, partialFile);
+                    batchMetrics.recordTransfer(BatchMetrics.TransferDirection.DOWNLOAD, file.getName(),
+                            file.getAttributes().getSize(), System.nanoTime() - start);
+                    Files.move(partialFile, localFile, StandardCopyOption.REPLACE_EXISTING);
+                    downloadManifest.record(file, localFile);
+                    LOGGER.info("Arquivo baixado do SFTP: {}", file.getName());
+                }
+                return countReadyFiles(files, localDir);
+            } catch (IOException e) {
+                throw new IllegalStateException("Erro na rotina de download SFTP", e);
+            }
+        } finally {
+            // Persiste mesmo em falha, para que a proxima execucao reaproveite o que ja foi baixado
+            downloadManifest.save();
+        }
+    }
+
+    // Inicia os downloads do modo pipeline e retorna sem esperar por eles; o manifesto e salvo no close.
+    public PipelinedDownload startPipelinedDownload(int prefetchFiles) {
+        Path localDir = prepareLocalDir();
+        downloadManifest.reload();
+        List<RemoteResourceInfo> files = new ArrayList<>(listRemoteFiles());
+        files.sort(Comparator.comparing(RemoteResourceInfo::getName));
+        List<RemoteResourceInfo> pendingFiles = planDownloads(files, localDir);
+        return new PipelinedDownload(this, downloadManifest, localDir, files, pendingFiles, prefetchFiles,
+                downloadConcurrency);
+    }
+
+    private Path prepareLocalDir() {
         Path localDir = Path.of(localDownloadDir).toAbsolutePath().normalize();
         try {
             Files.createDirectories(localDir);
-            clearLocalDownloadDirectory(localDir);
         } catch (IOException e) {
             throw new IllegalStateException("Nao foi possivel preparar pasta local de download: " + localDir, e);
         }
+        return localDir;
+    }
 
-        int downloadedFilesCount = 0;
+    // Baixa os arquivos em virtual threads, limitadas pela concorrencia configurada e pelo pool de sessoes.
+    private int downloadInParallel(Path localDir) {
+        List<RemoteResourceInfo> files = listRemoteFiles();
+        List<RemoteResourceInfo> pendingFiles = planDownloads(files, localDir);
+        Semaphore concurrencyLimit = new Semaphore(Math.max(1, downloadConcurrency));
+        List<Future<String>> downloads = new ArrayList<>();
 
-        try (SSHClient sshClient = sftpConfig.setupSshClient();
-             SFTPClient sftpClient = sshClient.newSFTPClient()) {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (RemoteResourceInfo file : pendingFiles) {
+                downloads.add(executor.submit(() -> {
+                    concurrencyLimit.acquire();
+                    try {
+                        downloadWithRetry(file, localDir);
+                        return file.getName();
+                    } finally {
+                        concurrencyLimit.release();
+                    }
+                }));
+            }
 
-            List<RemoteResourceInfo> files = sftpClient.ls(remoteDownloadDir);
-            for (RemoteResourceInfo file : files) {
-                if (file.isRegularFile()) {
-                    File localFile = localDir.resolve(file.getName()).toFile();
-                    String remoteFilePath = remoteDownloadDir + "/" + file.getName();
-                    sftpClient.get(remoteFilePath, new FileSystemFile(localFile));
-                    downloadedFilesCount++;
-                    LOGGER.info("Arquivo baixado do SFTP: {}", file.getName());
+            for (Future<String> download : downloads) {
+                try {
+                    download.get();
+                } catch (ExecutionException e) {
+                    downloads.forEach(pending -> pending.cancel(true));
+                    throw new IllegalStateException("Erro na rotina de download SFTP", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Download SFTP interrompido", e);
+                }
+            }
+            return countReadyFiles(files, localDir);
+        }
+    }
+
+    // Arquivos da listagem remota com copia local completa (baixada agora ou reaproveitada), prontos para o step.
+    private static int countReadyFiles(List<RemoteResourceInfo> files, Path localDir) {
+        int readyFiles = 0;
+        for (RemoteResourceInfo file : files) {
+            if (Files.isRegularFile(localDir.resolve(file.getName()))) {
+                readyFiles++;
+            }
+        }
+        return readyFiles;
+    }
+
+    // Lista os arquivos das filiais no diretorio remoto usando uma sessao do pool. Qualquer falha descarta a
+    // sessao, para que nenhuma excecao deixe a sessao e a permissao do pool presas.
+    private List<RemoteResourceInfo> listRemoteFiles() {
+        SftpSession session;
+        try {
+            session = sftpSessionPool.borrow();
+        } catch (IOException e) {
+            throw new IllegalStateException("Erro ao listar diretorio remoto " + remoteDownloadDir, e);
+        }
+        boolean succeeded = false;
+        try {
+            List<RemoteResourceInfo> files = RemoteFileFilter.branchFiles(session.sftpClient().ls(remoteDownloadDir),
+                    filialReportPattern);
+            succeeded = true;
+            return files;
+        } catch (IOException e) {
+            throw new IllegalStateException("Erro ao listar diretorio remoto " + remoteDownloadDir, e);
+        } finally {
+            returnSession(session, succeeded);
+        }
+    }
+
+    // Remove da pasta local o que saiu do remoto e retorna somente os arquivos novos ou alterados.
+    private List<RemoteResourceInfo> planDownloads(List<RemoteResourceInfo> remoteFiles, Path localDir) {
+        Set<String> remoteNames = new HashSet<>();
+        List<RemoteResourceInfo> pendingFiles = new ArrayList<>();
+        try {
+            for (RemoteResourceInfo file : remoteFiles) {
+                remoteNames.add(file.getName());
+                if (!downloadManifest.isUnchanged(file, localDir.resolve(file.getName()))) {
+                    pendingFiles.add(file);
                 }
             }
+            removeStaleLocalFiles(localDir, remoteNames);
         } catch (IOException e) {
-            throw new IllegalStateException("Erro na rotina de download SFTP", e);
+            throw new IllegalStateException("Nao foi possivel comparar pasta local com o manifesto: " + localDir, e);
+        }
+        downloadManifest.retainOnly(remoteNames);
+
+        int reusedFilesCount = remoteFiles.size() - pendingFiles.size();
+        if (reusedFilesCount > 0) {
+            LOGGER.info("{} arquivo(s) inalterado(s) ja presentes localmente. Download sera ignorado.",
+                    reusedFilesCount);
+        }
+        return pendingFiles;
+    }
+
+    // Baixa um arquivo para um temporario e renomeia ao final; falhas de IO descartam a sessao e tentam de
+    // novo. Qualquer outra saida (RuntimeException, interrupcao no pipeline) tambem devolve a sessao.
+    void downloadWithRetry(RemoteResourceInfo file, Path localDir) throws IOException, InterruptedException {
+        String fileName = file.getName();
+        String remoteFilePath = remoteDownloadDir + "/" + fileName;
+        Path localFile = localDir.resolve(fileName);
+        Path partialFile = localDir.resolve(fileName + PARTIAL_SUFFIX);
+
+        for (int attempt = 1; ; attempt++) {
+            SftpSession session = sftpSessionPool.borrow();
+            boolean succeeded = false;
+            try {
+                long start = System.nanoTime();
+                transfer(session.sftpClient(), file, remoteFilePath, partialFile);
+                succeeded = true;
+                batchMetrics.recordTransfer(BatchMetrics.TransferDirection.DOWNLOAD, fileName,
+                        file.getAttributes().getSize(), System.nanoTime() - start);
+            } catch (IOException e) {
+                if (!rangedSftpTransfer.appliesTo(file.getAttributes().getSize())) {
+                    // No download em faixas o parcial e o progresso ficam para a proxima tentativa retomar
+                    Files.deleteIfExists(partialFile);
+                }
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                LOGGER.warn("Falha ao baixar {} (tentativa {} de {}). Tentando novamente.",
+                        fileName, attempt, maxAttempts, e);
+            } finally {
+                returnSession(session, succeeded);
+            }
+            if (succeeded) {
+                Files.move(partialFile, localFile, StandardCopyOption.REPLACE_EXISTING);
+                downloadManifest.record(file, localFile);
+                LOGGER.info("Arquivo baixado do SFTP: {}", fileName);
+                return;
+            }
+            Thread.sleep(RETRY_BACKOFF_MS * attempt);
         }
+    }
 
-        return downloadedFilesCount;
+    // Sessao que concluiu a operacao volta ao pool; qualquer outra e descartada.
+    private void returnSession(SftpSession session, boolean succeeded) {
+        if (succeeded) {
+            sftpSessionPool.release(session);
+        } else {
+            sftpSessionPool.invalidate(session);
+        }
     }
 
-    // Remove arquivos locais antigos antes de uma nova rodada de download.
-    private void clearLocalDownloadDirectory(Path localDir) throws IOException {
+    // Arquivos grandes vao em faixas paralelas e retomaveis; os demais com um get simples.
+    private void transfer(SFTPClient sftpClient, RemoteResourceInfo file, String remoteFilePath, Path partialFile)
+            throws IOException {
+        long size = file.getAttributes().getSize();
+        if (rangedSftpTransfer.appliesTo(size)) {
+            rangedSftpTransfer.download(sftpClient, remoteFilePath, size, file.getAttributes().getMtime(),
+                    partialFile);
+        } else {
+            sftpClient.get(remoteFilePath, new FileSystemFile(partialFile.toFile()));
+        }
+    }
+
+    // Remove arquivos locais que nao existem mais no diretorio remoto, inclusive downloads incompletos.
+    private void removeStaleLocalFiles(Path localDir, Set<String> remoteNames) throws IOException {
         List<Path> filesToDelete = new ArrayList<>();
         try (var paths = Files.list(localDir)) {
-            paths.filter(Files::isRegularFile).forEach(filesToDelete::add);
+            paths.filter(Files::isRegularFile)
+                    .filter(path -> !remoteNames.contains(sourceFileName(path.getFileName().toString())))
+                    .forEach(filesToDelete::add);
         }
 
         for (Path filePath : filesToDelete) {
             Files.delete(filePath);
         }
     }
-}
\ No newline at end of file
+
+    // Nome do arquivo remoto de origem, sem os sufixos de download parcial e de progresso, para que
+    // transferencias interrompidas de arquivos ainda presentes no remoto sejam mantidas.
+    private static String sourceFileName(String localFileName) {
+        String name = localFileName;
+        for (String suffix : TRANSFER_SUFFIXES) {
+            if (name.endsWith(suffix)) {
+                name = name.substring(0, name.length() - suffix.length());
+            }
+        }
+        return name;
+    }
+}
@@ -0,0 +1,189 @@
+package com.arturokumura.car_dealer.integration;
+
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.LongAdder;
+import net.schmizz.sshj.sftp.RemoteFile;
+import org.springframework.core.io.AbstractResource;
+
+// Resource que le um arquivo direto do SFTP enquanto os bytes chegam, com leitura antecipada
+// de varios blocos. Opcionalmente grava uma copia local para o arquivo de processados.
+public class SftpRemoteResource extends AbstractResource {
+
+    private final SftpSessionPool sftpSessionPool;
+    private final BatchMetrics batchMetrics;
+    private final String remotePath;
+    private final String fileName;
+    private final long contentLength;
+    private final int readAhead;
+    private final Path localCopy;
+    private final LongAdder readNanos;
+
+    // localCopy pode ser nulo quando a copia local nao e desejada; readNanos acumula o tempo gasto
+    // esperando bytes do servidor.
+    public SftpRemoteResource(SftpSessionPool sftpSessionPool, BatchMetrics batchMetrics, String remotePath,
+                              String fileName, long contentLength, int readAhead, Path localCopy,
+                              LongAdder readNanos) {
+        this.sftpSessionPool = sftpSessionPool;
+        this.batchMetrics = batchMetrics;
+        this.remotePath = remotePath;
+        this.fileName = fileName;
+        this.contentLength = contentLength;
+        this.readAhead = readAhead;
+        this.localCopy = localCopy;
+        this.readNanos = readNanos;
+    }
+
+    // O arquivo veio da listagem remota; a existencia e confirmada ao abrir o stream.
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public String getFilename() {
+        return fileName;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public String getDescription() {
+        return "SFTP resource [" + remotePath + "]";
+    }
+
+    // Abre o arquivo remoto em uma sessao do pool; a sessao volta ao pool quando o stream e fechado.
+    @Override
+    public InputStream getInputStream() throws IOException {
+        SftpSession session = sftpSessionPool.borrow();
+        RemoteFile remoteFile;
+        try {
+            remoteFile = session.sftpClient().open(remotePath);
+        } catch (IOException e) {
+            sftpSessionPool.invalidate(session);
+            throw e;
+        }
+        InputStream in = remoteFile.new ReadAheadRemoteFileInputStream(readAhead);
+        return new RemoteInputStream(in, remoteFile, session);
+    }
+
+    // Stream que devolve a sessao ao pool e, se configurado, grava a copia local durante a leitura.
+    private final class RemoteInputStream extends FilterInputStream {
+
+        private final RemoteFile remoteFile;
+        private final SftpSession session;
+        private final Path partialCopy;
+        private final OutputStream copyOut;
+        private long readingNanos;
+        private long bytesRead;
+        private boolean failed;
+        private boolean endOfFile;
+        private boolean closed;
+
+        private RemoteInputStream(InputStream in, RemoteFile remoteFile, SftpSession session) throws IOException {
+            super(in);
+            this.remoteFile = remoteFile;
+            this.session = session;
+            if (localCopy != null) {
+                Files.createDirectories(localCopy.getParent());
+                this.partialCopy = localCopy.resolveSibling(localCopy.getFileName() + ".part");
+                this.copyOut = Files.newOutputStream(partialCopy);
+            } else {
+                this.partialCopy = null;
+                this.copyOut = null;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            try {
+                int read = in.read(buffer, offset, length);
+                if (read == -1) {
+                    endOfFile = true;
+                } else {
+                    bytesRead += read;
+                    if (copyOut != null) {
+                        copyOut.write(buffer, offset, read);
+                    }
+                }
+                return read;
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            } finally {
+                readingNanos += System.nanoTime() - start;
+            }
+        }
+
+        // Pula lendo pelo proprio stream, para que os bytes pulados tambem cheguem a copia local.
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] discard = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(discard, 0, (int) Math.min(discard.length, n - skipped));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        // Fecha o arquivo remoto, devolve a sessao e publica a copia local somente se lida ate o fim.
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                in.close();
+                remoteFile.close();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            } finally {
+                if (failed) {
+                    sftpSessionPool.invalidate(session);
+                } else {
+                    sftpSessionPool.release(session);
+                }
+                // So o tempo dentro das leituras: o processamento das linhas entre elas nao e transferencia
+                batchMetrics.recordTransfer(BatchMetrics.TransferDirection.STREAM, fileName, bytesRead,
+                        readingNanos);
+                readNanos.add(readingNanos);
+                closeLocalCopy();
+            }
+        }
+
+        private void closeLocalCopy() throws IOException {
+            if (copyOut == null) {
+                return;
+            }
+            copyOut.close();
+            if (endOfFile && !failed) {
+                Files.move(partialCopy, localCopy, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(partialCopy);
+            }
+        }
+    }
+}
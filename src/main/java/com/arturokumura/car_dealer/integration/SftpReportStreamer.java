@@ -0,0 +1,163 @@
+package com.arturokumura.car_dealer.integration;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPOutputStream;
+import net.schmizz.sshj.sftp.OpenMode;
+import net.schmizz.sshj.sftp.RemoteFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// Grava o relatorio da matriz direto em um arquivo remoto, sem copia local intermediaria. No fim do
+// step o conteudo vai para "<nome>.part" e fica guardado pela JobExecution; so o afterJob de um job
+// concluido publica (rename para o nome final). Falhas e jobs nao concluidos removem os ".part".
+@Service
+public class SftpReportStreamer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SftpReportStreamer.class);
+    private static final String COMPRESSION_NONE = "none";
+    private static final String COMPRESSION_GZIP = "gzip";
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final SftpSessionPool sftpSessionPool;
+    private final boolean gzip;
+    private final ConcurrentMap<Long, List<String>> stagedByExecution = new ConcurrentHashMap<>();
+
+    @Value("${sftp.dir.remote.upload}")
+    private String remoteUploadDir;
+
+    @Value("${sftp.upload.max-unconfirmed-writes:16}")
+    private int maxUnconfirmedWrites;
+
+    // Conteudo do relatorio escrito no stream remoto.
+    @FunctionalInterface
+    public interface ReportBody {
+        void writeTo(Writer writer) throws IOException;
+    }
+
+    // Compressao desconhecida falha na subida, em vez de enviar o relatorio sem compressao.
+    public SftpReportStreamer(SftpSessionPool sftpSessionPool,
+                              @Value("${app.report.compression:none}") String compression) {
+        String normalized = compression.trim().toLowerCase(Locale.ROOT);
+        if (!COMPRESSION_NONE.equals(normalized) && !COMPRESSION_GZIP.equals(normalized)) {
+            throw new IllegalStateException("app.report.compression invalido: '" + compression
+                    + "'. Use " + COMPRESSION_NONE + " ou " + COMPRESSION_GZIP + ".");
+        }
+        this.sftpSessionPool = sftpSessionPool;
+        this.gzip = COMPRESSION_GZIP.equals(normalized);
+    }
+
+    // Nome remoto final, com a extensao da compressao configurada.
+    public String remoteFileName(String fileName) {
+        return gzip ? fileName + ".gz" : fileName;
+    }
+
+    // Escreve o corpo no ".part" remoto com escritas em pipeline, sem publicar. Em falha o ".part" e removido.
+    public void stage(long jobExecutionId, String fileName, ReportBody body) throws IOException {
+        String partialPath = remoteUploadDir + "/" + remoteFileName(fileName) + PARTIAL_SUFFIX;
+        SftpSession session = sftpSessionPool.borrow();
+        boolean succeeded = false;
+        try {
+            if (session.sftpClient().statExistence(remoteUploadDir) == null) {
+                session.sftpClient().mkdirs(remoteUploadDir);
+            }
+            try (RemoteFile remoteFile = session.sftpClient().open(partialPath,
+                    EnumSet.of(OpenMode.WRITE, OpenMode.CREAT, OpenMode.TRUNC))) {
+                OutputStream out = remoteFile.new RemoteFileOutputStream(0, maxUnconfirmedWrites);
+                if (gzip) {
+                    out = new GZIPOutputStream(out, WRITE_BUFFER_SIZE);
+                }
+                try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8),
+                        WRITE_BUFFER_SIZE)) {
+                    body.writeTo(writer);
+                }
+            }
+            succeeded = true;
+        } finally {
+            if (succeeded) {
+                sftpSessionPool.release(session);
+            } else {
+                sftpSessionPool.invalidate(session);
+                removeQuietly(List.of(partialPath));
+            }
+        }
+        stagedByExecution.computeIfAbsent(jobExecutionId, id -> new CopyOnWriteArrayList<>()).add(partialPath);
+        LOGGER.info("Relatorio da matriz enviado por streaming, aguardando o fim do job: {}", partialPath);
+    }
+
+    // Publica os relatorios da execucao com rename do ".part" para o nome final.
+    public void publish(long jobExecutionId) throws IOException {
+        List<String> staged = stagedByExecution.remove(jobExecutionId);
+        if (staged == null) {
+            return;
+        }
+        SftpSession session = sftpSessionPool.borrow();
+        boolean succeeded = false;
+        try {
+            for (String partialPath : staged) {
+                String remotePath = partialPath.substring(0, partialPath.length() - PARTIAL_SUFFIX.length());
+                if (session.sftpClient().statExistence(remotePath) != null) {
+                    session.sftpClient().rm(remotePath);
+                }
+                session.sftpClient().rename(partialPath, remotePath);
+                LOGGER.info("Relatorio da matriz publicado: {}", remotePath);
+            }
+            succeeded = true;
+        } finally {
+            if (succeeded) {
+                sftpSessionPool.release(session);
+            } else {
+                sftpSessionPool.invalidate(session);
+            }
+        }
+    }
+
+    // Remove os ".part" de uma execucao que nao concluiu.
+    public void discard(long jobExecutionId) {
+        List<String> staged = stagedByExecution.remove(jobExecutionId);
+        if (staged != null) {
+            removeQuietly(staged);
+        }
+    }
+
+    // Remocao de melhor esforco em uma sessao nova; a anterior pode ser a que falhou.
+    private void removeQuietly(List<String> remotePaths) {
+        SftpSession session;
+        try {
+            session = sftpSessionPool.borrow();
+        } catch (IOException e) {
+            LOGGER.warn("Nao foi possivel remover {} do SFTP", remotePaths, e);
+            return;
+        }
+        boolean succeeded = false;
+        try {
+            for (String remotePath : remotePaths) {
+                if (session.sftpClient().statExistence(remotePath) != null) {
+                    session.sftpClient().rm(remotePath);
+                }
+            }
+            succeeded = true;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Nao foi possivel remover {} do SFTP", remotePaths, e);
+        } finally {
+            if (succeeded) {
+                sftpSessionPool.release(session);
+            } else {
+                sftpSessionPool.invalidate(session);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.arturokumura.car_dealer.integration;
+
+import java.io.Closeable;
+import java.io.IOException;
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.sftp.SFTPClient;
+
+// Conexao SSH autenticada com seu canal SFTP, mantida aberta pelo SftpSessionPool.
+public record SftpSession(SSHClient sshClient, SFTPClient sftpClient) implements Closeable {
+
+    // Indica se a conexao ainda pode ser reutilizada.
+    public boolean isAlive() {
+        return sshClient.isConnected() && sshClient.isAuthenticated();
+    }
+
+    // Fecha o canal SFTP e a conexao SSH.
+    @Override
+    public void close() throws IOException {
+        try {
+            sftpClient.close();
+        } finally {
+            sshClient.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.arturokumura.car_dealer.integration;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import net.schmizz.sshj.SSHClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Pool limitado de sessoes SFTP autenticadas, reaproveitadas entre transferencias e execucoes.
+@Component
+public class SftpSessionPool implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SftpSessionPool.class);
+
+    private final SftpConfig sftpConfig;
+    private final Semaphore permits;
+    private final BlockingQueue<SftpSession> idleSessions = new LinkedBlockingQueue<>();
+    private final int maxSessions;
+
+    // Recebe a configuracao de conexao e o limite de sessoes simultaneas.
+    public SftpSessionPool(SftpConfig sftpConfig,
+                           @Value("${sftp.pool.max-sessions:4}") int maxSessions) {
+        this.sftpConfig = sftpConfig;
+        this.maxSessions = maxSessions;
+        this.permits = new Semaphore(maxSessions, true);
+    }
+
+    // Obtem uma sessao ociosa ou abre uma nova, bloqueando quando o limite foi atingido.
+    public SftpSession borrow() throws IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrompido aguardando sessao SFTP", e);
+        }
+
+        try {
+            SftpSession session;
+            while ((session = idleSessions.poll()) != null) {
+                if (session.isAlive()) {
+                    return session;
+                }
+                closeQuietly(session);
+            }
+            return open();
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // Devolve ao pool uma sessao que terminou a operacao sem erro.
+    public void release(SftpSession session) {
+        if (session.isAlive()) {
+            idleSessions.offer(session);
+        } else {
+            closeQuietly(session);
+        }
+        permits.release();
+    }
+
+    // Descarta uma sessao que falhou; a proxima requisicao abre uma nova conexao.
+    public void invalidate(SftpSession session) {
+        closeQuietly(session);
+        permits.release();
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    // Fecha as sessoes ociosas no encerramento da aplicacao.
+    @Override
+    public void destroy() {
+        SftpSession session;
+        while ((session = idleSessions.poll()) != null) {
+            closeQuietly(session);
+        }
+    }
+
+    private SftpSession open() throws IOException {
+        SSHClient sshClient = sftpConfig.setupSshClient();
+        try {
+            return new SftpSession(sshClient, sshClient.newSFTPClient());
+        } catch (IOException e) {
+            sshClient.close();
+            throw e;
+        }
+    }
+
+    private void closeQuietly(SftpSession session) {
+        try {
+            session.close();
+        } catch (IOException e) {
+            LOGGER.warn("Falha ao fechar sessao SFTP", e);
+        }
+    }
+}
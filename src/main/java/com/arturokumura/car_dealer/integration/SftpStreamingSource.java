@@ -0,0 +1,116 @@
+package com.arturokumura.car_dealer.integration;
+
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import net.schmizz.sshj.sftp.RemoteResourceInfo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+// Fonte de arquivos das filiais lidos direto do SFTP, sem baixar para a pasta local antes do step.
+@Service
+public class SftpStreamingSource {
+
+    public static final String LOCATION_PREFIX = "sftp:";
+
+    private final SftpSessionPool sftpSessionPool;
+    private final BatchMetrics batchMetrics;
+    private final LongAdder readNanos = new LongAdder();
+
+    @Value("${sftp.dir.remote.download}")
+    private String remoteDownloadDir;
+
+    @Value("${sftp.dir.local.download}")
+    private String localDownloadDir;
+
+    @Value("${app.filial-report-pattern}")
+    private String filialReportPattern;
+
+    @Value("${sftp.streaming.enabled:false}")
+    private boolean enabled;
+
+    // A mesma chave decide a copia local do afterJob; com ela desligada nada e regravado la nem aqui.
+    @Value("${sftp.archive.local-copy:true}")
+    private boolean keepLocalCopy;
+
+    @Value("${sftp.streaming.read-ahead:16}")
+    private int readAhead;
+
+    // Injeta o pool de sessoes usado para listar e abrir os arquivos remotos e as metricas de transferencia.
+    public SftpStreamingSource(SftpSessionPool sftpSessionPool, BatchMetrics batchMetrics) {
+        this.sftpSessionPool = sftpSessionPool;
+        this.batchMetrics = batchMetrics;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Zera o tempo de leitura acumulado; chamado no inicio de cada job.
+    public void resetReadTime() {
+        readNanos.reset();
+    }
+
+    // Tempo gasto lendo os streams remotos desde o ultimo reset, o equivalente ao download no modo streaming.
+    public long readMillis() {
+        return readNanos.sum() / 1_000_000;
+    }
+
+    // Lista os arquivos das filiais no diretorio remoto como resources ordenados por nome.
+    public List<Resource> listResources() {
+        List<Resource> resources = new ArrayList<>();
+        for (RemoteResourceInfo file : listRemoteFiles()) {
+            resources.add(newResource(file.getName(), file.getAttributes().getSize()));
+        }
+        return resources;
+    }
+
+    // Quantidade de arquivos aguardando processamento no diretorio remoto.
+    public int countRemoteFiles() {
+        return listRemoteFiles().size();
+    }
+
+    // Resolve a localizacao "sftp:<arquivo>" usada pelas particoes no modo streaming.
+    public Resource resolve(String location) {
+        return newResource(location.substring(LOCATION_PREFIX.length()), -1);
+    }
+
+    private SftpRemoteResource newResource(String fileName, long size) {
+        Path localCopy = keepLocalCopy
+                ? Path.of(localDownloadDir).toAbsolutePath().normalize().resolve(fileName)
+                : null;
+        return new SftpRemoteResource(sftpSessionPool, batchMetrics, remoteDownloadDir + "/" + fileName, fileName, size,
+                readAhead, localCopy, readNanos);
+    }
+
+    // Qualquer falha descarta a sessao, para que nenhuma excecao deixe a sessao e a permissao do pool presas.
+    private List<RemoteResourceInfo> listRemoteFiles() {
+        SftpSession session;
+        try {
+            session = sftpSessionPool.borrow();
+        } catch (IOException e) {
+            throw new IllegalStateException("Erro ao listar diretorio remoto " + remoteDownloadDir, e);
+        }
+        boolean succeeded = false;
+        try {
+            List<RemoteResourceInfo> files = RemoteFileFilter.branchFiles(session.sftpClient().ls(remoteDownloadDir),
+                    filialReportPattern);
+            succeeded = true;
+            files.sort(Comparator.comparing(RemoteResourceInfo::getName));
+            return files;
+        } catch (IOException e) {
+            throw new IllegalStateException("Erro ao listar diretorio remoto " + remoteDownloadDir, e);
+        } finally {
+            if (succeeded) {
+                sftpSessionPool.release(session);
+            } else {
+                sftpSessionPool.invalidate(session);
+            }
+        }
+    }
+}
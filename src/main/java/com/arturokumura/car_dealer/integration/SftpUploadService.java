@@ -1,17 +1,34 @@
 package com.arturokumura.car_dealer.integration;
 
+import com.arturokumura.car_dealer.batch.cache.SalesColumnarCache;
+import com.arturokumura.car_dealer.batch.rollup.RollupDefinition;
+import com.arturokumura.car_dealer.batch.rollup.RollupDefinitions;
+import com.arturokumura.car_dealer.batch.writer.SalesReportWriter;
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import net.schmizz.concurrent.Promise;
 import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.sftp.PacketType;
 import net.schmizz.sshj.sftp.RemoteResourceInfo;
+import net.schmizz.sshj.sftp.Request;
+import net.schmizz.sshj.sftp.Response;
 import net.schmizz.sshj.sftp.SFTPClient;
+import net.schmizz.sshj.sftp.SFTPEngine;
+import net.schmizz.sshj.sftp.SFTPException;
 import net.schmizz.sshj.xfer.FileSystemFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,9 +39,16 @@ import org.springframework.stereotype.Service;
 public class SftpUploadService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SftpUploadService.class);
+    private static final String MOVE_MODE_RENAME = "rename";
     private static final DateTimeFormatter FILE_SUFFIX_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
 
     private final SftpConfig sftpConfig;
+    private final DownloadManifest downloadManifest;
+    private final BatchMetrics batchMetrics;
+    private final RollupDefinitions rollupDefinitions;
+    private final SalesColumnarCache salesColumnarCache;
+    private final RangedSftpTransfer rangedSftpTransfer;
+    private final SftpReportStreamer sftpReportStreamer;
 
     @Value("${sftp.dir.local.upload}")
     private String localUploadDir;
@@ -44,45 +68,192 @@ public class SftpUploadService {
     @Value("${sftp.dir.local.download}")
     private String localDownloadDir;
 
-    // Injeta a configuracao usada para abrir conexao SFTP.
-    public SftpUploadService(SftpConfig sftpConfig) {
+    @Value("${sftp.archive.local-copy:true}")
+    private boolean localArchiveCopy;
+
+    @Value("${sftp.move.mode:rename}")
+    private String moveMode;
+
+    @Value("${sftp.move.pipeline-window:64}")
+    private int pipelineWindow;
+
+    @Value("${app.report.output:local}")
+    private String reportOutput;
+
+    private record PendingRename(String originalFileName, String renamedFileName,
+                                 Promise<Response, SFTPException> response) {
+    }
+
+    // Injeta a configuracao SFTP, o manifesto dos arquivos baixados, as metricas, os rollups do relatorio,
+    // o cache colunar alimentado pelos arquivos arquivados, a transferencia em faixas dos arquivos grandes e
+    // o streamer que publica o relatorio enviado no modo sftp.
+    public SftpUploadService(SftpConfig sftpConfig, DownloadManifest downloadManifest, BatchMetrics batchMetrics,
+                             RollupDefinitions rollupDefinitions, SalesColumnarCache salesColumnarCache,
+                             RangedSftpTransfer rangedSftpTransfer, SftpReportStreamer sftpReportStreamer) {
         this.sftpConfig = sftpConfig;
+        this.downloadManifest = downloadManifest;
+        this.batchMetrics = batchMetrics;
+        this.rollupDefinitions = rollupDefinitions;
+        this.salesColumnarCache = salesColumnarCache;
+        this.rangedSftpTransfer = rangedSftpTransfer;
+        this.sftpReportStreamer = sftpReportStreamer;
     }
 
-    // Envia o relatorio da matriz e move arquivos processados para o destino final.
-    public void uploadAndMoveProcessedFiles() {
+    // Envia (ou publica, no modo sftp) o relatorio da matriz da execucao e move arquivos processados para
+    // o destino final.
+    public void uploadAndMoveProcessedFiles(long jobExecutionId) {
         Path uploadDir = Path.of(localUploadDir).toAbsolutePath().normalize();
-        Path matrizReportPath = Path.of(matrizReportFile).toAbsolutePath().normalize();
         Path localFiliaisDir = Path.of(localDownloadDir).toAbsolutePath().normalize();
         Path localProcessedDir = localFiliaisDir.resolve("processados");
+        prepareLocalDirectories(uploadDir, localFiliaisDir, localProcessedDir);
+
+        try (SSHClient sshClient = sftpConfig.setupSshClient();
+             SFTPClient sftpClient = sshClient.newSFTPClient()) {
+            ensureRemoteDirectoryExists(sftpClient, remoteProcessedDir);
+            uploadMatrizReports(sftpClient, uploadDir, jobExecutionId);
+
+            List<String> fileNames = new ArrayList<>();
+            for (RemoteResourceInfo remoteFile : sftpClient.ls(remoteDownloadDir)) {
+                if (remoteFile.isRegularFile()) {
+                    fileNames.add(remoteFile.getName());
+                }
+            }
+
+            if (MOVE_MODE_RENAME.equalsIgnoreCase(moveMode)) {
+                moveByRename(sftpClient, fileNames, localFiliaisDir, localProcessedDir);
+            } else {
+                for (String fileName : fileNames) {
+                    processFileToProcessed(sftpClient, fileName, localFiliaisDir, localProcessedDir);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Erro na rotina de upload/movimentacao SFTP", e);
+        } finally {
+            downloadManifest.save();
+        }
+    }
+
+    // Envia somente o relatorio da matriz; no modo pipeline os arquivos ja foram movidos durante o step.
+    public void uploadMatrizReports(long jobExecutionId) {
+        Path uploadDir = Path.of(localUploadDir).toAbsolutePath().normalize();
         try {
             Files.createDirectories(uploadDir);
-            Files.createDirectories(localFiliaisDir);
-            Files.createDirectories(localProcessedDir);
         } catch (IOException e) {
             throw new IllegalStateException("Nao foi possivel preparar diretorios locais SFTP", e);
         }
-
         try (SSHClient sshClient = sftpConfig.setupSshClient();
              SFTPClient sftpClient = sshClient.newSFTPClient()) {
+            uploadMatrizReports(sftpClient, uploadDir, jobExecutionId);
+        } catch (IOException e) {
+            throw new IllegalStateException("Erro no upload do relatorio da matriz", e);
+        }
+    }
+
+    // Abre uma sessao dedicada para mover arquivos para processados um a um, conforme sao liberados.
+    public ProcessedFileMover openProcessedFileMover() {
+        Path localFiliaisDir = Path.of(localDownloadDir).toAbsolutePath().normalize();
+        Path localProcessedDir = localFiliaisDir.resolve("processados");
+        prepareLocalDirectories(Path.of(localUploadDir).toAbsolutePath().normalize(), localFiliaisDir,
+                localProcessedDir);
+        SSHClient sshClient = null;
+        try {
+            sshClient = sftpConfig.setupSshClient();
+            SFTPClient sftpClient = sshClient.newSFTPClient();
             ensureRemoteDirectoryExists(sftpClient, remoteProcessedDir);
+            return new ProcessedFileMover(sshClient, sftpClient, localFiliaisDir, localProcessedDir);
+        } catch (IOException e) {
+            closeQuietly(sshClient);
+            throw new IllegalStateException("Nao foi possivel abrir sessao SFTP para movimentacao", e);
+        }
+    }
 
-            uploadSingleMatrizFile(sftpClient, uploadDir, matrizReportPath);
+    // Move arquivos para processados na mesma sessao; no modo rename as requisicoes ficam em voo ate
+    // pipelineWindow e so sao confirmadas quando a janela enche ou no close.
+    public final class ProcessedFileMover implements Closeable {
 
-            List<RemoteResourceInfo> remoteFiles = sftpClient.ls(remoteDownloadDir);
-            for (RemoteResourceInfo remoteFile : remoteFiles) {
-                if (remoteFile.isRegularFile()) {
-                    processFileToProcessed(sftpClient, remoteFile.getName(), localFiliaisDir, localProcessedDir);
+        private final SSHClient sshClient;
+        private final SFTPClient sftpClient;
+        private final Path localFiliaisDir;
+        private final Path localProcessedDir;
+        private final Deque<PendingRename> inFlight = new ArrayDeque<>();
+
+        private ProcessedFileMover(SSHClient sshClient, SFTPClient sftpClient, Path localFiliaisDir,
+                                   Path localProcessedDir) {
+            this.sshClient = sshClient;
+            this.sftpClient = sftpClient;
+            this.localFiliaisDir = localFiliaisDir;
+            this.localProcessedDir = localProcessedDir;
+        }
+
+        public void move(String fileName) throws IOException {
+            if (!MOVE_MODE_RENAME.equalsIgnoreCase(moveMode)) {
+                processFileToProcessed(sftpClient, fileName, localFiliaisDir, localProcessedDir);
+                return;
+            }
+            inFlight.add(sendRename(sftpClient.getSFTPEngine(), fileName));
+            if (inFlight.size() >= Math.max(1, pipelineWindow)) {
+                completeRename(sftpClient, inFlight.poll(), localFiliaisDir, localProcessedDir);
+            }
+        }
+
+        // Confirma os renames pendentes antes de fechar a sessao.
+        @Override
+        public void close() throws IOException {
+            try {
+                while (!inFlight.isEmpty()) {
+                    completeRename(sftpClient, inFlight.poll(), localFiliaisDir, localProcessedDir);
+                }
+            } finally {
+                try {
+                    sftpClient.close();
+                } finally {
+                    sshClient.close();
+                    downloadManifest.save();
                 }
             }
+        }
+    }
+
+    private void prepareLocalDirectories(Path uploadDir, Path localFiliaisDir, Path localProcessedDir) {
+        try {
+            Files.createDirectories(uploadDir);
+            Files.createDirectories(localFiliaisDir);
+            Files.createDirectories(localProcessedDir);
         } catch (IOException e) {
-            throw new IllegalStateException("Erro na rotina de upload/movimentacao SFTP", e);
+            throw new IllegalStateException("Nao foi possivel preparar diretorios locais SFTP", e);
+        }
+    }
+
+    // Relatorio da matriz e rollups; no modo sftp eles ja estao no servidor como ".part" e so sao publicados.
+    private void uploadMatrizReports(SFTPClient sftpClient, Path uploadDir, long jobExecutionId) throws IOException {
+        if (SalesReportWriter.OUTPUT_SFTP.equalsIgnoreCase(reportOutput)) {
+            // A copia local, quando mantida, e so para auditoria
+            sftpReportStreamer.publish(jobExecutionId);
+            return;
+        }
+        String reportFileName = Path.of(matrizReportFile).getFileName().toString();
+        uploadSingleMatrizFile(sftpClient, uploadDir, reportFileName);
+        for (RollupDefinition rollup : rollupDefinitions.extras()) {
+            uploadSingleMatrizFile(sftpClient, uploadDir,
+                    SalesReportWriter.rollupFileName(reportFileName, rollup.name()));
+        }
+    }
+
+    private static void closeQuietly(SSHClient sshClient) {
+        if (sshClient == null) {
+            return;
+        }
+        try {
+            sshClient.close();
+        } catch (IOException e) {
+            LOGGER.debug("Falha ao fechar sessao SFTP", e);
         }
     }
 
     // Faz upload do arquivo mais recente da matriz e remove a copia local.
-    private void uploadSingleMatrizFile(SFTPClient sftpClient, Path uploadDir, Path matrizReportPath) throws IOException {
-        Optional<Path> matrizFilePath = resolveMatrizFileToUpload(uploadDir, matrizReportPath);
+    private void uploadSingleMatrizFile(SFTPClient sftpClient, Path uploadDir, String configuredFileName)
+            throws IOException {
+        Optional<Path> matrizFilePath = resolveMatrizFileToUpload(uploadDir, configuredFileName);
         if (matrizFilePath.isEmpty()) {
             LOGGER.info("Arquivo da matriz nao encontrado para upload em {}", uploadDir);
             return;
@@ -90,7 +261,10 @@ public class SftpUploadService {
 
         File matrizFile = matrizFilePath.get().toFile();
         String remoteTargetPath = remoteUploadDir + "/" + matrizFile.getName();
-        sftpClient.put(new FileSystemFile(matrizFile), remoteTargetPath);
+        long start = System.nanoTime();
+        put(sftpClient, matrizFile.toPath(), remoteTargetPath);
+        batchMetrics.recordTransfer(BatchMetrics.TransferDirection.UPLOAD, matrizFile.getName(),
+                matrizFile.length(), System.nanoTime() - start);
         LOGGER.info("Arquivo de matriz enviado: {}", matrizFile.getName());
 
         if (!matrizFile.delete()) {
@@ -99,8 +273,7 @@ public class SftpUploadService {
     }
 
     // Localiza o arquivo da matriz mais recente com base no nome configurado.
-    private Optional<Path> resolveMatrizFileToUpload(Path uploadDir, Path matrizReportPath) throws IOException {
-        String configuredFileName = matrizReportPath.getFileName().toString();
+    private Optional<Path> resolveMatrizFileToUpload(Path uploadDir, String configuredFileName) throws IOException {
         int dotIndex = configuredFileName.lastIndexOf('.');
         String baseName = dotIndex > 0 ? configuredFileName.substring(0, dotIndex) : configuredFileName;
         String extension = dotIndex > 0 ? configuredFileName.substring(dotIndex) : "";
@@ -124,24 +297,106 @@ public class SftpUploadService {
         }
     }
 
-    // Move um arquivo da pasta remota de entrada para a pasta de processados.
+    // Move os arquivos com rename no servidor, mantendo ate pipelineWindow requisicoes em voo na mesma sessao.
+    private void moveByRename(SFTPClient sftpClient, List<String> fileNames, Path localFiliaisDir,
+                              Path localProcessedDir) throws IOException {
+        SFTPEngine engine = sftpClient.getSFTPEngine();
+        Deque<PendingRename> inFlight = new ArrayDeque<>();
+        for (String originalFileName : fileNames) {
+            inFlight.add(sendRename(engine, originalFileName));
+            if (inFlight.size() >= Math.max(1, pipelineWindow)) {
+                completeRename(sftpClient, inFlight.poll(), localFiliaisDir, localProcessedDir);
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            completeRename(sftpClient, inFlight.poll(), localFiliaisDir, localProcessedDir);
+        }
+    }
+
+    // Envia o rename para processados sem esperar pela resposta.
+    private PendingRename sendRename(SFTPEngine engine, String originalFileName) throws IOException {
+        String renamedFileName = addTimestampSuffix(originalFileName);
+        Request request = engine.newRequest(PacketType.RENAME)
+                .putString(remoteDownloadDir + "/" + originalFileName)
+                .putString(remoteProcessedDir + "/" + renamedFileName);
+        return new PendingRename(originalFileName, renamedFileName, engine.request(request));
+    }
+
+    // Aguarda a resposta do rename; so servidores sem suporte (OP_UNSUPPORTED) caem no caminho de copia.
+    // FAILURE generico (destino existente, permissao, disco cheio) e erro real e interrompe a movimentacao.
+    private void completeRename(SFTPClient sftpClient, PendingRename pending, Path localFiliaisDir,
+                                Path localProcessedDir) throws IOException {
+        try {
+            Response response = pending.response().retrieve(sftpClient.getSFTPEngine().getTimeoutMs(),
+                    TimeUnit.MILLISECONDS);
+            response.ensureStatusPacketIsOK();
+        } catch (SFTPException e) {
+            if (e.getStatusCode() != Response.StatusCode.OP_UNSUPPORTED) {
+                throw e;
+            }
+            LOGGER.warn("Rename remoto nao suportado para {}. Usando copia.", pending.originalFileName());
+            processFileToProcessed(sftpClient, pending.originalFileName(), localFiliaisDir, localProcessedDir);
+            return;
+        }
+
+        archiveLocalCopy(sftpClient, pending.originalFileName(), pending.renamedFileName(), localFiliaisDir,
+                localProcessedDir);
+        LOGGER.info("Arquivo processado para processados: {} -> {}", pending.originalFileName(),
+                pending.renamedFileName());
+    }
+
+    // Move um arquivo da pasta remota de entrada para a pasta de processados copiando o conteudo.
     private void processFileToProcessed(SFTPClient sftpClient, String originalFileName, Path localFiliaisDir,
                                         Path localProcessedDir) throws IOException {
         String renamedFileName = addTimestampSuffix(originalFileName);
         String remoteSourcePath = remoteDownloadDir + "/" + originalFileName;
         String remoteProcessedPath = remoteProcessedDir + "/" + renamedFileName;
+        Path localFilialFile = localFiliaisDir.resolve(originalFileName);
         Path localProcessedPath = localProcessedDir.resolve(renamedFileName);
 
-        sftpClient.get(remoteSourcePath, new FileSystemFile(localProcessedPath.toFile()));
-        sftpClient.put(new FileSystemFile(localProcessedPath.toFile()), remoteProcessedPath);
+        long start = System.nanoTime();
+        Path uploadedFile;
+        if (Files.exists(localFilialFile)) {
+            // Reaproveita o arquivo ja baixado em downloadNewFiles em vez de baixar de novo
+            uploadedFile = localFilialFile;
+        } else {
+            sftpClient.get(remoteSourcePath, new FileSystemFile(localProcessedPath.toFile()));
+            uploadedFile = localProcessedPath;
+        }
+        put(sftpClient, uploadedFile, remoteProcessedPath);
+        batchMetrics.recordTransfer(BatchMetrics.TransferDirection.UPLOAD, originalFileName,
+                Files.size(uploadedFile), System.nanoTime() - start);
         sftpClient.rm(remoteSourcePath);
 
+        archiveLocalCopy(sftpClient, originalFileName, renamedFileName, localFiliaisDir, localProcessedDir);
+        LOGGER.info("Arquivo processado para processados: {} -> {}", originalFileName, renamedFileName);
+    }
+
+    // Move a copia local ja baixada para processados; baixa da pasta remota somente se ela nao existir.
+    // A copia arquivada alimenta o cache colunar quando ele esta habilitado.
+    private void archiveLocalCopy(SFTPClient sftpClient, String originalFileName, String renamedFileName,
+                                  Path localFiliaisDir, Path localProcessedDir) throws IOException {
         Path localFilialFile = localFiliaisDir.resolve(originalFileName);
+        Path localProcessedPath = localProcessedDir.resolve(renamedFileName);
         if (Files.exists(localFilialFile)) {
-            Files.delete(localFilialFile);
+            Files.move(localFilialFile, localProcessedPath, StandardCopyOption.REPLACE_EXISTING);
+        } else if (localArchiveCopy && !Files.exists(localProcessedPath)) {
+            long start = System.nanoTime();
+            sftpClient.get(remoteProcessedDir + "/" + renamedFileName, new FileSystemFile(localProcessedPath.toFile()));
+            batchMetrics.recordTransfer(BatchMetrics.TransferDirection.DOWNLOAD, originalFileName,
+                    Files.size(localProcessedPath), System.nanoTime() - start);
         }
+        salesColumnarCache.store(localProcessedPath);
+        downloadManifest.remove(originalFileName);
+    }
 
-        LOGGER.info("Arquivo processado para processados: {} -> {}", originalFileName, renamedFileName);
+    // Arquivos grandes vao em faixas paralelas e retomaveis, com sessoes do pool; os demais com put simples.
+    private void put(SFTPClient sftpClient, Path localFile, String remotePath) throws IOException {
+        if (rangedSftpTransfer.appliesTo(Files.size(localFile))) {
+            rangedSftpTransfer.upload(localFile, remotePath);
+        } else {
+            sftpClient.put(new FileSystemFile(localFile.toFile()), remotePath);
+        }
     }
 
     // Adiciona timestamp ao nome do arquivo preservando a extensao quando existir.
@@ -0,0 +1,223 @@
+package com.arturokumura.car_dealer.metrics;
+
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+// Metricas do job e das transferencias SFTP, com tag da filial. Os medidores ficam em cache por filial
+// e sao criados so na primeira ocorrencia; depois disso gravar uma medida nao aloca.
+@Component
+public class BatchMetrics {
+
+    public static final String DEALER_TAG = "dealer";
+    private static final String UNKNOWN_DEALER = "unknown";
+
+    public enum TransferDirection {
+        DOWNLOAD, UPLOAD, STREAM
+    }
+
+    private record TransferMeters(Timer duration, DistributionSummary bytes) {
+    }
+
+    private final MeterRegistry registry;
+    private final ConcurrentMap<String, Counter> rowsByDealer = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counter> rejectedByDealer = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counter> duplicatesByDealer = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> chunkDurationByDealer = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> chunkCommitByDealer = new ConcurrentHashMap<>();
+    private final Map<TransferDirection, ConcurrentMap<String, TransferMeters>> transfersByDirection =
+            new EnumMap<>(TransferDirection.class);
+    private final Timer reportWriteTimer;
+    private final Counter repositoryWrites;
+    private final Counter repositoryWritesDeferred;
+    private final Counter dealerMisses;
+
+    public BatchMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (TransferDirection direction : TransferDirection.values()) {
+            transfersByDirection.put(direction, new ConcurrentHashMap<>());
+        }
+        this.reportWriteTimer = Timer.builder("car_dealer.report.write")
+                .description("Tempo de escrita do CSV da matriz")
+                .register(registry);
+        this.repositoryWrites = repositoryWritesCounter("written");
+        this.repositoryWritesDeferred = repositoryWritesCounter("deferred");
+        this.dealerMisses = Counter.builder("car_dealer.dealer.cache.misses")
+                .description("Vendas com dealer_id ausente da dimensao de filiais")
+                .register(registry);
+    }
+
+    // Soma as vendas escritas por filial; a taxa do contador da as linhas por segundo de cada arquivo.
+    public void recordRows(Chunk<? extends SaleRecord> items) {
+        List<? extends SaleRecord> sales = items.getItems();
+        String currentDealer = null;
+        int run = 0;
+        for (int i = 0; i < sales.size(); i++) {
+            String dealerId = dealerOrUnknown(sales.get(i).dealerId());
+            if (!dealerId.equals(currentDealer)) {
+                if (run > 0) {
+                    rowsCounter(currentDealer).increment(run);
+                }
+                currentDealer = dealerId;
+                run = 0;
+            }
+            run++;
+        }
+        if (run > 0) {
+            rowsCounter(currentDealer).increment(run);
+        }
+    }
+
+    // Linha enviada para a quarentena, com a filial tirada do nome do arquivo de origem.
+    public void recordRejected(String fileName) {
+        String dealer = dealerIdOf(fileName);
+        Counter counter = rejectedByDealer.get(dealer);
+        if (counter == null) {
+            counter = rejectedByDealer.computeIfAbsent(dealer, key -> Counter.builder("car_dealer.sales.rejected")
+                    .description("Linhas invalidas enviadas para a quarentena")
+                    .tag(DEALER_TAG, key)
+                    .register(registry));
+        }
+        counter.increment();
+    }
+
+    // Vendas ja processadas em outro arquivo, com a filial tirada do nome do arquivo de origem.
+    public void recordDuplicates(String fileName, long count) {
+        String dealer = dealerIdOf(fileName);
+        Counter counter = duplicatesByDealer.get(dealer);
+        if (counter == null) {
+            counter = duplicatesByDealer.computeIfAbsent(dealer, key -> Counter.builder("car_dealer.sales.duplicates")
+                    .description("Vendas repetidas de arquivos ja processados")
+                    .tag(DEALER_TAG, key)
+                    .register(registry));
+        }
+        counter.increment(count);
+    }
+
+    // Duracao do chunk (da primeira leitura ao commit) e do commit da transacao.
+    public void recordChunk(String dealerId, long chunkNanos, long commitNanos) {
+        String dealer = dealerOrUnknown(dealerId);
+        Timer duration = chunkDurationByDealer.get(dealer);
+        if (duration == null) {
+            duration = chunkDurationByDealer.computeIfAbsent(dealer, key -> histogramTimer(
+                    "car_dealer.chunk.duration", "Leitura, processamento, escrita e commit do chunk", key));
+        }
+        Timer commit = chunkCommitByDealer.get(dealer);
+        if (commit == null) {
+            commit = chunkCommitByDealer.computeIfAbsent(dealer,
+                    key -> histogramTimer("car_dealer.chunk.commit", "Commit da transacao do chunk", key));
+        }
+        duration.record(chunkNanos, TimeUnit.NANOSECONDS);
+        commit.record(commitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Bytes e duracao de uma transferencia SFTP de um arquivo.
+    public void recordTransfer(TransferDirection direction, String fileName, long bytes, long nanos) {
+        String dealer = dealerIdOf(fileName);
+        ConcurrentMap<String, TransferMeters> byDealer = transfersByDirection.get(direction);
+        TransferMeters meters = byDealer.get(dealer);
+        if (meters == null) {
+            meters = byDealer.computeIfAbsent(dealer, key -> transferMeters(direction, key));
+        }
+        meters.duration().record(nanos, TimeUnit.NANOSECONDS);
+        if (bytes >= 0) {
+            meters.bytes().record(bytes);
+        }
+    }
+
+    // Gravacoes intermediarias do step no JobRepository no modo lightweight: feitas e evitadas.
+    public void recordRepositoryWrites(long written, long deferred) {
+        repositoryWrites.increment(written);
+        repositoryWritesDeferred.increment(deferred);
+    }
+
+    // Venda com dealer_id desconhecido na dimensao de filiais.
+    public void recordDealerMiss() {
+        dealerMisses.increment();
+    }
+
+    public void recordReportWrite(long nanos) {
+        reportWriteTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Gauge lido sob demanda pelo registro; o objeto observado fica com referencia fraca. A origem separa o
+    // agregado do step unico dos parciais das particoes, juntados no merge.
+    public <T> void registerAggregateSize(String source, T aggregateOwner, ToDoubleFunction<T> size) {
+        Gauge.builder("car_dealer.report.aggregate.keys", aggregateOwner, size)
+                .description("Chaves filial x modelo no agregado em memoria")
+                .tag("source", source)
+                .register(registry);
+    }
+
+    // Os arquivos das filiais seguem o padrao <dealer_id>_<cidade>_sales.csv.
+    public static String dealerIdOf(String fileName) {
+        if (fileName == null || fileName.isEmpty()) {
+            return UNKNOWN_DEALER;
+        }
+        int separator = fileName.indexOf('_');
+        if (separator > 0) {
+            return fileName.substring(0, separator);
+        }
+        int dotIndex = fileName.lastIndexOf('.');
+        return dotIndex > 0 ? fileName.substring(0, dotIndex) : fileName;
+    }
+
+    private Counter rowsCounter(String dealer) {
+        Counter counter = rowsByDealer.get(dealer);
+        if (counter == null) {
+            counter = rowsByDealer.computeIfAbsent(dealer, key -> Counter.builder("car_dealer.sales.rows")
+                    .description("Vendas escritas pelo step")
+                    .tag(DEALER_TAG, key)
+                    .register(registry));
+        }
+        return counter;
+    }
+
+    private Counter repositoryWritesCounter(String outcome) {
+        return Counter.builder("car_dealer.repository.writes")
+                .description("Atualizacoes intermediarias de step no JobRepository")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private Timer histogramTimer(String name, String description, String dealer) {
+        return Timer.builder(name)
+                .description(description)
+                .tag(DEALER_TAG, dealer)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private TransferMeters transferMeters(TransferDirection direction, String dealer) {
+        String directionTag = direction.name().toLowerCase();
+        return new TransferMeters(
+                Timer.builder("car_dealer.sftp.transfer")
+                        .description("Duracao de transferencias SFTP por arquivo")
+                        .tag(DEALER_TAG, dealer)
+                        .tag("direction", directionTag)
+                        .register(registry),
+                DistributionSummary.builder("car_dealer.sftp.transfer.bytes")
+                        .description("Bytes por transferencia SFTP")
+                        .baseUnit("bytes")
+                        .tag(DEALER_TAG, dealer)
+                        .tag("direction", directionTag)
+                        .register(registry));
+    }
+
+    private static String dealerOrUnknown(String dealerId) {
+        return dealerId == null || dealerId.isEmpty() ? UNKNOWN_DEALER : dealerId;
+    }
+}
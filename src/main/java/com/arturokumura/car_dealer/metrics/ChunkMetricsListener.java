@@ -0,0 +1,61 @@
+package com.arturokumura.car_dealer.metrics;
+
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.listener.ItemReadListener;
+import org.springframework.batch.core.listener.ItemWriteListener;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Mede cada chunk da primeira leitura ate o commit e, separadamente, o proprio commit.
+// A instancia e do step (uma por particao) e se registra como sincronizacao da transacao do chunk,
+// entao os tempos vem do commit real e nao de quando os callbacks do step sao chamados.
+@Component
+@StepScope
+public class ChunkMetricsListener implements ItemReadListener<SaleRecord>, ItemWriteListener<SaleRecord>,
+        TransactionSynchronization {
+
+    private final BatchMetrics batchMetrics;
+    private long chunkStartNanos;
+    private long commitStartNanos;
+    private String chunkDealerId;
+
+    public ChunkMetricsListener(BatchMetrics batchMetrics) {
+        this.batchMetrics = batchMetrics;
+    }
+
+    @Override
+    public void beforeRead() {
+        if (chunkStartNanos == 0) {
+            chunkStartNanos = System.nanoTime();
+        }
+    }
+
+    // Conta as linhas por filial e passa a acompanhar o commit da transacao corrente.
+    @Override
+    public void afterWrite(Chunk<? extends SaleRecord> items) {
+        if (!items.isEmpty()) {
+            chunkDealerId = items.getItems().get(0).dealerId();
+        }
+        batchMetrics.recordRows(items);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(this);
+        }
+    }
+
+    @Override
+    public void beforeCommit(boolean readOnly) {
+        commitStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+        long now = System.nanoTime();
+        if (status == STATUS_COMMITTED && chunkStartNanos != 0) {
+            batchMetrics.recordChunk(chunkDealerId, now - chunkStartNanos, now - commitStartNanos);
+        }
+        chunkStartNanos = 0;
+    }
+}
@@ -0,0 +1,90 @@
+package com.arturokumura.car_dealer.report;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Locale;
+
+// Consultas do relatorio da matriz para os dashboards, respondidas so pela foto em memoria da ultima
+// execucao concluida (sem banco nem arquivos). Nomes de filial e modelo nao diferenciam maiusculas.
+@RestController
+@RequestMapping("/api/reports")
+public class ReportQueryController {
+
+    private final ReportSnapshotHolder reportSnapshotHolder;
+
+    public ReportQueryController(ReportSnapshotHolder reportSnapshotHolder) {
+        this.reportSnapshotHolder = reportSnapshotHolder;
+    }
+
+    // Versao, horario e tamanho da foto vigente.
+    @GetMapping("/snapshot")
+    public ReportSnapshot.Info snapshot() {
+        return snapshotOrUnavailable().info();
+    }
+
+    @GetMapping("/dealers")
+    public List<ReportSnapshot.Totals> dealers() {
+        return snapshotOrUnavailable().dealers();
+    }
+
+    @GetMapping("/dealers/{dealer}")
+    public ReportSnapshot.Totals dealer(@PathVariable String dealer) {
+        return found(snapshotOrUnavailable().dealer(dealer), "Filial", dealer);
+    }
+
+    // Modelos mais vendidos da filial, por unidades (padrao) ou receita.
+    @GetMapping("/dealers/{dealer}/top-models")
+    public List<ReportSnapshot.RankedTotals> topModels(@PathVariable String dealer,
+                                                       @RequestParam(defaultValue = "10") int limit,
+                                                       @RequestParam(defaultValue = "units") String by) {
+        return found(snapshotOrUnavailable().topModels(dealer, order(by), limit), "Filial", dealer);
+    }
+
+    @GetMapping("/models")
+    public List<ReportSnapshot.Totals> models() {
+        return snapshotOrUnavailable().models();
+    }
+
+    @GetMapping("/models/{model}")
+    public ReportSnapshot.Totals model(@PathVariable String model) {
+        return found(snapshotOrUnavailable().model(model), "Modelo", model);
+    }
+
+    // Ranking de filiais por unidades (padrao) ou receita; limit <= 0 devolve todas.
+    @GetMapping("/rankings/dealers")
+    public List<ReportSnapshot.RankedTotals> dealerRanking(@RequestParam(defaultValue = "0") int limit,
+                                                           @RequestParam(defaultValue = "units") String by) {
+        return snapshotOrUnavailable().dealerRanking(order(by), limit);
+    }
+
+    private ReportSnapshot snapshotOrUnavailable() {
+        ReportSnapshot snapshot = reportSnapshotHolder.current();
+        if (snapshot == null) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Nenhuma execucao concluida desde a inicializacao");
+        }
+        return snapshot;
+    }
+
+    private static ReportSnapshot.Order order(String by) {
+        try {
+            return ReportSnapshot.Order.valueOf(by.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Ordenacao invalida: " + by);
+        }
+    }
+
+    private static <T> T found(T value, String kind, String name) {
+        if (value == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, kind + " nao encontrado(a): " + name);
+        }
+        return value;
+    }
+}
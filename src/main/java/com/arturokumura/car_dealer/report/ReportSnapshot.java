@@ -0,0 +1,186 @@
+package com.arturokumura.car_dealer.report;
+
+import com.arturokumura.car_dealer.batch.domain.ReportLine;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Foto imutavel do relatorio principal (filial x modelo) de uma execucao, com todos os indices que a API
+// consulta ja montados e ordenados: totais por filial e por modelo, modelos de cada filial por unidades e
+// por receita e rankings de filiais. Uma consulta e uma busca em mapa mais, no maximo, um subList.
+public final class ReportSnapshot {
+
+    public enum Order {
+        UNITS, REVENUE
+    }
+
+    public record Totals(String name, long unitsSold, BigDecimal revenueBrl) {
+    }
+
+    public record RankedTotals(int rank, String name, long unitsSold, BigDecimal revenueBrl) {
+    }
+
+    public record Info(long version, Instant builtAt, int dealers, int models, int lines) {
+    }
+
+    private static final Comparator<Totals> BY_UNITS = Comparator.comparingLong(Totals::unitsSold).reversed()
+            .thenComparing(Totals::revenueBrl, Comparator.reverseOrder())
+            .thenComparing(Totals::name);
+    private static final Comparator<Totals> BY_REVENUE = Comparator.comparing(Totals::revenueBrl,
+                    Comparator.<BigDecimal>reverseOrder())
+            .thenComparing(Comparator.comparingLong(Totals::unitsSold).reversed())
+            .thenComparing(Totals::name);
+
+    // Indices de uma filial.
+    private record DealerIndex(Totals totals, List<RankedTotals> modelsByUnits, List<RankedTotals> modelsByRevenue) {
+    }
+
+    private final Info info;
+    private final List<Totals> dealers;
+    private final List<Totals> models;
+    private final Map<String, DealerIndex> dealersByKey;
+    private final Map<String, Totals> modelsByKey;
+    private final List<RankedTotals> dealersByUnits;
+    private final List<RankedTotals> dealersByRevenue;
+
+    private ReportSnapshot(Info info, List<Totals> dealers, List<Totals> models, Map<String, DealerIndex> dealersByKey,
+                           Map<String, Totals> modelsByKey, List<RankedTotals> dealersByUnits,
+                           List<RankedTotals> dealersByRevenue) {
+        this.info = info;
+        this.dealers = dealers;
+        this.models = models;
+        this.dealersByKey = dealersByKey;
+        this.modelsByKey = modelsByKey;
+        this.dealersByUnits = dealersByUnits;
+        this.dealersByRevenue = dealersByRevenue;
+    }
+
+    public Info info() {
+        return info;
+    }
+
+    // Totais de todas as filiais, pelo nome.
+    public List<Totals> dealers() {
+        return dealers;
+    }
+
+    // Totais de todos os modelos somando as filiais, pelo nome.
+    public List<Totals> models() {
+        return models;
+    }
+
+    // Totais da filial pelo nome (sem diferenciar maiusculas), ou null.
+    public Totals dealer(String dealerName) {
+        DealerIndex index = dealersByKey.get(key(dealerName));
+        return index == null ? null : index.totals();
+    }
+
+    public Totals model(String model) {
+        return modelsByKey.get(key(model));
+    }
+
+    // Os limit modelos mais vendidos da filial, ou null se a filial nao existe.
+    public List<RankedTotals> topModels(String dealerName, Order order, int limit) {
+        DealerIndex index = dealersByKey.get(key(dealerName));
+        if (index == null) {
+            return null;
+        }
+        return head(order == Order.REVENUE ? index.modelsByRevenue() : index.modelsByUnits(), limit);
+    }
+
+    public List<RankedTotals> dealerRanking(Order order, int limit) {
+        return head(order == Order.REVENUE ? dealersByRevenue : dealersByUnits, limit);
+    }
+
+    private static <T> List<T> head(List<T> sorted, int limit) {
+        return limit <= 0 || limit >= sorted.size() ? sorted : sorted.subList(0, limit);
+    }
+
+    private static String key(String name) {
+        return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Recebe as linhas do relatorio principal, em qualquer ordem, e monta a foto.
+    public static final class Builder {
+
+        private final Map<String, Map<String, long[]>> unitsByDealer = new LinkedHashMap<>();
+        private final Map<String, Map<String, BigDecimal>> revenueByDealer = new LinkedHashMap<>();
+        private int lines;
+
+        public void add(ReportLine line) {
+            unitsByDealer.computeIfAbsent(line.dealerName(), ignored -> new HashMap<>())
+                    .computeIfAbsent(line.model(), ignored -> new long[1])[0] += line.unitsSold();
+            revenueByDealer.computeIfAbsent(line.dealerName(), ignored -> new HashMap<>())
+                    .merge(line.model(), line.revenueBrl(), BigDecimal::add);
+            lines++;
+        }
+
+        // Descarta o que foi recebido, para quando as linhas sao percorridas de novo.
+        public void clear() {
+            unitsByDealer.clear();
+            revenueByDealer.clear();
+            lines = 0;
+        }
+
+        public ReportSnapshot build(long version) {
+            List<Totals> dealers = new ArrayList<>();
+            Map<String, DealerIndex> dealersByKey = new HashMap<>();
+            Map<String, long[]> modelUnits = new HashMap<>();
+            Map<String, BigDecimal> modelRevenue = new HashMap<>();
+            unitsByDealer.forEach((dealer, units) -> {
+                Map<String, BigDecimal> revenue = revenueByDealer.get(dealer);
+                List<Totals> dealerModels = new ArrayList<>(units.size());
+                long dealerUnits = 0;
+                BigDecimal dealerRevenue = BigDecimal.ZERO;
+                for (Map.Entry<String, long[]> model : units.entrySet()) {
+                    BigDecimal modelTotal = revenue.get(model.getKey());
+                    dealerModels.add(new Totals(model.getKey(), model.getValue()[0], money(modelTotal)));
+                    dealerUnits += model.getValue()[0];
+                    dealerRevenue = dealerRevenue.add(modelTotal);
+                    modelUnits.computeIfAbsent(model.getKey(), ignored -> new long[1])[0] += model.getValue()[0];
+                    modelRevenue.merge(model.getKey(), modelTotal, BigDecimal::add);
+                }
+                Totals totals = new Totals(dealer, dealerUnits, money(dealerRevenue));
+                dealers.add(totals);
+                dealersByKey.put(key(dealer), new DealerIndex(totals, ranked(dealerModels, BY_UNITS),
+                        ranked(dealerModels, BY_REVENUE)));
+            });
+            List<Totals> models = new ArrayList<>(modelUnits.size());
+            Map<String, Totals> modelsByKey = new HashMap<>();
+            modelUnits.forEach((model, units) -> {
+                Totals totals = new Totals(model, units[0], money(modelRevenue.get(model)));
+                models.add(totals);
+                modelsByKey.put(key(model), totals);
+            });
+            dealers.sort(Comparator.comparing(Totals::name));
+            models.sort(Comparator.comparing(Totals::name));
+            Info info = new Info(version, Instant.now(), dealers.size(), models.size(), lines);
+            return new ReportSnapshot(info, List.copyOf(dealers), List.copyOf(models), Map.copyOf(dealersByKey),
+                    Map.copyOf(modelsByKey), ranked(dealers, BY_UNITS), ranked(dealers, BY_REVENUE));
+        }
+
+        private static List<RankedTotals> ranked(List<Totals> totals, Comparator<Totals> order) {
+            List<Totals> sorted = new ArrayList<>(totals);
+            sorted.sort(order);
+            List<RankedTotals> ranked = new ArrayList<>(sorted.size());
+            for (int i = 0; i < sorted.size(); i++) {
+                Totals item = sorted.get(i);
+                ranked.add(new RankedTotals(i + 1, item.name(), item.unitsSold(), item.revenueBrl()));
+            }
+            return List.copyOf(ranked);
+        }
+
+        // Mesmo arredondamento do CSV da matriz.
+        private static BigDecimal money(BigDecimal value) {
+            return value.setScale(2, RoundingMode.HALF_UP);
+        }
+    }
+}
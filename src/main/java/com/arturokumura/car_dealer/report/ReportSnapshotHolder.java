@@ -0,0 +1,57 @@
+package com.arturokumura.car_dealer.report;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Foto vigente do relatorio para a API. O SalesReportWriter deixa a foto da execucao preparada ao gravar
+// os relatorios e o listener do job a publica so quando o job conclui; as consultas leem uma referencia
+// e nunca veem uma foto pela metade. As fotos preparadas ficam separadas por JobExecution, para que
+// execucoes simultaneas nao publiquem nem descartem a foto uma da outra.
+@Component
+public class ReportSnapshotHolder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReportSnapshotHolder.class);
+
+    private final AtomicReference<ReportSnapshot> current = new AtomicReference<>();
+    private final ConcurrentMap<Long, ReportSnapshot> staged = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    // Foto publicada, ou null antes da primeira execucao concluida.
+    public ReportSnapshot current() {
+        return current.get();
+    }
+
+    // Monta e prepara a foto da execucao, sem publicar.
+    public void stage(long jobExecutionId, ReportSnapshot.Builder builder) {
+        staged.put(jobExecutionId, builder.build(versions.incrementAndGet()));
+    }
+
+    // Troca a foto vigente pela preparada pela execucao, se houver. Uma foto preparada antes da vigente
+    // (execucao mais lenta que terminou depois) nao a substitui.
+    public void publishStaged(long jobExecutionId) {
+        ReportSnapshot snapshot = staged.remove(jobExecutionId);
+        if (snapshot == null) {
+            return;
+        }
+        ReportSnapshot published = current.accumulateAndGet(snapshot, (previous, candidate) ->
+                previous == null || candidate.info().version() > previous.info().version() ? candidate : previous);
+        if (published != snapshot) {
+            LOGGER.info("Foto do relatorio {} descartada: a foto {} e mais recente.", snapshot.info().version(),
+                    published.info().version());
+            return;
+        }
+        LOGGER.info("Foto do relatorio {} publicada: {} filial(is), {} modelo(s).", snapshot.info().version(),
+                snapshot.info().dealers(), snapshot.info().models());
+    }
+
+    // Execucao sem sucesso: a foto preparada por ela nao e publicada.
+    public void discardStaged(long jobExecutionId) {
+        staged.remove(jobExecutionId);
+    }
+}
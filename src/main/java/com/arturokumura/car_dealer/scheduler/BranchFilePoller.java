@@ -0,0 +1,135 @@
+package com.arturokumura.car_dealer.scheduler;
+
+import com.arturokumura.car_dealer.integration.SftpSession;
+import com.arturokumura.car_dealer.integration.SftpSessionPool;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import net.schmizz.sshj.sftp.RemoteResourceInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.parameters.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobOperator;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Observa a pasta remota das filiais e dispara o salesReportJob quando chegam arquivos novos.
+// A cada ciclo so a listagem e lida (nome, tamanho e mtime); o job roda quando a listagem
+// fica estavel pelo periodo de silencio, o que junta uma rajada de chegadas em uma unica execucao.
+@Component
+@ConditionalOnProperty(name = "app.scheduler.enabled", havingValue = "true")
+public class BranchFilePoller {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BranchFilePoller.class);
+    private static final long NO_FILES = 0L;
+
+    private final SftpSessionPool sftpSessionPool;
+    private final JobOperator jobOperator;
+    private final JobRepository jobRepository;
+    private final Job salesReportJob;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${sftp.dir.remote.download}")
+    private String remoteDownloadDir;
+
+    @Value("${app.scheduler.quiet-period-ms:60000}")
+    private long quietPeriodMs;
+
+    private long lastSignature = NO_FILES;
+    private long lastChangeMillis;
+    private long lastLaunchedSignature = NO_FILES;
+
+    // Usa o mesmo pool de sessoes do job, mantido aberto entre as execucoes.
+    public BranchFilePoller(SftpSessionPool sftpSessionPool, JobOperator jobOperator, JobRepository jobRepository,
+                            @Qualifier("salesReportJob") Job salesReportJob) {
+        this.sftpSessionPool = sftpSessionPool;
+        this.jobOperator = jobOperator;
+        this.jobRepository = jobRepository;
+        this.salesReportJob = salesReportJob;
+    }
+
+    @Scheduled(initialDelayString = "${app.scheduler.initial-delay-ms:10000}",
+            fixedDelayString = "${app.scheduler.poll-interval-ms:15000}")
+    public void poll() {
+        long signature;
+        try {
+            signature = listingSignature();
+        } catch (IOException e) {
+            LOGGER.warn("Nao foi possivel listar {}: {}", remoteDownloadDir, e.getMessage());
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (signature != lastSignature) {
+            // Arquivos chegando ou mudando: reinicia o periodo de silencio
+            lastSignature = signature;
+            lastChangeMillis = now;
+            return;
+        }
+        if (signature == NO_FILES || signature == lastLaunchedSignature || now - lastChangeMillis < quietPeriodMs) {
+            return;
+        }
+        launch(signature);
+    }
+
+    // Dispara o job no proprio thread do agendador; nunca ha duas execucoes ao mesmo tempo.
+    private void launch(long signature) {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (!jobRepository.findRunningJobExecutions(salesReportJob.getName()).isEmpty()) {
+                LOGGER.info("{} ja esta em execucao. Disparo adiado.", salesReportJob.getName());
+                return;
+            }
+            // Uma falha nao e repetida enquanto a listagem nao mudar
+            lastLaunchedSignature = signature;
+            LOGGER.info("Arquivos novos estaveis em {}. Iniciando {}.", remoteDownloadDir, salesReportJob.getName());
+            JobExecution execution = jobOperator.start(salesReportJob, new JobParametersBuilder()
+                    .addLong("run.id", System.currentTimeMillis())
+                    .toJobParameters());
+            LOGGER.info("{} finalizado com status {}.", salesReportJob.getName(), execution.getStatus());
+        } catch (Exception e) {
+            LOGGER.error("Falha ao iniciar {}", salesReportJob.getName(), e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // Resumo da listagem remota; muda quando um arquivo chega, some, cresce ou e regravado.
+    private long listingSignature() throws IOException {
+        SftpSession session = sftpSessionPool.borrow();
+        List<RemoteResourceInfo> files = new ArrayList<>();
+        try {
+            for (RemoteResourceInfo file : session.sftpClient().ls(remoteDownloadDir)) {
+                if (file.isRegularFile()) {
+                    files.add(file);
+                }
+            }
+            sftpSessionPool.release(session);
+        } catch (IOException | RuntimeException e) {
+            sftpSessionPool.invalidate(session);
+            throw e;
+        }
+        if (files.isEmpty()) {
+            return NO_FILES;
+        }
+
+        files.sort(Comparator.comparing(RemoteResourceInfo::getName));
+        long signature = 1125899906842597L;
+        for (RemoteResourceInfo file : files) {
+            signature = 31 * signature + file.getName().hashCode();
+            signature = 31 * signature + file.getAttributes().getSize();
+            signature = 31 * signature + file.getAttributes().getMtime();
+        }
+        return signature == NO_FILES ? 1L : signature;
+    }
+}
@@ -2,8 +2,10 @@ package com.arturokumura.car_dealer.scheduler;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
-@SpringBootApplication
+@SpringBootApplication(scanBasePackages = "com.arturokumura.car_dealer")
+@EnableScheduling
 public class CarDealerApplication {
 
 	public static void main(String[] args) {
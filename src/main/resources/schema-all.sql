@@ -2,5 +2,64 @@ DROP TABLE IF EXISTS dealers;
 
 CREATE TABLE dealers (
                          dealer_id   VARCHAR(10)  NOT NULL PRIMARY KEY,
-                         dealer_name VARCHAR(120) NOT NULL
-);
\ No newline at end of file
+                         dealer_name VARCHAR(120) NOT NULL,
+                         updated_at  TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)
+);
+
+-- Totais acumulados entre execucoes; nao e recriada na inicializacao
+CREATE TABLE IF NOT EXISTS sales_aggregate (
+                         dealer_id   VARCHAR(10)    NOT NULL,
+                         model       VARCHAR(120)   NOT NULL,
+                         period      CHAR(7)        NOT NULL,
+                         units_sold  INT            NOT NULL,
+                         revenue_brl DECIMAL(24, 4) NOT NULL,
+                         PRIMARY KEY (dealer_id, model, period)
+);
+
+-- Totais de todos os periodos por filial e modelo, somados no mesmo upsert; o relatorio le esta tabela
+-- sem reagrupar o historico. Em uma base que ja tinha sales_aggregate, e preenchida uma vez a partir dela
+CREATE TABLE IF NOT EXISTS sales_aggregate_totals (
+                         dealer_id   VARCHAR(10)    NOT NULL,
+                         model       VARCHAR(120)   NOT NULL,
+                         units_sold  INT            NOT NULL,
+                         revenue_brl DECIMAL(24, 4) NOT NULL,
+                         PRIMARY KEY (dealer_id, model)
+);
+
+INSERT INTO sales_aggregate_totals (dealer_id, model, units_sold, revenue_brl)
+SELECT dealer_id, model, SUM(units_sold), SUM(revenue_brl)
+FROM sales_aggregate
+WHERE NOT EXISTS (SELECT 1 FROM sales_aggregate_totals)
+GROUP BY dealer_id, model;
+
+-- Quantas vendas de cada origem (step ou particao da instancia do job) ja foram somadas, gravado na
+-- transacao do chunk: uma nova tentativa da mesma origem nao soma de novo o que ja foi confirmado
+CREATE TABLE IF NOT EXISTS sales_aggregate_sources (
+                         source_id     VARCHAR(300) NOT NULL PRIMARY KEY,
+                         applied_sales BIGINT       NOT NULL
+);
+
+-- Deteccao de duplicadas: impressao de cada venda aceita e SHA-256 de cada arquivo concluido. Nao sao
+-- recriadas na inicializacao; o id crescente permite completar o filtro de Bloom salvo em disco
+CREATE TABLE IF NOT EXISTS dedup_sales (
+                         id        BIGINT       NOT NULL AUTO_INCREMENT PRIMARY KEY,
+                         fp_hi     BIGINT       NOT NULL,
+                         fp_lo     BIGINT       NOT NULL,
+                         source_id VARCHAR(300) NOT NULL,
+                         UNIQUE (fp_hi, fp_lo)
+);
+
+CREATE TABLE IF NOT EXISTS dedup_files (
+                         file_sha     CHAR(64)     NOT NULL PRIMARY KEY,
+                         file_name    VARCHAR(255) NOT NULL,
+                         sales        BIGINT       NOT NULL,
+                         processed_at TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Arquivos concluidos cujo relatorio ainda nao foi publicado; vao para dedup_files na publicacao
+CREATE TABLE IF NOT EXISTS dedup_files_pending (
+                         file_sha     CHAR(64)     NOT NULL PRIMARY KEY,
+                         file_name    VARCHAR(255) NOT NULL,
+                         sales        BIGINT       NOT NULL,
+                         processed_at TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,16 @@
+-- Fila de trabalho do particionamento entre processos, no banco app.batch.datasource.*
+-- (MySQL ou H2 em modo MySQL). Um item por arquivo de filial de cada execucao do gerenciador.
+CREATE TABLE IF NOT EXISTS batch_work_item (
+                         id               BIGINT        NOT NULL AUTO_INCREMENT PRIMARY KEY,
+                         run_id           VARCHAR(64)   NOT NULL,
+                         location         VARCHAR(512)  NOT NULL,
+                         status           VARCHAR(16)   NOT NULL,
+                         owner            VARCHAR(128),
+                         version          INT           NOT NULL,
+                         attempts         INT           NOT NULL,
+                         heartbeat_at     BIGINT,
+                         partial_snapshot LONGBLOB,
+                         error_message    VARCHAR(1024),
+                         UNIQUE (run_id, location),
+                         INDEX idx_work_item_status (status, id)
+);
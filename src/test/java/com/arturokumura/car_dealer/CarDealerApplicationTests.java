@@ -1,9 +1,10 @@
 package com.arturokumura.car_dealer;
 
+import com.arturokumura.car_dealer.scheduler.CarDealerApplication;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(classes = CarDealerApplication.class)
 class CarDealerApplicationTests {
 
 	@Test
@@ -0,0 +1,46 @@
+package com.arturokumura.car_dealer.batch.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LongIntHashMapTests {
+
+    @Test
+    void matchesHashMapAcrossRehashes() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        Map<Long, Integer> expected = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 50_000; i++) {
+            // Chaves no formato usado pelo agregado: par de ids densos em um long
+            long key = ((long) random.nextInt(300) << 32) | random.nextInt(400);
+            int value = random.nextInt(1_000_000);
+            map.put(key, value);
+            expected.put(key, value);
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+        assertEquals(LongIntHashMap.NO_VALUE, map.get(300L << 32));
+    }
+
+    @Test
+    void putReplacesAndClearKeepsNothing() {
+        LongIntHashMap map = new LongIntHashMap(16);
+        map.put(0L, 1);
+        map.put(0L, 2);
+        map.put(Long.MAX_VALUE, 3);
+        assertEquals(2, map.size());
+        assertEquals(2, map.get(0L));
+        assertEquals(3, map.get(Long.MAX_VALUE));
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(LongIntHashMap.NO_VALUE, map.get(0L));
+        map.put(5L, 9);
+        assertEquals(9, map.get(5L));
+    }
+}
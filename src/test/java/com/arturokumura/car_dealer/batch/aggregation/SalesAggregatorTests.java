@@ -0,0 +1,87 @@
+package com.arturokumura.car_dealer.batch.aggregation;
+
+import com.arturokumura.car_dealer.batch.domain.ReportLine;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Os acumuladores em centavos devem dar exatamente a soma em BigDecimal do agregado original.
+class SalesAggregatorTests {
+
+    @Test
+    void centavosMatchBigDecimalSum() {
+        SalesAggregator aggregator = new SalesAggregator();
+        Map<String, BigDecimal> expected = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(11);
+        for (int i = 0; i < 100_000; i++) {
+            String dealer = "Filial " + random.nextInt(12);
+            String model = "Modelo " + random.nextInt(6);
+            // Precos de 0,01 a 9.999.999,99 com uma ou duas casas, como nos CSVs das filiais
+            BigDecimal price = BigDecimal.valueOf(random.nextLong(1, 1_000_000_000L), random.nextBoolean() ? 2 : 1);
+            aggregator.addSale(dealer, model, price);
+            expected.merge(dealer + "|" + model, price, BigDecimal::add);
+        }
+        assertTotals(expected, aggregator.toReportLines());
+    }
+
+    @Test
+    void pricesBeyondFastPathKeepExactSum() {
+        SalesAggregator aggregator = new SalesAggregator();
+        aggregator.addSale("A", "Lume", new BigDecimal("0.005"));
+        aggregator.addSale("A", "Lume", new BigDecimal("0.005"));
+        aggregator.addSale("A", "Lume", new BigDecimal("10.10"));
+        // 17 digitos: fora do caminho rapido em double
+        aggregator.addSale("A", "Serra", new BigDecimal("123456789012345.67"));
+        aggregator.addSale("A", "Serra", new BigDecimal("0.01"));
+
+        List<ReportLine> lines = aggregator.toReportLines();
+        assertTotals(Map.of("A|Lume", new BigDecimal("10.110"), "A|Serra", new BigDecimal("123456789012345.68")),
+                lines);
+        assertEquals(3, lines.get(0).unitsSold());
+    }
+
+    @Test
+    void mergeAndCheckpointRoundTripKeepTotals() throws IOException {
+        SalesAggregator first = new SalesAggregator();
+        first.addSale("A", "Lume", new BigDecimal("100.25"));
+        first.addSale("B", "Serra", new BigDecimal("0.333"));
+        SalesAggregator second = new SalesAggregator();
+        second.addSale("A", "Lume", new BigDecimal("0.75"));
+        second.addCentavos("C", "Eon", 199);
+        first.merge(second);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            first.writeTo(out);
+        }
+        SalesAggregator restored = new SalesAggregator();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            restored.readFrom(in);
+        }
+
+        Map<String, BigDecimal> expected = Map.of("A|Lume", new BigDecimal("101.00"),
+                "B|Serra", new BigDecimal("0.333"), "C|Eon", new BigDecimal("1.99"));
+        assertTotals(expected, first.toReportLines());
+        assertTotals(expected, restored.toReportLines());
+    }
+
+    private static void assertTotals(Map<String, BigDecimal> expected, List<ReportLine> lines) {
+        assertEquals(expected.size(), lines.size());
+        for (ReportLine line : lines) {
+            BigDecimal total = expected.get(line.dealerName() + "|" + line.model());
+            assertEquals(0, total.compareTo(line.revenueBrl()),
+                    line.dealerName() + "/" + line.model() + ": " + line.revenueBrl() + " != " + total);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.arturokumura.car_dealer.batch.aggregation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Com ou sem spill, e juntando agregados que ja gravaram runs, a saida ordenada deve ser a mesma.
+class SpillingAggregatorTests {
+
+    @TempDir
+    Path spillDirectory;
+
+    @Test
+    void spilledOutputMatchesInMemoryOutput() throws IOException {
+        SpillingAggregator inMemory = new SpillingAggregator(0, spillDirectory);
+        SpillingAggregator spilling = new SpillingAggregator(7, spillDirectory);
+        addSales(new SplittableRandom(3), 5_000, inMemory, spilling);
+
+        assertTrue(spilling.hasRuns());
+        assertFalse(inMemory.hasRuns());
+        assertEquals(lines(inMemory), lines(spilling));
+
+        spilling.deleteRuns();
+        assertTrue(spilling.runFiles().isEmpty());
+    }
+
+    @Test
+    void mergeOfSpilledAggregatesMatchesInMemoryMerge() throws IOException {
+        SpillingAggregator inMemory = new SpillingAggregator(0, spillDirectory);
+        SpillingAggregator inMemoryOther = new SpillingAggregator(0, spillDirectory);
+        SpillingAggregator spilling = new SpillingAggregator(5, spillDirectory);
+        SpillingAggregator spillingOther = new SpillingAggregator(11, spillDirectory);
+        SplittableRandom random = new SplittableRandom(5);
+        addSales(random, 2_000, inMemory, spilling);
+        addSales(random, 3_000, inMemoryOther, spillingOther);
+
+        inMemory.merge(inMemoryOther);
+        spilling.merge(spillingOther);
+
+        assertFalse(spillingOther.hasRuns());
+        assertEquals(lines(inMemory), lines(spilling));
+    }
+
+    // A mesma sequencia de vendas em todos os agregados, com chaves repetidas entre runs.
+    private static void addSales(SplittableRandom random, int count, SpillingAggregator... aggregators) {
+        for (int i = 0; i < count; i++) {
+            String dealer = random.nextInt(20) == 0 ? null : "Filial " + random.nextInt(12);
+            String model = "Modelo " + random.nextInt(9);
+            BigDecimal price = BigDecimal.valueOf(random.nextLong(1, 100_000_000L), 2);
+            for (SpillingAggregator aggregator : aggregators) {
+                aggregator.addSale(dealer, model, price);
+            }
+        }
+    }
+
+    private static List<String> lines(SpillingAggregator aggregator) throws IOException {
+        List<String> lines = new ArrayList<>();
+        aggregator.forEachSorted(line -> lines.add(line.toCsv()));
+        return lines;
+    }
+}
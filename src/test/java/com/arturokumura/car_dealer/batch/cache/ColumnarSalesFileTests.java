@@ -0,0 +1,154 @@
+package com.arturokumura.car_dealer.batch.cache;
+
+import com.arturokumura.car_dealer.batch.dimension.DealerDimensionCache;
+import com.arturokumura.car_dealer.batch.processor.SaleRecordProcessor;
+import com.arturokumura.car_dealer.batch.validation.SaleValidator;
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import com.arturokumura.car_dealer.support.TestDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Ida e volta do formato .cds: o que o writer grava, em varios blocos e com vendas sem data, o arquivo
+// mapeado devolve igual, inclusive quando o periodo pula blocos pelas estatisticas.
+class ColumnarSalesFileTests {
+
+    private static final String[] DEALERS = {"D001", "D002", "D003", "D004"};
+    private static final String[] MODELS = {"Lume", "Serra", "Vento"};
+    private static final String[] PAYMENTS = {"PIX", "Financiamento"};
+
+    @TempDir
+    Path workDir;
+
+    @Test
+    void scannedRowsMatchWrittenRows() throws IOException {
+        int firstDay = Math.toIntExact(LocalDate.parse("2026-01-01").toEpochDay());
+        // Mais de dois blocos, com datas crescentes para que cada bloco cubra um periodo
+        int rowCount = ColumnarSalesFormat.ROWS_PER_BLOCK * 2 + 1_234;
+        List<String> written = new ArrayList<>();
+        Path path = workDir.resolve("sales" + ColumnarSalesFormat.EXTENSION);
+        SplittableRandom random = new SplittableRandom(17);
+        try (OutputStream out = Files.newOutputStream(path);
+             ColumnarSalesWriter writer = new ColumnarSalesWriter(out)) {
+            for (int i = 0; i < rowCount; i++) {
+                String dealer = DEALERS[random.nextInt(DEALERS.length)];
+                String model = MODELS[random.nextInt(MODELS.length)];
+                String payment = PAYMENTS[random.nextInt(PAYMENTS.length)];
+                int day = i % 1_000 == 0 ? ColumnarSalesFormat.NO_DATE : firstDay + i / 1_000;
+                long centavos = random.nextLong(1, 1_000_000_000L);
+                writer.add(dealer, model, payment, day, centavos);
+                written.add(row(dealer, model, payment, day, centavos));
+            }
+            writer.finish();
+        }
+
+        try (ColumnarSalesFile file = ColumnarSalesFile.open(path)) {
+            assertEquals(rowCount, file.rows());
+            assertEquals(firstDay, file.minEpochDay());
+            assertEquals(firstDay + (rowCount - 1) / 1_000, file.maxEpochDay());
+            assertEquals(written.stream().mapToLong(ColumnarSalesFileTests::centavosOf).sum(), file.totalCentavos());
+
+            assertEquals(written, scan(file, Integer.MIN_VALUE, Integer.MAX_VALUE));
+
+            // Periodo no meio do segundo bloco: vendas sem data ficam de fora
+            int from = firstDay + 70;
+            int to = firstDay + 80;
+            List<String> expected = written.stream()
+                    .filter(row -> {
+                        int day = dayOf(row);
+                        return day != ColumnarSalesFormat.NO_DATE && day >= from && day <= to;
+                    })
+                    .toList();
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, scan(file, from, to));
+            assertFalse(file.overlaps(firstDay + 1_000, firstDay + 2_000));
+        }
+    }
+
+    @Test
+    void storedCacheKeepsTheAcceptedSalesOfTheArchivedCsv() throws Exception {
+        Path csv = workDir.resolve("D001_sales_2026-02-10_10-00-00.csv");
+        Files.writeString(csv, """
+                dealer_id,sale_date,model,payment_type,sale_price_brl
+                D001,2026-02-07,Lume,Financiamento,97491.02
+                D002,2026-02-02,Serra,PIX,139885.90
+                D001,data-invalida,Lume,PIX,10.00
+                D003,2026-02-03, Vento ,PIX,120000
+                """);
+        SalesColumnarCache cache = newCache();
+
+        cache.store(csv);
+
+        List<Path> files = cache.listFiles();
+        assertEquals(1, files.size());
+        assertEquals("D001_sales_2026-02-10_10-00-00" + ColumnarSalesFormat.EXTENSION,
+                files.get(0).getFileName().toString());
+        try (ColumnarSalesFile file = ColumnarSalesFile.open(files.get(0))) {
+            List<String> rows = new ArrayList<>();
+            file.scan(Integer.MIN_VALUE, Integer.MAX_VALUE, (dealerId, modelId, paymentTypeId, epochDay, centavos) ->
+                    rows.add(file.dealerIds()[dealerId] + "," + file.models()[modelId] + ","
+                            + file.paymentTypes()[paymentTypeId] + "," + LocalDate.ofEpochDay(epochDay) + ","
+                            + BigDecimal.valueOf(centavos, 2)));
+            assertEquals(3, rows.size());
+            assertEquals("D001,Lume,Financiamento,2026-02-07,97491.02", rows.get(0));
+            assertEquals("D002,Serra,PIX,2026-02-02,139885.90", rows.get(1));
+            assertTrue(rows.get(2).startsWith("D003,"), rows.get(2));
+            assertTrue(rows.get(2).endsWith(",2026-02-03,120000.00"), rows.get(2));
+        }
+    }
+
+    @Test
+    void missingArchivedCopyLeavesNothingInTheCache() throws IOException {
+        SalesColumnarCache cache = newCache();
+
+        cache.store(workDir.resolve("nao-arquivado.csv"));
+
+        assertTrue(cache.listFiles().isEmpty());
+        try (Stream<Path> files = Files.list(workDir)) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+
+    private SalesColumnarCache newCache() {
+        DealerDimensionCache dealers = new DealerDimensionCache(TestDatabase.create(),
+                new BatchMetrics(new SimpleMeterRegistry()), Long.MAX_VALUE);
+        return new SalesColumnarCache(new SaleRecordProcessor(),
+                new SaleValidator(dealers, true, new BigDecimal("10000000"), 1),
+                true, workDir.resolve("cache").toString());
+    }
+
+    private static List<String> scan(ColumnarSalesFile file, int from, int to) {
+        List<String> rows = new ArrayList<>();
+        file.scan(from, to, (dealerId, modelId, paymentTypeId, epochDay, centavos) ->
+                rows.add(row(file.dealerIds()[dealerId], file.models()[modelId],
+                        file.paymentTypes()[paymentTypeId], epochDay, centavos)));
+        return rows;
+    }
+
+    private static String row(String dealer, String model, String payment, int day, long centavos) {
+        return dealer + "|" + model + "|" + payment + "|" + day + "|" + centavos;
+    }
+
+    private static int dayOf(String row) {
+        return Integer.parseInt(row.split("\\|")[3]);
+    }
+
+    private static long centavosOf(String row) {
+        return Long.parseLong(row.split("\\|")[4]);
+    }
+}
@@ -0,0 +1,74 @@
+package com.arturokumura.car_dealer.batch.dedup;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Filtro de Bloom em blocos: nenhum falso negativo, taxa de falsos positivos perto da configurada na
+// capacidade prevista e o arquivo salvo volta com os mesmos bits, o mesmo dimensionamento e a marca d'agua.
+class BlockedBloomFilterTests {
+
+    private static final int CAPACITY = 100_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @TempDir
+    Path workDir;
+
+    @Test
+    void insertedFingerprintsAreAlwaysFound() {
+        BlockedBloomFilter filter = filled(CAPACITY, 1);
+
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < CAPACITY; i++) {
+            assertTrue(filter.mightContain(new SaleFingerprint(random.nextLong(), random.nextLong())), "Item " + i);
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTheTargetAtCapacity() {
+        BlockedBloomFilter filter = filled(CAPACITY, 1);
+
+        SplittableRandom absent = new SplittableRandom(2);
+        int probes = 200_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(new SaleFingerprint(absent.nextLong(), absent.nextLong()))) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / probes;
+        assertTrue(rate <= FALSE_POSITIVE_RATE * 1.5, "Taxa observada " + rate);
+    }
+
+    @Test
+    void savedFilterKeepsItsBitsShapeAndWatermark() throws IOException {
+        BlockedBloomFilter filter = filled(CAPACITY / 10, 3);
+        Path file = workDir.resolve("dedup").resolve("sales.bloom");
+
+        filter.writeTo(file, 4242L);
+        BlockedBloomFilter.Snapshot snapshot = BlockedBloomFilter.readFrom(file);
+
+        assertEquals(4242L, snapshot.watermark());
+        assertTrue(snapshot.filter().sameShapeAs(BlockedBloomFilter.forCapacity(CAPACITY, FALSE_POSITIVE_RATE)));
+        assertEquals(filter.sizeInBytes(), snapshot.filter().sizeInBytes());
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < CAPACITY / 10; i++) {
+            assertTrue(snapshot.filter().mightContain(new SaleFingerprint(random.nextLong(), random.nextLong())));
+        }
+    }
+
+    private static BlockedBloomFilter filled(int items, long seed) {
+        BlockedBloomFilter filter = BlockedBloomFilter.forCapacity(CAPACITY, FALSE_POSITIVE_RATE);
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < items; i++) {
+            filter.put(new SaleFingerprint(random.nextLong(), random.nextLong()));
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,62 @@
+package com.arturokumura.car_dealer.batch.dedup;
+
+import com.arturokumura.car_dealer.support.TestDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Arquivo concluido so conta como processado depois da publicacao do relatorio: o job que falha antes
+// disso nao faz o mesmo arquivo parecer repetido de si mesmo na proxima execucao.
+class DuplicateIndexTests {
+
+    private static final String SHA = "a".repeat(64);
+
+    @TempDir
+    Path workDir;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = TestDatabase.create();
+    }
+
+    @Test
+    void fileOfAnUnpublishedRunIsNotADuplicateOnTheNextRun() {
+        DuplicateIndex failedRun = newIndex();
+        assertNull(failedRun.openFile(SHA, "filial-a.csv"));
+        failedRun.record(List.of(), SHA, "filial-a.csv", 120);
+        failedRun.closeFile(SHA, "filial-a.csv");
+
+        // Nova subida da aplicacao: o mesmo arquivo volta na entrada
+        DuplicateIndex nextRun = newIndex();
+        assertNull(nextRun.openFile(SHA, "filial-a.csv"));
+    }
+
+    @Test
+    void publishedFileIsKnownOnTheNextRun() {
+        DuplicateIndex run = newIndex();
+        run.openFile(SHA, "filial-a.csv");
+        run.record(List.of(), SHA, "filial-a.csv", 120);
+        run.closeFile(SHA, "filial-a.csv");
+        run.publishFiles();
+
+        assertEquals(new DuplicateIndex.KnownFile("filial-a.csv", 120),
+                newIndex().openFile(SHA, "filial-a-reenvio.csv"));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM dedup_files_pending", Integer.class));
+    }
+
+    private DuplicateIndex newIndex() {
+        DuplicateIndex index = new DuplicateIndex(jdbcTemplate, "flag", 10_000, 0.01,
+                workDir.resolve("sales.bloom").toString());
+        index.afterSingletonsInstantiated();
+        return index;
+    }
+}
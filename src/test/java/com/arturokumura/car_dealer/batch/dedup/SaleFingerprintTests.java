@@ -0,0 +1,71 @@
+package com.arturokumura.car_dealer.batch.dedup;
+
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+// Ocorrencias da mesma combinacao: cada venda igual no arquivo recebe uma impressao propria, o arquivo
+// reenviado em outra ordem gera o mesmo conjunto e o preco e comparado sem a escala.
+class SaleFingerprintTests {
+
+    @Test
+    void ordinalsSeparateEqualSalesOfTheSameFile() {
+        SaleFingerprint combination = SaleFingerprint.of(sale("D001", "Lume", "10.00"));
+
+        assertSame(combination, combination.withOrdinal(0));
+        Set<SaleFingerprint> occurrences = new HashSet<>();
+        for (int ordinal = 0; ordinal < 1000; ordinal++) {
+            occurrences.add(combination.withOrdinal(ordinal));
+        }
+        assertEquals(1000, occurrences.size());
+        assertEquals(combination.combinationKey(),
+                SaleFingerprint.of(sale("D001", "Lume", "10.00")).combinationKey());
+    }
+
+    @Test
+    void reorderedFileGivesTheSameFingerprints() {
+        List<SaleRecord> sales = List.of(sale("D001", "Lume", "10.00"), sale("D002", "Serra", "7.50"),
+                sale("D001", "Lume", "10.00"), sale("D001", "Lume", "10.00"), sale("D002", "Serra", "7.50"));
+        List<SaleRecord> reordered = new ArrayList<>(sales.reversed());
+
+        Set<SaleFingerprint> original = fingerprints(sales);
+        assertEquals(sales.size(), original.size());
+        assertEquals(original, fingerprints(reordered));
+    }
+
+    @Test
+    void priceScaleIsIgnored() {
+        assertEquals(SaleFingerprint.of(sale("D001", "Lume", "10.0")),
+                SaleFingerprint.of(sale("D001", "Lume", "10.00")));
+        assertEquals(SaleFingerprint.of(sale("D001", "Lume", "0")), SaleFingerprint.of(sale("D001", "Lume", "0.00")));
+        assertNotEquals(SaleFingerprint.of(sale("D001", "Lume", "10.00")),
+                SaleFingerprint.of(sale("D001", "Lume", "100.0")));
+    }
+
+    // Mesma numeracao de ocorrencias do leitor com deduplicacao.
+    private static Set<SaleFingerprint> fingerprints(List<SaleRecord> sales) {
+        Map<Long, Integer> ordinals = new HashMap<>();
+        Set<SaleFingerprint> fingerprints = new HashSet<>();
+        for (SaleRecord sale : sales) {
+            SaleFingerprint combination = SaleFingerprint.of(sale);
+            int ordinal = ordinals.merge(combination.combinationKey(), 1, Integer::sum) - 1;
+            fingerprints.add(combination.withOrdinal(ordinal));
+        }
+        return fingerprints;
+    }
+
+    private static SaleRecord sale(String dealerId, String model, String price) {
+        return new SaleRecord(dealerId, "2026-02-01", model, "PIX", new BigDecimal(price));
+    }
+}
@@ -0,0 +1,133 @@
+package com.arturokumura.car_dealer.batch.pipeline;
+
+import com.arturokumura.car_dealer.batch.partition.BranchFilePartitioner;
+import com.arturokumura.car_dealer.integration.PipelinedDownload;
+import com.arturokumura.car_dealer.integration.SftpDownloadService;
+import com.arturokumura.car_dealer.integration.SftpStreamingSource;
+import com.arturokumura.car_dealer.integration.SftpUploadService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.step.Step;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Ordem do pipeline: o arquivo so vai para processados depois que a execucao da particao foi gravada
+// como concluida; particoes com falha ou status incerto deixam o arquivo na entrada, e uma falha do
+// estagio de movimentacao chega ao job. Combinacoes sem restart seguro sao recusadas na subida.
+class FilePipelineTests {
+
+    private static final List<String> FILES = List.of("filial-a.csv", "filial-b.csv");
+
+    @TempDir
+    Path workDir;
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    private SftpDownloadService sftpDownloadService;
+    private SftpUploadService sftpUploadService;
+    private SftpUploadService.ProcessedFileMover fileMover;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        PipelinedDownload download = mock(PipelinedDownload.class);
+        when(download.fileNames()).thenReturn(FILES);
+        when(download.localFile(anyString())).thenAnswer(call -> workDir.resolve(call.<String>getArgument(0)));
+        sftpDownloadService = mock(SftpDownloadService.class);
+        when(sftpDownloadService.startPipelinedDownload(anyInt())).thenReturn(download);
+
+        fileMover = mock(SftpUploadService.ProcessedFileMover.class);
+        doAnswer(call -> events.add("moved:" + call.getArgument(0))).when(fileMover).move(anyString());
+        sftpUploadService = mock(SftpUploadService.class);
+        when(sftpUploadService.openProcessedFileMover()).thenReturn(fileMover);
+    }
+
+    @Test
+    void fileIsMovedOnlyAfterThePartitionExecutionIsSaved() throws Exception {
+        FilePipeline pipeline = newPipeline("local");
+        pipeline.start();
+
+        runPartition(pipeline, 0, BatchStatus.COMPLETED);
+        runPartition(pipeline, 1, BatchStatus.COMPLETED);
+        pipeline.finish();
+
+        // O estagio de movimentacao roda em outra thread: so a ordem por arquivo e garantida
+        assertEquals(4, events.size());
+        for (String fileName : FILES) {
+            assertTrue(events.indexOf("saved:" + fileName) >= 0);
+            assertTrue(events.indexOf("saved:" + fileName) < events.indexOf("moved:" + fileName), fileName);
+        }
+    }
+
+    @Test
+    void failedOrUnknownPartitionsStayInTheInputDirectory() throws Exception {
+        FilePipeline pipeline = newPipeline("local");
+        pipeline.start();
+
+        runPartition(pipeline, 0, BatchStatus.FAILED);
+        // Gravacao final do step falhou: o JobRepository nao sabe que a particao concluiu
+        runPartition(pipeline, 1, BatchStatus.UNKNOWN);
+        pipeline.finish();
+
+        assertEquals(List.of("saved:filial-a.csv", "saved:filial-b.csv"), events);
+    }
+
+    @Test
+    void moveFailureFailsThePipeline() throws Exception {
+        doThrow(new IOException("sessao encerrada")).when(fileMover).move(anyString());
+        FilePipeline pipeline = newPipeline("local");
+        pipeline.start();
+
+        runPartition(pipeline, 0, BatchStatus.COMPLETED);
+
+        assertThrows(IllegalStateException.class, pipeline::finish);
+    }
+
+    @Test
+    void pipelineWithSftpReportOutputIsRejected() {
+        assertThrows(IllegalStateException.class, () -> newPipeline("sftp"));
+    }
+
+    @Test
+    void pipelineWithoutCheckpointsIsRejected() {
+        assertThrows(IllegalStateException.class, () -> new FilePipeline(sftpDownloadService, sftpUploadService,
+                mock(SftpStreamingSource.class), true, 2, 1, "local", false));
+    }
+
+    private FilePipeline newPipeline(String reportOutput) {
+        return new FilePipeline(sftpDownloadService, sftpUploadService, mock(SftpStreamingSource.class),
+                true, 2, 1, reportOutput, true);
+    }
+
+    // Particao cujo step registra a gravacao da execucao e termina com o status informado.
+    private void runPartition(FilePipeline pipeline, int index, BatchStatus status) throws Exception {
+        String fileName = FILES.get(index);
+        Step delegate = stepExecution -> {
+            stepExecution.setStatus(status);
+            events.add("saved:" + fileName);
+        };
+        JobExecution jobExecution = MetaDataInstanceFactory.createJobExecution("salesReportJob", 1L, 1L);
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution(jobExecution,
+                String.format("salesReportWorkerStep:partition%04d", index), 10L + index);
+        stepExecution.getExecutionContext().putString(BranchFilePartitioner.FILE_NAME_CONTEXT_KEY,
+                pipeline.locations().get(index));
+        new PipelineWorkerStep(delegate, pipeline).execute(stepExecution);
+    }
+}
@@ -0,0 +1,83 @@
+package com.arturokumura.car_dealer.batch.reader;
+
+import com.arturokumura.car_dealer.batch.dedup.DuplicateIndex;
+import com.arturokumura.car_dealer.batch.validation.QuarantineFile;
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import com.arturokumura.car_dealer.support.TestDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Arquivo reenviado com outro nome no modo flag: as vendas seguem para o step e cada uma fica registrada
+// no CSV de duplicadas, como as repetidas conferidas venda a venda.
+class DeduplicatingSaleFileReaderTests {
+
+    private static final int SALES = 6;
+
+    @TempDir
+    Path workDir;
+
+    private DuplicateIndex duplicateIndex;
+    private BatchMetrics batchMetrics;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        StringBuilder content = new StringBuilder("dealer_id,sale_date,model,payment_type,sale_price_brl\n");
+        for (int record = 1; record <= SALES; record++) {
+            content.append("D00").append(record).append(",2026-02-01,Lume,PIX,").append(1000 + record)
+                    .append(".00\n");
+        }
+        Files.writeString(workDir.resolve("D001_sales.csv"), content);
+        Files.writeString(workDir.resolve("D001_sales-reenvio.csv"), content);
+        duplicateIndex = new DuplicateIndex(TestDatabase.create(), "flag", 10_000, 0.01,
+                workDir.resolve("sales.bloom").toString());
+        duplicateIndex.afterSingletonsInstantiated();
+        batchMetrics = new BatchMetrics(new SimpleMeterRegistry());
+    }
+
+    @Test
+    void resentFileIsFlaggedInTheDuplicatesReport() throws Exception {
+        assertEquals(SALES, readAll("D001_sales.csv"));
+        duplicateIndex.publishFiles();
+
+        assertEquals(SALES, readAll("D001_sales-reenvio.csv"));
+
+        List<Path> reports;
+        try (Stream<Path> files = Files.list(workDir.resolve("duplicates"))) {
+            reports = files.toList();
+        }
+        assertEquals(1, reports.size());
+        List<String> lines = Files.readAllLines(reports.get(0));
+        assertEquals(QuarantineFile.HEADER, lines.get(0));
+        assertEquals(SALES, lines.size() - 1);
+        assertTrue(lines.get(1).contains("D001_sales.csv"), lines.get(1));
+    }
+
+    // Le o arquivo inteiro como o step, com um commit no fim.
+    private int readAll(String fileName) throws Exception {
+        DeduplicatingSaleFileReader reader = new DeduplicatingSaleFileReader(new MappedSaleFileReader("testReader"),
+                duplicateIndex, batchMetrics, workDir.resolve("duplicates"));
+        reader.setResource(new FileSystemResource(workDir.resolve(fileName)));
+        ExecutionContext executionContext = new ExecutionContext();
+        reader.open(executionContext);
+        int read = 0;
+        while (reader.read() != null) {
+            read++;
+        }
+        reader.update(executionContext);
+        reader.close();
+        return read;
+    }
+}
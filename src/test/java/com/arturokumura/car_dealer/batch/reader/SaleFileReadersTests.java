@@ -0,0 +1,88 @@
+package com.arturokumura.car_dealer.batch.reader;
+
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.batch.infrastructure.item.file.ResourceAwareItemReaderItemStream;
+import org.springframework.core.io.FileSystemResource;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// O leitor mapeado e o FlatFileItemReader entregam as mesmas vendas do mesmo arquivo, inclusive com linhas
+// em branco, comentarios, quebras Windows e espacos em volta do preco.
+class SaleFileReadersTests {
+
+    private static final String CONTENT = "dealer_id,sale_date,model,payment_type,sale_price_brl\n"
+            + "\n"
+            + "D001,2026-02-01,Lume,PIX,1000.50\n"
+            + "   \n"
+            + "D002,2026-02-02,Serra,TED, 2500.00 \n"
+            + "# reenvio da filial\n"
+            + "D003,2026-02-03,Brisa,PIX,\"3000.10\"\r\n"
+            + "\r\n"
+            + "D004,2026-02-04,Atlas,Consórcio,4000\n"
+            + "\n"
+            + "  \n";
+
+    @TempDir
+    Path workDir;
+
+    @Test
+    void mappedReaderMatchesFlatFileReader() throws Exception {
+        Path file = Files.writeString(workDir.resolve("D001_sales.csv"), CONTENT);
+
+        List<SaleRecord> flatFile = readAll(file, "flatfile", new ExecutionContext());
+        List<SaleRecord> mapped = readAll(file, SaleReaderConfig.READER_MODE_MAPPED, new ExecutionContext());
+
+        assertEquals(4, flatFile.size());
+        assertEquals(new BigDecimal("2500.00"), flatFile.get(1).salePriceBrl());
+        assertEquals(flatFile, mapped);
+    }
+
+    @Test
+    void restartSkipsTheSameSalesInBothReaders() throws Exception {
+        Path file = Files.writeString(workDir.resolve("D001_sales.csv"), CONTENT);
+
+        for (String mode : List.of("flatfile", SaleReaderConfig.READER_MODE_MAPPED)) {
+            ExecutionContext context = new ExecutionContext();
+            ResourceAwareItemReaderItemStream<SaleRecord> reader = open(file, mode, context);
+            reader.read();
+            reader.read();
+            reader.update(context);
+            reader.close();
+
+            List<SaleRecord> remaining = readAll(file, mode, context);
+            assertEquals(List.of("D003", "D004"), remaining.stream().map(SaleRecord::dealerId).toList(), mode);
+        }
+    }
+
+    private static List<SaleRecord> readAll(Path file, String mode, ExecutionContext context) throws Exception {
+        ResourceAwareItemReaderItemStream<SaleRecord> reader = open(file, mode, context);
+        List<SaleRecord> records = new ArrayList<>();
+        try {
+            SaleRecord record;
+            while ((record = reader.read()) != null) {
+                records.add(record);
+            }
+        } finally {
+            reader.close();
+        }
+        return records;
+    }
+
+    private static ResourceAwareItemReaderItemStream<SaleRecord> open(Path file, String mode,
+                                                                     ExecutionContext context) {
+        ResourceAwareItemReaderItemStream<SaleRecord> reader = SaleReaderConfig.newSaleFileReader("saleFileReader",
+                mode, false);
+        reader.setResource(new FileSystemResource(file));
+        reader.open(context);
+        return reader;
+    }
+}
@@ -0,0 +1,101 @@
+package com.arturokumura.car_dealer.batch.reader;
+
+import com.arturokumura.car_dealer.batch.dimension.DealerDimensionCache;
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.batch.validation.QuarantineFile;
+import com.arturokumura.car_dealer.batch.validation.QuarantineSkipPolicy;
+import com.arturokumura.car_dealer.batch.validation.SaleValidator;
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import com.arturokumura.car_dealer.support.TestDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// A quarentena nao participa da transacao do chunk: um restart depois de linhas rejeitadas apos o
+// ultimo commit deve terminar com cada linha invalida uma unica vez, no mesmo arquivo.
+class ValidatingSaleFileReaderTests {
+
+    private static final List<Integer> INVALID_RECORDS = List.of(3, 8, 12, 17);
+
+    @TempDir
+    Path workDir;
+
+    private Path csv;
+    private BatchMetrics batchMetrics;
+    private SaleValidator saleValidator;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        StringBuilder content = new StringBuilder("dealer_id,sale_date,model,payment_type,sale_price_brl\n");
+        for (int record = 1; record <= 20; record++) {
+            String dealer = INVALID_RECORDS.contains(record) ? "D999" : "D00" + (1 + record % 9);
+            content.append(dealer).append(",2026-02-0").append(1 + record % 9).append(",Lume,PIX,")
+                    .append(1000 + record).append(".00\n");
+        }
+        csv = workDir.resolve("D001_sales.csv");
+        Files.writeString(csv, content);
+        batchMetrics = new BatchMetrics(new SimpleMeterRegistry());
+        saleValidator = new SaleValidator(new DealerDimensionCache(TestDatabase.create(), batchMetrics,
+                Long.MAX_VALUE), true, new BigDecimal("10000000"), 1);
+    }
+
+    @Test
+    void restartDoesNotQuarantineTheSameLinesAgain() throws Exception {
+        ExecutionContext stepContext = new ExecutionContext();
+        ValidatingSaleFileReader first = newReader();
+        first.open(stepContext);
+        for (int i = 0; i < 8; i++) {
+            assertNotNull(first.read());
+        }
+        first.update(stepContext);
+        ExecutionContext committed = new ExecutionContext(stepContext);
+
+        // Rejeicoes depois do commit chegam ao disco no close da falha, mas nao ao ExecutionContext
+        for (int i = 0; i < 6; i++) {
+            assertNotNull(first.read());
+        }
+        first.close();
+
+        ValidatingSaleFileReader restarted = newReader();
+        restarted.open(committed);
+        List<SaleRecord> resumed = new ArrayList<>();
+        SaleRecord sale;
+        while ((sale = restarted.read()) != null) {
+            resumed.add(sale);
+        }
+        restarted.close();
+
+        assertEquals(20 - INVALID_RECORDS.size() - 8, resumed.size());
+        List<Path> quarantined;
+        try (Stream<Path> files = Files.list(workDir.resolve("quarantine"))) {
+            quarantined = files.toList();
+        }
+        assertEquals(1, quarantined.size());
+        List<String> lines = Files.readAllLines(quarantined.get(0));
+        assertEquals(QuarantineFile.HEADER, lines.get(0));
+        assertEquals(INVALID_RECORDS, lines.stream().skip(1)
+                .map(line -> Integer.parseInt(line.substring(0, line.indexOf(','))))
+                .toList());
+    }
+
+    private ValidatingSaleFileReader newReader() {
+        ValidatingSaleFileReader reader = new ValidatingSaleFileReader(new MappedSaleFileReader("testReader"),
+                saleValidator, new QuarantineSkipPolicy(-1), batchMetrics, workDir.resolve("quarantine"));
+        reader.setResource(new FileSystemResource(csv));
+        return reader;
+    }
+}
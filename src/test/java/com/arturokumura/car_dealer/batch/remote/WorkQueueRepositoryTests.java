@@ -0,0 +1,111 @@
+package com.arturokumura.car_dealer.batch.remote;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Fila em H2 no modo MySQL: cada item vai para um unico worker, itens sem heartbeat sao reivindicados
+// de novo e o dono anterior perde a posse, e o restart do gerenciador so reenfileira os que falharam.
+class WorkQueueRepositoryTests {
+
+    private static final String RUN_ID = "instance-1";
+    private static final int MAX_ATTEMPTS = 3;
+
+    private WorkQueueRepository workQueue;
+
+    @BeforeEach
+    void setUp() {
+        workQueue = new WorkQueueRepository("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1",
+                "sa", "");
+        workQueue.register(RUN_ID, List.of("D001.csv", "D002.csv", "D003.csv"));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        workQueue.destroy();
+    }
+
+    @Test
+    void eachItemIsClaimedByOneWorker() {
+        long noneStale = 0;
+        Set<Long> claimed = new HashSet<>();
+        for (String owner : List.of("worker-a", "worker-b", "worker-c")) {
+            WorkQueueRepository.WorkItem item = workQueue.claim(owner, noneStale, MAX_ATTEMPTS);
+            assertNotNull(item);
+            assertEquals(1, item.attempts());
+            assertTrue(claimed.add(item.id()));
+        }
+
+        assertNull(workQueue.claim("worker-d", noneStale, MAX_ATTEMPTS));
+        assertEquals(3, workQueue.countByStatus(RUN_ID).get(WorkQueueRepository.Status.CLAIMED));
+    }
+
+    @Test
+    void staleItemIsReclaimedAndThePreviousOwnerLosesIt() {
+        WorkQueueRepository.WorkItem first = claimOnly("worker-a");
+
+        // Sem heartbeat desde antes de agora: o item esta abandonado
+        WorkQueueRepository.WorkItem reclaimed = workQueue.claim("worker-b", System.currentTimeMillis() + 1,
+                MAX_ATTEMPTS);
+
+        assertNotNull(reclaimed);
+        assertEquals(first.id(), reclaimed.id());
+        assertEquals(2, reclaimed.attempts());
+        assertFalse(workQueue.heartbeat(first, "worker-a"));
+        assertFalse(workQueue.complete(first, "worker-a", new byte[]{1}));
+        assertTrue(workQueue.complete(reclaimed, "worker-b", new byte[]{2}));
+
+        workQueue.forEachPartial(RUN_ID, (location, snapshot) -> assertArrayEquals(new byte[]{2}, snapshot));
+        assertEquals(1, workQueue.countByStatus(RUN_ID).get(WorkQueueRepository.Status.DONE));
+    }
+
+    @Test
+    void itemsOutOfAttemptsFailAndOnlyFailedItemsAreRequeuedOnRestart() {
+        WorkQueueRepository.WorkItem done = claimOnly("worker-a");
+        assertTrue(workQueue.complete(done, "worker-a", new byte[]{1}));
+        WorkQueueRepository.WorkItem failed = workQueue.claim("worker-a", 0, 1);
+        WorkQueueRepository.WorkItem abandoned = workQueue.claim("worker-b", 0, 1);
+        assertNotNull(failed);
+        assertNotNull(abandoned);
+        workQueue.fail(failed, "worker-a", "erro de leitura", 1);
+
+        // Sem novas tentativas, o abandonado nao volta para outro worker e falha
+        assertNull(workQueue.claim("worker-c", System.currentTimeMillis() + 1, 1));
+        assertEquals(1, workQueue.failExhausted(RUN_ID, System.currentTimeMillis() + 1, 1));
+        Map<WorkQueueRepository.Status, Integer> counts = workQueue.countByStatus(RUN_ID);
+        assertEquals(1, counts.get(WorkQueueRepository.Status.DONE));
+        assertEquals(2, counts.get(WorkQueueRepository.Status.FAILED));
+        assertEquals(2, workQueue.failures(RUN_ID).size());
+
+        workQueue.register(RUN_ID, List.of("D001.csv", "D002.csv", "D003.csv"));
+
+        counts = workQueue.countByStatus(RUN_ID);
+        assertEquals(1, counts.get(WorkQueueRepository.Status.DONE));
+        assertEquals(2, counts.get(WorkQueueRepository.Status.PENDING));
+        WorkQueueRepository.WorkItem retried = workQueue.claim("worker-c", 0, MAX_ATTEMPTS);
+        assertNotNull(retried);
+        assertEquals(1, retried.attempts());
+        assertNotEquals(done.id(), retried.id());
+    }
+
+    // Reivindica o primeiro item livre, sem considerar nenhum como abandonado.
+    private WorkQueueRepository.WorkItem claimOnly(String owner) {
+        WorkQueueRepository.WorkItem item = workQueue.claim(owner, 0, MAX_ATTEMPTS);
+        assertNotNull(item);
+        return item;
+    }
+}
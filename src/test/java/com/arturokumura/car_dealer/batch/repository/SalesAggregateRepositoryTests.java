@@ -0,0 +1,119 @@
+package com.arturokumura.car_dealer.batch.repository;
+
+import com.arturokumura.car_dealer.batch.domain.ReportLine;
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.support.TestDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Upsert idempotente por origem: reaplicar vendas ja somadas (restart, item reivindicado de novo,
+// chunks com outros limites) nao muda os totais, e o relatorio sai da tabela de totais.
+class SalesAggregateRepositoryTests {
+
+    private JdbcTemplate jdbcTemplate;
+    private SalesAggregateRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = TestDatabase.create();
+        repository = new SalesAggregateRepository(jdbcTemplate, SalesAggregateRepository.SOURCE_AGGREGATE_TABLE);
+    }
+
+    @Test
+    void reappliedSalesOfTheSameSourceAreNotSummedAgain() {
+        List<SaleRecord> sales = sales(10);
+        repository.upsert("salesReportStep-1", 0, new Chunk<>(sales.subList(0, 4)));
+        repository.upsert("salesReportStep-1", 4, new Chunk<>(sales.subList(4, 8)));
+
+        // Nova tentativa desde o inicio, com chunks de outro tamanho, sobrepondo o que ja foi somado
+        repository.upsert("salesReportStep-1", 0, new Chunk<>(sales.subList(0, 3)));
+        repository.upsert("salesReportStep-1", 3, new Chunk<>(sales.subList(3, 6)));
+        repository.upsert("salesReportStep-1", 6, new Chunk<>(sales.subList(6, 10)));
+
+        assertEquals(expectedLines(sales), sorted(repository.findReportLines()));
+        assertEquals(10, jdbcTemplate.queryForObject(
+                "SELECT SUM(units_sold) FROM sales_aggregate", Integer.class));
+        assertEquals(10L, jdbcTemplate.queryForObject(
+                "SELECT applied_sales FROM sales_aggregate_sources WHERE source_id = ?", Long.class,
+                "salesReportStep-1"));
+    }
+
+    @Test
+    void differentSourcesAreSummedIndependently() {
+        List<SaleRecord> sales = sales(6);
+        repository.upsert("salesReportWorkerStep:partition0000-1", 0, new Chunk<>(sales));
+        repository.upsert("salesReportWorkerStep:partition0001-1", 0, new Chunk<>(sales));
+
+        List<SaleRecord> twice = new ArrayList<>(sales);
+        twice.addAll(sales);
+        assertEquals(expectedLines(twice), sorted(repository.findReportLines()));
+    }
+
+    @Test
+    void pricesBeyondTheColumnScaleAreRejected() {
+        SaleRecord sale = new SaleRecord("D001", "2026-02-01", "Lume", "PIX", new BigDecimal("10.12345"));
+
+        assertThrows(IllegalStateException.class,
+                () -> repository.upsert("salesReportStep-1", 0, new Chunk<>(List.of(sale))));
+
+        // Zeros a direita alem da escala nao perdem nada e sao aceitos
+        SaleRecord padded = new SaleRecord("D001", "2026-02-01", "Lume", "PIX", new BigDecimal("10.123400"));
+        repository.upsert("salesReportStep-1", 0, new Chunk<>(List.of(padded)));
+        assertEquals(0, new BigDecimal("10.1234").compareTo(repository.findReportLines().get(0).revenueBrl()));
+    }
+
+    private static List<SaleRecord> sales(int count) {
+        List<SaleRecord> sales = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            sales.add(new SaleRecord(i % 2 == 0 ? "D001" : "D002", "2026-0" + (1 + i % 3) + "-10",
+                    i % 3 == 0 ? "Lume" : "Serra", "PIX", new BigDecimal(1000 + i).movePointLeft(1)));
+        }
+        return sales;
+    }
+
+    // Totais por filial e modelo calculados direto das vendas, com o nome cadastrado em dealers.
+    private List<String> expectedLines(List<SaleRecord> sales) {
+        List<ReportLine> lines = new ArrayList<>();
+        for (SaleRecord sale : sales) {
+            String dealerName = jdbcTemplate.queryForObject(
+                    "SELECT dealer_name FROM dealers WHERE dealer_id = ?", String.class, sale.dealerId());
+            lines.add(new ReportLine(dealerName, sale.model(), 1, sale.salePriceBrl()));
+        }
+        List<String> expected = new ArrayList<>();
+        lines.sort(Comparator.comparing(ReportLine::dealerName).thenComparing(ReportLine::model));
+        ReportLine pending = null;
+        for (ReportLine line : lines) {
+            if (pending != null && pending.dealerName().equals(line.dealerName())
+                    && pending.model().equals(line.model())) {
+                pending = new ReportLine(pending.dealerName(), pending.model(), pending.unitsSold() + 1,
+                        pending.revenueBrl().add(line.revenueBrl()));
+            } else {
+                if (pending != null) {
+                    expected.add(pending.toCsv());
+                }
+                pending = line;
+            }
+        }
+        if (pending != null) {
+            expected.add(pending.toCsv());
+        }
+        return expected;
+    }
+
+    private static List<String> sorted(List<ReportLine> lines) {
+        return lines.stream()
+                .sorted(Comparator.comparing(ReportLine::dealerName).thenComparing(ReportLine::model))
+                .map(ReportLine::toCsv)
+                .toList();
+    }
+}
@@ -0,0 +1,47 @@
+package com.arturokumura.car_dealer.batch.rollup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// O nome do rollup vira parte do nome do arquivo de saida: so nomes seguros e unicos sao aceitos.
+class RollupDefinitionsTests {
+
+    @Test
+    void noRollupsConfiguredMeansOnlyThePrimaryReport() {
+        assertTrue(definitions("").extras().isEmpty());
+        assertTrue(definitions(null).extras().isEmpty());
+    }
+
+    @Test
+    void validRollupsAreParsed() {
+        List<RollupDefinition> extras = definitions("dealer-day:dealer,day; model_payment:model,payment_type;total:")
+                .extras();
+
+        assertEquals(List.of("dealer-day", "model_payment", "total"),
+                extras.stream().map(RollupDefinition::name).toList());
+        assertEquals(List.of(RollupDimension.DEALER, RollupDimension.DAY), extras.get(0).dimensions());
+        assertTrue(extras.get(2).dimensions().isEmpty());
+    }
+
+    @Test
+    void namesUnsafeForFileNamesAreRejected() {
+        for (String name : List.of("../x", "a/b", "a\\b", "sem espaco", "", "total.csv", "ç")) {
+            assertThrows(IllegalArgumentException.class, () -> definitions(name + ":dealer"), name);
+        }
+    }
+
+    @Test
+    void repeatedOrReservedNamesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> definitions("total:;total:dealer"));
+        assertThrows(IllegalArgumentException.class, () -> definitions(RollupDefinitions.PRIMARY.name() + ":dealer"));
+    }
+
+    private static RollupDefinitions definitions(String rollups) {
+        return new RollupDefinitions(rollups, 0, System.getProperty("java.io.tmpdir"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.arturokumura.car_dealer.batch.rollup;
+
+import com.arturokumura.car_dealer.batch.dimension.DealerDimensionCache;
+import com.arturokumura.car_dealer.batch.dimension.DealerLookup;
+import com.arturokumura.car_dealer.batch.domain.ReportLine;
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import com.arturokumura.car_dealer.support.TestDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+// Filiais somadas pelo id denso da dimensao: a saida traz os nomes cadastrados nas duas posicoes de chave,
+// o dealer_id sem cadastro continua sendo o nome e uma nova versao da dimensao nao reaproveita nomes antigos.
+class RollupEngineTests {
+
+    private static final String ROLLUPS = "dealer-day:dealer,day;model-dealer:model,dealer";
+
+    @TempDir
+    Path workDir;
+
+    private JdbcTemplate jdbcTemplate;
+    private DealerDimensionCache dealerDimensionCache;
+    private RollupDefinitions rollupDefinitions;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = TestDatabase.create();
+        // ttl zero: cada consulta confere a versao da tabela
+        dealerDimensionCache = new DealerDimensionCache(jdbcTemplate, new BatchMetrics(new SimpleMeterRegistry()), 0);
+        rollupDefinitions = new RollupDefinitions(ROLLUPS, 0, workDir.resolve("spill").toString());
+    }
+
+    @Test
+    void denseDealerKeysAreWrittenWithTheRegisteredNames() throws IOException {
+        DealerLookup lookup = dealerDimensionCache.newLookup();
+        RollupEngine engine = rollupDefinitions.newEngine();
+        engine.useDealers(lookup.dimension());
+        for (SaleRecord sale : List.of(sale("D002", "Serra", "10.00"), sale("D001", "Lume", "20.00"),
+                sale("D002", "Serra", "5.50"), sale("X99", "Lume", "1.00"))) {
+            engine.add(sale, lookup.denseIdOf(sale.dealerId()));
+        }
+
+        assertEquals(List.of(
+                name("D001") + ",Lume,1,20.00",
+                name("D002") + ",Serra,2,15.50",
+                "X99,Lume,1,1.00"), primaryLines(engine));
+        List<String> byModel = new ArrayList<>();
+        engine.forEachExtraLine(1, line -> byModel.add(line.toCsv()));
+        assertEquals(List.of(
+                "Lume," + name("D001") + ",1,20.00",
+                "Lume,X99,1,1.00",
+                "Serra," + name("D002") + ",2,15.50"), byModel);
+        assertEquals(1, lookup.misses());
+    }
+
+    @Test
+    void newDimensionVersionDoesNotReuseTheOldName() throws IOException {
+        RollupEngine engine = rollupDefinitions.newEngine();
+        DealerLookup before = dealerDimensionCache.newLookup();
+        String oldName = name("D001");
+        engine.useDealers(before.dimension());
+        engine.add(sale("D001", "Lume", "10.00"), before.denseIdOf("D001"));
+
+        jdbcTemplate.update("UPDATE dealers SET dealer_name = 'Aurora Paulista Nova' WHERE dealer_id = 'D001'");
+        DealerLookup after = dealerDimensionCache.newLookup();
+        assertNotEquals(before.dimension().version(), after.dimension().version());
+        assertEquals(before.denseIdOf("D001"), after.denseIdOf("D001"));
+        engine.useDealers(after.dimension());
+        engine.add(sale("D001", "Lume", "20.00"), after.denseIdOf("D001"));
+
+        assertEquals(List.of("Aurora Paulista Nova,Lume,1,20.00", oldName + ",Lume,1,10.00"), primaryLines(engine));
+    }
+
+    private String name(String dealerId) {
+        return jdbcTemplate.queryForObject("SELECT dealer_name FROM dealers WHERE dealer_id = ?", String.class,
+                dealerId);
+    }
+
+    private static SaleRecord sale(String dealerId, String model, String price) {
+        return new SaleRecord(dealerId, "2026-02-01", model, "PIX", new BigDecimal(price));
+    }
+
+    private static List<String> primaryLines(RollupEngine engine) throws IOException {
+        List<String> lines = new ArrayList<>();
+        engine.forEachPrimaryLine((ReportLine line) -> lines.add(line.toCsv()));
+        return lines;
+    }
+}
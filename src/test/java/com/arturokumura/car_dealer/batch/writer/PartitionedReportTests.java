@@ -0,0 +1,197 @@
+package com.arturokumura.car_dealer.batch.writer;
+
+import com.arturokumura.car_dealer.batch.aggregation.AggregateCheckpoint;
+import com.arturokumura.car_dealer.batch.dimension.DealerDimension;
+import com.arturokumura.car_dealer.batch.dimension.DealerDimensionCache;
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.batch.repository.SalesAggregateRepository;
+import com.arturokumura.car_dealer.batch.rollup.RollupDefinitions;
+import com.arturokumura.car_dealer.batch.rollup.RollupEngine;
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import com.arturokumura.car_dealer.report.ReportSnapshotHolder;
+import com.arturokumura.car_dealer.support.TestDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.batch.infrastructure.item.ItemStreamWriter;
+import org.springframework.batch.infrastructure.item.file.FlatFileItemReader;
+import org.springframework.batch.infrastructure.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.batch.infrastructure.item.file.mapping.RecordFieldSetMapper;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// O relatorio do step particionado (um parcial por arquivo, unidos no fim) deve sair byte a byte igual
+// ao do step unico sobre os mesmos arquivos de amostra de src/main/resources/filial-report.
+class PartitionedReportTests {
+
+    private static final int CHUNK_SIZE = 7;
+    private static final String ROLLUPS = "dealer-day:dealer,day;model-payment:model,payment_type;total:";
+
+    @TempDir
+    Path workDir;
+
+    private Resource[] sampleFiles;
+    private SimpleMeterRegistry meterRegistry;
+    private BatchMetrics batchMetrics;
+    private DealerDimensionCache dealerDimensionCache;
+    private RollupDefinitions rollupDefinitions;
+    private AggregateCheckpoint checkpoint;
+    private SalesAggregateRepository salesAggregateRepository;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        sampleFiles = new PathMatchingResourcePatternResolver().getResources("classpath:filial-report/*.csv");
+        Arrays.sort(sampleFiles, Comparator.comparing(Resource::getFilename));
+        meterRegistry = new SimpleMeterRegistry();
+        batchMetrics = new BatchMetrics(meterRegistry);
+        dealerDimensionCache = new DealerDimensionCache(TestDatabase.create(), batchMetrics, Long.MAX_VALUE);
+        rollupDefinitions = new RollupDefinitions(ROLLUPS, 0, workDir.resolve("spill").toString());
+        checkpoint = new AggregateCheckpoint(true, workDir.resolve("checkpoints").toString(), 256, 3);
+        salesAggregateRepository = new SalesAggregateRepository(null, "memory");
+    }
+
+    @Test
+    void partitionedReportMatchesSingleStepReport() throws Exception {
+        assertEquals(12, sampleFiles.length);
+        JobExecution jobExecution = MetaDataInstanceFactory.createJobExecution("salesReportJob", 1L, 1L);
+
+        // Step unico: um writer recebe os arquivos em sequencia, como o MultiResourceItemReader
+        SalesReportWriter single = newReportWriter("single");
+        StepExecution singleStep = MetaDataInstanceFactory.createStepExecution(jobExecution, "salesReportStep", 1L);
+        single.beforeStep(singleStep);
+        single.open(singleStep.getExecutionContext());
+        for (Resource file : sampleFiles) {
+            writeChunks(single, file, singleStep.getExecutionContext());
+        }
+        singleStep.setStatus(BatchStatus.COMPLETED);
+        single.afterStep(singleStep);
+
+        // Particionado: um writer por arquivo e o merge da execucao
+        PartialReportRegistry registry = new PartialReportRegistry(rollupDefinitions, batchMetrics);
+        registry.registerMetrics();
+        for (int i = 0; i < sampleFiles.length; i++) {
+            StepExecution partition = MetaDataInstanceFactory.createStepExecution(jobExecution,
+                    String.format("salesReportWorkerStep:partition%04d", i), 10L + i);
+            PartitionReportWriter writer = new PartitionReportWriter(dealerDimensionCache, registry, checkpoint,
+                    salesAggregateRepository, rollupDefinitions);
+            writer.beforeStep(partition);
+            writer.open(partition.getExecutionContext());
+            writeChunks(writer, sampleFiles[i], partition.getExecutionContext());
+            partition.setStatus(BatchStatus.COMPLETED);
+            writer.afterStep(partition);
+        }
+        // Antes do merge o agregado esta nos parciais, e o gauge do modo particionado o enxerga
+        assertTrue(meterRegistry.get("car_dealer.report.aggregate.keys").tag("source", "partitions")
+                .gauge().value() > 0);
+        newReportWriter("partitioned").writeReports(jobExecution.getId(), registry.merge(jobExecution.getId()));
+
+        List<Path> singleOutputs = outputs("single");
+        List<Path> partitionedOutputs = outputs("partitioned");
+        assertEquals(1 + rollupDefinitions.extras().size(), singleOutputs.size());
+        assertEquals(singleOutputs.size(), partitionedOutputs.size());
+        for (int i = 0; i < singleOutputs.size(); i++) {
+            assertArrayEquals(Files.readAllBytes(singleOutputs.get(i)), Files.readAllBytes(partitionedOutputs.get(i)),
+                    "Saida diferente: " + singleOutputs.get(i).getFileName());
+        }
+        // Nenhuma venda das amostras fica de fora do relatorio principal
+        assertEquals(sampleLines(), Files.readAllLines(singleOutputs.get(0)).stream()
+                .skip(1).mapToLong(line -> Long.parseLong(line.split(",")[2])).sum());
+    }
+
+    @Test
+    void partialsOfConcurrentExecutionsStaySeparate() throws Exception {
+        PartialReportRegistry registry = new PartialReportRegistry(rollupDefinitions, batchMetrics);
+        // Filiais sem cadastro: o nome no relatorio e o proprio dealer_id
+        RollupEngine first = rollupDefinitions.newEngine();
+        first.add(new SaleRecord("A", "2026-02-01", "Lume", "PIX", new BigDecimal("10.00")), DealerDimension.UNKNOWN);
+        RollupEngine second = rollupDefinitions.newEngine();
+        second.add(new SaleRecord("B", "2026-02-01", "Serra", "PIX", new BigDecimal("20.00")), DealerDimension.UNKNOWN);
+        registry.register(1L, "salesReportWorkerStep:partition0000", first);
+        registry.register(2L, "salesReportWorkerStep:partition0000", second);
+
+        registry.clear(2L);
+
+        assertTrue(registry.contains(1L, "salesReportWorkerStep:partition0000"));
+        assertFalse(registry.contains(2L, "salesReportWorkerStep:partition0000"));
+        List<String> dealers = new ArrayList<>();
+        registry.merge(1L).forEachPrimaryLine(line -> dealers.add(line.dealerName()));
+        assertEquals(List.of("A"), dealers);
+    }
+
+    private SalesReportWriter newReportWriter(String directory) {
+        return new SalesReportWriter(dealerDimensionCache, checkpoint, salesAggregateRepository, batchMetrics, null,
+                new ReportSnapshotHolder(), rollupDefinitions,
+                workDir.resolve(directory).resolve("sales-report.csv").toString());
+    }
+
+    // Le o arquivo em chunks, chamando update a cada commit como o step.
+    private static void writeChunks(ItemStreamWriter<SaleRecord> writer,
+                                    Resource file, ExecutionContext executionContext) throws Exception {
+        FlatFileItemReader<SaleRecord> reader = new FlatFileItemReaderBuilder<SaleRecord>()
+                .name("sampleReader")
+                .resource(file)
+                .encoding("UTF-8")
+                .linesToSkip(1)
+                .delimited()
+                .names("dealerId", "saleDate", "model", "paymentType", "salePriceBrl")
+                .fieldSetMapper(new RecordFieldSetMapper<>(SaleRecord.class))
+                .build();
+        reader.open(new ExecutionContext());
+        try {
+            List<SaleRecord> items = new ArrayList<>();
+            SaleRecord item;
+            while ((item = reader.read()) != null) {
+                items.add(item);
+                if (items.size() == CHUNK_SIZE) {
+                    writer.write(new Chunk<>(items));
+                    writer.update(executionContext);
+                    items = new ArrayList<>();
+                }
+            }
+            if (!items.isEmpty()) {
+                writer.write(new Chunk<>(items));
+                writer.update(executionContext);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private long sampleLines() throws IOException {
+        long lines = 0;
+        for (Resource file : sampleFiles) {
+            try (Stream<String> content = Files.lines(file.getFile().toPath())) {
+                lines += content.skip(1).filter(line -> !line.isBlank()).count();
+            }
+        }
+        return lines;
+    }
+
+    private List<Path> outputs(String directory) throws IOException {
+        try (Stream<Path> files = Files.list(workDir.resolve(directory))) {
+            return files.sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.arturokumura.car_dealer.batch.writer;
+
+import com.arturokumura.car_dealer.batch.aggregation.AggregateCheckpoint;
+import com.arturokumura.car_dealer.batch.dimension.DealerDimensionCache;
+import com.arturokumura.car_dealer.batch.domain.ReportLine;
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.batch.partition.WorkItemPartitioner;
+import com.arturokumura.car_dealer.batch.repository.SalesAggregateRepository;
+import com.arturokumura.car_dealer.batch.rollup.RollupDefinitions;
+import com.arturokumura.car_dealer.batch.rollup.RollupEngine;
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import com.arturokumura.car_dealer.support.TestDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.parameters.JobParametersBuilder;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.Chunk;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Checkpoint completo a cada N commits e delta nos demais: o restart em qualquer commit deve
+// reconstruir o mesmo agregado, e nem o discard nem o restart deixam arquivos para tras.
+class ReportAggregateTests {
+
+    private static final String[] MODELS = {"Lume", "Serra", "Vento", "Brisa", "Trilha", "Aurora"};
+    private static final String[] PAYMENTS = {"PIX", "CARTAO", "BOLETO"};
+
+    @TempDir
+    Path workDir;
+
+    private DealerDimensionCache dealerDimensionCache;
+    private RollupDefinitions rollupDefinitions;
+    private SalesAggregateRepository salesAggregateRepository;
+
+    @BeforeEach
+    void setUp() {
+        dealerDimensionCache = new DealerDimensionCache(TestDatabase.create(),
+                new BatchMetrics(new SimpleMeterRegistry()), Long.MAX_VALUE);
+        rollupDefinitions = new RollupDefinitions("model-payment:model,payment_type", 0,
+                workDir.resolve("spill").toString());
+        salesAggregateRepository = new SalesAggregateRepository(null, "memory");
+    }
+
+    @Test
+    void restartAtAnyCommitRestoresTheCommittedAggregate() throws IOException {
+        // Limite inline baixo para alternar entre snapshots no contexto e em arquivo
+        AggregateCheckpoint checkpoint = new AggregateCheckpoint(true, workDir.resolve("checkpoints").toString(),
+                200, 4);
+        StepExecution stepExecution = newStepExecution();
+        ReportAggregate aggregate = newAggregate(checkpoint, stepExecution);
+        aggregate.open(stepExecution.getExecutionContext());
+
+        for (int commit = 0; commit < 11; commit++) {
+            aggregate.add(chunk(commit));
+            aggregate.update(stepExecution.getExecutionContext());
+
+            ExecutionContext committed = new ExecutionContext(stepExecution.getExecutionContext());
+            ReportAggregate restarted = newAggregate(checkpoint, stepExecution);
+            assertTrue(restarted.open(committed));
+            assertEquals(lines(aggregate.engine()), lines(restarted.engine()), "Commit " + commit);
+        }
+
+        aggregate.discardCheckpoint();
+        try (Stream<Path> files = Files.list(workDir.resolve("checkpoints"))) {
+            assertFalse(files.findAny().isPresent());
+        }
+    }
+
+    @Test
+    void restoredAggregateKeepsCountingAfterRestart() throws IOException {
+        AggregateCheckpoint checkpoint = new AggregateCheckpoint(true, workDir.resolve("checkpoints").toString(),
+                200, 3);
+        StepExecution stepExecution = newStepExecution();
+        ReportAggregate uninterrupted = newAggregate(checkpoint, stepExecution);
+        ReportAggregate interrupted = newAggregate(checkpoint, newStepExecution());
+        ExecutionContext interruptedContext = new ExecutionContext();
+        interrupted.open(interruptedContext);
+        for (int commit = 0; commit < 5; commit++) {
+            uninterrupted.add(chunk(commit));
+            interrupted.add(chunk(commit));
+            interrupted.update(interruptedContext);
+        }
+
+        // O restart retoma do ultimo commit e segue agregando e salvando deltas
+        ReportAggregate restarted = newAggregate(checkpoint, stepExecution);
+        restarted.open(interruptedContext);
+        for (int commit = 5; commit < 9; commit++) {
+            uninterrupted.add(chunk(commit));
+            restarted.add(chunk(commit));
+            restarted.update(interruptedContext);
+        }
+        ReportAggregate restoredAgain = newAggregate(checkpoint, stepExecution);
+        restoredAgain.open(interruptedContext);
+
+        assertEquals(lines(uninterrupted.engine()), lines(restarted.engine()));
+        assertEquals(lines(uninterrupted.engine()), lines(restoredAgain.engine()));
+    }
+
+    @Test
+    void restartDeletesRunsSpilledAfterTheLastCommit() throws IOException {
+        rollupDefinitions = new RollupDefinitions("model-payment:model,payment_type", 8,
+                workDir.resolve("spill").toString());
+        AggregateCheckpoint checkpoint = new AggregateCheckpoint(true, workDir.resolve("checkpoints").toString(),
+                200, 3);
+        StepExecution stepExecution = newStepExecution();
+        ReportAggregate aggregate = newAggregate(checkpoint, stepExecution);
+        aggregate.open(stepExecution.getExecutionContext());
+        for (int commit = 0; commit < 4; commit++) {
+            aggregate.add(chunk(commit));
+            aggregate.update(stepExecution.getExecutionContext());
+        }
+        ExecutionContext committed = new ExecutionContext(stepExecution.getExecutionContext());
+        List<String> committedLines = lines(newRestored(checkpoint, stepExecution, committed).engine());
+
+        // Chunks que fizeram spill mas nao chegaram ao commit (rollback ou processo interrompido)
+        aggregate.add(chunk(4));
+        aggregate.add(chunk(5));
+        Path spill = rollupDefinitions.spillDirectory(PartialReportRegistry.checkpointScope(
+                stepExecution.getStepName(), stepExecution.getJobExecution().getJobInstance()));
+        Set<Path> beforeRestart;
+        try (Stream<Path> files = Files.list(spill)) {
+            beforeRestart = files.collect(Collectors.toSet());
+        }
+
+        ReportAggregate restarted = newRestored(checkpoint, stepExecution, committed);
+        assertEquals(committedLines, lines(restarted.engine()));
+        try (Stream<Path> files = Files.list(spill)) {
+            Set<Path> afterRestart = files.collect(Collectors.toSet());
+            assertEquals(restarted.engine().spillFiles(), afterRestart);
+            assertTrue(beforeRestart.size() > afterRestart.size());
+            assertTrue(beforeRestart.containsAll(afterRestart));
+        }
+    }
+
+    @Test
+    void primaryReportIsNotKeptInMemoryWhenReadFromTheAggregateTable() throws IOException {
+        salesAggregateRepository = new SalesAggregateRepository(TestDatabase.create(),
+                SalesAggregateRepository.SOURCE_AGGREGATE_TABLE);
+        AggregateCheckpoint checkpoint = new AggregateCheckpoint(false, workDir.resolve("checkpoints").toString(),
+                200, 3);
+        StepExecution stepExecution = newStepExecution();
+        ReportAggregate aggregate = newAggregate(checkpoint, stepExecution);
+        aggregate.open(stepExecution.getExecutionContext());
+        aggregate.add(chunk(0));
+
+        List<String> primary = new ArrayList<>();
+        aggregate.engine().forEachPrimaryLine(line -> primary.add(line.toCsv()));
+        assertTrue(primary.isEmpty());
+        assertFalse(salesAggregateRepository.findReportLines().isEmpty());
+        List<String> extra = new ArrayList<>();
+        aggregate.engine().forEachExtraLine(0, line -> extra.add(line.toCsv()));
+        assertFalse(extra.isEmpty());
+    }
+
+    @Test
+    void attemptsOfTheSameWorkItemSumItsSalesOnce() {
+        salesAggregateRepository = new SalesAggregateRepository(TestDatabase.create(),
+                SalesAggregateRepository.SOURCE_AGGREGATE_TABLE);
+        AggregateCheckpoint checkpoint = new AggregateCheckpoint(false, workDir.resolve("checkpoints").toString(),
+                200, 3);
+        List<String> expected = null;
+        // Cada tentativa do item e uma nova instancia do job do worker (parametro attempt)
+        for (long attempt = 1; attempt <= 2; attempt++) {
+            JobExecution jobExecution = MetaDataInstanceFactory.createJobExecution("remoteWorkerJob", attempt,
+                    attempt, new JobParametersBuilder()
+                            .addLong(WorkItemPartitioner.WORK_ITEM_PARAMETER, 42L)
+                            .addLong("attempt", attempt)
+                            .toJobParameters());
+            StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution(jobExecution,
+                    WorkItemPartitioner.WORKER_STEP_NAME + ":" + WorkItemPartitioner.partitionName(42L), attempt);
+            ReportAggregate aggregate = newAggregate(checkpoint, stepExecution);
+            aggregate.open(stepExecution.getExecutionContext());
+            aggregate.add(chunk(0));
+            aggregate.add(chunk(1));
+            aggregate.update(stepExecution.getExecutionContext());
+
+            List<String> lines = salesAggregateRepository.findReportLines().stream().map(ReportLine::toCsv).toList();
+            if (expected == null) {
+                expected = lines;
+            }
+            assertEquals(expected, lines, "Tentativa " + attempt);
+        }
+    }
+
+    private ReportAggregate newRestored(AggregateCheckpoint checkpoint, StepExecution stepExecution,
+                                       ExecutionContext committed) {
+        ReportAggregate restored = newAggregate(checkpoint, stepExecution);
+        assertTrue(restored.open(new ExecutionContext(committed)));
+        return restored;
+    }
+
+    private StepExecution newStepExecution() {
+        JobExecution jobExecution = MetaDataInstanceFactory.createJobExecution("salesReportJob", 1L, 1L);
+        return MetaDataInstanceFactory.createStepExecution(jobExecution, "salesReportStep", 1L);
+    }
+
+    private ReportAggregate newAggregate(AggregateCheckpoint checkpoint, StepExecution stepExecution) {
+        ReportAggregate aggregate = new ReportAggregate(dealerDimensionCache, checkpoint, salesAggregateRepository,
+                rollupDefinitions);
+        aggregate.beforeStep(stepExecution);
+        return aggregate;
+    }
+
+    // Cada commit traz chaves novas e repetidas, para que os deltas crescam e se sobreponham.
+    private static Chunk<SaleRecord> chunk(int commit) {
+        List<SaleRecord> items = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            int n = commit * 7 + i;
+            items.add(new SaleRecord(String.format("D%03d", 1 + n % 5), "2026-02-0" + (1 + n % 9),
+                    MODELS[n % MODELS.length] + (n % 13), PAYMENTS[n % PAYMENTS.length],
+                    new BigDecimal(100_000 + n * 37).movePointLeft(2)));
+        }
+        return new Chunk<>(items);
+    }
+
+    private static List<String> lines(RollupEngine engine) throws IOException {
+        List<String> lines = new ArrayList<>();
+        engine.forEachPrimaryLine(line -> lines.add(line.toCsv()));
+        for (int i = 0; i < engine.extraDefinitions().size(); i++) {
+            engine.forEachExtraLine(i, (ReportLine line) -> lines.add(line.toCsv()));
+        }
+        return lines;
+    }
+}
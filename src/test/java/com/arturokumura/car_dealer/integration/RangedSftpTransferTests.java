@@ -0,0 +1,167 @@
+package com.arturokumura.car_dealer.integration;
+
+import com.arturokumura.car_dealer.perf.EmbeddedSftpServer;
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.sftp.FileAttributes;
+import net.schmizz.sshj.sftp.SFTPClient;
+import net.schmizz.sshj.transport.verification.PromiscuousVerifier;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.sftp.server.FileHandle;
+import org.apache.sshd.sftp.server.SftpEventListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Download em faixas contra um servidor SFTP local: a nova tentativa so busca as faixas que faltaram,
+// uma faixa com CRC divergente e buscada de novo sozinha e um arquivo alterado durante a transferencia
+// e recusado sem deixar progresso para tras.
+class RangedSftpTransferTests {
+
+    private static final int RANGE_SIZE = 64 * 1024;
+    private static final int RANGE_COUNT = 6;
+    private static final String REMOTE_PATH = "/filiais/filial-grande.csv";
+
+    @TempDir
+    Path workDir;
+
+    private final Queue<Long> readOffsets = new ConcurrentLinkedQueue<>();
+    private volatile LongPredicate failingReads = offset -> false;
+    private volatile boolean touchOnRead;
+    private EmbeddedSftpServer server;
+    private SSHClient sshClient;
+    private SFTPClient sftpClient;
+    private RangedSftpTransfer transfer;
+    private Path remoteFile;
+    private Path localFile;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = EmbeddedSftpServer.start(workDir.resolve("sftp"), new RecordingListener());
+        content = new byte[RANGE_SIZE * (RANGE_COUNT - 1) + 1000];
+        new Random(7).nextBytes(content);
+        remoteFile = server.branchDirectory().resolve("filial-grande.csv");
+        Files.write(remoteFile, content);
+        localFile = workDir.resolve("local").resolve("filial-grande.csv");
+        Files.createDirectories(localFile.getParent());
+
+        sshClient = new SSHClient();
+        sshClient.addHostKeyVerifier(new PromiscuousVerifier());
+        sshClient.connect("localhost", server.getPort());
+        sshClient.authPassword(EmbeddedSftpServer.USER, EmbeddedSftpServer.PASSWORD);
+        sftpClient = sshClient.newSFTPClient();
+
+        // Uma faixa por vez, para que a falha aconteca sempre depois das mesmas faixas concluidas
+        transfer = new RangedSftpTransfer(null);
+        ReflectionTestUtils.setField(transfer, "rangeSizeBytes", (long) RANGE_SIZE);
+        ReflectionTestUtils.setField(transfer, "parallelRanges", 1);
+        ReflectionTestUtils.setField(transfer, "maxUnconfirmedRequests", 4);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        sftpClient.close();
+        sshClient.close();
+        server.close();
+    }
+
+    @Test
+    void retryResumesFromTheRangeThatWasInterrupted() throws IOException {
+        failingReads = offset -> offset >= 3L * RANGE_SIZE;
+        assertThrows(IOException.class, this::download);
+        assertTrue(Files.exists(progressFile()));
+
+        failingReads = offset -> false;
+        readOffsets.clear();
+        download();
+
+        assertArrayEquals(content, Files.readAllBytes(localFile));
+        assertFalse(readOffsets.isEmpty());
+        assertTrue(readOffsets.stream().allMatch(offset -> offset >= 3L * RANGE_SIZE), readOffsets.toString());
+        assertFalse(Files.exists(progressFile()));
+    }
+
+    @Test
+    void rangeWithDivergentCrcIsFetchedAgainAlone() throws IOException {
+        // Tentativa interrompida depois de tres faixas; uma delas e corrompida no disco local em seguida
+        failingReads = offset -> offset >= 3L * RANGE_SIZE;
+        assertThrows(IOException.class, this::download);
+        corruptLocalByte(RANGE_SIZE + 10);
+
+        failingReads = offset -> false;
+        assertThrows(IOException.class, this::download, "A conferencia final deve recusar a faixa corrompida");
+
+        readOffsets.clear();
+        download();
+
+        assertArrayEquals(content, Files.readAllBytes(localFile));
+        assertFalse(readOffsets.isEmpty());
+        // O read-ahead limitado a faixa pede no maximo o inicio da seguinte, nunca as faixas ja conferidas
+        assertTrue(readOffsets.stream().allMatch(offset -> offset >= RANGE_SIZE && offset <= 2L * RANGE_SIZE),
+                readOffsets.toString());
+        assertFalse(Files.exists(progressFile()));
+    }
+
+    @Test
+    void remoteFileChangedDuringTheTransferIsRejected() throws IOException {
+        touchOnRead = true;
+
+        IOException failure = assertThrows(IOException.class, this::download);
+
+        assertTrue(failure.getMessage().contains("alterado"), failure.getMessage());
+        assertFalse(Files.exists(progressFile()));
+    }
+
+    // Tamanho e mtime vistos na listagem, antes de qualquer leitura.
+    private void download() throws IOException {
+        FileAttributes attributes = sftpClient.stat(REMOTE_PATH);
+        transfer.download(sftpClient, REMOTE_PATH, attributes.getSize(), attributes.getMtime(), localFile);
+    }
+
+    private Path progressFile() {
+        return localFile.resolveSibling(localFile.getFileName() + ".progress");
+    }
+
+    private void corruptLocalByte(int position) throws IOException {
+        byte[] local = Files.readAllBytes(localFile);
+        local[position] ^= 0x5A;
+        Files.write(localFile, local);
+    }
+
+    // Registra os offsets lidos do arquivo grande e injeta falhas ou alteracoes conforme o teste.
+    private final class RecordingListener implements SftpEventListener {
+
+        @Override
+        public void reading(ServerSession session, String remoteHandle, FileHandle localHandle, long offset,
+                            byte[] data, int dataOffset, int dataLen) throws IOException {
+            if (!localHandle.getFile().getFileName().toString().equals(remoteFile.getFileName().toString())) {
+                return;
+            }
+            if (failingReads.test(offset)) {
+                throw new IOException("Leitura recusada na posicao " + offset);
+            }
+            readOffsets.add(offset);
+            if (touchOnRead) {
+                touchOnRead = false;
+                Files.setLastModifiedTime(remoteFile, FileTime.fromMillis(
+                        Files.getLastModifiedTime(remoteFile).toMillis() + 60_000));
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.arturokumura.car_dealer.integration;
+
+import net.schmizz.sshj.sftp.FileAttributes;
+import net.schmizz.sshj.sftp.FileMode;
+import net.schmizz.sshj.sftp.PathComponents;
+import net.schmizz.sshj.sftp.RemoteResourceInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Listagem remota filtrada pelo pattern dos arquivos das filiais: arquivos de outro tipo e diretorios na
+// pasta remota nao chegam ao step nem ao download.
+class RemoteFileFilterTests {
+
+    @Test
+    void onlyRegularFilesMatchingThePatternAreKept() {
+        List<RemoteResourceInfo> listing = List.of(
+                remote("D002_sales.csv", FileMode.Type.REGULAR),
+                remote("leia-me.txt", FileMode.Type.REGULAR),
+                remote("D001_sales.csv.tmp", FileMode.Type.REGULAR),
+                remote("antigos.csv", FileMode.Type.DIRECTORY),
+                remote("D001_sales.csv", FileMode.Type.REGULAR));
+
+        List<String> names = RemoteFileFilter.branchFiles(listing, "file:/dados/filial-report/*.csv").stream()
+                .map(RemoteResourceInfo::getName)
+                .toList();
+
+        assertEquals(List.of("D002_sales.csv", "D001_sales.csv"), names);
+    }
+
+    private static RemoteResourceInfo remote(String name, FileMode.Type type) {
+        return new RemoteResourceInfo(new PathComponents("/filiais", name, "/"),
+                new FileAttributes.Builder().withType(type).build());
+    }
+}
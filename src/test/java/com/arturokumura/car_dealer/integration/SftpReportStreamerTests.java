@@ -0,0 +1,23 @@
+package com.arturokumura.car_dealer.integration;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Compressao do relatorio enviado por streaming: so none e gzip sao aceitas, e um valor desconhecido falha
+// na subida em vez de enviar o relatorio sem compressao.
+class SftpReportStreamerTests {
+
+    @Test
+    void knownCompressionsNameTheRemoteFile() {
+        assertEquals("sales-report.csv", new SftpReportStreamer(null, "none").remoteFileName("sales-report.csv"));
+        assertEquals("sales-report.csv.gz", new SftpReportStreamer(null, " GZIP ").remoteFileName("sales-report.csv"));
+    }
+
+    @Test
+    void unknownCompressionIsRejected() {
+        assertThrows(IllegalStateException.class, () -> new SftpReportStreamer(null, "zstd"));
+        assertThrows(IllegalStateException.class, () -> new SftpReportStreamer(null, "gzp"));
+    }
+}
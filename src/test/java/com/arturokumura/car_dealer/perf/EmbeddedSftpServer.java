@@ -0,0 +1,66 @@
+package com.arturokumura.car_dealer.perf;
+
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.sftp.server.SftpEventListener;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Servidor SFTP local que substitui o servidor real nas medicoes de carga. A raiz virtual expoe
+// /filiais, /filiais/processados e /matriz, os mesmos diretorios configurados em sftp.dir.remote.*.
+public final class EmbeddedSftpServer implements AutoCloseable {
+
+    public static final String USER = "batch";
+    public static final String PASSWORD = "batch123";
+
+    private final Path root;
+    private final SshServer server;
+
+    private EmbeddedSftpServer(Path root, SshServer server) {
+        this.root = root;
+        this.server = server;
+    }
+
+    // Cria os diretorios remotos e inicia o servidor em uma porta livre; os listeners permitem observar
+    // ou fazer falhar operacoes do servidor nos testes.
+    public static EmbeddedSftpServer start(Path root, SftpEventListener... listeners) throws IOException {
+        Files.createDirectories(root.resolve("filiais").resolve("processados"));
+        Files.createDirectories(root.resolve("matriz"));
+
+        SshServer server = SshServer.setUpDefaultServer();
+        server.setHost("localhost");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(root.resolveSibling("hostkey.ser")));
+        server.setPasswordAuthenticator((user, password, session) -> USER.equals(user) && PASSWORD.equals(password));
+        SftpSubsystemFactory sftpFactory = new SftpSubsystemFactory();
+        for (SftpEventListener listener : listeners) {
+            sftpFactory.addSftpEventListener(listener);
+        }
+        server.setSubsystemFactories(List.of(sftpFactory));
+        server.setFileSystemFactory(new VirtualFileSystemFactory(root.toAbsolutePath()));
+        server.start();
+        return new EmbeddedSftpServer(root, server);
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public Path branchDirectory() {
+        return root.resolve("filiais");
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(true);
+    }
+}
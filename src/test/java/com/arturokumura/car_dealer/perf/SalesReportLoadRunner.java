@@ -0,0 +1,148 @@
+package com.arturokumura.car_dealer.perf;
+
+import com.arturokumura.car_dealer.batch.listener.SalesReportSftpJobListener;
+import com.arturokumura.car_dealer.scheduler.CarDealerApplication;
+import com.arturokumura.car_dealer.support.SalesCsvGenerator;
+import org.springframework.batch.core.job.Job;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.core.job.parameters.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobOperator;
+import org.springframework.batch.core.step.StepExecution;
+import org.springframework.batch.infrastructure.item.ExecutionContext;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Executa o salesReportJob ponta a ponta contra o SFTP embarcado e um H2 em modo MySQL, e imprime
+// o tempo de cada fase: download (beforeJob), step e upload/movimentacao (afterJob).
+// Uso: SalesReportLoadRunner <arquivos> <linhas por arquivo> [propriedade=valor ...]
+// Com perf.remote-workers=N o job roda como gerenciador do particionamento entre processos e N JVMs
+// worker consomem a fila em um H2 em arquivo compartilhado (AUTO_SERVER), substituto local do MySQL.
+public final class SalesReportLoadRunner {
+
+    private static final Path WORK_DIR = Path.of("target", "perf");
+    private static final String REMOTE_WORKERS_PROPERTY = "perf.remote-workers";
+
+    private SalesReportLoadRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+        long rowsPerFile = args.length > 1 ? Long.parseLong(args[1]) : 100_000;
+
+        FileSystemUtils.deleteRecursively(WORK_DIR);
+        try (EmbeddedSftpServer sftpServer = EmbeddedSftpServer.start(WORK_DIR.resolve("sftp"))) {
+            long generateStart = System.nanoTime();
+            generateBranchFiles(sftpServer.branchDirectory(), files, rowsPerFile);
+            System.out.printf("Gerados %d arquivo(s) com %d linha(s) em %d ms%n", files, rowsPerFile,
+                    (System.nanoTime() - generateStart) / 1_000_000);
+
+            Map<String, Object> properties = harnessProperties(sftpServer.getPort());
+            for (int i = 2; i < args.length; i++) {
+                String[] property = args[i].split("=", 2);
+                properties.put(property[0], property[1]);
+            }
+
+            int remoteWorkers = Integer.parseInt(String.valueOf(properties.getOrDefault(REMOTE_WORKERS_PROPERTY, "0")));
+            properties.remove(REMOTE_WORKERS_PROPERTY);
+            List<Process> workers = new ArrayList<>();
+            if (remoteWorkers > 0) {
+                properties.put("app.batch.datasource.url", "jdbc:h2:file:"
+                        + WORK_DIR.resolve("work-queue").toAbsolutePath() + ";AUTO_SERVER=TRUE;MODE=MySQL");
+                properties.put("app.batch.datasource.username", "sa");
+                properties.put("app.batch.datasource.password", "");
+                properties.put("app.batch.remote.poll-interval-ms", 200);
+                for (int i = 1; i <= remoteWorkers; i++) {
+                    workers.add(startRemoteWorker(i, properties));
+                }
+                properties.put("app.batch.remote.mode", "manager");
+            }
+
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(CarDealerApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .properties(properties)
+                    .run()) {
+                JobOperator jobOperator = context.getBean(JobOperator.class);
+                Job job = context.getBean("salesReportJob", Job.class);
+
+                long start = System.nanoTime();
+                JobExecution execution = jobOperator.start(job, new JobParametersBuilder()
+                        .addLong("run.id", System.currentTimeMillis())
+                        .toJobParameters());
+                long wallMillis = (System.nanoTime() - start) / 1_000_000;
+                printPhases(execution, wallMillis, files * rowsPerFile);
+            } finally {
+                workers.forEach(Process::destroy);
+            }
+        }
+    }
+
+    // JVM worker com o mesmo classpath, banco proprio em memoria e pasta de dados propria; so a fila e
+    // os arquivos baixados pelo gerenciador sao compartilhados. O log fica em target/perf/worker-<n>.log.
+    private static Process startRemoteWorker(int number, Map<String, Object> properties) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(CarDealerApplication.class.getName());
+        Map<String, Object> workerProperties = new HashMap<>(properties);
+        workerProperties.put("app.batch.remote.mode", "worker");
+        workerProperties.put("app.batch.remote.worker.idle-exit-ms", 60_000);
+        workerProperties.put("app.data-dir", WORK_DIR.resolve("worker-" + number).toAbsolutePath().toString());
+        workerProperties.put("spring.main.web-application-type", "none");
+        workerProperties.forEach((key, value) -> command.add("--" + key + "=" + value));
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(WORK_DIR.resolve("worker-" + number + ".log").toFile())
+                .start();
+    }
+
+    private static void generateBranchFiles(Path directory, int files, long rowsPerFile) {
+        for (int i = 1; i <= files; i++) {
+            String dealerId = SalesCsvGenerator.dealerId(i);
+            new SalesCsvGenerator(i).write(directory.resolve(dealerId + "_sales.csv"), dealerId, rowsPerFile);
+        }
+    }
+
+    // Aponta o job para o SFTP embarcado, para o H2 e para uma pasta de dados descartavel.
+    private static Map<String, Object> harnessProperties(int sftpPort) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("sftp.host", "localhost");
+        properties.put("sftp.port", sftpPort);
+        properties.put("sftp.user", EmbeddedSftpServer.USER);
+        properties.put("sftp.password", EmbeddedSftpServer.PASSWORD);
+        properties.put("app.data-dir", WORK_DIR.resolve("data").toAbsolutePath().toString());
+        properties.put("spring.datasource.url", "jdbc:h2:mem:car_dealer;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        properties.put("spring.datasource.username", "sa");
+        properties.put("spring.datasource.password", "");
+        properties.put("spring.batch.jdbc.platform", "h2");
+        return properties;
+    }
+
+    private static void printPhases(JobExecution execution, long wallMillis, long totalRows) {
+        ExecutionContext jobContext = execution.getExecutionContext();
+        System.out.printf("Status do job: %s (%s)%n", execution.getStatus(), execution.getExitStatus().getExitCode());
+        System.out.printf("%-40s %10d ms%n", "download (beforeJob)",
+                jobContext.getLong(SalesReportSftpJobListener.DOWNLOAD_MILLIS_CONTEXT_KEY, -1L));
+        for (StepExecution step : execution.getStepExecutions()) {
+            long stepMillis = step.getStartTime() == null || step.getEndTime() == null
+                    ? -1L
+                    : Duration.between(step.getStartTime(), step.getEndTime()).toMillis();
+            System.out.printf("%-40s %10d ms  (%d lidas, %d escritas, %d commits)%n", step.getStepName(),
+                    stepMillis, step.getReadCount(), step.getWriteCount(), step.getCommitCount());
+        }
+        System.out.printf("%-40s %10d ms%n", "upload/movimentacao (afterJob)",
+                jobContext.getLong(SalesReportSftpJobListener.UPLOAD_MILLIS_CONTEXT_KEY, -1L));
+        System.out.printf("%-40s %10d ms  (%.0f linhas/s)%n", "total", wallMillis,
+                wallMillis == 0 ? 0.0 : totalRows * 1000.0 / wallMillis);
+    }
+}
@@ -0,0 +1,150 @@
+package com.arturokumura.car_dealer.report;
+
+import com.arturokumura.car_dealer.batch.aggregation.AggregateCheckpoint;
+import com.arturokumura.car_dealer.batch.dedup.DuplicateIndex;
+import com.arturokumura.car_dealer.batch.dimension.DealerDimension;
+import com.arturokumura.car_dealer.batch.dimension.DealerDimensionCache;
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+import com.arturokumura.car_dealer.batch.listener.ReportSnapshotListener;
+import com.arturokumura.car_dealer.batch.listener.SalesReportSftpJobListener;
+import com.arturokumura.car_dealer.batch.pipeline.FilePipeline;
+import com.arturokumura.car_dealer.batch.repository.SalesAggregateRepository;
+import com.arturokumura.car_dealer.batch.rollup.RollupDefinitions;
+import com.arturokumura.car_dealer.batch.rollup.RollupEngine;
+import com.arturokumura.car_dealer.batch.writer.SalesReportWriter;
+import com.arturokumura.car_dealer.integration.SftpDownloadService;
+import com.arturokumura.car_dealer.integration.SftpReportStreamer;
+import com.arturokumura.car_dealer.integration.SftpStreamingSource;
+import com.arturokumura.car_dealer.integration.SftpUploadService;
+import com.arturokumura.car_dealer.metrics.BatchMetrics;
+import com.arturokumura.car_dealer.support.TestDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.job.JobExecution;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+// Fotos preparadas por execucao: execucoes simultaneas publicam ou descartam so a propria foto, uma falha
+// no envio SFTP nao deixa a foto nem os ".part" da execucao para tras, e a reagregacao pelo cache grava
+// seus arquivos sem mexer na foto da API.
+class ReportSnapshotHolderTests {
+
+    @TempDir
+    Path workDir;
+
+    private ReportSnapshotHolder holder;
+    private ReportSnapshotListener listener;
+    private SalesReportWriter writer;
+    private RollupDefinitions rollupDefinitions;
+
+    @BeforeEach
+    void setUp() {
+        holder = new ReportSnapshotHolder();
+        listener = new ReportSnapshotListener(holder);
+        BatchMetrics batchMetrics = new BatchMetrics(new SimpleMeterRegistry());
+        rollupDefinitions = new RollupDefinitions("", 0, workDir.resolve("spill").toString());
+        writer = new SalesReportWriter(new DealerDimensionCache(TestDatabase.create(), batchMetrics, Long.MAX_VALUE),
+                new AggregateCheckpoint(false, workDir.resolve("checkpoints").toString(), 256, 3),
+                new SalesAggregateRepository(null, "memory"), batchMetrics, null, holder, rollupDefinitions,
+                workDir.resolve("matriz").resolve("sales-report.csv").toString());
+    }
+
+    @Test
+    void concurrentExecutionsPublishOnlyTheirOwnSnapshot() {
+        JobExecution failing = MetaDataInstanceFactory.createJobExecution("salesReportJob", 1L, 1L);
+        JobExecution completing = MetaDataInstanceFactory.createJobExecution("salesReportJob", 2L, 2L);
+
+        writer.writeReports(completing.getId(), engineWith("A"));
+        writer.writeReports(failing.getId(), engineWith("B"));
+        finish(failing, BatchStatus.FAILED);
+        assertNull(holder.current());
+
+        finish(completing, BatchStatus.COMPLETED);
+        assertNotNull(holder.current().dealer("A"));
+        assertNull(holder.current().dealer("B"));
+    }
+
+    @Test
+    void olderSnapshotDoesNotReplaceANewerOne() {
+        JobExecution slow = MetaDataInstanceFactory.createJobExecution("salesReportJob", 1L, 1L);
+        JobExecution fast = MetaDataInstanceFactory.createJobExecution("salesReportJob", 2L, 2L);
+
+        writer.writeReports(slow.getId(), engineWith("A"));
+        writer.writeReports(fast.getId(), engineWith("B"));
+        finish(fast, BatchStatus.COMPLETED);
+        finish(slow, BatchStatus.COMPLETED);
+
+        assertNotNull(holder.current().dealer("B"));
+        assertNull(holder.current().dealer("A"));
+    }
+
+    @Test
+    void recomputeOutputIsNotStaged() {
+        JobExecution report = MetaDataInstanceFactory.createJobExecution("salesReportJob", 1L, 1L);
+        writer.writeReports(report.getId(), engineWith("A"));
+        finish(report, BatchStatus.COMPLETED);
+        long version = holder.current().info().version();
+
+        JobExecution recompute = MetaDataInstanceFactory.createJobExecution("salesRecomputeJob", 2L, 2L);
+        writer.writeLocalReports(recompute.getId(), engineWith("B"),
+                workDir.resolve("recompute").resolve("sales-report.csv").toString());
+        // Mesmo que um listener de foto rodasse na reagregacao, nada foi preparado para ela
+        finish(recompute, BatchStatus.COMPLETED);
+
+        assertEquals(version, holder.current().info().version());
+        assertNotNull(holder.current().dealer("A"));
+    }
+
+    @Test
+    void failedUploadDiscardsTheStagedSnapshotAndTheRemoteParts() {
+        SftpUploadService sftpUploadService = mock(SftpUploadService.class);
+        doThrow(new IllegalStateException("sessao encerrada"))
+                .when(sftpUploadService).uploadAndMoveProcessedFiles(anyLong());
+        SftpReportStreamer sftpReportStreamer = mock(SftpReportStreamer.class);
+        SalesReportSftpJobListener sftpListener = new SalesReportSftpJobListener(mock(SftpDownloadService.class),
+                sftpUploadService, mock(SftpStreamingSource.class), mock(FilePipeline.class),
+                mock(DuplicateIndex.class), sftpReportStreamer);
+        JobExecution jobExecution = MetaDataInstanceFactory.createJobExecution("salesReportJob", 1L, 1L);
+        writer.writeReports(jobExecution.getId(), engineWith("A"));
+        jobExecution.setStatus(BatchStatus.COMPLETED);
+        jobExecution.setExitStatus(ExitStatus.COMPLETED);
+
+        // Ordem do afterJob no salesReportJob: SFTP primeiro, foto depois
+        sftpListener.afterJob(jobExecution);
+        listener.afterJob(jobExecution);
+
+        assertEquals(BatchStatus.FAILED, jobExecution.getStatus());
+        verify(sftpReportStreamer).discard(jobExecution.getId());
+        assertNull(holder.current());
+        // Nada ficou preparado: uma publicacao posterior da mesma execucao nao encontra foto
+        holder.publishStaged(jobExecution.getId());
+        assertNull(holder.current());
+    }
+
+    private void finish(JobExecution jobExecution, BatchStatus status) {
+        jobExecution.setStatus(status);
+        listener.afterJob(jobExecution);
+    }
+
+    // Filial sem cadastro: o nome na foto e o proprio dealer_id.
+    private RollupEngine engineWith(String dealerId) {
+        RollupEngine engine = rollupDefinitions.newEngine();
+        engine.add(new SaleRecord(dealerId, "2026-02-01", "Lume", "PIX", new BigDecimal("10.00")),
+                DealerDimension.UNKNOWN);
+        return engine;
+    }
+}
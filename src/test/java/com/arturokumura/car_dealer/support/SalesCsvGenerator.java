@@ -0,0 +1,113 @@
+package com.arturokumura.car_dealer.support;
+
+import com.arturokumura.car_dealer.batch.domain.SaleRecord;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Gera CSVs sinteticos de filial no layout real (dealer_id,sale_date,model,payment_type,sale_price_brl).
+// A semente fixa torna os arquivos reprodutiveis entre execucoes de benchmark e de carga.
+public final class SalesCsvGenerator {
+
+    public static final String HEADER = "dealer_id,sale_date,model,payment_type,sale_price_brl";
+
+    private static final String[] MODELS = {"Serra", "Lume", "Touro", "Brisa", "Atlas", "Eon"};
+    private static final String[] PAYMENT_TYPES = {"Financiamento", "PIX", "Consórcio", "Cartão Crédito", "TED"};
+    private static final LocalDate FIRST_SALE_DATE = LocalDate.of(2026, 1, 1);
+
+    private final SplittableRandom random;
+
+    public SalesCsvGenerator(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    // Gera o arquivo no caminho informado; reutiliza um arquivo existente com o mesmo nome.
+    public static Path generateIfMissing(Path target, String dealerId, long rows, long seed) {
+        if (Files.exists(target)) {
+            return target;
+        }
+        new SalesCsvGenerator(seed).write(target, dealerId, rows);
+        return target;
+    }
+
+    // Escreve rows vendas da filial, gravando em temporario e movendo ao final.
+    public void write(Path target, String dealerId, long rows) {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Path parent = target.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+                StringBuilder line = new StringBuilder(64);
+                for (long i = 0; i < rows; i++) {
+                    line.setLength(0);
+                    line.append(dealerId).append(',')
+                            .append(nextSaleDate()).append(',')
+                            .append(nextModel()).append(',')
+                            .append(nextPaymentType()).append(',')
+                            .append(nextPrice().toPlainString());
+                    writer.append(line);
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Nao foi possivel gerar " + target, e);
+        }
+    }
+
+    // Vendas em memoria com a mesma distribuicao dos arquivos gerados.
+    public List<SaleRecord> records(int dealers, int count) {
+        List<SaleRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(new SaleRecord(dealerId(random.nextInt(dealers) + 1), nextSaleDate().toString(),
+                    nextModel(), nextPaymentType(), nextPrice()));
+        }
+        return records;
+    }
+
+    public static String dealerId(int number) {
+        return String.format("D%03d", number);
+    }
+
+    private LocalDate nextSaleDate() {
+        return FIRST_SALE_DATE.plusDays(random.nextInt(365));
+    }
+
+    private String nextModel() {
+        return MODELS[random.nextInt(MODELS.length)];
+    }
+
+    private String nextPaymentType() {
+        return PAYMENT_TYPES[random.nextInt(PAYMENT_TYPES.length)];
+    }
+
+    // Precos entre 60 mil e 220 mil reais, com centavos.
+    private BigDecimal nextPrice() {
+        return BigDecimal.valueOf(6_000_000L + random.nextLong(16_000_000L), 2);
+    }
+
+    // Uso: SalesCsvGenerator <pasta> <arquivos> <linhas por arquivo>
+    public static void main(String[] args) {
+        Path directory = Path.of(args[0]);
+        int files = Integer.parseInt(args[1]);
+        long rows = Long.parseLong(args[2]);
+        for (int i = 1; i <= files; i++) {
+            String dealerId = dealerId(i);
+            new SalesCsvGenerator(i).write(directory.resolve(dealerId + "_sales.csv"), dealerId, rows);
+        }
+    }
+}
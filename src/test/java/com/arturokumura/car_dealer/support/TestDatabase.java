@@ -0,0 +1,24 @@
+package com.arturokumura.car_dealer.support;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.UUID;
+
+// H2 em memoria no modo MySQL com o schema-all.sql e o data.sql da aplicacao (dealers das amostras),
+// um banco novo por chamada.
+public final class TestDatabase {
+
+    private TestDatabase() {
+    }
+
+    public static JdbcTemplate create() {
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "", true);
+        new ResourceDatabasePopulator(new ClassPathResource("schema-all.sql"), new ClassPathResource("data.sql"))
+                .execute(dataSource);
+        return new JdbcTemplate(dataSource);
+    }
+}